@@ -0,0 +1,178 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal;
+
+
+/**
+ *  Keeps a generated tree in sync with TreeParameters that are being
+ *  edited in place.  update() detects the shallowest branch and root
+ *  levels that changed since the last update and only regenerates the
+ *  segments at and below those depths.  Everything above is kept as it 
+ *  was.  The result is always the same as generating the tree from scratch 
+ *  with the current parameters.
+ *
+ *  <p>Incremental updates require a TreeGenerator that uses split seeds.  
+ *  With the shared random sequence every update regenerates the whole tree.</p>
+ */
+public class IncrementalTree {
+
+    /**
+     *  The table is regenerated from scratch when it holds this many times
+     *  more segments than are still reachable.
+     */
+    private static final int COMPACT_RATIO = 4;
+
+    private final TreeGenerator generator;
+    private final TreeParameters treeParms;
+    private final int seed;
+    private TreeTemplate template;
+    private SegmentTable table;
+    private int version;
+    private int changedBranchDepth;
+    private int changedRootDepth;
+    
+    public IncrementalTree( TreeGenerator generator, TreeParameters treeParms, int seed ) {
+        this.generator = generator;
+        this.treeParms = treeParms;
+        this.seed = seed;
+        this.template = new TreeTemplate(treeParms);
+        this.table = generator.generateTable(seed, template);
+    }
+ 
+    public TreeGenerator getGenerator() {
+        return generator;
+    }
+    
+    public TreeParameters getTreeParameters() {
+        return treeParms;
+    }
+    
+    public int getSeed() {
+        return seed;
+    }
+ 
+    /**
+     *  Returns the template that the current table was generated from.
+     */   
+    public TreeTemplate getTemplate() {
+        return template;
+    }
+    
+    public SegmentTable getTable() {
+        return table;
+    }
+ 
+    /**
+     *  Returns a number that is incremented every time that update() changes
+     *  the tree.
+     */   
+    public int getVersion() {
+        return version;
+    }
+ 
+    /**
+     *  Returns the shallowest branch depth that was regenerated by the last
+     *  update.  0 means that the whole tree was regenerated.
+     */
+    public int getChangedBranchDepth() {
+        return changedBranchDepth;
+    }
+    
+    /**
+     *  Returns the shallowest root depth that was regenerated by the last
+     *  update.  0 means that the whole tree was regenerated.
+     */
+    public int getChangedRootDepth() {
+        return changedRootDepth;
+    }
+ 
+    /**
+     *  Returns true if the last update regenerated the whole tree.
+     */   
+    public boolean isFullyRegenerated() {
+        return changedBranchDepth == 0 || changedRootDepth == 0;
+    }
+ 
+    /**
+     *  Checks the tree parameters for changes and regenerates the affected 
+     *  parts of the tree.  Returns true if anything changed.
+     */   
+    public boolean update() {
+        TreeTemplate next = new TreeTemplate(treeParms);
+        int branchDepth = next.getBranches().getChangedDepth(template.getBranches());
+        int rootDepth = next.getRoots().getChangedDepth(template.getRoots());
+        
+        boolean sizeChanged = next.getTrunkRadius() != template.getTrunkRadius()
+                              || next.getTrunkHeight() != template.getTrunkHeight()
+                              || next.getRootHeight() != template.getRootHeight()
+                              || next.getTextureURepeat() != template.getTextureURepeat()
+                              || next.getTextureVScale() != template.getTextureVScale();
+        
+        if( !sizeChanged && branchDepth == next.getBranches().size() 
+                         && rootDepth == next.getRoots().size() ) {
+            return false;
+        }
+ 
+        if( sizeChanged || branchDepth == 0 || rootDepth == 0 || !generator.isSplitSeeds() ) {
+            regenerateAll(next);
+        } else {
+            int live = generator.regenerate(table, seed, next, branchDepth, rootDepth);
+            if( table.size() > live * COMPACT_RATIO ) {
+                // Too many replaced segments are piling up in the table 
+                // so start over with a fresh one
+                regenerateAll(next);
+            } else {
+                changedBranchDepth = branchDepth;
+                changedRootDepth = rootDepth;
+            }
+        }
+        template = next;
+        version++;
+        return true;
+    }
+    
+    protected void regenerateAll( TreeTemplate next ) {
+        table = generator.generateTable(seed, next);
+        changedBranchDepth = 0;
+        changedRootDepth = 0;
+    }
+    
+    @Override
+    public String toString() {
+        return "IncrementalTree[seed=" + seed + ", version=" + version + ", " + table + "]";
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal;
+
+import com.jme3.math.Quaternion;
+import com.simsilica.arboreal.TreeTemplate.Levels;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ *  A tree whose SegmentTable only contains the branch levels that
+ *  have been asked for so far.  Deeper levels are generated on demand 
+ *  by expand() and always end up the same as if the whole tree had been 
+ *  generated at once.  This makes far away trees that only ever show the
+ *  trunk level of detail much cheaper to create.
+ *
+ *  <p>Until a branch's children are expanded the branch has no children
+ *  in the table so mesh generators treat its end as a tip.  Leaves should
+ *  only be generated from a fully expanded tree.</p>
+ */
+public class LazyTree {
+
+    private final TreeGenerator generator;
+    private final TreeTemplate template;
+    private final SegmentTable table;
+    
+    // Managed by TreeGenerator
+    int branchDepth;
+    int rootDepth;
+    List<PendingBranch> branchPending = new ArrayList<PendingBranch>();
+    List<PendingBranch> rootPending = new ArrayList<PendingBranch>();
+    
+    LazyTree( TreeGenerator generator, TreeTemplate template, SegmentTable table ) {
+        this.generator = generator;
+        this.template = template;
+        this.table = table;
+    }
+    
+    public TreeTemplate getTemplate() {
+        return template;
+    }
+    
+    public SegmentTable getTable() {
+        return table;
+    }
+ 
+    /**
+     *  Returns the number of branch levels that have been generated.
+     */   
+    public int getBranchDepth() {
+        return Math.min(branchDepth, template.getBranches().size());
+    }
+    
+    /**
+     *  Returns the number of root levels that have been generated.
+     */   
+    public int getRootDepth() {
+        return Math.min(rootDepth, template.getRoots().size());
+    }
+ 
+    /**
+     *  Returns the number of branches that are still waiting to be 
+     *  generated.  Their own children are not included.
+     */   
+    public int getPendingCount() {
+        return branchPending.size() + rootPending.size();
+    }
+    
+    public boolean isFullyExpanded() {
+        return branchPending.isEmpty() && rootPending.isEmpty();
+    }
+ 
+    /**
+     *  Makes sure that the levels needed to render the specified level
+     *  of detail have been generated.
+     */   
+    public void expand( LevelOfDetailParameters lod ) {
+        expand(lod.getBranchDepth(), lod.getRootDepth());
+    }
+ 
+    /**
+     *  Generates the branch levels above branchDepth and the root levels
+     *  above rootDepth that have not been generated yet.
+     */   
+    public void expand( int branchDepth, int rootDepth ) {
+        generator.expand(this, branchDepth, rootDepth);
+    }
+ 
+    /**
+     *  Generates everything that is left.
+     */   
+    public void expandAll() {
+        expand(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+    
+    @Override
+    public String toString() {
+        return "LazyTree[branchDepth=" + getBranchDepth() + ", rootDepth=" + getRootDepth() 
+                    + ", pending=" + getPendingCount() + ", " + table + "]";
+    }
+ 
+    /**
+     *  The inputs of a branch whose generation was deferred.  These are 
+     *  the same values that the parent would have passed to createBranch().
+     */   
+    static class PendingBranch {
+        final int parent;
+        final int index;
+        final int siblings;
+        final long seed;
+        final int depth;
+        final Levels levels;
+        final Quaternion rotation;
+        final float radius;
+        final float length;
+        final float lengthOffset;
+        final float baseAngle;
+        final float vBase;
+        final int uRepeat;
+        final float vScaleTree;
+        
+        PendingBranch( int parent, int index, int siblings, long seed, int depth, 
+                       Levels levels,
+                       Quaternion rotation, float radius, 
+                       float length, float lengthOffset,
+                       float baseAngle,
+                       float vBase, int uRepeat, float vScaleTree ) {
+            this.parent = parent;
+            this.index = index;
+            this.siblings = siblings;
+            this.seed = seed;
+            this.depth = depth;
+            this.levels = levels;
+            this.rotation = rotation.clone();
+            this.radius = radius;
+            this.length = length;
+            this.lengthOffset = lengthOffset;
+            this.baseAngle = baseAngle;
+            this.vBase = vBase;
+            this.uRepeat = uRepeat;
+            this.vScaleTree = vScaleTree;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.simsilica.arboreal;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.arboreal.Segment.ConnectionType;
+import java.util.Arrays;
+
+
+/**
+ *  A memory dense store for the skeletons of many trees at once.  All
+ *  segments of all trees live in one short[] arena where the scalar
+ *  values are kept as half floats and the direction is folded onto an
+ *  octahedron as two normalized shorts.  A segment takes 30 bytes
+ *  instead of the 100 or so of a Segment and its Vector3f and there
+ *  are no per-segment objects for the garbage collector to trace.
+ *
+ *  <p>The accessors mirror the Segment fields and the SegmentTable 
+ *  methods.  As in SegmentTable, segments are addressed by index and 
+ *  the children of a segment are always stored contiguously.  Values 
+ *  come back with half float precision, ie: about three significant 
+ *  digits.</p>
+ *
+ *  <p>Trees can be added from a SegmentTable, from a Tree or generated
+ *  directly into the store by calling beginTree() and then passing the
+ *  store to TreeGenerator as a SegmentSink.</p>
+ */
+public class PackedSkeletonStore implements SegmentSink {
+
+    public static final int NONE = -1;
+
+    /**
+     *  The number of bytes that each segment uses in the arena.
+     */
+    public static final int BYTES_PER_SEGMENT = 30;
+    
+    private static final int START_RADIUS = 0;
+    private static final int END_RADIUS = 1;
+    private static final int LENGTH = 2;
+    private static final int U_SCALE = 3;
+    private static final int V_START = 4;
+    private static final int V_END = 5;
+    private static final int TWIST = 6;
+    private static final int DIR_U = 7;
+    private static final int DIR_V = 8;
+    private static final int INFO = 9;
+    private static final int CHILD_COUNT = 10;
+    private static final int VALUES = 11;
+    
+    private static final int MAX_RADIALS = 0xff;
+    private static final int MAX_DEPTH = 0x1f;
+    private static final int INVERTED = 0x8000;
+    private static final int MAX_CHILDREN = 0xffff;
+    
+    private static final ConnectionType[] CONNECTIONS = ConnectionType.values();
+    
+    private int size;
+    private short[] values;
+    private int[] parent;
+    private int[] firstChild;
+ 
+    private int treeCount;
+    private int[] trees;
+    
+    public PackedSkeletonStore() {
+        this(1024);
+    }
+    
+    public PackedSkeletonStore( int capacity ) {
+        capacity = Math.max(1, capacity);
+        values = new short[capacity * VALUES];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        trees = new int[16 * 2];
+    }
+ 
+    /**
+     *  Starts a new tree and returns its ID.  Top level segments passed
+     *  to addSegment() after this call belong to the new tree.
+     */   
+    public int beginTree() {
+        if( (treeCount + 1) * 2 > trees.length ) {
+            trees = Arrays.copyOf(trees, trees.length * 2);
+        }
+        int id = treeCount++;
+        trees[id * 2] = NONE;
+        trees[id * 2 + 1] = NONE;
+        return id;
+    }
+ 
+    /**
+     *  Adds the reachable segments of the specified table as a new 
+     *  tree and returns its ID.
+     */   
+    public int add( SegmentTable table ) {
+        int id = beginTree();
+        Segment scratch = new Segment();
+        for( int i = 0; i < table.getTopSegmentCount(); i++ ) {
+            int top = table.getTopSegment(i);
+            if( top != SegmentTable.NONE ) {
+                copy(table, top, i, scratch);
+            }
+        }
+        return id;
+    }
+ 
+    /**
+     *  Adds the segments of the specified tree as a new tree and returns
+     *  its ID.
+     */   
+    public int add( Tree tree ) {
+        return add(SegmentTable.fromTree(tree));
+    }
+    
+    /**
+     *  Copies the branch starting at the specified table segment.  The
+     *  table is walked with an explicit stack of (segment, parent, child 
+     *  index) triples so that deep trees do not recurse.
+     */
+    private void copy( SegmentTable table, int top, int topIndex, Segment scratch ) {
+        int[] stack = new int[16 * 3];
+        int size = 0;
+        stack[size++] = top;
+        stack[size++] = NO_PARENT;
+        stack[size++] = topIndex;
+        while( size > 0 ) {
+            int childIndex = stack[--size];
+            int parentIndex = stack[--size];
+            int index = stack[--size];
+            scratch.startRadius = table.getStartRadius(index);
+            scratch.endRadius = table.getEndRadius(index);
+            scratch.length = table.getLength(index);
+            scratch.uScale = table.getUScale(index);
+            scratch.vStart = table.getVStart(index);
+            scratch.vEnd = table.getVEnd(index);
+            scratch.twist = table.getTwist(index);
+            scratch.radials = table.getRadials(index);
+            table.getDir(index, scratch.dir);
+            scratch.parentConnection = table.getParentConnection(index);
+            int count = table.getChildCount(index);
+            int result = addSegment(parentIndex, childIndex, count, table.getDepth(index), scratch);
+            stack = pushChildren(stack, size, table.getFirstChild(index), count, result);
+            size += count * 3;
+        }
+    }
+ 
+    /**
+     *  Pushes the children last first so that the first one pops first 
+     *  and the segments are added in the same depth first order as they
+     *  would be by recursion.  Returns the stack, grown if needed.
+     */
+    private static int[] pushChildren( int[] stack, int size, int first, int count, int parentIndex ) {
+        if( size + count * 3 > stack.length ) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + count * 3));
+        }
+        for( int i = count - 1; i >= 0; i-- ) {
+            stack[size++] = first + i;
+            stack[size++] = parentIndex;
+            stack[size++] = i;
+        }
+        return stack;
+    }
+ 
+    @Override
+    public int addSegment( int parentIndex, int childIndex, int count, int level, Segment seg ) {
+        if( treeCount == 0 ) {
+            throw new IllegalStateException("No tree has been started");
+        }
+        if( seg.radials > MAX_RADIALS ) {
+            throw new IllegalArgumentException("Too many radials:" + seg.radials);
+        }
+        if( level > MAX_DEPTH ) {
+            throw new IllegalArgumentException("Depth too large:" + level);
+        }
+        if( count > MAX_CHILDREN ) {
+            throw new IllegalArgumentException("Too many children:" + count);
+        }
+    
+        int index;
+        if( parentIndex == NO_PARENT ) {
+            if( childIndex > 1 ) {
+                throw new IllegalArgumentException("Invalid top level index:" + childIndex);
+            }
+            index = allocate(1);
+            trees[(treeCount - 1) * 2 + childIndex] = index;
+        } else {
+            index = firstChild[parentIndex] + childIndex;
+        }
+        
+        int base = index * VALUES;
+        values[base + START_RADIUS] = toHalf(seg.startRadius);
+        values[base + END_RADIUS] = toHalf(seg.endRadius);
+        values[base + LENGTH] = toHalf(seg.length);
+        values[base + U_SCALE] = toHalf(seg.uScale);
+        values[base + V_START] = toHalf(seg.vStart);
+        values[base + V_END] = toHalf(seg.vEnd);
+        values[base + TWIST] = toHalf(seg.twist);
+        int dir = TreeSkeletonFormat.encodeDir(seg.dir.x, seg.dir.y, seg.dir.z);
+        values[base + DIR_U] = (short)dir;
+        values[base + DIR_V] = (short)(dir >> 16);
+        values[base + INFO] = (short)(seg.radials 
+                                      | (seg.parentConnection.ordinal() << 8)
+                                      | (level << 10)
+                                      | (seg.vStart > seg.vEnd ? INVERTED : 0));
+        values[base + CHILD_COUNT] = (short)count;
+        parent[index] = parentIndex;
+        
+        // allocate() may grow the arrays so it must be called before
+        // we reference firstChild.
+        int first = count > 0 ? allocate(count) : NONE;
+        firstChild[index] = first;
+        return index;
+    }
+    
+    private int allocate( int count ) {
+        int first = size;
+        size += count;
+        if( size > parent.length ) {
+            grow(Math.max(size, parent.length * 2));
+        }
+        return first;
+    }
+    
+    private void grow( int capacity ) {
+        values = Arrays.copyOf(values, capacity * VALUES);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+    }
+ 
+    /**
+     *  Releases any unused capacity in the arena.
+     */   
+    public void trimToSize() {
+        grow(Math.max(1, size));
+        trees = Arrays.copyOf(trees, Math.max(2, treeCount * 2));
+    }
+ 
+    /**
+     *  Removes all trees but keeps the arena's capacity.
+     */   
+    public void clear() {
+        size = 0;
+        treeCount = 0;
+    }
+ 
+    /**
+     *  Returns the total number of segments in the store.
+     */   
+    public int size() {
+        return size;
+    }
+    
+    public int getTreeCount() {
+        return treeCount;
+    }
+ 
+    /**
+     *  Returns the number of bytes used by the stored segments and trees,
+     *  not counting unused capacity.
+     */   
+    public long getByteCount() {
+        return (long)size * BYTES_PER_SEGMENT + (long)treeCount * 8;
+    }
+ 
+    /**
+     *  Returns the index of the trunk's first segment for the specified 
+     *  tree or NONE.
+     */   
+    public int getTrunk( int tree ) {
+        return trees[tree * 2];
+    }
+    
+    /**
+     *  Returns the index of the roots' first segment for the specified
+     *  tree or NONE.
+     */   
+    public int getRoots( int tree ) {
+        return trees[tree * 2 + 1];
+    }
+    
+    public float getStartRadius( int index ) {
+        return fromHalf(values[index * VALUES + START_RADIUS]);
+    }
+    
+    public float getEndRadius( int index ) {
+        return fromHalf(values[index * VALUES + END_RADIUS]);
+    }
+    
+    public float getLength( int index ) {
+        return fromHalf(values[index * VALUES + LENGTH]);
+    }
+    
+    public float getUScale( int index ) {
+        return fromHalf(values[index * VALUES + U_SCALE]);
+    }
+    
+    public float getVStart( int index ) {
+        return fromHalf(values[index * VALUES + V_START]);
+    }
+    
+    public float getVEnd( int index ) {
+        return fromHalf(values[index * VALUES + V_END]);
+    }
+    
+    public float getTwist( int index ) {
+        return fromHalf(values[index * VALUES + TWIST]);
+    }
+    
+    public int getRadials( int index ) {
+        return values[index * VALUES + INFO] & MAX_RADIALS;
+    }
+    
+    public Vector3f getDir( int index, Vector3f store ) {
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        int base = index * VALUES;
+        return TreeSkeletonFormat.decodeDir(values[base + DIR_U], values[base + DIR_V], store);
+    }
+    
+    public ConnectionType getParentConnection( int index ) {
+        return CONNECTIONS[(values[index * VALUES + INFO] >> 8) & 0x3];
+    }
+    
+    /**
+     *  Returns the branch level that produced the segment.
+     */
+    public int getDepth( int index ) {
+        return (values[index * VALUES + INFO] >> 10) & MAX_DEPTH;
+    }
+    
+    public int getParent( int index ) {
+        return parent[index];
+    }
+    
+    public int getChildCount( int index ) {
+        return values[index * VALUES + CHILD_COUNT] & MAX_CHILDREN;
+    }
+    
+    public int getFirstChild( int index ) {
+        return firstChild[index];
+    }
+    
+    public int getChild( int index, int child ) {
+        return firstChild[index] + child;
+    }
+    
+    public boolean hasChildren( int index ) {
+        return getChildCount(index) > 0;
+    }
+    
+    /**
+     *  Returns true if the segment's v runs backwards.  This is kept as
+     *  a flag because the rounded v values of a very short segment may
+     *  come out equal.
+     */
+    public boolean isInverted( int index ) {
+        return (values[index * VALUES + INFO] & INVERTED) != 0;
+    }
+ 
+    /**
+     *  Fills the specified Segment with the values of the segment at
+     *  the specified index.  The children are not filled in.
+     */   
+    public Segment getSegment( int index, Segment store ) {
+        if( store == null ) {
+            store = new Segment();
+        }
+        store.startRadius = getStartRadius(index);
+        store.endRadius = getEndRadius(index);
+        store.length = getLength(index);
+        store.uScale = getUScale(index);
+        store.vStart = getVStart(index);
+        store.vEnd = getVEnd(index);
+        store.twist = getTwist(index);
+        store.radials = getRadials(index);
+        getDir(index, store.dir);
+        store.parentConnection = getParentConnection(index);
+        return store;
+    }
+ 
+    /**
+     *  Unpacks the specified tree into a new SegmentTable.
+     */   
+    public SegmentTable toTable( int tree ) {
+        SegmentTable result = new SegmentTable();
+        Segment scratch = new Segment();
+        for( int i = 0; i < 2; i++ ) {
+            int top = trees[tree * 2 + i];
+            if( top != NONE ) {
+                copyTo(result, top, i, scratch);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     *  Copies the branch starting at the specified store segment into the
+     *  table using the same explicit stack walk as copy().
+     */
+    private void copyTo( SegmentTable table, int top, int topIndex, Segment scratch ) {
+        int[] stack = new int[16 * 3];
+        int size = 0;
+        stack[size++] = top;
+        stack[size++] = NO_PARENT;
+        stack[size++] = topIndex;
+        while( size > 0 ) {
+            int childIndex = stack[--size];
+            int parentIndex = stack[--size];
+            int index = stack[--size];
+            getSegment(index, scratch);
+            int count = getChildCount(index);
+            int result = table.addSegment(parentIndex, childIndex, count, getDepth(index), scratch);
+            stack = pushChildren(stack, size, firstChild[index], count, result);
+            size += count * 3;
+        }
+    }
+ 
+    /**
+     *  Converts a float to IEEE 754 half precision, rounding to the
+     *  nearest value.  Values too large for a half become infinity.
+     */   
+    static short toHalf( float value ) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exp = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if( exp == 0xff ) {
+            // Infinity or NaN
+            return (short)(sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        exp = exp - 127 + 15;
+        if( exp >= 0x1f ) {
+            return (short)(sign | 0x7c00);
+        }
+        if( exp <= 0 ) {
+            // Subnormal or too small to represent
+            if( exp < -10 ) {
+                return (short)sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exp;
+            int result = mantissa >> shift;
+            if( ((mantissa >> (shift - 1)) & 1) != 0 ) {
+                result++;
+            }
+            return (short)(sign | result);
+        }
+        int result = (exp << 10) | (mantissa >> 13);
+        if( (mantissa & 0x1000) != 0 ) {
+            // Rounding up may carry into the exponent which is still correct
+            result++;
+        }
+        return (short)(sign | result);
+    }
+    
+    static float fromHalf( short half ) {
+        int sign = (half & 0x8000) << 16;
+        int exp = (half >> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        if( exp == 0 ) {
+            float result = mantissa * (1f / (1 << 24));
+            return sign != 0 ? -result : result;
+        }
+        if( exp == 0x1f ) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mantissa << 13));
+    }
+    
+    @Override
+    public String toString() {
+        return "PackedSkeletonStore[trees=" + treeCount + ", segments=" + size + "]";
+    }
+}
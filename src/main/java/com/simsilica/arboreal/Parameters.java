@@ -10,8 +10,13 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The base parameters class.
@@ -32,6 +37,23 @@ public class Parameters implements Savable, JmeCloneable {
     @NotNull
     protected static final String LODS_KEY = "lodLevels";
 
+    private static final long FINGERPRINT_SEED = 0x5A17B0E5L;
+
+    /**
+     * The cached fingerprint fields of each parameters class sorted by name.
+     */
+    @NotNull
+    private static final Map<Class<?>, Field[]> FINGERPRINT_FIELDS = new ConcurrentHashMap<>();
+
+    @NotNull
+    private static final Comparator<Field> FIELD_NAME_COMPARATOR = new Comparator<Field>() {
+
+        @Override
+        public int compare(@NotNull final Field first, @NotNull final Field second) {
+            return first.getName().compareTo(second.getName());
+        }
+    };
+
     @Nullable
     private Parameters parent;
 
@@ -138,6 +160,100 @@ public class Parameters implements Savable, JmeCloneable {
         return result;
     }
 
+    /**
+     * Get a fingerprint of the current values of these parameters including any nested
+     * parameters. Equal values always produce the same fingerprint, also between different
+     * runs of the application, so it can be used as a cache key.
+     *
+     * @return the fingerprint.
+     */
+    public long getFingerprint() {
+        return fingerprint(FINGERPRINT_SEED);
+    }
+
+    /**
+     * Mix the values of all non static, non transient fields of these parameters into the hash.
+     *
+     * @param hash the current hash.
+     * @return the new hash.
+     */
+    protected long fingerprint(long hash) {
+
+        for (final Field field : getFingerprintFields(getClass())) {
+
+            final Object value;
+            try {
+                value = field.get(this);
+            } catch (final IllegalAccessException e) {
+                throw new RuntimeException("Error getting field:" + field, e);
+            }
+
+            hash = fingerprint(hash, value);
+        }
+
+        return hash;
+    }
+
+    private static long fingerprint(long hash, @Nullable final Object value) {
+
+        if (value == null) {
+            return mix(hash, 0);
+        } else if (value instanceof Boolean) {
+            return mix(hash, (Boolean) value ? 1 : 2);
+        } else if (value instanceof Float) {
+            return mix(hash, Float.floatToIntBits((Float) value));
+        } else if (value instanceof Number) {
+            return mix(hash, ((Number) value).longValue());
+        } else if (value instanceof Enum) {
+            return mix(hash, ((Enum) value).name().hashCode());
+        } else if (value instanceof Parameters) {
+            return ((Parameters) value).fingerprint(mix(hash, 3));
+        } else if (value instanceof Parameters[]) {
+
+            final Parameters[] array = (Parameters[]) value;
+            hash = mix(hash, array.length);
+
+            for (final Parameters parameters : array) {
+                hash = fingerprint(hash, parameters);
+            }
+
+            return hash;
+        }
+
+        throw new RuntimeException("Unhandled type:" + value.getClass());
+    }
+
+    private static long mix(final long hash, final long value) {
+        long result = (hash + value) * 0x9E3779B97F4A7C15L;
+        return result ^ (result >>> 32);
+    }
+
+    private static @NotNull Field[] getFingerprintFields(@NotNull final Class<?> type) {
+
+        Field[] fields = FINGERPRINT_FIELDS.get(type);
+        if (fields != null) {
+            return fields;
+        }
+
+        // The declaration order is not guaranteed so the fields are sorted
+        // by name to keep the fingerprint stable
+        final List<Field> result = new ArrayList<>();
+
+        for (final Field field : type.getDeclaredFields()) {
+            final int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                field.setAccessible(true);
+                result.add(field);
+            }
+        }
+
+        fields = result.toArray(new Field[result.size()]);
+        Arrays.sort(fields, FIELD_NAME_COMPARATOR);
+
+        FINGERPRINT_FIELDS.put(type, fields);
+        return fields;
+    }
+
     @Override
     public Object jmeClone() {
         try {
@@ -36,7 +36,12 @@
 
 package com.simsilica.arboreal;
 
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
+import com.simsilica.arboreal.mesh.BillboardedLeavesMeshGenerator;
+import com.simsilica.arboreal.mesh.LegacyCurveGenerator;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -50,7 +55,7 @@ import java.util.List;
 public class Segment implements Iterable<Segment> {
     
     public enum ConnectionType { Curve, Extrude, Abut };
-
+ 
     public float startRadius;
     public float endRadius;
     public float length;
@@ -62,6 +67,15 @@ public class Segment implements Iterable<Segment> {
     public Vector3f dir = new Vector3f(0, 1, 0);
     public ConnectionType parentConnection = ConnectionType.Extrude;
     public Segment[] children;
+ 
+    /**
+     *  The bounds of this segment and all of the segments below it
+     *  relative to the base of the trunk, not including the yOffset of the
+     *  tree meshes.  These are null until they are calculated by 
+     *  Tree.getBounds() or updateBounds() and are never set for segments
+     *  that only pass through a SegmentTable or LazyTree.
+     */
+    public BoundingBox bounds;
     
     public Segment() {
     }
@@ -89,6 +103,102 @@ public class Segment implements Iterable<Segment> {
         return result;
     } 
     
+    /**
+     *  Recalculates the bounds of this segment and all of the segments
+     *  below it for a segment starting at the specified position, not
+     *  including leaves.  See updateBounds(Vector3f, float)
+     */
+    public BoundingBox updateBounds( Vector3f start ) {
+        return updateBounds(start, 0);
+    }
+ 
+    /**
+     *  Recalculates the bounds of this segment and all of the segments 
+     *  below it for a segment starting at the specified position.  The
+     *  bounds cover the skinned and flat poly meshes that the mesh generators
+     *  create with the LegacyCurveGenerator.  Each segment contributes the 
+     *  box around its center line grown by its largest radius.  The curves 
+     *  that join branches to their parents move the rest of the branch in 
+     *  the mesh so every curve also grows the boxes of the segments below it
+     *  by the most that the curve can move them.  Segments without children
+     *  are grown by the space that a leaf of the specified size takes, which 
+     *  can be 0 for no leaves.  The segments are visited with an explicit 
+     *  stack so deep trees do not recurse.
+     */
+    public BoundingBox updateBounds( Vector3f start, float leafSize ) {
+        
+        // Visit the segments parent first, giving each one its own box,
+        // and then merge the children into their parents in reverse order
+        List<Segment> visited = new ArrayList<Segment>();
+        List<BoundsFrame> stack = new ArrayList<BoundsFrame>();
+        stack.add(new BoundsFrame(this, start, 0, 0));
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        while( !stack.isEmpty() ) {
+            BoundsFrame frame = stack.remove(stack.size() - 1);
+            Segment seg = frame.segment;
+            Vector3f segStart = frame.start;
+            visited.add(seg);
+            
+            // The loops of the curve into this segment have radii between
+            // the parent's and this segment's
+            Vector3f end = seg.dir.mult(seg.length).addLocal(segStart);
+            float r = Math.max(Math.max(seg.startRadius, seg.endRadius), frame.curveRadius);
+            r += frame.slack;
+            if( !seg.hasChildren() ) {
+                r += leafSize * BillboardedLeavesMeshGenerator.LEAF_EXTENT;
+            }
+            min.set(Math.min(segStart.x, end.x) - r, 
+                    Math.min(segStart.y, end.y) - r, 
+                    Math.min(segStart.z, end.z) - r);
+            max.set(Math.max(segStart.x, end.x) + r, 
+                    Math.max(segStart.y, end.y) + r, 
+                    Math.max(segStart.z, end.z) + r);
+            if( seg.bounds == null ) {
+                seg.bounds = new BoundingBox(min, max);
+            } else {
+                seg.bounds.setMinMax(min, max);
+            }
+            
+            if( seg.children == null ) {
+                continue;
+            }
+            for( Segment child : seg.children ) {
+                if( child.parentConnection == ConnectionType.Curve ) {
+                    stack.add(new BoundsFrame(child, end, frame.slack + getCurveLength(seg, child), 
+                                              seg.endRadius));
+                } else {
+                    stack.add(new BoundsFrame(child, end, frame.slack, 0));
+                }
+            }
+        }
+        
+        for( int i = visited.size() - 1; i >= 0; i-- ) {
+            Segment seg = visited.get(i);
+            if( seg.children != null ) {
+                for( Segment child : seg.children ) {
+                    seg.bounds.mergeLocal(child.bounds);
+                }
+            }
+        }
+        return bounds;
+    }
+ 
+    /**
+     *  Returns the most that the LegacyCurveGenerator's curve from the 
+     *  parent to the child can move the child away from the parent's end.
+     *  Every corner of the curve moves the same distance.
+     */
+    private static float getCurveLength( Segment parent, Segment child ) {
+        float dot = FastMath.clamp(parent.dir.dot(child.dir), -1, 1);
+        float angle = FastMath.acos(dot);
+        int corners = Math.max(1, (int)Math.ceil(angle / LegacyCurveGenerator.CORNER_ANGLE));
+        float radius = parent.endRadius;
+        float dist = radius * FastMath.sin(angle / corners) * LegacyCurveGenerator.CORNER_DISTANCE;
+        float minDist = LegacyCurveGenerator.MIN_SLOPE * Math.abs(child.startRadius - radius) / corners * dot;
+        return corners * Math.max(dist, minDist);
+    }
+    
     @Override
     public Iterator<Segment> iterator() {
         if( children == null ) {
@@ -97,6 +207,23 @@ public class Segment implements Iterable<Segment> {
         }
         return Arrays.asList(children).iterator();
     }
+ 
+    /**
+     *  A segment waiting for its bounds with the position it starts at,
+     *  the most the curves above it moved it, and the radius of the curve
+     *  into it if there is one.
+     */
+    private static class BoundsFrame {
+        final Segment segment;
+        final Vector3f start;
+        final float slack;
+        final float curveRadius;
+        
+        public BoundsFrame( Segment segment, Vector3f start, float slack, float curveRadius ) {
+            this.segment = segment;
+            this.start = start;
+            this.slack = slack;
+            this.curveRadius = curveRadius;
+        }
+    }
 }
-
-
@@ -0,0 +1,413 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.arboreal.Segment.ConnectionType;
+import java.util.Arrays;
+
+
+/**
+ *  A compact structure-of-arrays form of a tree's segments.  Each
+ *  segment is an index into parallel primitive arrays and the children
+ *  of a segment are always stored contiguously starting at its first
+ *  child index.  This is much friendlier to the cache than walking
+ *  thousands of small Segment objects and can be filled directly by
+ *  TreeGenerator as a SegmentSink.  Tables do not keep bounds, convert
+ *  to a Tree with toTree() for those.
+ */
+public class SegmentTable implements SegmentSink {
+
+    public static final int NONE = -1;
+    
+    private static final int TRUNK_INDEX = 0;   
+    private static final int ROOTS_INDEX = 1;   
+    private static final ConnectionType[] CONNECTIONS = ConnectionType.values();
+ 
+    private int size;
+    private int[] top = new int[] { NONE, NONE };
+    
+    private float[] startRadius;
+    private float[] endRadius;
+    private float[] length;
+    private float[] uScale;
+    private float[] vStart;
+    private float[] vEnd;
+    private float[] twist;
+    private float[] dirX;
+    private float[] dirY;
+    private float[] dirZ;
+    private int[] radials;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] childCount;
+    private byte[] connection;
+    private byte[] depth;
+    
+    public SegmentTable() {
+        this(64);
+    }
+    
+    public SegmentTable( int capacity ) {
+        capacity = Math.max(1, capacity);
+        startRadius = new float[capacity];
+        endRadius = new float[capacity];
+        length = new float[capacity];
+        uScale = new float[capacity];
+        vStart = new float[capacity];
+        vEnd = new float[capacity];
+        twist = new float[capacity];
+        dirX = new float[capacity];
+        dirY = new float[capacity];
+        dirZ = new float[capacity];
+        radials = new int[capacity];
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        connection = new byte[capacity];
+        depth = new byte[capacity];
+    }
+ 
+    /**
+     *  Creates a segment table containing the same segments as the
+     *  specified tree.
+     */
+    public static SegmentTable fromTree( Tree tree ) {
+        SegmentTable result = new SegmentTable();
+        Segment[] segments = tree.getSegments();
+        
+        // Walk the graph depth first with an explicit stack so that deep 
+        // trees do not recurse.  Each entry is the segment and its parent 
+        // index, child index, and level.
+        Segment[] stack = new Segment[16];
+        int[] frames = new int[3 * 16];
+        int size = 0;
+        for( int i = segments.length - 1; i >= 0; i-- ) {
+            if( segments[i] != null ) {
+                if( size == stack.length ) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                    frames = Arrays.copyOf(frames, size * 2 * 3);
+                }
+                stack[size] = segments[i];
+                frames[size * 3] = NO_PARENT;
+                frames[size * 3 + 1] = i;
+                frames[size * 3 + 2] = 0;
+                size++;
+            }
+        }
+        while( size > 0 ) {
+            size--;
+            Segment seg = stack[size];
+            stack[size] = null;
+            int level = frames[size * 3 + 2];
+            int count = seg.children == null ? 0 : seg.children.length;
+            int index = result.addSegment(frames[size * 3], frames[size * 3 + 1], count, level, seg);
+            
+            // Push the children last first so that the first pops first
+            if( size + count > stack.length ) {
+                int capacity = Math.max(stack.length * 2, size + count);
+                stack = Arrays.copyOf(stack, capacity);
+                frames = Arrays.copyOf(frames, capacity * 3);
+            }
+            for( int i = count - 1; i >= 0; i-- ) {
+                Segment child = seg.children[i];
+                stack[size] = child;
+                frames[size * 3] = index;
+                frames[size * 3 + 1] = i;
+                frames[size * 3 + 2] = child.parentConnection == ConnectionType.Curve ? level + 1 : level;
+                size++;
+            }
+        }
+        return result;
+    }
+ 
+    /**
+     *  Creates a new Tree/Segment graph from this table.
+     */   
+    public Tree toTree() {
+        TreeBuilder builder = new TreeBuilder();
+        Segment scratch = new Segment();
+        
+        // Each stack entry is the table index, parent handle, and child index
+        int[] stack = new int[3 * 16];
+        int size = 0;
+        for( int i = top.length - 1; i >= 0; i-- ) {
+            if( top[i] != NONE ) {
+                stack[size++] = top[i];
+                stack[size++] = NO_PARENT;
+                stack[size++] = i;
+            }
+        }
+        while( size > 0 ) {
+            int childIndex = stack[--size];
+            int parentHandle = stack[--size];
+            int index = stack[--size];
+            int handle = copyTo(index, parentHandle, childIndex, scratch, builder);
+            
+            int count = childCount[index];
+            if( size + count * 3 > stack.length ) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + count * 3));
+            }
+            int first = firstChild[index];
+            for( int i = count - 1; i >= 0; i-- ) {
+                stack[size++] = first + i;
+                stack[size++] = handle;
+                stack[size++] = i;
+            }
+        }
+        return builder.getTree();
+    }
+    
+    private int copyTo( int index, int parentHandle, int childIndex, Segment scratch, TreeBuilder builder ) {
+        scratch.startRadius = startRadius[index];
+        scratch.endRadius = endRadius[index];
+        scratch.length = length[index];
+        scratch.uScale = uScale[index];
+        scratch.vStart = vStart[index];
+        scratch.vEnd = vEnd[index];
+        scratch.twist = twist[index];
+        scratch.radials = radials[index];
+        scratch.dir.set(dirX[index], dirY[index], dirZ[index]);
+        scratch.parentConnection = CONNECTIONS[connection[index]];
+        return builder.addSegment(parentHandle, childIndex, childCount[index], depth[index], scratch);
+    }
+ 
+    @Override
+    public int addSegment( int parentIndex, int childIndex, int count, int level, Segment seg ) {
+        int index;
+        if( parentIndex == NO_PARENT ) {
+            index = allocate(1);
+            top[childIndex] = index;
+        } else {
+            index = firstChild[parentIndex] + childIndex;
+        }
+        
+        startRadius[index] = seg.startRadius;
+        endRadius[index] = seg.endRadius;
+        length[index] = seg.length;
+        uScale[index] = seg.uScale;
+        vStart[index] = seg.vStart;
+        vEnd[index] = seg.vEnd;
+        twist[index] = seg.twist;
+        dirX[index] = seg.dir.x;
+        dirY[index] = seg.dir.y;
+        dirZ[index] = seg.dir.z;
+        radials[index] = seg.radials;
+        parent[index] = parentIndex;
+        connection[index] = (byte)seg.parentConnection.ordinal();
+        depth[index] = (byte)level;
+        childCount[index] = count;
+        
+        // Reserve the children's slots now so that they end up together.
+        // Note: allocate() may grow the arrays so it must be called before
+        // we reference firstChild.
+        int first = count > 0 ? allocate(count) : NONE;
+        firstChild[index] = first;
+        return index;
+    }
+ 
+    /**
+     *  Reserves the slots for the children of a segment that was added 
+     *  without any.  The children can then be added with addSegment() as
+     *  usual.
+     */   
+    public void addChildren( int index, int count ) {
+        if( childCount[index] != 0 ) {
+            throw new IllegalStateException("Segment already has children:" + index);
+        }
+        // allocate() may grow the arrays
+        int first = allocate(count);
+        firstChild[index] = first;
+        childCount[index] = count;
+    }
+ 
+    /**
+     *  Reserves the specified number of contiguous segment slots and
+     *  returns the first one.
+     */   
+    private int allocate( int count ) {
+        int first = size;
+        size += count;
+        if( size > startRadius.length ) {
+            grow(Math.max(size, startRadius.length * 2));
+        }
+        return first;
+    }
+    
+    private void grow( int capacity ) {
+        startRadius = Arrays.copyOf(startRadius, capacity);
+        endRadius = Arrays.copyOf(endRadius, capacity);
+        length = Arrays.copyOf(length, capacity);
+        uScale = Arrays.copyOf(uScale, capacity);
+        vStart = Arrays.copyOf(vStart, capacity);
+        vEnd = Arrays.copyOf(vEnd, capacity);
+        twist = Arrays.copyOf(twist, capacity);
+        dirX = Arrays.copyOf(dirX, capacity);
+        dirY = Arrays.copyOf(dirY, capacity);
+        dirZ = Arrays.copyOf(dirZ, capacity);
+        radials = Arrays.copyOf(radials, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        childCount = Arrays.copyOf(childCount, capacity);
+        connection = Arrays.copyOf(connection, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+    }
+ 
+    /**
+     *  Returns the number of segments in the table.
+     */   
+    public int size() {
+        return size;
+    }
+    
+    /**
+     *  Returns the index of the trunk's first segment or NONE.
+     */
+    public int getTrunk() {
+        return top[TRUNK_INDEX];
+    }
+    
+    /**
+     *  Returns the index of the roots' first segment or NONE.
+     */
+    public int getRoots() {
+        return top[ROOTS_INDEX];
+    }
+    
+    /**
+     *  Returns the index of the top level segment at the specified
+     *  Tree index or NONE.
+     */
+    public int getTopSegment( int index ) {
+        return top[index];
+    }
+    
+    public int getTopSegmentCount() {
+        return top.length;
+    }
+ 
+    public float getStartRadius( int index ) {
+        return startRadius[index];
+    }
+    
+    public float getEndRadius( int index ) {
+        return endRadius[index];
+    }
+    
+    public float getLength( int index ) {
+        return length[index];
+    }
+    
+    public float getUScale( int index ) {
+        return uScale[index];
+    }
+    
+    public float getVStart( int index ) {
+        return vStart[index];
+    }
+    
+    public float getVEnd( int index ) {
+        return vEnd[index];
+    }
+    
+    public float getTwist( int index ) {
+        return twist[index];
+    }
+    
+    public int getRadials( int index ) {
+        return radials[index];
+    }
+    
+    public float getDirX( int index ) {
+        return dirX[index];
+    }
+    
+    public float getDirY( int index ) {
+        return dirY[index];
+    }
+    
+    public float getDirZ( int index ) {
+        return dirZ[index];
+    }
+    
+    public Vector3f getDir( int index, Vector3f store ) {
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        return store.set(dirX[index], dirY[index], dirZ[index]);
+    }
+    
+    public ConnectionType getParentConnection( int index ) {
+        return CONNECTIONS[connection[index]];
+    }
+    
+    /**
+     *  Returns the branch level that produced the segment.
+     */
+    public int getDepth( int index ) {
+        return depth[index];
+    }
+    
+    public int getParent( int index ) {
+        return parent[index];
+    }
+    
+    public int getChildCount( int index ) {
+        return childCount[index];
+    }
+    
+    public int getFirstChild( int index ) {
+        return firstChild[index];
+    }
+    
+    public int getChild( int index, int child ) {
+        return firstChild[index] + child;
+    }
+    
+    public boolean hasChildren( int index ) {
+        return childCount[index] > 0;
+    }
+    
+    public boolean isInverted( int index ) {
+        return vStart[index] > vEnd[index];
+    }
+    
+    @Override
+    public String toString() {
+        return "SegmentTable[size=" + size + "]";
+    }    
+}
@@ -36,6 +36,8 @@
 
 package com.simsilica.arboreal;
 
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
 import java.util.Arrays;
 import java.util.Iterator;
 
@@ -49,6 +51,7 @@ public class Tree implements Iterable<Segment> {
     private static final int TRUNK_INDEX = 0;   
     private static final int ROOTS_INDEX = 1;   
     private Segment[] children;
+    private BoundingBox bounds;
     
     public Tree() {
         this.children = new Segment[2];
@@ -92,6 +95,56 @@ public class Tree implements Iterable<Segment> {
         return children;
     }
     
+    /**
+     *  Returns the bounds of the whole tree relative to the base of the
+     *  trunk, calculating them without leaves if they have not been yet.  
+     *  Each segment also has the bounds of its own subtree so that culling
+     *  and picking can descend through the branches.  The bounds are not
+     *  updated when segments change afterwards.  They do not include the 
+     *  tree parameters' yOffset that the meshes are moved by.  Only Tree
+     *  has bounds: SegmentTable, LazyTree, and the fused mesh generation
+     *  that skips the skeleton do not calculate any.  See updateBounds(float)
+     */
+    public BoundingBox getBounds() {
+        if( bounds == null ) {
+            updateBounds();
+        }
+        return bounds;
+    }
+ 
+    /**
+     *  Recalculates the bounds of every segment and of the whole tree
+     *  without leaves.
+     */   
+    public BoundingBox updateBounds() {
+        return updateBounds(0);
+    }
+ 
+    /**
+     *  Recalculates the bounds of every segment and of the whole tree
+     *  from the segment directions and sizes so that they contain the 
+     *  tree meshes and leaves of the specified size.  The meshes are offset
+     *  by the tree parameters' yOffset which is not included.  
+     *  See Segment.updateBounds(Vector3f, float)
+     */   
+    public BoundingBox updateBounds( float leafSize ) {
+        Vector3f base = new Vector3f();
+        BoundingBox result = null;
+        for( Segment seg : children ) {
+            if( seg == null ) {
+                continue;
+            }
+            BoundingBox b = seg.updateBounds(base, leafSize);
+            if( result == null ) {
+                result = new BoundingBox(b);
+            } else {
+                result.mergeLocal(b);
+            }
+        }
+        bounds = result;
+        return result;
+    }
+    
     @Override
     public String toString() {
         return "Tree[" + Arrays.asList(children) + "]";
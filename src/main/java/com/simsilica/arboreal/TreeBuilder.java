@@ -0,0 +1,98 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ *  A SegmentSink that builds the regular Tree/Segment object
+ *  graph.
+ */
+public class TreeBuilder implements SegmentSink {
+
+    /**
+     *  Shared by all childless segments so that leaf tips do not
+     *  each allocate their own empty array.
+     */
+    private static final Segment[] NO_CHILDREN = new Segment[0];
+
+    private final Tree tree;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    
+    public TreeBuilder() {
+        this(new Tree());
+    }
+    
+    public TreeBuilder( Tree tree ) {
+        this.tree = tree;
+    }
+ 
+    @Override
+    public int addSegment( int parent, int childIndex, int childCount, int depth, Segment segment ) {
+        Segment result = new Segment();
+        result.startRadius = segment.startRadius;
+        result.endRadius = segment.endRadius;
+        result.length = segment.length;
+        result.uScale = segment.uScale;
+        result.vStart = segment.vStart;
+        result.vEnd = segment.vEnd;
+        result.twist = segment.twist;
+        result.radials = segment.radials;
+        result.dir.set(segment.dir);
+        result.parentConnection = segment.parentConnection;
+        result.children = childCount > 0 ? new Segment[childCount] : NO_CHILDREN;
+        
+        if( parent == NO_PARENT ) {
+            tree.setSegment(childIndex, result);
+        } else {
+            segments.get(parent).children[childIndex] = result;
+        }
+        
+        segments.add(result);
+        return segments.size() - 1;        
+    }
+ 
+    public Segment getSegment( int handle ) {
+        return segments.get(handle);
+    }
+    
+    public Tree getTree() {
+        return tree;
+    }
+}
@@ -40,8 +40,22 @@ import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.simsilica.arboreal.Segment.ConnectionType;
+import com.simsilica.arboreal.TreeTemplate.Levels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -53,6 +67,115 @@ import java.util.Random;
  */
 public class TreeGenerator {
 
+    private static final Vector3f DOWN = new Vector3f(0, -1, 0);
+
+    private static final int TRUNK_INDEX = 0;
+    private static final int ROOTS_INDEX = 1;
+
+    // Tables are not pre-sized beyond this and grow as needed instead
+    private static final int MAX_PRESIZE = 1 << 20;
+
+    // Straight up rotation for the trunk and straight down for the roots
+    private static final Quaternion TRUNK_ROTATION = new Quaternion().fromAngles(-FastMath.HALF_PI, 0, 0);
+    private static final Quaternion ROOT_ROTATION = new Quaternion().fromAngles(FastMath.HALF_PI, 0, 0);
+
+    private boolean splitSeeds;
+    private ForkJoinPool pool;
+    private TreeRandom.Factory randomFactory = LegacyTreeRandom.FACTORY;
+    private TreeLimit limit;
+
+    public TreeGenerator() {
+    }
+    
+    /**
+     *  Creates a tree generator that generates sibling branches
+     *  in parallel using the specified fork/join pool.
+     */
+    public TreeGenerator( ForkJoinPool pool ) {
+        this.pool = pool;
+    }
+
+    /**
+     *  Set to true to give every branch its own random sequence
+     *  seeded from its parent branch's seed and its child index instead
+     *  of sharing one sequence for the whole tree.  Trees generated
+     *  this way do not depend on the order that branches are generated in
+     *  but they are different from the trees generated with one shared
+     *  sequence.  Defaults to false.
+     */
+    public void setSplitSeeds( boolean splitSeeds ) {
+        this.splitSeeds = splitSeeds;
+    }
+    
+    public boolean isSplitSeeds() {
+        return splitSeeds || pool != null;
+    }
+
+    /**
+     *  Sets the fork/join pool used to generate sibling branches in
+     *  parallel.  Parallel generation always uses split seeds so a given
+     *  seed produces the same tree no matter how many threads the pool 
+     *  has and the same tree as serial generation with split seeds.
+     *  Set to null (the default) to generate on the calling thread.
+     */
+    public void setForkJoinPool( ForkJoinPool pool ) {
+        this.pool = pool;
+    }
+    
+    public ForkJoinPool getForkJoinPool() {
+        return pool;
+    }
+ 
+    /**
+     *  Sets the factory of the random sequences used to vary the branches.
+     *  Defaults to LegacyTreeRandom.FACTORY which generates the same trees
+     *  that java.util.Random always did.  SplitMixTreeRandom.FACTORY is faster 
+     *  but generates different trees for the same seeds.
+     */   
+    public void setRandomFactory( TreeRandom.Factory randomFactory ) {
+        this.randomFactory = randomFactory;
+    }
+    
+    public TreeRandom.Factory getRandomFactory() {
+        return randomFactory;
+    }
+
+    /**
+     *  Sets the limit that the parameters passed to the TreeParameters 
+     *  versions of the generate methods are fit to or null for none.  
+     *  TreeTemplates are used as they are.  A TreeBudget prunes branches 
+     *  and length segments here while the mesh generators take care of the 
+     *  level of detail.
+     */
+    public void setLimit( TreeLimit limit ) {
+        this.limit = limit;
+    }
+    
+    public TreeLimit getLimit() {
+        return limit;
+    }
+ 
+    /**
+     *  Returns a fingerprint of the settings that change which tree a 
+     *  seed produces, ie: split seeds, the random factory, and the limit.  
+     *  The same parameters and seed only produce the same tree with the same
+     *  generator fingerprint.  Random factories are identified by their
+     *  class name so it is stable between runs.
+     */
+    public long getFingerprint() {
+        long result = randomFactory.getClass().getName().hashCode();
+        result = result * 31 + (isSplitSeeds() ? 1 : 0);
+        return result * 31 + (limit == null ? 0 : limit.hashCode());
+    }
+ 
+    /**
+     *  Returns the parameters fit to the limit if there is one.
+     */
+    protected TreeParameters fit( TreeParameters treeParms ) {
+        TreeLimit current = limit;
+        return current == null ? treeParms : current.fit(treeParms);
+    }
+
     public Tree generateTree( TreeParameters treeParms ) {
         return generateTree(treeParms.getTrunkRadius(), treeParms.getTrunkHeight(),
                             treeParms.getRootHeight(), treeParms.getSeed(), treeParms);
@@ -64,52 +187,530 @@ public class TreeGenerator {
     }
     public Tree generateTree( float radius, float trunkHeight, float rootHeight, int seed,
                               TreeParameters treeParms ) {
+        return generateTree(seed, new TreeTemplate(fit(treeParms), radius, trunkHeight, rootHeight));
+    }
+ 
+    /**
+     *  Generates a tree from a template that was prepared ahead of
+     *  time.  This is the cheapest way to generate many trees of the same
+     *  species as the per-level constants are only calculated once.  A
+     *  generator can be called from multiple threads at once as long
+     *  as its settings are not changed in the mean time.  The bounds of
+     *  the tree and its segments are calculated when they are first asked for.
+     */
+    public Tree generateTree( int seed, TreeTemplate template ) {
+ 
+        if( pool == null ) {
+            TreeBuilder builder = new TreeBuilder();
+            generate(seed, template, builder);
+            return builder.getTree();
+        }
  
+        // Generate the trunk and the roots as tasks and let them
+        // fork their own children as they go.
         Tree result = new Tree();
+        Segment[] segments = result.getSegments();
+        List<BranchTask> tasks = new ArrayList<BranchTask>(2);
+        tasks.add(new BranchTask(segments, TRUNK_INDEX, childSeed(seed, TRUNK_INDEX), 0, 
+                                 template.getBranches(), TRUNK_ROTATION, 
+                                 template.getTrunkRadius(), template.getTrunkHeight(), 
+                                 template.getRootHeight(), 0, 0, 
+                                 template.getTextureURepeat(), template.getTextureVScale()));
+        tasks.add(new BranchTask(segments, ROOTS_INDEX, childSeed(seed, ROOTS_INDEX), 0, 
+                                 template.getRoots(), ROOT_ROTATION, 
+                                 template.getTrunkRadius(), template.getRootHeight(), 0, 0, 0, 
+                                 template.getTextureURepeat(), -template.getTextureVScale()));
+        for( BranchTask task : tasks ) {
+            pool.execute(task);
+        }
+        for( BranchTask task : tasks ) {
+            task.join();
+        }
+        return result;
+    }
+ 
+    public SegmentTable generateTable( int seed, TreeParameters treeParms ) {
+        return generateTable(seed, new TreeTemplate(fit(treeParms)));
+    }
+ 
+    /**
+     *  Generates a tree directly into the compact SegmentTable form
+     *  without creating any Segment objects.  This always runs on the calling
+     *  thread but otherwise produces the same segments as generateTree().
+     */   
+    public SegmentTable generateTable( int seed, TreeTemplate template ) {
+        // Size the table up front so that it never has to grow
+        long capacity = template.getSegmentCount();
+        SegmentTable result = new SegmentTable((int)Math.min(capacity, MAX_PRESIZE));
+        generate(seed, template, result);
+        return result;
+    }
+ 
+    /**
+     *  Generates a tree on the calling thread and delivers its segments
+     *  to the specified sink.
+     */
+    public void generate( int seed, TreeTemplate template, SegmentSink sink ) {
+        generate(new Scratch(template.getMaxDepth(), false), seed, template, sink, sink, null);
+    }
+ 
+    public void generate( int seed, TreeParameters treeParms, SegmentVisitor visitor ) {
+        generate(seed, new TreeTemplate(fit(treeParms)), visitor);
+    }
+ 
+    /**
+     *  Generates a tree on the calling thread and passes each segment to
+     *  the visitor with its world position as soon as it is produced.  No
+     *  Segment objects or Tree are created and only the segments between the 
+     *  trunk and the current one are remembered.
+     */
+    public void generate( int seed, TreeTemplate template, SegmentVisitor visitor ) {
+        generate(seed, template, new VisitorSink(visitor));
+    }
+ 
+    /**
+     *  Generates a tree that only contains the branch levels needed to 
+     *  render the specified level of detail.  See generateLazy(int, TreeTemplate, int, int)
+     */
+    public LazyTree generateLazy( int seed, TreeTemplate template, LevelOfDetailParameters lod ) {
+        return generateLazy(seed, template, lod.getBranchDepth(), lod.getRootDepth());
+    }
+ 
+    /**
+     *  Generates a tree into a SegmentTable but only materializes the branch
+     *  levels above branchDepth and the root levels above rootDepth.  The trunk
+     *  and the main root are always generated.  The inputs of the first
+     *  branches below those depths are kept so that the LazyTree can generate
+     *  them later, giving the same segments as an eager build.  Until then
+     *  their parents have no children in the table.
+     *  This requires split seeds as the deferred branches need their own 
+     *  random sequences.
+     */
+    public LazyTree generateLazy( int seed, TreeTemplate template, int branchDepth, int rootDepth ) {
+        if( !isSplitSeeds() ) {
+            throw new IllegalStateException("Lazy generation requires split seeds.");
+        }
+        LazyTree result = new LazyTree(this, template, new SegmentTable());
+        result.branchDepth = Math.max(1, branchDepth);
+        result.rootDepth = Math.max(1, rootDepth);
+        SegmentTable table = result.getTable();
+        generate(new Scratch(template.getMaxDepth(), false), seed, template, table, table, result);
+        return result;
+    }
+ 
+    /**
+     *  Generates the deferred branches of a lazy tree down to the specified
+     *  depths.
+     */   
+    protected void expand( LazyTree tree, int branchDepth, int rootDepth ) {
+        Scratch scratch = new Scratch(tree.getTemplate().getMaxDepth(), false);
+        if( branchDepth > tree.branchDepth ) {
+            tree.branchPending = expand(scratch, tree.getTable(), tree.branchPending, branchDepth);
+            tree.branchDepth = branchDepth;
+        }
+        if( rootDepth > tree.rootDepth ) {
+            tree.rootPending = expand(scratch, tree.getTable(), tree.rootPending, rootDepth);
+            tree.rootDepth = rootDepth;
+        }
+    }
+ 
+    private List<LazyTree.PendingBranch> expand( Scratch scratch, SegmentTable table, 
+                                                 List<LazyTree.PendingBranch> pending, 
+                                                 int depth ) {
+        List<LazyTree.PendingBranch> result = new ArrayList<LazyTree.PendingBranch>();
+        scratch.deferred = result;
+        scratch.expandDepth = depth;
+        for( LazyTree.PendingBranch branch : pending ) {
+            if( branch.depth >= depth ) {
+                result.add(branch);
+                continue;
+            }
+            if( branch.index == 0 ) {
+                // Siblings are always expanded together
+                table.addChildren(branch.parent, branch.siblings);
+            }
+            createBranch(scratch, table, branch.parent, branch.index, branch);
+        }
+        return result;
+    }
  
-        Random random = new Random(seed);
+    /**
+     *  Regenerates one branch and everything below it without generating
+     *  the rest of the tree.  The path addresses the branch: the first 
+     *  element is 0 for the trunk side or 1 for the roots and each following 
+     *  element is the child index of the next branch down, with the end joint
+     *  branch coming after the side joints.  Only the branches along the path
+     *  are generated to find the branch's inputs.  The result holds the 
+     *  branch as the table's trunk or roots and gives the same segments and
+     *  depths as the full tree has for it.  If origin is not null then it is 
+     *  set to where the branch starts relative to the base of the trunk.
+     *  This requires split seeds as only they make a branch's random sequence 
+     *  depend on nothing but the seed and its path.
+     */
+    public SegmentTable generateBranch( int seed, TreeTemplate template, int[] path, Vector3f origin ) {
+        if( !isSplitSeeds() ) {
+            throw new IllegalStateException("Branch generation requires split seeds.");
+        }
+        if( path.length == 0 || (path[0] != TRUNK_INDEX && path[0] != ROOTS_INDEX) ) {
+            throw new IllegalArgumentException("Path must start with the trunk or roots index.");
+        }
         
-        // Straight up rotation for the trunk
-        Quaternion rotation = new Quaternion().fromAngles(-FastMath.HALF_PI, 0, 0);
+        boolean roots = path[0] == ROOTS_INDEX;
+        Levels levels = roots ? template.getRoots() : template.getBranches();
+        if( path.length > levels.size() ) {
+            throw new IllegalArgumentException("Path is deeper than the parameters:" + path.length);
+        }
         
-        float length = trunkHeight;
+        float rootHeight = template.getRootHeight();
+        long branchSeed = childSeed(seed, path[0]);
+        LazyTree.PendingBranch branch = new LazyTree.PendingBranch(SegmentSink.NO_PARENT, path[0], 0,
+                                                                   branchSeed, 0, levels,
+                                                                   roots ? ROOT_ROTATION : TRUNK_ROTATION, 
+                                                                   template.getTrunkRadius(), 
+                                                                   roots ? rootHeight : template.getTrunkHeight(), 
+                                                                   roots ? 0 : rootHeight, 0, 0,
+                                                                   template.getTextureURepeat(), 
+                                                                   roots ? -template.getTextureVScale() 
+                                                                         : template.getTextureVScale());
+ 
+        // Generate the branches along the path without their children and
+        // pick the next one from the children's inputs
+        Scratch scratch = new Scratch(template.getMaxDepth(), false);
+        SegmentTable ancestors = new SegmentTable();
+        for( int i = 1; i < path.length; i++ ) {
+            List<LazyTree.PendingBranch> children = new ArrayList<LazyTree.PendingBranch>();
+            scratch.deferred = children;
+            scratch.expandDepth = i;
+            if( branch.parent != SegmentSink.NO_PARENT ) {
+                ancestors.addChildren(branch.parent, branch.siblings);
+            }
+            createBranch(scratch, ancestors, branch.parent, branch.index, branch);
+ 
+            LazyTree.PendingBranch next = null;
+            for( LazyTree.PendingBranch child : children ) {
+                if( child.index == path[i] ) {
+                    next = child;
+                    break;
+                }
+            }
+            if( next == null ) {
+                throw new IllegalArgumentException("No branch at path index " + i + ":" + path[i]);
+            }
+            branch = next;
+        }
+ 
+        if( origin != null ) {
+            origin.set(0, 0, 0);
+            Vector3f dir = new Vector3f();
+            for( int seg = branch.parent; seg != SegmentTable.NONE; seg = ancestors.getParent(seg) ) {
+                origin.addLocal(ancestors.getDir(seg, dir).multLocal(ancestors.getLength(seg)));
+            }
+        }
+ 
+        scratch.deferred = null;
+        scratch.expandDepth = Integer.MAX_VALUE;
+        SegmentTable result = new SegmentTable();
+        createBranch(scratch, result, SegmentSink.NO_PARENT, path[0], branch);
+        return result;
+    }
+    
+    private int createBranch( Scratch scratch, SegmentSink sink, int parent, int childIndex,
+                              LazyTree.PendingBranch branch ) {
+        return createBranch(scratch, sink, parent, childIndex, 
+                            randomFactory.create(branch.seed), branch.seed, branch.depth, branch.levels,
+                            branch.rotation, branch.radius, branch.length, branch.lengthOffset,
+                            branch.baseAngle, branch.vBase, branch.uRepeat, branch.vScaleTree);
+    }
+ 
+    /**
+     *  Regenerates the branches at and below the specified branch depth and
+     *  the roots at and below the specified root depth of a table that was 
+     *  previously generated with the same seed.  The segments above those depths 
+     *  are kept as they are and are only walked to recalculate the inputs of 
+     *  their children.  This gives the same result as generating a new table as
+     *  long as only parameters at or below the specified depths have changed. 
+     *  The replaced segments stay in the table's arrays but are no longer 
+     *  reachable.  Returns the number of reachable segments.
+     *  This requires split seeds as the shared random sequence would make every
+     *  branch depend on all of the branches generated before it.
+     */
+    public int regenerate( SegmentTable table, int seed, TreeTemplate template, 
+                           int branchDepth, int rootDepth ) {
+        if( !isSplitSeeds() ) {
+            throw new IllegalStateException("Regeneration requires split seeds.");
+        }
+        RegenerationSink branchSink = new RegenerationSink(table, branchDepth);
+        RegenerationSink rootSink = new RegenerationSink(table, rootDepth);
+        generate(new Scratch(template.getMaxDepth(), false), seed, template, branchSink, rootSink, null);
+        return branchSink.count + rootSink.count;
+    }
+ 
+    private void generate( Scratch scratch, int seed, TreeTemplate template, 
+                           SegmentSink branchSink, SegmentSink rootSink, LazyTree lazy ) {
+ 
+        Levels branches = template.getBranches();
+        Levels roots = template.getRoots();
+        float radius = template.getTrunkRadius();
+        float rootHeight = template.getRootHeight();
+        int uRepeat = template.getTextureURepeat();
+        float vScale = template.getTextureVScale();
+        
+        float length = template.getTrunkHeight();
         float lengthOffset = rootHeight;
         
-        Segment trunk = createBranch(random, 0, treeParms.getEffectiveBranches(),
-                                     rotation, radius, length, lengthOffset,
-                                     0, 0, 
-                                     treeParms.getTextureURepeat(), 
-                                     treeParms.getTextureVScale());
-        result.setTrunk(trunk);
- 
-        rotation = new Quaternion().fromAngles(FastMath.HALF_PI, 0, 0);
-        Segment roots = createBranch(random, 0, treeParms.getEffectiveRoots(),
-                                     rotation, radius, rootHeight, 0, 
-                                     0, 0, 
-                                     treeParms.getTextureURepeat(),  
-                                     -treeParms.getTextureVScale());
-        result.setRoots(roots);
-                              
-        return result;                              
+        // With split seeds every branch makes its own sequence so the
+        // shared one would never be used
+        TreeRandom random = isSplitSeeds() ? null : randomFactory.create(seed);
+        
+        if( lazy != null ) {
+            scratch.deferred = lazy.branchPending;
+            scratch.expandDepth = lazy.branchDepth;
+        }
+        long trunkSeed = childSeed(seed, TRUNK_INDEX);        
+        createBranch(scratch, branchSink, SegmentSink.NO_PARENT, TRUNK_INDEX, 
+                     childRandom(random, trunkSeed), trunkSeed, 0, branches,
+                     TRUNK_ROTATION, radius, length, lengthOffset,
+                     0, 0, uRepeat, vScale);
+ 
+        if( lazy != null ) {
+            scratch.deferred = lazy.rootPending;
+            scratch.expandDepth = lazy.rootDepth;
+        }
+        long rootSeed = childSeed(seed, ROOTS_INDEX);        
+        createBranch(scratch, rootSink, SegmentSink.NO_PARENT, ROOTS_INDEX, 
+                     childRandom(random, rootSeed), rootSeed, 0, roots,
+                     ROOT_ROTATION, radius, rootHeight, 0, 
+                     0, 0, uRepeat, -vScale);
     } 
  
-    protected Segment createBranch( Random random, int depth, List<BranchParameters> bParms,
+    /**
+     *  Generates one tree for each of the specified seeds using the
+     *  specified executor and returns them in the same order as the seeds.
+     *  All of the trees share one template.  If the executor is null then
+     *  the trees are generated on the calling thread.
+     */
+    public List<Tree> generateForest( TreeParameters species, int[] seeds, Executor executor ) {
+        TreeTemplate template = new TreeTemplate(fit(species));
+        List<Tree> results = new ArrayList<Tree>(seeds.length);
+        if( executor == null ) {
+            for( int seed : seeds ) {
+                results.add(generateTree(seed, template));
+            }
+            return results;
+        }
+        
+        List<Future<Tree>> futures = new ArrayList<Future<Tree>>(seeds.length);
+        for( int seed : seeds ) {
+            FutureTask<Tree> task = new FutureTask<Tree>(new TreeJob(seed, template));
+            executor.execute(task);
+            futures.add(task);
+        }
+        for( int i = 0; i < seeds.length; i++ ) {
+            results.add(getResult(futures.get(i), seeds[i]));
+        }
+        return results;
+    }
+ 
+    /**
+     *  Generates one tree for each of the specified seeds using the
+     *  specified executor and passes each to the listener as soon as it
+     *  is done.  The listener is always called on the calling thread, in
+     *  the order the trees finish, and this method returns once all of
+     *  the seeds have been delivered.  If the executor is null then the
+     *  trees are generated on the calling thread in seed order.
+     */
+    public void generateForest( TreeParameters species, Iterable<Integer> seeds, Executor executor,
+                                ForestListener listener ) {
+        TreeTemplate template = new TreeTemplate(fit(species));
+        if( executor == null ) {
+            for( Integer seed : seeds ) {
+                listener.treeGenerated(seed, generateTree(seed, template));
+            }
+            return;
+        }
+        
+        CompletionService<Tree> completion = new ExecutorCompletionService<Tree>(executor);
+        Map<Future<Tree>, Integer> pending = new HashMap<Future<Tree>, Integer>();
+        for( Integer seed : seeds ) {
+            pending.put(completion.submit(new TreeJob(seed, template)), seed);
+            
+            // Deliver whatever is already done so that the caller can
+            // start consuming while we are still submitting.
+            for( Future<Tree> done = completion.poll(); done != null; done = completion.poll() ) {
+                int doneSeed = pending.remove(done);
+                listener.treeGenerated(doneSeed, getResult(done, doneSeed));
+            }
+        }
+        while( !pending.isEmpty() ) {
+            Future<Tree> done;
+            try {
+                done = completion.take();
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for trees", e);
+            }
+            int doneSeed = pending.remove(done);
+            listener.treeGenerated(doneSeed, getResult(done, doneSeed));
+        }
+    }
+    
+    private Tree getResult( Future<Tree> future, int seed ) {
+        try {
+            return future.get();
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for tree, seed:" + seed, e);
+        } catch( ExecutionException e ) {
+            throw new RuntimeException("Error generating tree, seed:" + seed, e.getCause());
+        }
+    }
+ 
+    /**
+     *  Returns the seed for the child at the specified index of a branch
+     *  with the specified seed.  This is a SplitMix64 style mix so that
+     *  neighboring children and nearby parent seeds still end up with
+     *  unrelated sequences.
+     */
+    protected static long childSeed( long seed, int index ) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+ 
+    /**
+     *  Returns the random sequence to use for a branch with the specified
+     *  seed.  This is the shared sequence unless split seeds are in use,
+     *  in which case the shared sequence may be null.
+     */
+    protected TreeRandom childRandom( TreeRandom random, long childSeed ) {
+        if( isSplitSeeds() ) {
+            return randomFactory.create(childSeed);
+        }
+        return random;
+    }
+ 
+    /**
+     *  Returns true if the child branches of a branch at the specified
+     *  depth should be generated as separate fork/join tasks.  Only children
+     *  that will have children of their own are worth the overhead. 
+     */
+    protected boolean forkChildren( Scratch scratch, int depth, Levels levels ) {
+        return scratch.fork && depth + 2 < levels.size();
+    }
+ 
+    /**
+     *  Creates the branch at the specified depth and all of its children, 
+     *  delivering the segments to the sink as they are completed.  Returns 
+     *  the sink's handle for the branch's first segment.  The passed rotation 
+     *  is only read and may be one of the scratch objects.  All intermediate 
+     *  math is done in the supplied scratch space so that nothing is allocated 
+     *  per segment other than what the sink allocates.  The seed is the branch's 
+     *  own seed and is only used to derive child seeds when split seeds are 
+     *  in use.
+     *
+     *  <p>The branches are not generated recursively.  Each branch pushes the
+     *  inputs of its children onto the scratch space's work stack and this
+     *  loop pops them in the same depth first order that recursion would
+     *  visit them, so the sink sees the same calls and a shared random sequence 
+     *  is consumed in the same order.</p>
+     */
+    protected int createBranch( Scratch scratch, SegmentSink sink, int parent, int childIndex,
+                                    TreeRandom random, long seed, 
+                                    int depth, Levels levels,
                                     Quaternion rotation, float radius, 
                                     float length, float lengthOffset,
                                     float baseAngle,
                                     float vBase, int uRepeat, float vScaleTree ) {
  
-        if( depth >= bParms.size() ) {
+        if( depth >= levels.size() ) {
             throw new IllegalArgumentException("Depth exceeds parameters.");
         }
-
-        Segment result = new Segment();
-        result.dir = rotation.mult(Vector3f.UNIT_Z);
-        result.startRadius = radius;
-        result.uScale = uRepeat;
-        result.vStart = vBase;        
  
-        BranchParameters parms = bParms.get(depth);
+        BranchStack stack = scratch.stack;
+        int bottom = stack.size();
+        stack.push(parent, childIndex, seed, depth, rotation, radius, length, lengthOffset,
+                   baseAngle, vBase, uRepeat, vScaleTree);
+                   
+        int result = SegmentSink.NO_PARENT;
+        boolean first = true;
+        Quaternion frameRotation = scratch.frameRotation;
+        while( stack.size() > bottom ) {
+            int frame = stack.pop();
+            
+            // The children will reuse the frame's slot so everything
+            // is read out first
+            long frameSeed = stack.seed[frame];
+            int frameDepth = stack.depth[frame];
+            int frameParent = stack.parent[frame];
+            int frameIndex = stack.index[frame];
+            int frameURepeat = stack.uRepeat[frame];
+            int values = frame * BranchStack.VALUES;
+            float[] value = stack.values;
+            frameRotation.set(value[values], value[values + 1], value[values + 2], value[values + 3]);
+            float frameRadius = value[values + 4];
+            float frameLength = value[values + 5];
+            float frameLengthOffset = value[values + 6];
+            float frameBaseAngle = value[values + 7];
+            float frameVBase = value[values + 8];
+            float frameVScaleTree = value[values + 9];
+            
+            TreeRandom frameRandom = first ? random : childRandom(random, frameSeed);
+            int handle = addBranch(scratch, sink, frameParent, frameIndex, frameRandom, frameSeed, 
+                                   frameDepth, levels, frameRotation, frameRadius, 
+                                   frameLength, frameLengthOffset, frameBaseAngle,
+                                   frameVBase, frameURepeat, frameVScaleTree);
+            if( first ) {
+                result = handle;
+                first = false;
+            }
+        }
+        return result;
+    }
+ 
+    /**
+     *  Adds the segments of one branch to the sink and pushes the inputs of
+     *  its children onto the work stack, or defers or forks them.  Returns
+     *  the sink's handle for the branch's first segment.
+     */
+    protected int addBranch( Scratch scratch, SegmentSink sink, int parent, int childIndex,
+                             TreeRandom random, long seed, 
+                             int depth, Levels levels,
+                             Quaternion rotation, float radius, 
+                             float length, float lengthOffset,
+                             float baseAngle,
+                             float vBase, int uRepeat, float vScaleTree ) {
+ 
+        BranchParameters parms = levels.get(depth);
+ 
+        // The segment is built up in scratch space and handed to the
+        // sink once it is complete.
+        Segment tip = scratch.segment;
+        rotation.mult(Vector3f.UNIT_Z, tip.dir);
+        tip.startRadius = radius;
+        tip.endRadius = 0;
+        tip.length = 0;
+        tip.uScale = uRepeat;
+        tip.vStart = vBase;
+        tip.vEnd = 0;
+        tip.twist = 0;
+        tip.radials = 3;
+        tip.parentConnection = depth > 0 ? ConnectionType.Curve : ConnectionType.Extrude;        
+ 
+        // The number of children the branch's last segment will have
+        int childCount = 0;
+        if( depth + 1 < levels.size() ) {
+            childCount = parms.sideJointCount + (parms.hasEndJoint ? 1 : 0);
+        }
+ 
+        // Children below the expansion depth are only recorded so that
+        // they can be generated later.  Until then the sink is told that
+        // there are none.
+        boolean defer = childCount > 0 && depth + 1 >= scratch.expandDepth;
+        int sinkChildCount = defer ? 0 : childCount;
+        
+        int result;
+        int tipHandle;
  
         // Add the segments for this branch, factoring in 
         // variation and gravity as we go.
@@ -121,18 +722,10 @@ public class TreeGenerator {
         //       base of the tree, ie: tree roots.
         float vScale = vScaleTree * (1 / radius);
  
-        // Calculate an unnormalized variation.  note: 3.14 is a coincidence
-        // and was found through experimentation.  It's not really PI.       
-        float variation = parms.segmentVariation; 
-        variation = variation * variation;
-        variation *= 3.14f;
-         
-        // Gravity up until now is -1 to 1.  We move it into an unnormalized
-        // range that was also found through experimentation.  Essentially
-        // this says that a branch pointing straight up can almost but not
-        // quite do a full 180.
-        float maxGravity = FastMath.HALF_PI * 1.95f;
-        float effectiveGravity = parms.gravity * maxGravity;
+        // The unnormalized variation and gravity are precalculated 
+        // per level by the template.
+        float variation = levels.variation[depth]; 
+        float effectiveGravity = levels.effectiveGravity[depth];
  
         // lengthOffset subtracts from length but we need to make sure
         // it is never less than 0.  It's a way of forcing the children
@@ -153,14 +746,16 @@ public class TreeGenerator {
         // Note: because we are upside down, the taper is already 
         // reversed.
         
-        Quaternion originalRotation = rotation; 
+        // Keep our own copies of the rotations as children will reuse
+        // the scratch space as they recurse.
+        Quaternion originalRotation = scratch.originalRotations[depth].set(rotation);
+        rotation = scratch.rotations[depth].set(rotation);
         
-        Segment tip;
         if( effectiveLength <= 0 ) {
-            result.length = 0;
-            result.endRadius = result.startRadius;
-            result.vEnd = result.vStart;
-            tip = result;
+            tip.length = 0;
+            tip.endRadius = tip.startRadius;
+            tip.vEnd = tip.vStart;
+            result = tipHandle = sink.addSegment(parent, childIndex, sinkChildCount, depth, tip);
         } else {
             // Divide things up into their per-segment parts
             float lengthPart = effectiveLength / parms.lengthSegments;
@@ -186,16 +781,14 @@ public class TreeGenerator {
             float angleLimit = FastMath.asin(angleSin);
             angleLimit = Math.min(angleLimit, FastMath.HALF_PI * 0.33f * 0.5f);
  
-            tip = result;
+            result = tipHandle = SegmentSink.NO_PARENT;
             
             for( int i = 0; i < parms.lengthSegments; i++ ) {
                 int index = i + 1;
-                
-                Vector3f dir = tip.dir;
             
                 // Figure out what "world down" is in branch space.  We need
                 // to know which direction to apply a gravity rotation
-                Vector3f down = originalRotation.inverse().mult(new Vector3f(0, -1, 0));
+                Vector3f down = scratch.inverse.set(originalRotation).inverseLocal().mult(DOWN, scratch.down);
                 
                 // Now project that against or branch direction... which will
                 // tell us how orthogonal to gravity we are.  (Straight up
@@ -205,14 +798,17 @@ public class TreeGenerator {
                 if( downAmount != 0 ) {
                     // Guaranteed to get a clean cross product because we already
                     // know down and direction are not parallel. (see above)
-                    Vector3f side = Vector3f.UNIT_Z.cross(down).normalize();
+                    Vector3f side = Vector3f.UNIT_Z.cross(down, scratch.side).normalizeLocal();
                     
                     // So, figure out the rotation around this hinge and
                     // compose it with our current rotation.
-                    Quaternion gravRot = new Quaternion().fromAngleAxis(gravityPart * downAmount, side);
-                    rotation = originalRotation.mult(gravRot);
-                    originalRotation = rotation;
-                    dir = rotation.mult(Vector3f.UNIT_Z);
+                    // Note: fromAngleAxis() would normalize the axis again
+                    // into a new vector so we do the same thing locally to
+                    // keep the exact same results.
+                    Quaternion gravRot = scratch.gravRot.fromAngleNormalAxis(gravityPart * downAmount,
+                                                                             side.normalizeLocal());
+                    originalRotation.mult(gravRot, rotation);
+                    originalRotation.set(rotation);
                 }
                                  
                 if( variation != 0 ) {
@@ -234,8 +830,8 @@ public class TreeGenerator {
                     // original rotation.  This keeps the tree from randomly
                     // sprawling in odd directions as the whole branch will
                     // tend to go in the original direction.    
-                    Quaternion rot = new Quaternion().fromAngles(y, x, 0);
-                    rotation = originalRotation.mult(rot);
+                    Quaternion rot = scratch.rot.fromAngles(y, x, 0);
+                    originalRotation.mult(rot, rotation);
                 }
                 
                 // So now extend the previous segment
@@ -244,16 +840,31 @@ public class TreeGenerator {
                 tip.length = lengthPart;
                 tip.radials = parms.radialSegments;
                 tip.twist = twistPart;
-                tip.dir.set(rotation.mult(Vector3f.UNIT_Z));
+                rotation.mult(Vector3f.UNIT_Z, tip.dir);
                 
                 // If there will be more parts then we get a new tip
                 if( i + 1 < parms.lengthSegments ) {
-                    tip = tip.extend(ConnectionType.Extrude, true);
-                } 
+                    tipHandle = sink.addSegment(parent, childIndex, 1, depth, tip);
+                    
+                    // Extend the tip
+                    parent = tipHandle;
+                    childIndex = 0;
+                    tip.parentConnection = ConnectionType.Extrude;
+                    tip.startRadius = tip.endRadius;
+                    tip.vStart = tip.vEnd;
+                } else {
+                    tipHandle = sink.addSegment(parent, childIndex, sinkChildCount, depth, tip);
+                }
+                if( i == 0 ) {
+                    result = tipHandle;
+                }
+            }
+            if( parms.lengthSegments <= 0 ) {
+                result = tipHandle = sink.addSegment(parent, childIndex, sinkChildCount, depth, tip);
             }
         }
  
-        if( depth + 1 >= bParms.size() ) {
+        if( childCount == 0 ) {
             // We will not be branching any further so we can return
             // early
             return result;
@@ -272,16 +883,14 @@ public class TreeGenerator {
         // additions have made this less critical.  I'm going for
         // parity with the prototype for now so that I can easily
         // compare and find regressions.       
-        rotation = originalRotation;
+        rotation.set(originalRotation);
         
         // Bring vBase up to speed
         vBase += effectiveLength * vScale;
          
-        // Grab inclination and put it in an appropriate form.
-        // "inclination" is inverted from what we need as
-        // tilteAngle will be relative to branch direction and
-        // inclination is relative to an orthogonal plane.
-        float tiltAngle = FastMath.HALF_PI - parms.inclination;
+        // Grab inclination in the form the template has already
+        // put it in.  tiltAngle is relative to branch direction.
+        float tiltAngle = levels.tiltAngle[depth];
                 
         // Calculate the next level base branch radius based on the
         // current radius divided into sections... we use the circle
@@ -295,39 +904,362 @@ public class TreeGenerator {
  
 
         float startAngle = parms.sideJointStartAngle + parms.twist + baseAngle;
-        float jointAngleDelta = FastMath.TWO_PI / parms.sideJointCount;
+        float jointAngleDelta = levels.jointAngleDelta[depth];
 
-        // Prep the tip for its new children
-        int childCount = parms.sideJointCount + (parms.hasEndJoint ? 1 : 0); 
-        tip.children = new Segment[childCount];
+        int firstChild = scratch.stack.size();
+        List<BranchTask> tasks = null;
+        Segment[] children = null;
+        if( !defer && forkChildren(scratch, depth, levels) ) {
+            // Forking only happens when building the Segment graph
+            tasks = new ArrayList<BranchTask>(childCount);
+            children = ((TreeBuilder)sink).getSegment(tipHandle).children;
+        }
  
         for( int b = 0; b < parms.sideJointCount; b++ ) {
             float jointAngle = startAngle + jointAngleDelta * b;
             
-            Quaternion angleRotation = new Quaternion().fromAngles(0, 0, jointAngle);
-            Quaternion tiltRotation = new Quaternion().fromAngles(tiltAngle, 0, 0);
-            Quaternion branchRotation = rotation.mult(angleRotation).mult(tiltRotation);
+            Quaternion angleRotation = scratch.angleRotation.fromAngles(0, 0, jointAngle);
+            Quaternion tiltRotation = scratch.tiltRotation.fromAngles(tiltAngle, 0, 0);
+            Quaternion branchRotation = rotation.mult(angleRotation, scratch.temp).mult(tiltRotation, 
+                                                                                       scratch.branchRotation);
             
-            tip.children[b] = createBranch(random, depth+1, bParms, 
-                                           branchRotation, branchRadius,
-                                           branchLength, 0, 0,
-                                           vBase, uRepeat, vScaleTree);
-            tip.children[b].parentConnection = ConnectionType.Curve;                                                                
+            long childSeed = childSeed(seed, b);
+            if( defer ) {
+                scratch.deferred.add(new LazyTree.PendingBranch(tipHandle, b, childCount, childSeed, 
+                                                                depth+1, levels,
+                                                                branchRotation, branchRadius,
+                                                                branchLength, 0, 0,
+                                                                vBase, uRepeat, vScaleTree));
+                continue;
+            }
+            if( tasks != null ) {
+                tasks.add(new BranchTask(children, b, childSeed, depth+1, levels,
+                                         branchRotation, branchRadius,
+                                         branchLength, 0, 0,
+                                         vBase, uRepeat, vScaleTree));
+                continue;
+            }            
+            scratch.stack.push(tipHandle, b, childSeed, depth+1,
+                               branchRotation, branchRadius,
+                               branchLength, 0, 0,
+                               vBase, uRepeat, vScaleTree);
         }         
  
         // Add the tip recursion
         //-------------------------------       
         if( parms.hasEndJoint ) {
-            tip.children[parms.sideJointCount] = createBranch(random, depth+1, bParms, 
-                                                              rotation, radius, length * parms.taper,
-                                                              0, baseAngle + parms.twist + parms.tipRotation,
-                                                              vBase, uRepeat, vScaleTree); 
-            tip.children[parms.sideJointCount].parentConnection = ConnectionType.Curve;                                                                
+            int b = parms.sideJointCount;
+            long childSeed = childSeed(seed, b);
+            if( defer ) {
+                scratch.deferred.add(new LazyTree.PendingBranch(tipHandle, b, childCount, childSeed, 
+                                                                depth+1, levels, 
+                                                                rotation, radius, length * parms.taper,
+                                                                0, baseAngle + parms.twist + parms.tipRotation,
+                                                                vBase, uRepeat, vScaleTree));
+            } else if( tasks != null ) {
+                tasks.add(new BranchTask(children, b, childSeed, depth+1, levels, 
+                                         rotation, radius, length * parms.taper,
+                                         0, baseAngle + parms.twist + parms.tipRotation,
+                                         vBase, uRepeat, vScaleTree));
+            } else {
+                scratch.stack.push(tipHandle, b, childSeed, depth+1,
+                                   rotation, radius, length * parms.taper,
+                                   0, baseAngle + parms.twist + parms.tipRotation,
+                                   vBase, uRepeat, vScaleTree); 
+            }                                                                
+        }
+        
+        // The children were pushed in order so flip them to pop the
+        // first one first
+        scratch.stack.reverse(firstChild, scratch.stack.size());
+        
+        if( tasks != null ) {
+            ForkJoinTask.invokeAll(tasks);
         }
                                                         
         return result;                                    
+    }
+    
+    /**
+     *  Generates one branch as a fork/join task, placing the result
+     *  in the specified slot of the parent's children.  The inputs are
+     *  copied as the caller continues to reuse its scratch space.
+     */
+    protected class BranchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Segment[] target;
+        private final int index;
+        private final long seed;
+        private final int depth;
+        private final Levels levels;
+        private final Quaternion rotation;
+        private final float radius;
+        private final float length;
+        private final float lengthOffset;
+        private final float baseAngle;
+        private final float vBase;
+        private final int uRepeat;
+        private final float vScaleTree;
+        
+        public BranchTask( Segment[] target, int index, long seed, int depth, 
+                           Levels levels,
+                           Quaternion rotation, float radius, 
+                           float length, float lengthOffset,
+                           float baseAngle,
+                           float vBase, int uRepeat, float vScaleTree ) {
+            this.target = target;
+            this.index = index;
+            this.seed = seed;
+            this.depth = depth;
+            this.levels = levels;
+            this.rotation = rotation.clone();
+            this.radius = radius;
+            this.length = length;
+            this.lengthOffset = lengthOffset;
+            this.baseAngle = baseAngle;
+            this.vBase = vBase;
+            this.uRepeat = uRepeat;
+            this.vScaleTree = vScaleTree;
+        }
+        
+        @Override
+        protected void compute() {
+            TreeBuilder builder = new TreeBuilder();
+            int handle = createBranch(new Scratch(levels.size(), true), builder, 
+                                      SegmentSink.NO_PARENT, 0, randomFactory.create(seed), seed, 
+                                      depth, levels, rotation, radius, length, lengthOffset,
+                                      baseAngle, vBase, uRepeat, vScaleTree);
+            target[index] = builder.getSegment(handle);                                          
+        }
+    }
+    
+    private class TreeJob implements Callable<Tree> {
+        private final int seed;
+        private final TreeTemplate template;
+        
+        public TreeJob( int seed, TreeTemplate template ) {
+            this.seed = seed;
+            this.template = template;
+        }
+        
+        @Override
+        public Tree call() {
+            return generateTree(seed, template);
+        }
+    }
+    
+    /**
+     *  Passes the segments at and below the regeneration depth on to the
+     *  table and looks up the existing segments for anything above it.
+     */
+    private static class RegenerationSink implements SegmentSink {
+        private final SegmentTable table;
+        private final int depth;
+        private int count;
+        
+        public RegenerationSink( SegmentTable table, int depth ) {
+            this.table = table;
+            this.depth = depth;
+        }
+        
+        @Override
+        public int addSegment( int parent, int childIndex, int childCount, int level, Segment segment ) {
+            count++;
+            if( level >= depth ) {
+                return table.addSegment(parent, childIndex, childCount, level, segment);
+            }
+            if( parent == NO_PARENT ) {
+                return table.getTopSegment(childIndex);
+            }
+            return table.getChild(parent, childIndex);
+        }
+    }
+ 
+    /**
+     *  Tracks the end points of the segments from the top of the tree to
+     *  the one that was last added.  Because the segments arrive depth-first, 
+     *  a new segment's parent is always on that path and anything after it 
+     *  is finished.
+     */
+    private static class VisitorSink implements SegmentSink {
+        private final SegmentVisitor visitor;
+        private final Vector3f start = new Vector3f();
+        private final Vector3f end = new Vector3f();
+        private int next;
+        private int size;
+        private int[] handles = new int[32];
+        private float[] ends = new float[32 * 3];
+        
+        public VisitorSink( SegmentVisitor visitor ) {
+            this.visitor = visitor;
+        }
+        
+        @Override
+        public int addSegment( int parent, int childIndex, int childCount, int depth, Segment segment ) {
+            if( parent == NO_PARENT ) {
+                size = 0;
+                start.set(0, 0, 0);
+            } else {
+                while( handles[size - 1] != parent ) {
+                    size--;
+                }
+                int i = (size - 1) * 3;
+                start.set(ends[i], ends[i + 1], ends[i + 2]);
+            }
+            end.set(segment.dir).multLocal(segment.length).addLocal(start);
+            
+            visitor.visitSegment(start, end, segment.startRadius, segment.endRadius, 
+                                 depth, segment.parentConnection, segment.isInverted(), 
+                                 childCount);
+ 
+            if( size == handles.length ) {
+                handles = Arrays.copyOf(handles, size * 2);
+                ends = Arrays.copyOf(ends, size * 2 * 3);
+            }
+            int handle = next++;
+            handles[size] = handle;
+            int i = size * 3;
+            ends[i] = end.x;
+            ends[i + 1] = end.y;
+            ends[i + 2] = end.z;
+            size++;
+            return handle;
+        }
+    }
+ 
+    /**
+     *  Holds the math objects reused by a single tree generation.
+     *  Rotations that must survive recursion into child branches
+     *  are kept per depth while the rest are only used between
+     *  recursive calls.  Scratch space created for fork/join tasks
+     *  also flags that children may be forked.  For lazy generation it
+     *  also collects the branches at or below the expansion depth.
+     */
+    protected static class Scratch {
+        final boolean fork;
+        int expandDepth = Integer.MAX_VALUE;
+        List<LazyTree.PendingBranch> deferred;
+        final BranchStack stack = new BranchStack(32);
+        final Quaternion frameRotation = new Quaternion();
+        final Segment segment = new Segment();
+        final Quaternion[] rotations;
+        final Quaternion[] originalRotations;
+        final Quaternion inverse = new Quaternion();
+        final Quaternion gravRot = new Quaternion();
+        final Quaternion rot = new Quaternion();
+        final Quaternion angleRotation = new Quaternion();
+        final Quaternion tiltRotation = new Quaternion();
+        final Quaternion branchRotation = new Quaternion();
+        final Quaternion temp = new Quaternion();
+        final Vector3f down = new Vector3f();
+        final Vector3f side = new Vector3f();
+        
+        public Scratch( int depth, boolean fork ) {
+            this.fork = fork;
+            this.rotations = new Quaternion[depth];
+            this.originalRotations = new Quaternion[depth];
+            for( int i = 0; i < depth; i++ ) {
+                rotations[i] = new Quaternion();
+                originalRotations[i] = new Quaternion();
+            }
+        }
     }                                         
-                                        
-}
-
 
+    /**
+     *  The inputs of the branches waiting to be generated, kept in
+     *  parallel primitive arrays.  The float inputs of a frame are
+     *  stored together: rotation x, y, z, w, radius, length, lengthOffset,
+     *  baseAngle, vBase, and vScaleTree.
+     */
+    protected static class BranchStack {
+        static final int VALUES = 10;
+        
+        int size;
+        int[] parent;
+        int[] index;
+        long[] seed;
+        int[] depth;
+        int[] uRepeat;
+        float[] values;
+        
+        public BranchStack( int capacity ) {
+            parent = new int[capacity];
+            index = new int[capacity];
+            seed = new long[capacity];
+            depth = new int[capacity];
+            uRepeat = new int[capacity];
+            values = new float[capacity * VALUES];
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        public void push( int parentHandle, int childIndex, long branchSeed, int branchDepth,
+                          Quaternion rotation, float radius, 
+                          float length, float lengthOffset, float baseAngle, 
+                          float vBase, int branchURepeat, float vScaleTree ) {
+            if( size == parent.length ) {
+                grow(size * 2);
+            }
+            parent[size] = parentHandle;
+            index[size] = childIndex;
+            seed[size] = branchSeed;
+            depth[size] = branchDepth;
+            uRepeat[size] = branchURepeat;
+            int i = size * VALUES;
+            values[i++] = rotation.getX();
+            values[i++] = rotation.getY();
+            values[i++] = rotation.getZ();
+            values[i++] = rotation.getW();
+            values[i++] = radius;
+            values[i++] = length;
+            values[i++] = lengthOffset;
+            values[i++] = baseAngle;
+            values[i++] = vBase;
+            values[i] = vScaleTree;
+            size++;
+        }
+ 
+        /**
+         *  Removes the top frame and returns its index.  Its values stay
+         *  valid until the next push.
+         */       
+        public int pop() {
+            return --size;
+        }
+ 
+        /**
+         *  Reverses the order of the frames from start up to but not 
+         *  including end.
+         */       
+        public void reverse( int start, int end ) {
+            for( int i = start, j = end - 1; i < j; i++, j-- ) {
+                swap(i, j);
+            }
+        }
+        
+        private void swap( int i, int j ) {
+            int t = parent[i]; parent[i] = parent[j]; parent[j] = t;
+            t = index[i]; index[i] = index[j]; index[j] = t;
+            t = depth[i]; depth[i] = depth[j]; depth[j] = t;
+            t = uRepeat[i]; uRepeat[i] = uRepeat[j]; uRepeat[j] = t;
+            long l = seed[i]; seed[i] = seed[j]; seed[j] = l;
+            int a = i * VALUES;
+            int b = j * VALUES;
+            for( int k = 0; k < VALUES; k++ ) {
+                float f = values[a + k]; values[a + k] = values[b + k]; values[b + k] = f;
+            }
+        }
+        
+        private void grow( int capacity ) {
+            parent = Arrays.copyOf(parent, capacity);
+            index = Arrays.copyOf(index, capacity);
+            seed = Arrays.copyOf(seed, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+            uRepeat = Arrays.copyOf(uRepeat, capacity);
+            values = Arrays.copyOf(values, capacity * VALUES);
+        }
+    }
+}
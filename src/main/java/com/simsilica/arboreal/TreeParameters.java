@@ -114,7 +114,11 @@ public class TreeParameters extends Parameters implements Iterable<BranchParamet
     private boolean generateLeaves = DEFAULT_GENERATE_LEAVES;
     private boolean useWind = DEFAULT_USE_WIND;
 
-    private int seed = 0;
+    /**
+     * The seed is transient so it stays out of the fingerprint, caches key
+     * their meshes by the tree seed separately.
+     */
+    private transient int seed = 0;
 
     /**
      * Instantiates a new Tree parameters.
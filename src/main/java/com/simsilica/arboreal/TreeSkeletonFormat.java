@@ -0,0 +1,455 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal;
+
+import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ *  Reads and writes the segment skeleton of a tree in a compact, versioned 
+ *  binary form so that exact trees can be shipped without the parameters
+ *  that generated them.  
+ *
+ *  <p>After a small header, the segments are written depth first, each
+ *  with its child count and radial count as varints, its depth and parent 
+ *  connection as one byte each, its direction as two octahedral encoded 
+ *  shorts, and its other values as shorts quantized against the largest 
+ *  value of their kind in the tree.  That is 22 bytes for most segments.
+ *  All data is little endian and can be read straight from a memory mapped
+ *  file.</p>
+ */
+public class TreeSkeletonFormat {
+
+    private static final int MAGIC = 0x314B5354; // "TSK1"
+    private static final int FORMAT_VERSION = 1;
+    
+    private static final int HAS_TRUNK = 0x01;
+    private static final int HAS_ROOTS = 0x02;
+    
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 5 * 4;
+    
+    // The smallest a segment can be with single byte varints
+    private static final int MIN_SEGMENT_SIZE = 1 + 1 + 2 + 4 + 7 * 2;
+    
+    private static final float UNSIGNED_STEPS = 0xffff;
+    private static final float SIGNED_STEPS = Short.MAX_VALUE;
+    private static final Segment.ConnectionType[] CONNECTIONS = Segment.ConnectionType.values();
+ 
+    /**
+     *  The largest magnitude of each kind of quantized value.  These are 
+     *  stored in the header as the scales.
+     */   
+    private static class Ranges {
+        float radius;
+        float length;
+        float uScale;
+        float v;
+        float twist;
+    }
+ 
+    /**
+     *  Returns the number of bytes that write() will use for the
+     *  specified table.
+     */   
+    public static int getSize( SegmentTable table ) {
+        int size = HEADER_SIZE;
+        for( int seg : getWriteOrder(table) ) {
+            size += varintSize(table.getChildCount(seg)) + varintSize(table.getRadials(seg)) + 2 + 4 + 7 * 2;
+        }
+        return size;
+    }
+ 
+    /**
+     *  Returns the reachable segments of the table in the depth first 
+     *  order that they are written, trunk first.  The table is walked with 
+     *  an explicit stack so that deep trees do not recurse.
+     */
+    private static int[] getWriteOrder( SegmentTable table ) {
+        int[] result = new int[table.size()];
+        int count = 0;
+        int[] stack = new int[16];
+        int size = 0;
+        for( int i = table.getTopSegmentCount() - 1; i >= 0; i-- ) {
+            int seg = table.getTopSegment(i);
+            if( seg != SegmentTable.NONE ) {
+                stack[size++] = seg;
+            }
+        }
+        while( size > 0 ) {
+            int seg = stack[--size];
+            result[count++] = seg;
+            
+            // Push the children last first so that the first pops first
+            int first = table.getFirstChild(seg);
+            int childCount = table.getChildCount(seg);
+            if( size + childCount > stack.length ) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + childCount));
+            }
+            for( int child = first + childCount - 1; child >= first; child-- ) {
+                stack[size++] = child;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+ 
+    public static ByteBuffer write( Tree tree ) {
+        return write(SegmentTable.fromTree(tree));
+    }
+ 
+    /**
+     *  Encodes the reachable segments of the table into a new buffer that 
+     *  is flipped and ready to be read.
+     */   
+    public static ByteBuffer write( SegmentTable table ) {
+        ByteBuffer data = ByteBuffer.allocate(getSize(table)).order(ByteOrder.LITTLE_ENDIAN);
+        write(table, data);
+        data.flip();
+        return data;
+    }
+ 
+    /**
+     *  Encodes the reachable segments of the table into the specified buffer
+     *  starting at its current position.
+     */   
+    public static void write( SegmentTable table, ByteBuffer data ) {
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        
+        int[] order = getWriteOrder(table);
+        Ranges ranges = new Ranges();
+        for( int seg : order ) {
+            findRanges(table, seg, ranges);
+        }
+        int flags = 0;
+        if( table.getTrunk() != SegmentTable.NONE ) {
+            flags |= HAS_TRUNK;
+        }
+        if( table.getRoots() != SegmentTable.NONE ) {
+            flags |= HAS_ROOTS;
+        }
+        
+        data.putInt(MAGIC);
+        data.putInt(FORMAT_VERSION);
+        data.put((byte)flags);
+        data.putFloat(ranges.radius);
+        data.putFloat(ranges.length);
+        data.putFloat(ranges.uScale);
+        data.putFloat(ranges.v);
+        data.putFloat(ranges.twist);
+        
+        for( int seg : order ) {
+            writeSegment(table, seg, ranges, data);
+        }
+    }
+ 
+    public static Tree readTree( ByteBuffer data ) {
+        return read(data).toTree();
+    }
+ 
+    /**
+     *  Decodes a skeleton starting at the buffer's current position and
+     *  leaves the position after it.  The data is checked as it is read so
+     *  that skeletons from untrusted sources cannot allocate more segments 
+     *  than the buffer could hold or fail with anything but an
+     *  IllegalArgumentException.
+     *
+     *  @throws IllegalArgumentException if the data is not a valid skeleton.
+     */   
+    public static SegmentTable read( ByteBuffer data ) {
+        try {
+            return readSkeleton(data);
+        } catch( BufferUnderflowException e ) {
+            throw new IllegalArgumentException("Truncated tree skeleton.", e);
+        }
+    }
+    
+    private static SegmentTable readSkeleton( ByteBuffer data ) {
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if( data.remaining() < HEADER_SIZE ) {
+            throw new IllegalArgumentException("Truncated tree skeleton header.");
+        }
+        if( data.getInt() != MAGIC ) {
+            throw new IllegalArgumentException("Not a tree skeleton.");
+        }
+        int version = data.getInt();
+        if( version != FORMAT_VERSION ) {
+            throw new IllegalArgumentException("Unsupported tree skeleton version:" + version);
+        }
+        int flags = data.get();
+        Ranges ranges = new Ranges();
+        ranges.radius = data.getFloat();
+        ranges.length = data.getFloat();
+        ranges.uScale = data.getFloat();
+        ranges.v = data.getFloat();
+        ranges.twist = data.getFloat();
+        
+        SegmentTable result = new SegmentTable();
+        Segment scratch = new Segment();
+        if( (flags & HAS_TRUNK) != 0 ) {
+            readBranch(result, 0, ranges, scratch, data);
+        }
+        if( (flags & HAS_ROOTS) != 0 ) {
+            readBranch(result, 1, ranges, scratch, data);
+        }
+        return result;
+    }
+ 
+    /**
+     *  Writes the skeleton to the specified file, replacing it if it
+     *  exists.
+     */   
+    public static void store( SegmentTable table, File file ) throws IOException {
+        ByteBuffer data = write(table);
+        try( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                                                    StandardOpenOption.CREATE, 
+                                                    StandardOpenOption.TRUNCATE_EXISTING) ) {
+            while( data.hasRemaining() ) {
+                channel.write(data);
+            }
+        }
+    }
+ 
+    /**
+     *  Memory maps the specified file and decodes the skeleton from it.
+     */   
+    public static SegmentTable load( File file ) throws IOException {
+        try( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+ 
+    private static void findRanges( SegmentTable table, int seg, Ranges ranges ) {
+        ranges.radius = Math.max(ranges.radius, Math.max(table.getStartRadius(seg), table.getEndRadius(seg)));
+        ranges.length = Math.max(ranges.length, table.getLength(seg));
+        ranges.uScale = Math.max(ranges.uScale, Math.abs(table.getUScale(seg)));
+        ranges.v = Math.max(ranges.v, Math.max(Math.abs(table.getVStart(seg)), Math.abs(table.getVEnd(seg))));
+        ranges.twist = Math.max(ranges.twist, Math.abs(table.getTwist(seg)));
+    }
+    
+    private static void writeSegment( SegmentTable table, int seg, Ranges ranges, ByteBuffer data ) {
+        int count = table.getChildCount(seg);
+        writeVarint(count, data);
+        writeVarint(table.getRadials(seg), data);
+        data.put((byte)table.getDepth(seg));
+        data.put((byte)table.getParentConnection(seg).ordinal());
+        writeDir(table.getDirX(seg), table.getDirY(seg), table.getDirZ(seg), data);
+        data.putShort(toUnsigned(table.getStartRadius(seg), ranges.radius));
+        data.putShort(toUnsigned(table.getEndRadius(seg), ranges.radius));
+        data.putShort(toUnsigned(table.getLength(seg), ranges.length));
+        data.putShort(toSigned(table.getUScale(seg), ranges.uScale));
+        data.putShort(toSigned(table.getVStart(seg), ranges.v));
+        data.putShort(toSigned(table.getVEnd(seg), ranges.v));
+        data.putShort(toSigned(table.getTwist(seg), ranges.twist));
+    }
+    
+    /**
+     *  Reads the top segment at the specified index and all of the segments
+     *  below it.  The parents that still have children to read are kept on 
+     *  an explicit stack as the parent index, the next child, and the child 
+     *  count.
+     */
+    private static void readBranch( SegmentTable table, int topIndex, Ranges ranges, 
+                                    Segment seg, ByteBuffer data ) {
+        int[] stack = new int[3 * 16];
+        int size = 0;
+        int parent = SegmentSink.NO_PARENT;
+        int childIndex = topIndex;
+        
+        // The segments that were counted by their parents but not read yet
+        long pending = 0;
+        while( true ) {
+            int count = readVarint(data);
+            if( count < 0 ) {
+                throw new IllegalArgumentException("Invalid child count:" + count);
+            }
+            pending += count;
+            if( pending * MIN_SEGMENT_SIZE > data.remaining() ) {
+                throw new IllegalArgumentException("Child count:" + count + " exceeds the remaining data:" 
+                                                   + data.remaining() + " bytes");
+            }
+            seg.radials = readVarint(data);
+            if( seg.radials < 0 ) {
+                throw new IllegalArgumentException("Invalid radial count:" + seg.radials);
+            }
+            int depth = data.get();
+            if( depth < 0 ) {
+                throw new IllegalArgumentException("Invalid segment depth:" + depth);
+            }
+            int connection = data.get();
+            if( connection < 0 || connection >= CONNECTIONS.length ) {
+                throw new IllegalArgumentException("Invalid parent connection:" + connection);
+            }
+            seg.parentConnection = CONNECTIONS[connection];
+            readDir(data, seg.dir);
+            seg.startRadius = fromUnsigned(data.getShort(), ranges.radius);
+            seg.endRadius = fromUnsigned(data.getShort(), ranges.radius);
+            seg.length = fromUnsigned(data.getShort(), ranges.length);
+            seg.uScale = fromSigned(data.getShort(), ranges.uScale);
+            seg.vStart = fromSigned(data.getShort(), ranges.v);
+            seg.vEnd = fromSigned(data.getShort(), ranges.v);
+            seg.twist = fromSigned(data.getShort(), ranges.twist);
+            
+            int index = table.addSegment(parent, childIndex, count, depth, seg);
+            if( count > 0 ) {
+                if( size + 3 > stack.length ) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[size++] = index;
+                stack[size++] = 0;
+                stack[size++] = count;
+            }
+            
+            // Move on to the next unread child of the deepest parent
+            while( size > 0 && stack[size - 2] == stack[size - 1] ) {
+                size -= 3;
+            }
+            if( size == 0 ) {
+                return;
+            }
+            parent = stack[size - 3];
+            childIndex = stack[size - 2]++;
+            pending--;
+        }
+    }
+ 
+    private static short toUnsigned( float value, float range ) {
+        if( range == 0 ) {
+            return 0;
+        }
+        return (short)Math.round(value / range * UNSIGNED_STEPS);
+    }
+    
+    private static float fromUnsigned( short value, float range ) {
+        return (value & 0xffff) / UNSIGNED_STEPS * range;
+    }
+    
+    private static short toSigned( float value, float range ) {
+        if( range == 0 ) {
+            return 0;
+        }
+        return (short)Math.round(value / range * SIGNED_STEPS);
+    }
+    
+    private static float fromSigned( short value, float range ) {
+        return value / SIGNED_STEPS * range;
+    }
+ 
+    private static void writeDir( float x, float y, float z, ByteBuffer data ) {
+        int packed = encodeDir(x, y, z);
+        data.putShort((short)packed);
+        data.putShort((short)(packed >> 16));
+    }
+    
+    private static void readDir( ByteBuffer data, Vector3f store ) {
+        short u = data.getShort();
+        short v = data.getShort();
+        decodeDir(u, v, store);
+    }
+ 
+    /**
+     *  Folds a unit direction onto an octahedron and flattens it to two 
+     *  shorts that are returned in the low and high halves of the int.
+     */   
+    static int encodeDir( float x, float y, float z ) {
+        float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        float u = x / sum;
+        float v = y / sum;
+        if( z < 0 ) {
+            // Fold the lower half over the diagonals
+            float fu = (1 - Math.abs(v)) * sign(u);
+            float fv = (1 - Math.abs(u)) * sign(v);
+            u = fu;
+            v = fv;
+        }
+        int su = Math.round(u * SIGNED_STEPS);
+        int sv = Math.round(v * SIGNED_STEPS);
+        return (su & 0xffff) | (sv << 16);
+    }
+    
+    static Vector3f decodeDir( short su, short sv, Vector3f store ) {
+        float u = su / SIGNED_STEPS;
+        float v = sv / SIGNED_STEPS;
+        float z = 1 - Math.abs(u) - Math.abs(v);
+        if( z < 0 ) {
+            float fu = (1 - Math.abs(v)) * sign(u);
+            float fv = (1 - Math.abs(u)) * sign(v);
+            u = fu;
+            v = fv;
+        }
+        return store.set(u, v, z).normalizeLocal();
+    }
+    
+    private static float sign( float f ) {
+        return f < 0 ? -1 : 1;
+    }
+ 
+    private static int varintSize( int value ) {
+        int size = 1;
+        while( (value & ~0x7f) != 0 ) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    private static void writeVarint( int value, ByteBuffer data ) {
+        while( (value & ~0x7f) != 0 ) {
+            data.put((byte)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        data.put((byte)value);
+    }
+    
+    private static int readVarint( ByteBuffer data ) {
+        int result = 0;
+        for( int shift = 0; shift < 32; shift += 7 ) {
+            int b = data.get();
+            result |= (b & 0x7f) << shift;
+            if( (b & 0x80) == 0 ) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal;
+
+import com.jme3.math.FastMath;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ *  The read-only data that TreeGenerator derives from a set of
+ *  TreeParameters before generating a tree.  A template can be created
+ *  once and shared by any number of trees of the same species, even
+ *  across threads.  The template takes a snapshot of the effective 
+ *  branch and root levels and the tree-wide sizes but still references
+ *  the BranchParameters themselves so they should not be modified
+ *  while trees are being generated from it.
+ */
+public class TreeTemplate {
+
+    private final TreeParameters treeParms;
+    private final Levels branches;
+    private final Levels roots;
+    private final float trunkRadius;
+    private final float trunkHeight;
+    private final float rootHeight;
+    private final int uRepeat;
+    private final float vScale;
+    
+    public TreeTemplate( TreeParameters treeParms ) {
+        this(treeParms, treeParms.getTrunkRadius(), treeParms.getTrunkHeight(), 
+             treeParms.getRootHeight());
+    }
+    
+    public TreeTemplate( TreeParameters treeParms, float trunkRadius, float trunkHeight, 
+                         float rootHeight ) {
+        this.treeParms = treeParms;
+        this.branches = new Levels(treeParms.getEffectiveBranches());
+        this.roots = new Levels(treeParms.getEffectiveRoots());
+        this.trunkRadius = trunkRadius;
+        this.trunkHeight = trunkHeight;
+        this.rootHeight = rootHeight;
+        this.uRepeat = treeParms.getTextureURepeat();
+        this.vScale = treeParms.getTextureVScale();
+    }
+    
+    public TreeParameters getTreeParameters() {
+        return treeParms;
+    }
+    
+    public Levels getBranches() {
+        return branches;
+    }
+    
+    public Levels getRoots() {
+        return roots;
+    }
+ 
+    /**
+     *  Returns the deepest level count of either the branches or the roots.
+     */   
+    public int getMaxDepth() {
+        return Math.max(branches.size(), roots.size());
+    }
+    
+    public float getTrunkRadius() {
+        return trunkRadius;
+    }
+    
+    public float getTrunkHeight() {
+        return trunkHeight;
+    }
+    
+    public float getRootHeight() {
+        return rootHeight;
+    }
+    
+    public int getTextureURepeat() {
+        return uRepeat;
+    }
+    
+    public float getTextureVScale() {
+        return vScale;
+    }
+
+    /**
+     *  Returns the number of segments that a tree generated from this
+     *  template will have.  The generator uses this to size its tables 
+     *  up front.
+     */
+    public long getSegmentCount() {
+        return branches.getSegmentCount(trunkHeight - rootHeight) 
+               + roots.getSegmentCount(rootHeight);
+    }
+    
+    /**
+     *  The effective BranchParameters for each depth of either the
+     *  branches or the roots along with the per-level constants that
+     *  the generator would otherwise recalculate for every branch. 
+     */
+    public static class Levels {
+        private final List<BranchParameters> parms;
+        
+        final float[] variation;
+        final float[] effectiveGravity;
+        final float[] tiltAngle;
+        final float[] jointAngleDelta;
+        final long[] fingerprints;
+        
+        public Levels( List<BranchParameters> parms ) {
+            this.parms = Collections.unmodifiableList(parms);
+            
+            int size = parms.size();
+            this.variation = new float[size];
+            this.effectiveGravity = new float[size];
+            this.tiltAngle = new float[size];
+            this.jointAngleDelta = new float[size];
+            this.fingerprints = new long[size];
+            
+            for( int i = 0; i < size; i++ ) {
+                BranchParameters bp = parms.get(i);
+                
+                // Calculate an unnormalized variation.  note: 3.14 is a coincidence
+                // and was found through experimentation.  It's not really PI.       
+                float v = bp.segmentVariation; 
+                v = v * v;
+                v *= 3.14f;
+                variation[i] = v;
+                
+                // Gravity up until now is -1 to 1.  We move it into an unnormalized
+                // range that was also found through experimentation.  Essentially
+                // this says that a branch pointing straight up can almost but not
+                // quite do a full 180.
+                float maxGravity = FastMath.HALF_PI * 1.95f;
+                effectiveGravity[i] = bp.gravity * maxGravity;
+                
+                // Grab inclination and put it in an appropriate form.
+                // "inclination" is inverted from what we need as
+                // tilteAngle will be relative to branch direction and
+                // inclination is relative to an orthogonal plane.
+                tiltAngle[i] = FastMath.HALF_PI - bp.inclination;
+                
+                jointAngleDelta[i] = FastMath.TWO_PI / bp.sideJointCount;
+                
+                // Snapshot the values so that we can detect changes to 
+                // the parameters later even though they are modified in place
+                fingerprints[i] = bp.getFingerprint();
+            }
+        }
+        
+        public int size() {
+            return parms.size();
+        }
+        
+        public BranchParameters get( int depth ) {
+            return parms.get(depth);
+        }
+        
+        public List<BranchParameters> getParameters() {
+            return parms;
+        }
+        
+        public float getVariation( int depth ) {
+            return variation[depth];
+        }
+        
+        public float getEffectiveGravity( int depth ) {
+            return effectiveGravity[depth];
+        }
+        
+        public float getTiltAngle( int depth ) {
+            return tiltAngle[depth];
+        }
+        
+        public float getJointAngleDelta( int depth ) {
+            return jointAngleDelta[depth];
+        }
+ 
+        /**
+         *  Returns the number of segments in all of the levels when the top 
+         *  level branch has the specified length.  A branch with no length or 
+         *  no length segments still gets one segment.
+         */
+        public long getSegmentCount( float length ) {
+            long result = 0;
+            long count = 1;
+            int size = size();
+            for( int depth = 0; depth < size; depth++ ) {
+                BranchParameters bp = parms.get(depth);
+                
+                // Only the top level is shortened
+                float effectiveLength = depth == 0 ? length : 1;
+                int segments = effectiveLength <= 0 || bp.lengthSegments <= 0 ? 1 : bp.lengthSegments;
+                result += count * segments;
+                
+                if( depth + 1 == size ) {
+                    break;
+                }
+                int children = bp.sideJointCount + (bp.hasEndJoint ? 1 : 0);
+                if( children == 0 ) {
+                    break;
+                }
+                count *= children;
+            }
+            return result;
+        }
+ 
+        /**
+         *  Returns the fingerprint that the BranchParameters at the specified
+         *  depth had when these levels were created.
+         */       
+        public long getFingerprint( int depth ) {
+            return fingerprints[depth];
+        }
+ 
+        /**
+         *  Returns the shallowest depth whose branches differ from those 
+         *  of the previous levels or size() if nothing changed.  If only
+         *  the number of levels changed then this is the last level the two
+         *  have in common because its branches gain or lose children.
+         */       
+        public int getChangedDepth( Levels previous ) {
+            int common = Math.min(size(), previous.size());
+            for( int i = 0; i < common; i++ ) {
+                if( fingerprints[i] != previous.fingerprints[i] ) {
+                    return i;
+                }
+            }
+            if( size() != previous.size() ) {
+                return Math.max(0, common - 1);
+            }
+            return size();
+        }
+    }
+}
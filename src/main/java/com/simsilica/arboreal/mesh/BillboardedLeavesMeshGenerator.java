@@ -53,6 +53,26 @@ import java.util.List;
  */
 public class BillboardedLeavesMeshGenerator {
 
+    /**
+     *  The part of its quad size that a leaf can extend past its location,
+     *  which the mesh bounds and Segment bounds are grown by.
+     */
+    public static final float LEAF_EXTENT = 0.6f;
+
+    private MeshBufferPool bufferPool;
+
+    /**
+     * Sets the pool that the generated meshes get their buffers from or
+     * null to allocate new buffers for every mesh.
+     */
+    public void setBufferPool(MeshBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public MeshBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     public Mesh generateMesh(List<Vertex> locations, float quadSize) {
 
         // Generate quads, four points each, where each corner
@@ -139,11 +159,12 @@ public class BillboardedLeavesMeshGenerator {
 
         Mesh mesh = new Mesh();
 
-        FloatBuffer pb = BufferUtils.createFloatBuffer(posArray);
-        FloatBuffer nb = BufferUtils.createFloatBuffer(normArray);
-        FloatBuffer tb = BufferUtils.createFloatBuffer(uvArray);
-        FloatBuffer sizeb = BufferUtils.createFloatBuffer(sizeArray);
-        ShortBuffer sb = BufferUtils.createShortBuffer(indexArray);
+        MeshBufferPool pool = bufferPool;
+        FloatBuffer pb = createFloatBuffer(pool, posArray);
+        FloatBuffer nb = createFloatBuffer(pool, normArray);
+        FloatBuffer tb = createFloatBuffer(pool, uvArray);
+        FloatBuffer sizeb = createFloatBuffer(pool, sizeArray);
+        ShortBuffer sb = createShortBuffer(pool, indexArray);
 
         mesh.setBuffer(Type.Position, 3, pb);
         mesh.setBuffer(Type.Normal, 3, nb);
@@ -158,7 +179,8 @@ public class BillboardedLeavesMeshGenerator {
         // early.
         BoundingBox bb = (BoundingBox) mesh.getBound();
         Vector3f extents = bb.getExtent(null);
-        extents.addLocal(quadSize * 0.6f, quadSize * 0.6f, quadSize * 0.6f);
+        float extent = quadSize * LEAF_EXTENT;
+        extents.addLocal(extent, extent, extent);
         bb.setXExtent(extents.x);
         bb.setYExtent(extents.y);
         bb.setZExtent(extents.z);
@@ -166,6 +188,48 @@ public class BillboardedLeavesMeshGenerator {
 
         return mesh;
     }
+
+    private static FloatBuffer createFloatBuffer(MeshBufferPool pool, Vector3f[] array) {
+        if (pool == null) {
+            return BufferUtils.createFloatBuffer(array);
+        }
+        FloatBuffer result = pool.getFloatBuffer(array.length * 3);
+        for (Vector3f v : array) {
+            result.put(v.x).put(v.y).put(v.z);
+        }
+        result.flip();
+        return result;
+    }
+
+    private static FloatBuffer createFloatBuffer(MeshBufferPool pool, Vector4f[] array) {
+        if (pool == null) {
+            return BufferUtils.createFloatBuffer(array);
+        }
+        FloatBuffer result = pool.getFloatBuffer(array.length * 4);
+        for (Vector4f v : array) {
+            result.put(v.x).put(v.y).put(v.z).put(v.w);
+        }
+        result.flip();
+        return result;
+    }
+
+    private static FloatBuffer createFloatBuffer(MeshBufferPool pool, float[] array) {
+        if (pool == null) {
+            return BufferUtils.createFloatBuffer(array);
+        }
+        FloatBuffer result = pool.getFloatBuffer(array.length);
+        result.put(array).flip();
+        return result;
+    }
+
+    private static ShortBuffer createShortBuffer(MeshBufferPool pool, short[] array) {
+        if (pool == null) {
+            return BufferUtils.createShortBuffer(array);
+        }
+        ShortBuffer result = pool.getShortBuffer(array.length);
+        result.put(array).flip();
+        return result;
+    }
 }
 
 
@@ -40,9 +40,10 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.util.BufferUtils;
+import com.jme3.util.clone.Cloner;
 import com.simsilica.arboreal.LevelOfDetailParameters;
-import com.simsilica.arboreal.Segment;
 import com.simsilica.arboreal.Segment.ConnectionType;
+import com.simsilica.arboreal.SegmentTable;
 import com.simsilica.arboreal.Tree;
 import java.nio.FloatBuffer;
 import java.util.List;
@@ -55,14 +56,74 @@ import java.util.List;
 public class FlatPolyTreeMeshGenerator {
 
     private CurveGenerator curveGen = CurveGenerator.DEFAULT;
+    private MeshBufferPool bufferPool;
+    private TreeBudget budget;
+ 
+    /**
+     *  Sets the pool that the generated meshes get their buffers from or 
+     *  null to allocate new buffers for every mesh.
+     */   
+    public void setBufferPool( MeshBufferPool bufferPool ) {
+        this.bufferPool = bufferPool;
+    }
+    
+    public MeshBufferPool getBufferPool() {
+        return bufferPool;
+    }
+ 
+    /**
+     *  Sets the budget that the generated meshes must fit or null for none.
+     *  A mesh with too many triangles is generated again with fewer rendered 
+     *  levels until it fits.  If it cannot be reduced enough then generateMesh() 
+     *  throws an IllegalArgumentException.
+     */   
+    public void setBudget( TreeBudget budget ) {
+        this.budget = budget;
+    }
+    
+    public TreeBudget getBudget() {
+        return budget;
+    }
     
     public Mesh generateMesh( Tree tree, LevelOfDetailParameters lod, 
                               float yOffset, int uRepeat, float vScale, 
                               List<Vertex> tips ) {
+        return generateMesh(SegmentTable.fromTree(tree), lod, yOffset, uRepeat, vScale, tips);
+    }
+    
+    public Mesh generateMesh( SegmentTable tree, LevelOfDetailParameters lod, 
+                              float yOffset, int uRepeat, float vScale, 
+                              List<Vertex> tips ) {
+        int tipCount = tips == null ? 0 : tips.size();
+        Mesh result = buildMesh(tree, lod, yOffset, uRepeat, vScale, tips);
+        
+        TreeBudget limit = budget;
+        if( limit == null || limit.fits(result) ) {
+            return result;
+        }
+        lod = Cloner.deepClone(lod);
+        do {
+            if( bufferPool != null ) {
+                bufferPool.release(result);
+            }
+            if( tips != null ) {
+                tips.subList(tipCount, tips.size()).clear();
+            }
+            if( !limit.reduceLod(tree, lod) ) {
+                throw new IllegalArgumentException("Unable to fit tree mesh within:" + limit);
+            }
+            result = buildMesh(tree, lod, yOffset, uRepeat, vScale, tips);
+        } while( !limit.fits(result) );
+        return result;
+    }
+    
+    protected Mesh buildMesh( SegmentTable tree, LevelOfDetailParameters lod, 
+                              float yOffset, int uRepeat, float vScale, 
+                              List<Vertex> tips ) {
  
         MeshBuilder mb = new MeshBuilder();
         
-        Segment trunk = tree.getTrunk();        
+        float trunkRadius = tree.getStartRadius(tree.getTrunk());        
         Vector3f center = new Vector3f(0, yOffset, 0);
  
 
@@ -81,10 +142,10 @@ public class FlatPolyTreeMeshGenerator {
         // parms: float x, float y, float z, float u, float v, int group, float epsilon         
         Vertex base1 = mb.createVertex(0, yOffset, 0, 0, 0, 0, -1);
         base1.normal = new Vector3f(0, 1, 0); 
-        base1.weight = -trunk.startRadius;
+        base1.weight = -trunkRadius;
         Vertex base2 = mb.createVertex(0, yOffset, 0, uRepeat * 0.5f, 0, 0, -1);
         base2.normal = base1.normal;
-        base2.weight = trunk.startRadius;
+        base2.weight = trunkRadius;
  
                 
         // Note: we coopt weight for 'size' because MeshBuilder doesn't support
@@ -92,23 +153,26 @@ public class FlatPolyTreeMeshGenerator {
         //       Since we won't be smoothing we can use weight for ourselve and
         //       fix the sizes after mesh creation. 
  
-        for( Segment seg : tree ) {
-            if( seg == null ) {
+        for( int i = 0; i < tree.getTopSegmentCount(); i++ ) {
+            int seg = tree.getTopSegment(i);
+            if( seg == SegmentTable.NONE ) {
                 continue;
             }
             
-            if( seg.isInverted() ) {
-                renderSegment(center, base1, base2, seg, 0, uRepeat, -vScale, lod, 0, mb, null);
+            if( tree.isInverted(seg) ) {
+                renderSegment(center, base1, base2, tree, seg, 0, uRepeat, -vScale, lod, 0, mb, null);
             } else {
-                renderSegment(center, base1, base2, seg, 0, uRepeat, vScale, lod, 0, mb, tips);
+                renderSegment(center, base1, base2, tree, seg, 0, uRepeat, vScale, lod, 0, mb, tips);
             }
         }
  
-        Mesh result = mb.build();
+        MeshBufferPool pool = bufferPool;
+        Mesh result = mb.build(pool);
         
         // Now build the size buffer from the vertexes
         List<Vertex> verts = mb.getVertexes();
-        FloatBuffer sb = BufferUtils.createFloatBuffer(verts.size());
+        FloatBuffer sb = pool == null ? BufferUtils.createFloatBuffer(verts.size()) 
+                                      : pool.getFloatBuffer(verts.size());
         for( Vertex v : verts ) {
             sb.put(v.weight);
         }
@@ -127,24 +191,32 @@ public class FlatPolyTreeMeshGenerator {
         }
     } 
     
-    protected void renderSegment( Vector3f center, Vertex base1, Vertex base2, Segment seg, 
+    protected void renderSegment( Vector3f center, Vertex base1, Vertex base2, 
+                                  SegmentTable tree, int seg, 
                                   float vBase, int uRepeat, float vScale,
                                   LevelOfDetailParameters lod, int depth,  
                                   MeshBuilder mb, List<Vertex> tips ) {
                                   
+        Vector3f dir = tree.getDir(seg, null);
+        float length = tree.getLength(seg);
+        float endRadius = tree.getEndRadius(seg);
+        boolean inverted = tree.isInverted(seg);
+        int first = tree.getFirstChild(seg);
+        int count = tree.getChildCount(seg);
+        
         // Calculate the next center location
         // If we don't render we'll still need to pass it along for the
         // tip and we don't want to create mesh builder vertexes and then
         // not use them.
 
-        Vector3f next = center.add(seg.dir.mult(seg.length));
+        Vector3f next = center.add(dir.mult(length));
         Vertex tip1 = null;
         Vertex tip2 = null;
         
-        float vScaleLocal = vScale * (1 / seg.endRadius);
-        vBase += seg.length * vScaleLocal;
+        float vScaleLocal = vScale * (1 / endRadius);
+        vBase += length * vScaleLocal;
         
-        boolean renderDepth = renderDepth(depth, seg.isInverted(), lod);
+        boolean renderDepth = renderDepth(depth, inverted, lod);
         
         if( renderDepth ) {
             // So... how we render this level is actually dependent on whether we're
@@ -152,10 +224,12 @@ public class FlatPolyTreeMeshGenerator {
             // the normals.
         
             // See if there is an extusion that can define the shared dir
-            Vector3f tipDir = seg.dir;
-            for( Segment child : seg ) {
-                if( child.parentConnection == ConnectionType.Extrude ) {
-                    tipDir = seg.dir.add(child.dir).mult(0.5f).normalizeLocal();
+            Vector3f tipDir = dir;
+            boolean extruded = false;
+            for( int child = first; child < first + count; child++ ) {
+                if( tree.getParentConnection(child) == ConnectionType.Extrude ) {
+                    tipDir = dir.add(tree.getDir(child, null)).mult(0.5f).normalizeLocal();
+                    extruded = true;
                     break;
                 }
             }
@@ -163,20 +237,20 @@ public class FlatPolyTreeMeshGenerator {
             float v = vBase;
  
             Vector3f nextCenter = next;
-            if( tipDir == seg.dir && seg.hasChildren() ) {
+            if( !extruded && count > 0 ) {
                 // Bump the next vertexs out a little bit to make up for
                 // the lack of joining curves.
-                nextCenter = next.add(seg.dir.mult(seg.endRadius));
+                nextCenter = next.add(dir.mult(endRadius));
                 
                 // And v
-                v += vScaleLocal * seg.endRadius;
+                v += vScaleLocal * endRadius;
             }
             
             // Now we can properly define the new tips and add this segment's quad
             tip1 = mb.createVertex(nextCenter.x, nextCenter.y, nextCenter.z, 0, v, 0, -1);
-            tip1.weight = -seg.endRadius;
+            tip1.weight = -endRadius;
             tip2 = mb.createVertex(nextCenter.x, nextCenter.y, nextCenter.z, uRepeat * 0.5f, v, 0, -1);
-            tip2.weight = seg.endRadius;
+            tip2.weight = endRadius;
  
             if( vScale > 0 ) {
                 tip1.normal = tipDir; 
@@ -192,68 +266,70 @@ public class FlatPolyTreeMeshGenerator {
             } 
         }            
  
-        if( !seg.hasChildren() ) {
+        if( count == 0 ) {
         
             if( tips != null ) {            
                 // Add the tip and be done
                 Vertex branchTip = new Vertex(next);
-                branchTip.normal = seg.dir;
+                branchTip.normal = dir;
                 tips.add(branchTip);
             }
             return;
         }
  
         boolean renderNextDepth = renderDepth;
-        if( !renderDepth(depth + 1, seg.isInverted(), lod) ) {
+        if( !renderDepth(depth + 1, inverted, lod) ) {
             renderNextDepth = false;             
         }                    
                 
-        for( Segment child : seg ) {
-            switch( child.parentConnection ) {
+        for( int child = first; child < first + count; child++ ) {
+            switch( tree.getParentConnection(child) ) {
                 case Extrude:
                     // We can just continue directly
-                    renderSegment(next, tip1, tip2, child, vBase, uRepeat, vScale, lod, depth, mb, tips);
+                    renderSegment(next, tip1, tip2, tree, child, vBase, uRepeat, vScale, lod, depth, mb, tips);
                     break;
                 case Abut:
                     throw new UnsupportedOperationException("Abutment not yet supported.");
                 case Curve:
-                    List<CurveStep> steps = curveGen.generateCurve(seg.dir, seg.endRadius,
-                                                                   child.dir, child.startRadius,
+                    Vector3f childDir = tree.getDir(child, null);
+                    float childRadius = tree.getStartRadius(child);
+                    List<CurveStep> steps = curveGen.generateCurve(dir, endRadius,
+                                                                   childDir, childRadius,
                                                                    vBase, vScale);
                     CurveStep last = steps.get(steps.size()-1);
                     Vector3f childCenter = next.add(last.center);
                     
                     // Bump the base back a little
-                    Vector3f baseCenter = childCenter.subtract(child.dir.mult(child.startRadius));
+                    Vector3f baseCenter = childCenter.subtract(childDir.mult(childRadius));
                     
                     float v = vBase + last.v;
                     
                     // Bump it back a little to go with the moved base
-                    float adjustedV = v - vScaleLocal * child.startRadius;
+                    float adjustedV = v - vScaleLocal * childRadius;
  
                     if( !renderNextDepth ) {
                         // Then just push through
-                        renderSegment(childCenter, null, null, child, v, uRepeat, vScale, lod, depth + 1, mb, tips);
+                        renderSegment(childCenter, null, null, tree, child, v, uRepeat, vScale, lod, depth + 1, mb, tips);
                     } else {                    
                         // Create some new bases for this child 
                         Vertex cBase1 = mb.createVertex(baseCenter.x, 
                                                         baseCenter.y, 
                                                         baseCenter.z,
                                                         0, adjustedV, 0, -1);
-                        cBase1.weight = -child.startRadius;
+                        cBase1.weight = -childRadius;
                         Vertex cBase2 = mb.createVertex(baseCenter.x, 
                                                         baseCenter.y, 
                                                         baseCenter.z,
                                                         uRepeat * 0.5f, adjustedV, 0, -1);
-                        cBase2.weight = child.startRadius;
+                        cBase2.weight = childRadius;
                         if( vScale > 0 ) {
-                            cBase1.normal = child.dir;
-                            cBase2.normal = child.dir;
+                            cBase1.normal = childDir;
+                            cBase2.normal = childDir;
                         } else {                                                        
-                            cBase1.normal = child.dir.negate();
+                            cBase1.normal = childDir.negate();
                             cBase2.normal = cBase1.normal;
                         }
-                        renderSegment(childCenter, cBase1, cBase2, child, v, uRepeat, vScale, lod, depth + 1, mb, tips);
+                        renderSegment(childCenter, cBase1, cBase2, tree, child, v, uRepeat, vScale, lod, depth + 1, mb, tips);
                     }                   
                     break;
             }
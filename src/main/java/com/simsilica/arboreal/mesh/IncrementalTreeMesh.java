@@ -0,0 +1,337 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.scene.Mesh;
+import com.simsilica.arboreal.IncrementalTree;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeTemplate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+
+/**
+ *  Keeps a skinned mesh of one level of detail in sync with an IncrementalTree.
+ *  The mesh builder state is kept between updates along with the vertex,
+ *  triangle, and tip ranges of every branch.  When the tree regenerates the
+ *  branches below some depth then only those branches are meshed again and
+ *  patched into the existing geometry.  The resulting mesh is the same as 
+ *  generating it from scratch.
+ *
+ *  <p>The mesh is rebuilt completely when the tree was fully regenerated, when
+ *  this mesh missed an update of the tree, or when the level of detail or
+ *  the y offset changed.</p>
+ */
+public class IncrementalTreeMesh {
+
+    private final IncrementalTree tree;
+    private final LevelOfDetailParameters lod;
+    private final Recorder generator = new Recorder();
+    private long lodFingerprint;
+    private float yOffset;
+    private int version;
+    private MeshBuilder mb;
+    private List<Vertex> tips;
+    private List<BranchRecord> records;
+    private Mesh mesh;
+    private boolean patched;
+    
+    public IncrementalTreeMesh( IncrementalTree tree, LevelOfDetailParameters lod ) {
+        this.tree = tree;
+        this.lod = lod;
+        rebuild();
+    }
+ 
+    public IncrementalTree getTree() {
+        return tree;
+    }
+    
+    public LevelOfDetailParameters getLod() {
+        return lod;
+    }
+    
+    public Mesh getMesh() {
+        return mesh;
+    }
+ 
+    /**
+     *  Returns the branch tips that can be used to generate the leaves.
+     */   
+    public List<Vertex> getTips() {
+        return tips;
+    }
+ 
+    /**
+     *  Returns true if the last update patched the mesh instead of
+     *  rebuilding it.
+     */   
+    public boolean isPatched() {
+        return patched;
+    }
+ 
+    /**
+     *  Brings the mesh up to date with the tree and returns true if the 
+     *  mesh changed.  This should be called after every IncrementalTree.update()
+     *  that returned true to be able to patch the mesh.
+     */   
+    public boolean update() {
+        boolean settingsChanged = lod.getFingerprint() != lodFingerprint 
+                                  || tree.getTreeParameters().getYOffset() != yOffset;
+        if( tree.getVersion() == version && !settingsChanged ) {
+            return false;
+        }
+        if( tree.getVersion() != version + 1 || tree.isFullyRegenerated() || settingsChanged ) {
+            rebuild();
+        } else {
+            patch();
+        }
+        return true;
+    }
+ 
+    /**
+     *  Generates the whole mesh from scratch.
+     */   
+    public void rebuild() {
+        TreeTemplate template = tree.getTemplate();
+        lodFingerprint = lod.getFingerprint();
+        yOffset = tree.getTreeParameters().getYOffset();
+        version = tree.getVersion();
+        
+        tips = new ArrayList<Vertex>();
+        records = new ArrayList<BranchRecord>();
+        generator.records = records;
+        mb = generator.generateGeometry(tree.getTable(), lod, yOffset, 
+                                        template.getTextureURepeat(), 
+                                        template.getTextureVScale(), tips);
+        mesh = mb.build();
+        patched = false;
+    }
+ 
+    /**
+     *  Meshes the branches at the tree's changed depths again and patches
+     *  them into the existing geometry.
+     */
+    protected void patch() {
+        SegmentTable table = tree.getTable();
+        int branchDepth = tree.getChangedBranchDepth();
+        int rootDepth = tree.getChangedRootDepth();
+        
+        List<BranchRecord> newRecords = new ArrayList<BranchRecord>(records.size());
+        List<MeshBuilder.Patch> patches = new ArrayList<MeshBuilder.Patch>();
+        List<Vertex> newTips = new ArrayList<Vertex>(tips.size());
+        
+        // Kept records whose ranges may still grow or shrink because
+        // they contain replaced branches
+        Deque<BranchRecord> open = new ArrayDeque<BranchRecord>();
+        int vertexDelta = 0;
+        int triangleDelta = 0;
+        int tipDelta = 0;
+        int tipCopied = 0;
+        
+        for( int i = 0; i < records.size(); ) {
+            BranchRecord r = records.get(i);
+            while( !open.isEmpty() && !open.peek().contains(r) ) {
+                open.pop().shiftEnds(vertexDelta, triangleDelta, tipDelta);
+            }
+            
+            int changedDepth = r.roots ? rootDepth : branchDepth;
+            if( r.depth < changedDepth ) {
+                r.shiftStarts(vertexDelta, triangleDelta, tipDelta);
+                open.push(r);
+                newRecords.add(r);
+                i++;
+                continue;
+            }
+ 
+            // Mesh the regenerated branch into its own builder, recording
+            // it and its children again
+            MeshBuilder sub = new MeshBuilder();
+            List<Vertex> subTips = r.hasTips() ? new ArrayList<Vertex>() : null;
+            List<BranchRecord> replayed = new ArrayList<BranchRecord>();
+            generator.replay(r, table, lod, sub, subTips, replayed);
+            
+            patches.add(new MeshBuilder.Patch(r.vertexStart, r.vertexEnd, 
+                                              r.triangleStart, r.triangleEnd, sub));
+            for( BranchRecord n : replayed ) {
+                n.shiftStarts(r.vertexStart + vertexDelta, r.triangleStart + triangleDelta, 
+                              r.tipStart + tipDelta);
+                n.shiftEnds(r.vertexStart + vertexDelta, r.triangleStart + triangleDelta, 
+                            r.tipStart + tipDelta);
+                newRecords.add(n);
+            }
+            if( subTips != null ) {
+                newTips.addAll(tips.subList(tipCopied, r.tipStart));
+                newTips.addAll(subTips);
+                tipCopied = r.tipEnd;
+                tipDelta += subTips.size() - (r.tipEnd - r.tipStart);
+            }
+            vertexDelta += sub.getVertexCount() - (r.vertexEnd - r.vertexStart);
+            triangleDelta += sub.getTriangleCount() - (r.triangleEnd - r.triangleStart);
+            
+            // Skip the old children of the replaced branch
+            i++;
+            while( i < records.size() && r.contains(records.get(i)) ) {
+                i++;
+            }
+        }
+        while( !open.isEmpty() ) {
+            open.pop().shiftEnds(vertexDelta, triangleDelta, tipDelta);
+        }
+        newTips.addAll(tips.subList(tipCopied, tips.size()));
+        
+        mb.patch(patches, true);
+        mesh = mb.build();
+        records = newRecords;
+        tips = newTips;
+        version = tree.getVersion();
+        patched = true;
+    }
+ 
+    /**
+     *  Records the inputs and mesh ranges of every curved branch as it is
+     *  generated.
+     */   
+    private static class Recorder extends SkinnedTreeMeshGenerator {
+        private List<BranchRecord> records;
+        private boolean roots;
+ 
+        public void replay( BranchRecord r, SegmentTable table, LevelOfDetailParameters lod, 
+                            MeshBuilder mb, List<Vertex> tips, List<BranchRecord> target ) {
+            this.records = target;
+            this.roots = r.roots;
+            Tip base;
+            if( r.parent.renderNextDepth ) {
+                // The base loop stays in the builder that is patched
+                base = new Tip(mb.borrowLoop(r.base));
+            } else {
+                base = new Tip(r.source.clone());
+            }
+            addCurvedBranch(base, r.parent, table, r.segment, lod, mb, tips);
+        }
+ 
+        @Override
+        protected void addBranches( Tip base, SegmentTable tree, int seg, 
+                                    float vBase, int uRepeat, float vScale,
+                                    LevelOfDetailParameters lod, int depth,  
+                                    LoopBuilder mb, List<Vertex> tips ) {
+            if( depth == 0 && tree.getParent(seg) == SegmentTable.NONE ) {
+                roots = seg == tree.getRoots();
+            }
+            super.addBranches(base, tree, seg, vBase, uRepeat, vScale, lod, depth, mb, tips);
+        }
+        
+        @Override
+        protected void addCurvedBranch( Tip base, Fork parent, SegmentTable tree, int seg, 
+                                        LevelOfDetailParameters lod, 
+                                        LoopBuilder mb, List<Vertex> tips ) {
+            BranchRecord r = new BranchRecord();
+            r.roots = roots;
+            r.segment = seg;
+            r.depth = parent.depth + 1;
+            r.parent = new Fork(parent);
+            if( parent.renderNextDepth ) {
+                // The recorder only generates into MeshBuilders.  The vertexes
+                // are kept instead of the handles which change when patching.
+                r.base = ((MeshBuilder)mb).getLoop(base.loop);
+            } else {
+                // Keep an untouched copy as the branch moves its own
+                r.source = base.center.clone();
+            }
+            r.vertexStart = mb.getVertexCount();
+            r.triangleStart = mb.getTriangleCount();
+            r.tipStart = tips == null ? -1 : tips.size();
+            records.add(r);
+            
+            super.addCurvedBranch(base, parent, tree, seg, lod, mb, tips);
+                                  
+            r.vertexEnd = mb.getVertexCount();
+            r.triangleEnd = mb.getTriangleCount();
+            r.tipEnd = tips == null ? -1 : tips.size();
+        }
+    }
+ 
+    /**
+     *  The inputs of one curved branch and the ranges it occupies in the
+     *  mesh builder and the tips.
+     */   
+    private static class BranchRecord {
+        boolean roots;
+        int segment;
+        int depth;
+        List<Vertex> base;
+        Vertex source;
+        // The fork that the branch curves out of, without its tip
+        SkinnedTreeMeshGenerator.Fork parent;
+        int vertexStart;
+        int vertexEnd;
+        int triangleStart;
+        int triangleEnd;
+        int tipStart;
+        int tipEnd;
+ 
+        public boolean hasTips() {
+            return tipStart >= 0;
+        }
+ 
+        /**
+         *  Returns true if the other record was recorded while this one
+         *  was being generated.  Only valid for records that follow this one.
+         */       
+        public boolean contains( BranchRecord other ) {
+            return other.roots == roots && other.depth > depth;
+        }
+        
+        public void shiftStarts( int vertexDelta, int triangleDelta, int tipDelta ) {
+            vertexStart += vertexDelta;
+            triangleStart += triangleDelta;
+            if( hasTips() ) {
+                tipStart += tipDelta;
+            }
+        }
+        
+        public void shiftEnds( int vertexDelta, int triangleDelta, int tipDelta ) {
+            vertexEnd += vertexDelta;
+            triangleEnd += triangleDelta;
+            if( hasTips() ) {
+                tipEnd += tipDelta;
+            }
+        }
+    }
+}
@@ -52,8 +52,24 @@ import java.util.List;
  */
 public class LegacyCurveGenerator implements CurveGenerator {
 
-    private float minAngle = FastMath.DEG_TO_RAD * 15;
-    private float minSlope = 5; // 5:1 slope 
+    /**
+     *  The most that one corner of a curve turns.  Segment bounds and 
+     *  TreeEstimate count curve corners with the same angle.
+     */
+    public static final float CORNER_ANGLE = FastMath.DEG_TO_RAD * 15;
+    
+    /**
+     *  The minimum length to radius change of a curve corner, 5:1.
+     */
+    public static final float MIN_SLOPE = 5;
+    
+    /**
+     *  Scales the distance between corners for the angle they turn.
+     */
+    public static final float CORNER_DISTANCE = 1.4f; // magic number
+ 
+    private float minAngle = CORNER_ANGLE;
+    private float minSlope = MIN_SLOPE; 
 
     @Override
     public List<CurveStep> generateCurve( Vector3f startDir, float startRadius,
@@ -110,7 +126,7 @@ public class LegacyCurveGenerator implements CurveGenerator {
             // figure out a distance.  This is one of the parts that
             // needs to be fixed as it's kind of trial and error.
             float a = (i + 1) * angleDelta;
-            float dist = startRadius * FastMath.sin(angleDelta) * 1.4f; // magic number                        
+            float dist = startRadius * FastMath.sin(angleDelta) * CORNER_DISTANCE;                        
             dist = Math.max(dist, minDist);
             
             // Calculate the direction from the interpolated 
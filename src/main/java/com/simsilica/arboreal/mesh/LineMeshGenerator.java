@@ -40,7 +40,7 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.VertexBuffer;
 import com.jme3.util.BufferUtils;
-import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.SegmentTable;
 import com.simsilica.arboreal.Tree;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
@@ -56,15 +56,20 @@ import java.util.List;
 public class LineMeshGenerator {
 
     public Mesh generateMesh( Tree tree ) {
+        return generateMesh(SegmentTable.fromTree(tree));
+    }
+    
+    public Mesh generateMesh( SegmentTable tree ) {
     
         List<Vector3f> points = new ArrayList<Vector3f>();
  
         Vector3f base = new Vector3f();
-        for( Segment seg : tree ) {
-            if( seg == null ) {
+        for( int i = 0; i < tree.getTopSegmentCount(); i++ ) {
+            int seg = tree.getTopSegment(i);
+            if( seg == SegmentTable.NONE ) {
                 continue;
             }       
-            addBranches(base, seg, points);
+            addBranches(base, tree, seg, points);
         }
         
         Mesh mesh = new Mesh();           
@@ -76,14 +81,17 @@ public class LineMeshGenerator {
         return mesh;                
     }
     
-    protected void addBranches( Vector3f start, Segment seg, List<Vector3f> points ) {
+    protected void addBranches( Vector3f start, SegmentTable tree, int seg, List<Vector3f> points ) {
         
         points.add(start);
-        Vector3f end = start.add(seg.dir.mult(seg.length));
+        Vector3f end = start.add(tree.getDirX(seg) * tree.getLength(seg),
+                                 tree.getDirY(seg) * tree.getLength(seg),
+                                 tree.getDirZ(seg) * tree.getLength(seg));
         points.add(end);
         
-        for( Segment child : seg ) {
-            addBranches(end, child, points);
+        int first = tree.getFirstChild(seg);
+        for( int child = first; child < first + tree.getChildCount(seg); child++ ) {
+            addBranches(end, tree, child, points);
         }
     }
 }
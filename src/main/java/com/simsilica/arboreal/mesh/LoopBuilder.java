@@ -0,0 +1,140 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import java.util.BitSet;
+
+
+/**
+ *  The loop and extrusion operations that SkinnedTreeMeshGenerator builds
+ *  its geometry with.  Vertexes are addressed by int handle and loops are 
+ *  int arrays of handles.  MeshBuilder and PackedMeshBuilder both implement 
+ *  it so that the generator walks the tree the same way for either one.
+ */
+public interface LoopBuilder {
+
+    /**
+     *  Creates a new vertex loop with the specified center, orientation, and radius.
+     *  See MeshBuilder.createLoop().
+     */
+    public int[] createLoop( Vector3f center, Quaternion orientation, float radius,
+                             int segments, float twist );
+
+    /**
+     *  Creates a new vertex loop with the specified center, axis, and radius.
+     *  See MeshBuilder.createLoop().
+     */
+    public int[] createLoop( Vector3f center, Vector3f axis, float radius,
+                             int segments, float twist );
+
+    /**
+     *  Extrudes a vertex loop out to a new connected loop and returns the
+     *  new loop.  See MeshBuilder.extrude().
+     */
+    public int[] extrude( int[] loop, Vector3f dir, float distance, 
+                          int segments, float radius, float twist );
+
+    /**
+     *  Extrudes a vertex loop out to a new connected loop and returns the
+     *  new loop.  The offset is applied after the loops are connected.  
+     *  See MeshBuilder.extrude().
+     */
+    public int[] extrude( int[] loop, Vector3f dir, float distance, Vector3f offset, 
+                          int segments, float radius, float twist );
+
+    /**
+     *  Closes off the loop by connecting it to a tiny loop at its center 
+     *  and returns the tiny loop.
+     */
+    public int[] cap( int[] loop, Vector3f dir );
+
+    /**
+     *  Sets the texture coordinates of a vertex loop.  See MeshBuilder.textureLoop().
+     */
+    public void textureLoop( int[] loop, Vector2f base, Vector2f range );
+
+    /**
+     *  Points the tangent of each loop vertex at the next vertex in the loop,
+     *  or away from it if invert is true.  The last vertex gets the tangent
+     *  of the first.
+     */
+    public void tangentLoop( int[] loop, boolean invert );
+
+    public Vector3f findCenter( int[] loop, Vector3f store );
+
+    public Vector3f getPosition( int vertex, Vector3f store );
+ 
+    /**
+     *  Returns the vertex tangent or null if it has not been set.
+     */   
+    public Vector3f getTangent( int vertex, Vector3f store );
+
+    /**
+     *  Returns the vertex texture coordinate.  A MeshBuilder returns null
+     *  for a vertex that has none.
+     */   
+    public Vector2f getUv( int vertex, Vector2f store );
+
+    public int getVertexCount();
+
+    public int getTriangleCount();
+
+    /**
+     *  Returns the vertex handle at the specified corner of the specified
+     *  triangle.
+     */   
+    public int getTriangleVertex( int triangle, int corner );
+
+    /**
+     *  Removes the triangles whose indexes are set in the specified bit set
+     *  along with the vertexes that only they used and returns the number 
+     *  of triangles that were removed.  The remaining vertexes get new handles.
+     *  See MeshBuilder.removeTriangles().
+     */   
+    public int removeTriangles( BitSet remove );
+
+    public void smooth();
+ 
+    /**
+     *  Builds the mesh with buffers from the specified pool or new buffers
+     *  if the pool is null.
+     */   
+    public Mesh build( MeshBufferPool pool );
+}
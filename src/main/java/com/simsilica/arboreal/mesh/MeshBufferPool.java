@@ -0,0 +1,236 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ *  Recycles the direct buffers of generated meshes so that streaming 
+ *  trees in and out does not leave a trail of direct memory for the
+ *  garbage collector to eventually free.  Buffers are handed out as 
+ *  exactly sized views of pooled native order blocks whose sizes are 
+ *  powers of two.  When a mesh is no longer needed, release() puts its
+ *  blocks back in the pool for the next mesh to reuse.
+ *
+ *  <p>Releasing is mandatory.  The pool keeps a strong reference to the
+ *  block behind every buffer it hands out until that buffer is released, 
+ *  so the direct memory of a pooled mesh that is dropped without calling 
+ *  release() stays allocated for as long as the pool is reachable.
+ *  getOutstandingBytes() shows how much is currently held that way.  
+ *  Code that cannot guarantee the release of its meshes should not
+ *  use a pool.</p>
+ *
+ *  <p>Subclasses can override allocate() to supply the blocks from 
+ *  somewhere else.  The pool is thread safe.</p>
+ */
+public class MeshBufferPool {
+
+    private static final int MIN_BITS = 6;
+    private static final int MAX_BITS = 30;
+
+    private final long maxPooledBytes;
+    private final List<ArrayDeque<ByteBuffer>> free = new ArrayList<ArrayDeque<ByteBuffer>>();
+    
+    // Keyed by identity because buffer equals() compares contents.  
+    // These are strong references, see the class comment.
+    private final Map<Buffer, ByteBuffer> outstanding = new IdentityHashMap<Buffer, ByteBuffer>();
+    private long pooledBytes;
+    private long outstandingBytes;
+    private long allocations;
+    private long reuses;
+ 
+    /**
+     *  Creates a pool that keeps up to the specified number of bytes of
+     *  released blocks.  Blocks released beyond that are left to the
+     *  garbage collector.
+     */   
+    public MeshBufferPool( long maxPooledBytes ) {
+        this.maxPooledBytes = maxPooledBytes;
+        for( int i = 0; i <= MAX_BITS; i++ ) {
+            free.add(new ArrayDeque<ByteBuffer>());
+        }
+    }
+    
+    public FloatBuffer getFloatBuffer( int size ) {
+        synchronized( this ) {
+            ByteBuffer block = acquire(size * 4);
+            FloatBuffer result = block.asFloatBuffer();
+            outstanding.put(result, block);
+            return result;
+        }
+    }
+    
+    public ShortBuffer getShortBuffer( int size ) {
+        synchronized( this ) {
+            ByteBuffer block = acquire(size * 2);
+            ShortBuffer result = block.asShortBuffer();
+            outstanding.put(result, block);
+            return result;
+        }
+    }
+    
+    public IntBuffer getIntBuffer( int size ) {
+        synchronized( this ) {
+            ByteBuffer block = acquire(size * 4);
+            IntBuffer result = block.asIntBuffer();
+            outstanding.put(result, block);
+            return result;
+        }
+    }
+    
+    private ByteBuffer acquire( int bytes ) {
+        int bits = Math.max(MIN_BITS, 32 - Integer.numberOfLeadingZeros(Math.max(1, bytes) - 1));
+        if( bits > MAX_BITS ) {
+            throw new IllegalArgumentException("Buffer too large:" + bytes);
+        }
+        ByteBuffer block = free.get(bits).poll();
+        if( block == null ) {
+            block = allocate(1 << bits);
+            allocations++;
+        } else {
+            pooledBytes -= block.capacity();
+            reuses++;
+        }
+        outstandingBytes += block.capacity();
+        block.clear();
+        block.limit(bytes);
+        return block;
+    }
+ 
+    /**
+     *  Allocates a new block with the specified power of two size.
+     */   
+    protected ByteBuffer allocate( int bytes ) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+ 
+    /**
+     *  Returns the specified buffer to the pool.  The buffer must not
+     *  be used afterwards.  Returns false if the buffer did not come from
+     *  this pool or was already released.
+     */   
+    public synchronized boolean release( Buffer buffer ) {
+        ByteBuffer block = outstanding.remove(buffer);
+        if( block == null ) {
+            return false;
+        }
+        outstandingBytes -= block.capacity();
+        if( pooledBytes + block.capacity() <= maxPooledBytes ) {
+            int bits = Integer.numberOfTrailingZeros(block.capacity());
+            free.get(bits).push(block);
+            pooledBytes += block.capacity();
+        }
+        return true;
+    }
+ 
+    /**
+     *  Releases all of the mesh's buffers that came from this pool and 
+     *  clears them from the mesh.  The mesh must no longer be rendered.
+     */   
+    public void release( Mesh mesh ) {
+        if( mesh == null ) {
+            return;
+        }
+        List<VertexBuffer> buffers = new ArrayList<VertexBuffer>(mesh.getBufferList());
+        for( VertexBuffer vb : buffers ) {
+            if( vb.getData() != null && release(vb.getData()) ) {
+                mesh.clearBuffer(vb.getBufferType());
+            }
+        }
+    }
+ 
+    /**
+     *  Releases the pooled buffers of all of the tree and leaf meshes.
+     */   
+    public void release( TreeMeshes meshes ) {
+        for( int i = 0; i < meshes.getLodCount(); i++ ) {
+            release(meshes.getTreeMesh(i));
+            release(meshes.getLeafMesh(i));
+        }
+    }
+ 
+    /**
+     *  Returns the bytes of released blocks that are waiting to be reused.
+     */   
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+ 
+    /**
+     *  Returns the bytes of blocks that are currently in use, including
+     *  the blocks of any meshes that were dropped without being released.
+     */   
+    public synchronized long getOutstandingBytes() {
+        return outstandingBytes;
+    }
+    
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+    
+    public synchronized long getReuses() {
+        return reuses;
+    }
+ 
+    /**
+     *  Drops all released blocks that are waiting to be reused.
+     */   
+    public synchronized void trim() {
+        for( ArrayDeque<ByteBuffer> list : free ) {
+            list.clear();
+        }
+        pooledBytes = 0;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "MeshBufferPool[pooled=" + pooledBytes + ", outstanding=" + outstandingBytes
+                + ", allocations=" + allocations + ", reuses=" + reuses + "]";
+    }
+}
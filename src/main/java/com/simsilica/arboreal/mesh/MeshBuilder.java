@@ -48,6 +48,9 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,7 +61,7 @@ import org.slf4j.LoggerFactory;
  *
  *  @author    Paul Speed
  */
-public class MeshBuilder {
+public class MeshBuilder implements LoopBuilder {
 
     static Logger log = LoggerFactory.getLogger(MeshBuilder.class);
 
@@ -67,8 +70,13 @@ public class MeshBuilder {
 
     private List<Vertex> verts = new ArrayList<Vertex>();
     private List<Triangle> triangles = new ArrayList<Triangle>();
-    private Map<Vertex, NormalLinks> linksMap = new HashMap<Vertex, NormalLinks>();
-    private List<NormalLinks> links = new ArrayList<NormalLinks>(); 
+    
+    // The normal links are a disjoint set forest over the vertex indexes
+    private int[] linkParents = new int[64];
+    private byte[] linkRanks = new byte[64];
+    private int linkCount;
+    private WeldIndex welds;
+    private List<Vertex> borrowed;
     
     public MeshBuilder() {
     }
@@ -82,6 +90,10 @@ public class MeshBuilder {
         result.index = verts.size();
         result.group = group;
         verts.add(result);
+        addLinkSlot(result.index);
+        if( welds != null ) {
+            welds.add(result);
+        }
         return result;
     }
 
@@ -109,13 +121,9 @@ public class MeshBuilder {
     
     public Vertex createVertex( float x, float y, float z, int group, float epsilon ) {
         // See if we've already got one
-        for( Vertex vert : verts ) {
-            if( group >= 0 && vert.group != group ) {
-                continue;
-            }
-            if( vert.isSame(x, y, z, epsilon) ) {
-                return vert;
-            }
+        Vertex vert = getWeldIndex(epsilon).find(verts, x, y, z, 0, 0, false, group, epsilon);
+        if( vert != null ) {
+            return vert;
         }
         return newVertex(x, y, z, group);
     }
@@ -126,16 +134,37 @@ public class MeshBuilder {
     
     public Vertex createVertex( float x, float y, float z, float u, float v, int group, float epsilon ) {
         // See if we've already got one
-        for( Vertex vert : verts ) {
-            if( group >= 0 && vert.group != group ) {
-                continue;
-            }
-            if( vert.isSame(x, y, z, u, v, epsilon) ) {
-                return vert;
-            }
+        Vertex vert = getWeldIndex(epsilon).find(verts, x, y, z, u, v, true, group, epsilon);
+        if( vert != null ) {
+            return vert;
         }
         return newVertex(x, y, z, u, v, group);
     }
+ 
+    /**
+     *  Returns the spatial index used to find existing vertexes in 
+     *  createVertex(), building it if needed.  The cells are sized from
+     *  the epsilon so that a search only has to visit a few of them.
+     */   
+    private WeldIndex getWeldIndex( float epsilon ) {
+        if( welds == null || epsilon > welds.cellSize * 2 ) {
+            welds = new WeldIndex(Math.max(epsilon, DEFAULT_EPSILON) * 2);
+            for( Vertex vert : verts ) {
+                welds.add(vert);
+            }
+        }
+        return welds;
+    }
+ 
+    /**
+     *  Rebuilds the index that createVertex() uses to find existing vertexes.
+     *  This must be called if vertex positions are changed directly and 
+     *  createVertex() is called afterwards.  Positions moved by the builder's 
+     *  own methods are handled automatically.
+     */
+    public void reindexVertexes() {
+        welds = null;
+    }
 
     public void addTriangle( Vertex v1, Vertex v2, Vertex v3 ) {
         triangles.add(new Triangle(v1, v2, v3));
@@ -146,43 +175,149 @@ public class MeshBuilder {
      *  share the same smooth normal in smoothing calculations.
      */
     public void linkNormals( Vertex v1, Vertex v2 ) {
-        NormalLinks nl1 = linksMap.get(v1);
-        NormalLinks nl2 = linksMap.get(v2);
-        if( nl1 == nl2 && nl1 != null ) {
+        int root1 = findLink(v1.index);
+        int root2 = findLink(v2.index);
+        if( root1 == root2 ) {
             return;  // already linked
         }
         
-        if( nl1 != null && nl2 != null ) {
-            // Need to merge them
-            nl1.set.addAll(nl2.set);
-            
-            // Then let all of the nl2 links know they have a new
-            // links set.
-            for( Vertex v : nl2.set ) {
-                linksMap.put(v, nl1);
-            }
-            
-            // Remove the old nl2 from the main list
-            links.remove(nl2);
-            return;            
-        }
-        
-        if( nl1 != null ) {
-            // v2 is the new one
-            nl1.set.add(v2);
-            linksMap.put(v2, nl1);
-        } else if( nl2 != null ) {
-            // v1 is the new one
-            nl2.set.add(v1);
-            linksMap.put(v1, nl2);
+        // Union by rank keeps the trees shallow
+        if( linkRanks[root1] < linkRanks[root2] ) {
+            linkParents[root1] = root2;
+        } else if( linkRanks[root1] > linkRanks[root2] ) {
+            linkParents[root2] = root1;
         } else {
-            // Never linked before
-            NormalLinks nl = new NormalLinks();
-            nl.set.add(v1);
-            nl.set.add(v2);
-            linksMap.put(v1, nl);
-            linksMap.put(v2, nl);
-            links.add(nl);
+            linkParents[root2] = root1;
+            linkRanks[root1]++;
+        }
+        linkCount++;
+    }
+ 
+    /**
+     *  Returns the index of the root vertex of the normal links that
+     *  the specified vertex index belongs to.
+     */   
+    private int findLink( int index ) {
+        int root = index;
+        while( linkParents[root] != root ) {
+            root = linkParents[root];
+        }
+        // Path compression
+        while( linkParents[index] != root ) {
+            int next = linkParents[index];
+            linkParents[index] = root;
+            index = next;
+        }
+        return root;
+    }
+    
+    private void addLinkSlot( int index ) {
+        if( index >= linkParents.length ) {
+            int size = Math.max(index + 1, linkParents.length * 2);
+            linkParents = Arrays.copyOf(linkParents, size);
+            linkRanks = Arrays.copyOf(linkRanks, size);
+        }
+        linkParents[index] = index;
+        linkRanks[index] = 0;
+    }
+ 
+    /**
+     *  Fills the map with the root vertex of every vertex that is linked 
+     *  to at least one other vertex.  This must be called while the 
+     *  vertex indexes are still current.
+     */   
+    private void collectLinks( Map<Vertex, Vertex> roots ) {
+        if( linkCount == 0 ) {
+            return;
+        }
+        for( int i = 0; i < verts.size(); i++ ) {
+            int root = findLink(i);
+            if( root != i ) {
+                Vertex rootVert = verts.get(root);
+                roots.put(verts.get(i), rootVert);
+                roots.put(rootVert, rootVert);
+            }
+        }
+    }
+ 
+    /**
+     *  Rebuilds the normal links for the current, renumbered vertexes 
+     *  from the roots collected before renumbering.  Vertexes that were 
+     *  removed simply drop out of their link sets.
+     */   
+    private void relink( Map<Vertex, Vertex> roots ) {
+        linkCount = 0;
+        for( int i = 0; i < verts.size(); i++ ) {
+            addLinkSlot(i);
+        }
+        if( roots.isEmpty() ) {
+            return;
+        }
+        Map<Vertex, Vertex> firsts = new HashMap<Vertex, Vertex>();
+        for( Vertex v : verts ) {
+            Vertex root = roots.get(v);
+            if( root == null ) {
+                continue;
+            }
+            Vertex first = firsts.get(root);
+            if( first == null ) {
+                firsts.put(root, v);
+            } else {
+                linkNormals(first, v);
+            }
+        }
+    }
+ 
+    /**
+     *  Gives every linked vertex the sum of the normals and weights of
+     *  its link set.  If dirty is not null then only the sets of the dirty 
+     *  vertexes are combined.
+     */   
+    private void combineLinks( Set<Vertex> dirty ) {
+        if( linkCount == 0 ) {
+            return;
+        }
+        // Accumulate each set into its root...
+        int size = verts.size();
+        for( int i = 0; i < size; i++ ) {
+            int root = findLink(i);
+            if( root == i ) {
+                continue;
+            }
+            Vertex rootVert = verts.get(root);
+            if( dirty != null && !dirty.contains(rootVert) ) {
+                continue;
+            }
+            Vertex vert = verts.get(i);
+            if( vert.normal != null ) {
+                if( rootVert.normal == null ) {
+                    rootVert.normal = vert.normal.clone();
+                } else {
+                    rootVert.normal.addLocal(vert.normal);
+                }
+            }
+            rootVert.weight += vert.weight;
+        }
+        
+        // ...then apply them back
+        for( int i = 0; i < size; i++ ) {
+            int root = linkParents[i];
+            if( root == i ) {
+                continue;
+            }
+            Vertex rootVert = verts.get(root);
+            if( dirty != null && !dirty.contains(rootVert) ) {
+                continue;
+            }
+            Vertex vert = verts.get(i);
+            if( rootVert.normal != null ) {
+                if( vert.normal == null ) {
+                    vert.normal = rootVert.normal.clone();
+                } else {
+                    vert.normal.set(rootVert.normal);
+                }
+            }
+            vert.weight = rootVert.weight;
         }
     }
  
@@ -192,6 +327,7 @@ public class MeshBuilder {
      *  linked vertex.  The weighting is calculated based on the
      *  angle between adjacent edges.
      */
+    @Override
     public void smooth() {
         for( Vertex vert : verts ) {
             if( vert.weight != -1 ) {
@@ -225,9 +361,7 @@ public class MeshBuilder {
         }
         
         // Combine any linkages
-        for( NormalLinks nl : links ) {
-            nl.combineNormals();
-        }
+        combineLinks(null);
         
         // Now average them
         for( Vertex vert : verts ) {
@@ -239,6 +373,250 @@ public class MeshBuilder {
         }
     }
  
+    /**
+     *  Smooths the vertex normals like smooth() but splits the work into 
+     *  the specified number of tasks that are run on the executor.  Each 
+     *  task accumulates the weighted triangle normals of its share of the 
+     *  triangles into its own primitive arrays which are then summed per 
+     *  vertex, also in parallel.  The results are the same as smooth() 
+     *  within float rounding.  This is only worth it for large meshes.
+     *  If the executor is null then this is the same as smooth().
+     */
+    public void smooth( Executor executor, int taskCount ) {
+        int triangleCount = triangles.size();
+        taskCount = Math.min(taskCount, triangleCount);
+        if( executor == null || taskCount <= 1 ) {
+            smooth();
+            return;
+        }
+ 
+        // Flatten everything the tasks need to read into arrays
+        int vertCount = verts.size();
+        float[] positions = new float[vertCount * 3];
+        boolean[] skip = new boolean[vertCount];
+        for( int i = 0; i < vertCount; i++ ) {
+            Vertex vert = verts.get(i);
+            positions[i * 3] = vert.pos.x;
+            positions[i * 3 + 1] = vert.pos.y;
+            positions[i * 3 + 2] = vert.pos.z;
+            if( vert.weight == -1 ) {
+                skip[i] = true;
+            } else {
+                vert.weight = 0;
+            }
+        }
+        int[] indexes = new int[triangleCount * 3];
+        for( int i = 0; i < triangleCount; i++ ) {
+            Triangle tri = triangles.get(i);
+            indexes[i * 3] = tri.v1.index;
+            indexes[i * 3 + 1] = tri.v2.index;
+            indexes[i * 3 + 2] = tri.v3.index;
+        }
+ 
+        AccumulateTask[] accumulators = new AccumulateTask[taskCount];
+        for( int i = 0; i < taskCount; i++ ) {
+            accumulators[i] = new AccumulateTask(positions, indexes, skip, 
+                                                 (int)((long)triangleCount * i / taskCount),
+                                                 (int)((long)triangleCount * (i + 1) / taskCount));
+        }
+        runAll(executor, accumulators);
+ 
+        Runnable[] reducers = new Runnable[taskCount];
+        for( int i = 0; i < taskCount; i++ ) {
+            reducers[i] = new ReduceTask(accumulators, skip,
+                                         (int)((long)vertCount * i / taskCount),
+                                         (int)((long)vertCount * (i + 1) / taskCount));
+        }
+        runAll(executor, reducers);
+        
+        // Combine any linkages
+        combineLinks(null);
+        
+        Runnable[] normalizers = new Runnable[taskCount];
+        for( int i = 0; i < taskCount; i++ ) {
+            normalizers[i] = new NormalizeTask((int)((long)vertCount * i / taskCount),
+                                               (int)((long)vertCount * (i + 1) / taskCount));
+        }
+        runAll(executor, normalizers);
+    }
+ 
+    private static void runAll( Executor executor, Runnable[] tasks ) {
+        List<FutureTask<Void>> futures = new ArrayList<FutureTask<Void>>(tasks.length);
+        for( Runnable task : tasks ) {
+            FutureTask<Void> future = new FutureTask<Void>(task, null);
+            executor.execute(future);
+            futures.add(future);
+        }
+        for( FutureTask<Void> future : futures ) {
+            try {
+                future.get();
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for smoothing", e);
+            } catch( ExecutionException e ) {
+                throw new RuntimeException("Error smoothing normals", e.getCause());
+            }
+        }
+    }
+    
+    /**
+     *  Accumulates the angle weighted normals of a range of triangles.  The
+     *  math is the same as Triangle.calculateNormal() and Triangle.angle().
+     */
+    private static class AccumulateTask implements Runnable {
+        private final float[] positions;
+        private final int[] indexes;
+        private final boolean[] skip;
+        private final int start;
+        private final int end;
+        private float[] normals;
+        private float[] weights;
+        private boolean[] used;
+        private final float[] normal = new float[3];
+        private final float[] edge1 = new float[3];
+        private final float[] edge2 = new float[3];
+        
+        public AccumulateTask( float[] positions, int[] indexes, boolean[] skip, int start, int end ) {
+            this.positions = positions;
+            this.indexes = indexes;
+            this.skip = skip;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public void run() {
+            int vertCount = skip.length;
+            normals = new float[vertCount * 3];
+            weights = new float[vertCount];
+            used = new boolean[vertCount];
+            for( int i = start; i < end; i++ ) {
+                int v1 = indexes[i * 3];
+                int v2 = indexes[i * 3 + 1];
+                int v3 = indexes[i * 3 + 2];
+                
+                float x1 = positions[v2 * 3] - positions[v1 * 3];
+                float y1 = positions[v2 * 3 + 1] - positions[v1 * 3 + 1];
+                float z1 = positions[v2 * 3 + 2] - positions[v1 * 3 + 2];
+                float x2 = positions[v3 * 3] - positions[v1 * 3];
+                float y2 = positions[v3 * 3 + 1] - positions[v1 * 3 + 1];
+                float z2 = positions[v3 * 3 + 2] - positions[v1 * 3 + 2];
+                normal[0] = (y1 * z2) - (z1 * y2);
+                normal[1] = (z1 * x2) - (x1 * z2);
+                normal[2] = (x1 * y2) - (y1 * x2);
+                normalize(normal);
+                
+                add(v1, v2, v3);
+                add(v2, v3, v1);
+                add(v3, v1, v2);
+            }
+        }
+        
+        private void add( int corner, int a, int b ) {
+            if( skip[corner] ) {
+                return;
+            }
+            edge(corner, a, edge1);
+            edge(corner, b, edge2);
+            float weight = FastMath.acos(edge1[0] * edge2[0] + edge1[1] * edge2[1] + edge1[2] * edge2[2]);
+            normals[corner * 3] += normal[0] * weight;
+            normals[corner * 3 + 1] += normal[1] * weight;
+            normals[corner * 3 + 2] += normal[2] * weight;
+            weights[corner] += weight;
+            used[corner] = true;
+        }
+        
+        private void edge( int from, int to, float[] store ) {
+            store[0] = positions[to * 3] - positions[from * 3];
+            store[1] = positions[to * 3 + 1] - positions[from * 3 + 1];
+            store[2] = positions[to * 3 + 2] - positions[from * 3 + 2];
+            normalize(store);
+        }
+        
+        private static void normalize( float[] v ) {
+            // Same as Vector3f.normalizeLocal()
+            float length = v[0] * v[0] + v[1] * v[1] + v[2] * v[2];
+            if( length != 1f && length != 0f ) {
+                length = 1.0f / FastMath.sqrt(length);
+                v[0] *= length;
+                v[1] *= length;
+                v[2] *= length;
+            }
+        }
+    }
+ 
+    /**
+     *  Sums the accumulated normals of a range of vertexes and adds them
+     *  to the vertexes.
+     */   
+    private class ReduceTask implements Runnable {
+        private final AccumulateTask[] accumulators;
+        private final boolean[] skip;
+        private final int start;
+        private final int end;
+        
+        public ReduceTask( AccumulateTask[] accumulators, boolean[] skip, int start, int end ) {
+            this.accumulators = accumulators;
+            this.skip = skip;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public void run() {
+            for( int i = start; i < end; i++ ) {
+                if( skip[i] ) {
+                    continue;
+                }
+                float x = 0;
+                float y = 0;
+                float z = 0;
+                float weight = 0;
+                boolean used = false;
+                for( AccumulateTask acc : accumulators ) {
+                    if( !acc.used[i] ) {
+                        continue;
+                    }
+                    x += acc.normals[i * 3];
+                    y += acc.normals[i * 3 + 1];
+                    z += acc.normals[i * 3 + 2];
+                    weight += acc.weights[i];
+                    used = true;
+                }
+                if( !used ) {
+                    continue;
+                }
+                Vertex vert = verts.get(i);
+                if( vert.normal == null ) {
+                    vert.normal = new Vector3f(x, y, z);
+                } else {
+                    vert.normal.addLocal(x, y, z);
+                }
+                vert.weight += weight;
+            }
+        }
+    }
+    
+    private class NormalizeTask implements Runnable {
+        private final int start;
+        private final int end;
+        
+        public NormalizeTask( int start, int end ) {
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        public void run() {
+            for( int i = start; i < end; i++ ) {
+                Vertex vert = verts.get(i);
+                if( vert.normal == null || vert.weight <= 0 ) {
+                    continue;
+                }
+                vert.normal.normalizeLocal();
+            }
+        }
+    }
     
     /**
      *  Connects two vertex loops together by intermediate triangles.
@@ -462,6 +840,7 @@ public class MeshBuilder {
             for( Vertex v : newLoop ) {
                 v.pos.addLocal(offset);
             }
+            reindexVertexes();
         }
                                  
         return newLoop;
@@ -526,11 +905,359 @@ public class MeshBuilder {
         return newLoop;
     }
 
+    /**
+     *  Returns the vertex with the specified handle.  The handle of a vertex
+     *  is its index or, for a vertex borrowed from another builder, a
+     *  negative number.
+     */
+    public Vertex getVertex( int handle ) {
+        if( handle < 0 ) {
+            return borrowed.get(-1 - handle);
+        }
+        return verts.get(handle);
+    }
+ 
+    /**
+     *  Returns the vertexes of a loop of handles.
+     */   
+    public List<Vertex> getLoop( int[] loop ) {
+        List<Vertex> result = new ArrayList<Vertex>(loop.length);
+        for( int v : loop ) {
+            result.add(getVertex(v));
+        }
+        return result;
+    }
+ 
+    /**
+     *  Returns handles for a loop of vertexes that belong to another builder
+     *  so that it can be extruded from.  The vertexes are not added to this 
+     *  builder but the triangles that connect to them are.  See patch().
+     */   
+    public int[] borrowLoop( List<Vertex> loop ) {
+        if( borrowed == null ) {
+            borrowed = new ArrayList<Vertex>();
+        }
+        int[] result = new int[loop.size()];
+        for( int i = 0; i < result.length; i++ ) {
+            result[i] = -1 - borrowed.size();
+            borrowed.add(loop.get(i));
+        }
+        return result;
+    }
+    
+    private static int[] toHandles( List<Vertex> loop ) {
+        int[] result = new int[loop.size()];
+        for( int i = 0; i < result.length; i++ ) {
+            result[i] = loop.get(i).index;
+        }
+        return result;
+    }
+ 
+    @Override
+    public int[] createLoop( Vector3f center, Quaternion orientation, float radius,
+                             int segments, float twist ) {
+        return toHandles(createLoop(center, orientation, radius, segments, twist, 0));
+    }
+ 
+    @Override
+    public int[] createLoop( Vector3f center, Vector3f axis, float radius,
+                             int segments, float twist ) {
+        return toHandles(createLoop(center, axis, radius, segments, twist, 0));
+    }
+ 
+    @Override
+    public int[] extrude( int[] loop, Vector3f dir, float distance, 
+                          int segments, float radius, float twist ) {
+        return toHandles(extrude(getLoop(loop), dir, distance, segments, radius, twist));
+    }
+ 
+    @Override
+    public int[] extrude( int[] loop, Vector3f dir, float distance, Vector3f offset, 
+                          int segments, float radius, float twist ) {
+        return toHandles(extrude(getLoop(loop), dir, distance, offset, segments, radius, twist));
+    }
+ 
+    /**
+     *  Closes off the loop by connecting it to a tiny loop at its center 
+     *  and returns the tiny loop.  The vertexes of the tiny loop are put in
+     *  group 1.
+     */   
+    @Override
+    public int[] cap( int[] loop, Vector3f dir ) {
+        List<Vertex> cap = extrude(getLoop(loop), dir, 0, Vector3f.ZERO, 3, 0.001f, 0);
+        for( Vertex v : cap ) {
+            v.group = 1;
+        }
+        return toHandles(cap);
+    }
+ 
+    @Override
+    public void textureLoop( int[] loop, Vector2f base, Vector2f range ) {
+        textureLoop(getLoop(loop), base, range);
+    }
+ 
+    @Override
+    public void tangentLoop( int[] loop, boolean invert ) {
+        List<Vertex> list = getLoop(loop);
+        for( int i = 1; i < list.size(); i++ ) {
+            Vertex last = list.get(i-1);
+            Vertex next = list.get(i);
+            
+            Vector3f dir = next.pos.subtract(last.pos);
+            dir.normalizeLocal();
+            if( invert ) {
+                dir.multLocal(-1);
+            }
+            last.tangent = dir;
+        }
+        
+        // and match up the ends
+        list.get(list.size()-1).tangent = list.get(0).tangent;
+    }
+ 
+    @Override
+    public Vector3f findCenter( int[] loop, Vector3f store ) {
+        Vector3f center = findCenter(getLoop(loop));
+        if( store == null ) {
+            return center;
+        }
+        return store.set(center);
+    }
+ 
+    @Override
+    public Vector3f getPosition( int vertex, Vector3f store ) {
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        return store.set(getVertex(vertex).pos);
+    }
+ 
+    @Override
+    public Vector3f getTangent( int vertex, Vector3f store ) {
+        Vector3f tangent = getVertex(vertex).tangent;
+        if( tangent == null ) {
+            return null;
+        }
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        return store.set(tangent);
+    }
+ 
+    @Override
+    public Vector2f getUv( int vertex, Vector2f store ) {
+        Vector2f uv = getVertex(vertex).uv;
+        if( uv == null ) {
+            return null;
+        }
+        if( store == null ) {
+            store = new Vector2f();
+        }
+        return store.set(uv);
+    }
+ 
+    @Override
+    public int getTriangleVertex( int triangle, int corner ) {
+        Triangle tri = triangles.get(triangle);
+        switch( corner ) {
+            case 0:
+                return tri.v1.index;
+            case 1:
+                return tri.v2.index;
+            default:
+                return tri.v3.index;
+        }
+    }
+
     public List<Vertex> getVertexes() {
         return verts;
     }
+    
+    @Override
+    public int getVertexCount() {
+        return verts.size();
+    }
+    
+    @Override
+    public int getTriangleCount() {
+        return triangles.size();
+    }
+
+    public List<Triangle> getTriangles() {
+        return triangles;
+    }
+ 
+    /**
+     *  Removes the triangles whose indexes are set in the specified bit set
+     *  along with any vertexes that are no longer used by a triangle.  The
+     *  remaining vertexes are renumbered.  This is meant to be called after 
+     *  smooth() and leaves the normals of the remaining vertexes as they are.
+     *  Returns the number of triangles that were removed.
+     */   
+    @Override
+    public int removeTriangles( BitSet remove ) {
+        int removed = 0;
+        Set<Vertex> dropped = new HashSet<Vertex>();
+        Map<Vertex, Vertex> roots = new HashMap<Vertex, Vertex>();
+        List<Triangle> newTriangles = new ArrayList<Triangle>(triangles.size());
+        for( int i = 0; i < triangles.size(); i++ ) {
+            Triangle tri = triangles.get(i);
+            if( !remove.get(i) ) {
+                newTriangles.add(tri);
+                continue;
+            }
+            if( removed++ == 0 ) {
+                // Grab the links while the vertex indexes are still good
+                collectLinks(roots);
+            }
+            tri.v1.usageCount--;
+            tri.v2.usageCount--;
+            tri.v3.usageCount--;
+            Collections.addAll(dropped, tri.vertexes());
+        }
+        if( removed == 0 ) {
+            return 0;
+        }
+        triangles = newTriangles;
+ 
+        List<Vertex> newVerts = new ArrayList<Vertex>(verts.size());
+        for( Vertex v : verts ) {
+            if( v.usageCount > 0 || !dropped.contains(v) ) {
+                v.index = newVerts.size();
+                newVerts.add(v);
+            } 
+        }
+        verts = newVerts;
+        relink(roots);
+        reindexVertexes();
+        return removed;
+    }
+ 
+    /**
+     *  Replaces ranges of this builder's vertexes and triangles with the 
+     *  vertexes and triangles of other builders and renumbers the vertexes.
+     *  The patches must be in order and must not overlap.  Triangles outside
+     *  of the replaced ranges must not use any of the replaced vertexes but 
+     *  the new triangles may use vertexes that are outside of their own builder.
+     *  If smooth is true then the normals of every vertex that shares a removed 
+     *  or new triangle are recalculated, giving the same normals that smooth() 
+     *  would calculate for the whole mesh when all normals start out unset.
+     */   
+    public void patch( List<Patch> patches, boolean smooth ) {
+        List<Vertex> newVerts = new ArrayList<Vertex>(verts.size());
+        List<Triangle> newTriangles = new ArrayList<Triangle>(triangles.size());
+        Set<Vertex> dirty = new HashSet<Vertex>();
+        Set<Vertex> removed = new HashSet<Vertex>();
+        Map<Vertex, Vertex> roots = new HashMap<Vertex, Vertex>();
+        collectLinks(roots);
+        
+        int vertex = 0;
+        int triangle = 0;
+        for( Patch p : patches ) {
+            if( p.vertexStart < vertex || p.triangleStart < triangle ) {
+                throw new IllegalArgumentException("Patches are out of order or overlap.");
+            }
+            newVerts.addAll(verts.subList(vertex, p.vertexStart));
+            newTriangles.addAll(triangles.subList(triangle, p.triangleStart));
+            
+            removed.addAll(verts.subList(p.vertexStart, p.vertexEnd));
+            for( Triangle tri : triangles.subList(p.triangleStart, p.triangleEnd) ) {
+                Collections.addAll(dirty, tri.vertexes());
+            }
+            
+            MeshBuilder source = p.source;
+            newVerts.addAll(source.verts);
+            newTriangles.addAll(source.triangles);
+            for( Triangle tri : source.triangles ) {
+                Collections.addAll(dirty, tri.vertexes());
+            }
+            source.collectLinks(roots);
+            
+            vertex = p.vertexEnd;
+            triangle = p.triangleEnd;
+        }
+        newVerts.addAll(verts.subList(vertex, verts.size()));
+        newTriangles.addAll(triangles.subList(triangle, triangles.size()));
+ 
+        for( int i = 0; i < newVerts.size(); i++ ) {
+            newVerts.get(i).index = i;
+        }
+        verts = newVerts;
+        triangles = newTriangles;
+        relink(roots);
+        reindexVertexes();
+        
+        if( smooth ) {
+            dirty.removeAll(removed);
+            smooth(dirty);
+        }
+    }
+ 
+    /**
+     *  Recalculates the smoothed normals of only the specified vertexes and
+     *  any vertexes linked to them, starting from unset normals.  The
+     *  set is modified to include the linked vertexes.
+     */
+    protected void smooth( Set<Vertex> dirty ) {
+        if( linkCount > 0 ) {
+            BitSet dirtyRoots = new BitSet(verts.size());
+            for( Vertex vert : dirty ) {
+                dirtyRoots.set(findLink(vert.index));
+            }
+            for( int i = 0; i < verts.size(); i++ ) {
+                if( dirtyRoots.get(findLink(i)) ) {
+                    dirty.add(verts.get(i));
+                }
+            }
+        }
+        for( Vertex vert : dirty ) {
+            if( vert.weight != -1 ) {
+                vert.weight = 0;
+                vert.normal = null;
+            }
+        }
+ 
+        // Same as smooth() but only for the dirty vertexes        
+        for( Triangle tri : triangles ) {
+            if( !dirty.contains(tri.v1) && !dirty.contains(tri.v2) && !dirty.contains(tri.v3) ) {
+                continue;
+            }
+            Vector3f normal = tri.calculateNormal();
+            for( Vertex vert : tri.vertexes() ) {
+                if( vert.weight == -1 || !dirty.contains(vert) ) {
+                    continue;
+                }
+                float weight = tri.angle(vert); 
+                if( vert.normal == null ) {
+                    vert.normal = normal.mult(weight);
+                } else {
+                    vert.normal.addLocal(normal.mult(weight));
+                }
+                vert.weight += weight;                 
+            }
+        }
+        
+        combineLinks(dirty);
+        
+        for( Vertex vert : dirty ) {
+            if( vert.normal == null || vert.weight <= 0 ) {
+                continue;
+            }
+            vert.normal.normalizeLocal();
+        }
+    }
 
     public Mesh build() {
+        return build(null);
+    }
+ 
+    /**
+     *  Builds the mesh with buffers from the specified pool or with new
+     *  direct buffers if the pool is null.  Pooled buffers can be recycled
+     *  with MeshBufferPool.release() once the mesh is no longer used.
+     */   
+    @Override
+    public Mesh build( MeshBufferPool pool ) {
         if( verts.isEmpty() || triangles.isEmpty() ) {
             return null;
         }
@@ -545,18 +1272,18 @@ public class MeshBuilder {
         boolean hasUvs = verts.get(0).uv != null;
         boolean hasTangents = verts.get(0).tangent != null;
         
-        FloatBuffer pb = BufferUtils.createFloatBuffer(verts.size() * 3);
+        FloatBuffer pb = createFloatBuffer(pool, verts.size() * 3);
         FloatBuffer nb = null;
         if( hasNormals ) {
-            nb = BufferUtils.createFloatBuffer(verts.size() * 3); 
+            nb = createFloatBuffer(pool, verts.size() * 3); 
         }
         FloatBuffer tb = null;
         if( hasUvs ) {
-            tb = BufferUtils.createFloatBuffer(verts.size() * 2); 
+            tb = createFloatBuffer(pool, verts.size() * 2); 
         }
         FloatBuffer tanb = null;
         if( hasTangents ) {
-            tanb = BufferUtils.createFloatBuffer(verts.size() * 4); 
+            tanb = createFloatBuffer(pool, verts.size() * 4); 
         }
 
         for( Vertex vert : verts ) {
@@ -589,7 +1316,8 @@ public class MeshBuilder {
 
         // Now the index buffer
         if( verts.size() <= 0xffff ) {
-            ShortBuffer ib = BufferUtils.createShortBuffer(triangles.size() * 3);
+            int size = triangles.size() * 3;
+            ShortBuffer ib = pool == null ? BufferUtils.createShortBuffer(size) : pool.getShortBuffer(size);
             for( Triangle tri : triangles ) {
                 ib.put((short)tri.v1.index);
                 ib.put((short)tri.v2.index);
@@ -597,7 +1325,8 @@ public class MeshBuilder {
             }
             mesh.setBuffer(Type.Index, 3, ib);
         } else {
-            IntBuffer ib = BufferUtils.createIntBuffer(triangles.size() * 3);
+            int size = triangles.size() * 3;
+            IntBuffer ib = pool == null ? BufferUtils.createIntBuffer(size) : pool.getIntBuffer(size);
             for( Triangle tri : triangles ) {
                 ib.put(tri.v1.index);
                 ib.put(tri.v2.index);
@@ -610,24 +1339,134 @@ public class MeshBuilder {
         return mesh;        
     }
     
-    private class NormalLinks {
-        Set<Vertex> set = new HashSet<Vertex>();
+    private static FloatBuffer createFloatBuffer( MeshBufferPool pool, int size ) {
+        return pool == null ? BufferUtils.createFloatBuffer(size) : pool.getFloatBuffer(size);
+    }
+    
+    /**
+     *  A range of vertexes and triangles to replace with the contents 
+     *  of another mesh builder.
+     */
+    public static class Patch {
+        private final int vertexStart;
+        private final int vertexEnd;
+        private final int triangleStart;
+        private final int triangleEnd;
+        private final MeshBuilder source;
         
-        void combineNormals() {
-            Vector3f normal = new Vector3f();
-            float total = 0;
-            
-            // Make a pass to accumulate the combined normal and total
-            for( Vertex v : set ) {
-                normal.addLocal(v.normal);
-                total += v.weight;
+        public Patch( int vertexStart, int vertexEnd, int triangleStart, int triangleEnd,
+                      MeshBuilder source ) {
+            this.vertexStart = vertexStart;
+            this.vertexEnd = vertexEnd;
+            this.triangleStart = triangleStart;
+            this.triangleEnd = triangleEnd;
+            this.source = source;
+        }
+    }
+ 
+    /**
+     *  A hash grid of the vertexes by position.  A search visits every
+     *  cell that overlaps the epsilon box around the position and returns
+     *  the matching vertex with the lowest index which is what a linear 
+     *  scan of the vertex list would have found.
+     */
+    private static class WeldIndex {
+        static final long MAX_SPAN = 4;
+        final float cellSize;
+        final Map<Long, List<Vertex>> cells = new HashMap<Long, List<Vertex>>();
+        final List<Vertex> unhashed = new ArrayList<Vertex>();
+        
+        WeldIndex( float cellSize ) {
+            this.cellSize = cellSize;
+        }
+        
+        void add( Vertex vert ) {
+            if( !isFinite(vert.pos.x + vert.pos.y + vert.pos.z) ) {
+                unhashed.add(vert);
+                return;
             }
-            
-            // Then apply them back
-            for( Vertex v : set ) {
-                v.normal.set(normal);
-                v.weight = total;
+            Long key = key(cell(vert.pos.x), cell(vert.pos.y), cell(vert.pos.z));
+            List<Vertex> list = cells.get(key);
+            if( list == null ) {
+                list = new ArrayList<Vertex>(2);
+                cells.put(key, list);
+            }
+            list.add(vert);
+        }
+        
+        Vertex find( List<Vertex> verts, float x, float y, float z, float u, float v, 
+                     boolean hasUv, int group, float epsilon ) {
+            // Pad the range a little so that float rounding in isSame()
+            // can't let a match slip into a cell that we don't visit
+            float xPad = epsilon + Math.ulp(x) * 2;
+            float yPad = epsilon + Math.ulp(y) * 2;
+            float zPad = epsilon + Math.ulp(z) * 2;
+            long xMin = cell(x - xPad);
+            long yMin = cell(y - yPad);
+            long zMin = cell(z - zPad);
+            long xMax = cell(x + xPad);
+            long yMax = cell(y + yPad);
+            long zMax = cell(z + zPad);
+            if( !isFinite(x + y + z) || xMax - xMin >= MAX_SPAN 
+                || yMax - yMin >= MAX_SPAN || zMax - zMin >= MAX_SPAN ) {
+                // Positions far from the origin or not numbers at all, so
+                // just do it the slow way
+                return scan(verts, x, y, z, u, v, hasUv, group, epsilon);
+            }
+            // Vertexes that could not be hashed still get their chance
+            Vertex result = scan(unhashed, x, y, z, u, v, hasUv, group, epsilon);
+            for( long i = xMin; i <= xMax; i++ ) {
+                for( long j = yMin; j <= yMax; j++ ) {
+                    for( long k = zMin; k <= zMax; k++ ) {
+                        List<Vertex> list = cells.get(key(i, j, k));
+                        if( list == null ) {
+                            continue;
+                        }
+                        for( Vertex vert : list ) {
+                            if( result != null && vert.index > result.index ) {
+                                // The lists are in index order 
+                                break;
+                            }
+                            if( isMatch(vert, x, y, z, u, v, hasUv, group, epsilon) ) {
+                                result = vert;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+ 
+        Vertex scan( List<Vertex> list, float x, float y, float z, float u, float v, 
+                     boolean hasUv, int group, float epsilon ) {
+            for( Vertex vert : list ) {
+                if( isMatch(vert, x, y, z, u, v, hasUv, group, epsilon) ) {
+                    return vert;
+                }
             }
+            return null;
         }
-    } 
+        
+        boolean isMatch( Vertex vert, float x, float y, float z, float u, float v, 
+                         boolean hasUv, int group, float epsilon ) {
+            if( group >= 0 && vert.group != group ) {
+                return false;
+            }
+            return hasUv ? vert.isSame(x, y, z, u, v, epsilon) : vert.isSame(x, y, z, epsilon);
+        }
+        
+        static boolean isFinite( float value ) {
+            return !Float.isNaN(value) && !Float.isInfinite(value);
+        }
+        
+        long cell( float value ) {
+            return (long)Math.floor((double)value / cellSize);
+        }
+        
+        static Long key( long x, long y, long z ) {
+            // Cells that wrap onto the same key only cost extra checks
+            return ((x & 0x1fffff) << 42) | ((y & 0x1fffff) << 21) | (z & 0x1fffff);
+        }
+    }
 }
@@ -0,0 +1,671 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A version of MeshBuilder that keeps its vertexes and triangles in 
+ *  growable primitive arrays instead of Vertex and Triangle objects.
+ *  Vertexes are addressed by int handle and loops are int arrays of 
+ *  handles.  The loop operations produce the same geometry as the 
+ *  MeshBuilder versions and smooth() produces the same normals within 
+ *  float rounding.  SkinnedTreeMeshGenerator uses it when setPacked(true)
+ *  is set.
+ *
+ *  <p>There is no vertex welding.  Vertexes are only ever created new.</p>
+ */
+public class PackedMeshBuilder implements LoopBuilder {
+
+    static Logger log = LoggerFactory.getLogger(PackedMeshBuilder.class);
+
+    private int vertexCount;
+    private float[] positions;
+    private float[] normals;
+    private float[] tangents;
+    private float[] uvs;
+    private int[] links;
+    private boolean hasNormals;
+    private boolean hasTangents;
+    private boolean hasUvs;
+    
+    private int indexCount;
+    private int[] indexes;
+    
+    private final Vector3f temp1 = new Vector3f();
+    private final Vector3f temp2 = new Vector3f();
+    private final Vector3f temp3 = new Vector3f();
+    private final Vector3f edge1 = new Vector3f();
+    private final Vector3f edge2 = new Vector3f();
+    
+    public PackedMeshBuilder() {
+        this(256, 256);
+    }
+    
+    public PackedMeshBuilder( int vertexCapacity, int triangleCapacity ) {
+        vertexCapacity = Math.max(1, vertexCapacity);
+        positions = new float[vertexCapacity * 3];
+        normals = new float[vertexCapacity * 3];
+        tangents = new float[vertexCapacity * 3];
+        uvs = new float[vertexCapacity * 2];
+        links = new int[vertexCapacity];
+        indexes = new int[Math.max(1, triangleCapacity) * 3];
+    }
+ 
+    /**
+     *  Adds a new vertex and returns its handle.
+     */   
+    public int addVertex( float x, float y, float z ) {
+        if( vertexCount == links.length ) {
+            growVertexes(vertexCount * 2);
+        }
+        int result = vertexCount++;
+        positions[result * 3] = x;
+        positions[result * 3 + 1] = y;
+        positions[result * 3 + 2] = z;
+        links[result] = result;
+        return result;
+    }
+    
+    public int addVertex( float x, float y, float z, float u, float v ) {
+        int result = addVertex(x, y, z);
+        setUv(result, u, v);
+        return result;
+    }
+    
+    private void growVertexes( int capacity ) {
+        positions = Arrays.copyOf(positions, capacity * 3);
+        normals = Arrays.copyOf(normals, capacity * 3);
+        tangents = Arrays.copyOf(tangents, capacity * 3);
+        uvs = Arrays.copyOf(uvs, capacity * 2);
+        links = Arrays.copyOf(links, capacity);
+    }
+    
+    public void addTriangle( int v1, int v2, int v3 ) {
+        if( indexCount + 3 > indexes.length ) {
+            indexes = Arrays.copyOf(indexes, indexes.length * 2);
+        }
+        indexes[indexCount++] = v1;
+        indexes[indexCount++] = v2;
+        indexes[indexCount++] = v3;
+    }
+    
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+    
+    @Override
+    public int getTriangleCount() {
+        return indexCount / 3;
+    }
+ 
+    /**
+     *  Returns the vertex handle at the specified corner of the specified
+     *  triangle.
+     */   
+    @Override
+    public int getTriangleVertex( int triangle, int corner ) {
+        return indexes[triangle * 3 + corner];
+    }
+    
+    /**
+     *  Removes the triangles whose indexes are set in the specified bit set
+     *  along with any vertexes that are only used by them.  The remaining 
+     *  vertexes are renumbered in order and keep their normal links.  This 
+     *  is meant to be called after smooth() and leaves the normals of the 
+     *  remaining vertexes as they are.  Returns the number of triangles 
+     *  that were removed.
+     */   
+    @Override
+    public int removeTriangles( BitSet remove ) {
+        int triangleCount = getTriangleCount();
+        BitSet kept = new BitSet(vertexCount);
+        BitSet dropped = new BitSet(vertexCount);
+        int removed = 0;
+        int count = 0;
+        for( int i = 0; i < triangleCount; i++ ) {
+            BitSet used = kept;
+            if( remove.get(i) ) {
+                used = dropped;
+                removed++;
+            } else {
+                System.arraycopy(indexes, i * 3, indexes, count * 3, 3);
+                count++;
+            }
+            for( int j = i * 3; j < i * 3 + 3; j++ ) {
+                used.set(indexes[j]);
+            }
+        }
+        if( removed == 0 ) {
+            return 0;
+        }
+        indexCount = count * 3;
+        dropped.andNot(kept);
+ 
+        // Resolve the link roots before the links are moved
+        int[] roots = new int[vertexCount];
+        for( int i = 0; i < vertexCount; i++ ) {
+            roots[i] = findLink(i);
+        }
+        int[] map = new int[vertexCount];
+        int[] newRoots = new int[vertexCount];
+        Arrays.fill(newRoots, -1);
+        int newCount = 0;
+        for( int i = 0; i < vertexCount; i++ ) {
+            if( dropped.get(i) ) {
+                map[i] = -1;
+                continue;
+            }
+            int v = newCount++;
+            map[i] = v;
+            System.arraycopy(positions, i * 3, positions, v * 3, 3);
+            System.arraycopy(normals, i * 3, normals, v * 3, 3);
+            System.arraycopy(tangents, i * 3, tangents, v * 3, 3);
+            System.arraycopy(uvs, i * 2, uvs, v * 2, 2);
+            
+            // The lowest remaining vertex of each link set becomes its root
+            if( newRoots[roots[i]] < 0 ) {
+                newRoots[roots[i]] = v;
+            }
+            links[v] = newRoots[roots[i]];
+        }
+        vertexCount = newCount;
+        
+        for( int i = 0; i < indexCount; i++ ) {
+            indexes[i] = map[indexes[i]];
+        }
+        return removed;
+    }
+    
+    @Override
+    public Vector3f getPosition( int vertex, Vector3f store ) {
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        return store.set(positions[vertex * 3], positions[vertex * 3 + 1], positions[vertex * 3 + 2]);
+    }
+    
+    public void setPosition( int vertex, float x, float y, float z ) {
+        positions[vertex * 3] = x;
+        positions[vertex * 3 + 1] = y;
+        positions[vertex * 3 + 2] = z;
+    }
+ 
+    /**
+     *  Returns the vertex normal or null if the normals have not been
+     *  calculated yet.
+     */   
+    public Vector3f getNormal( int vertex, Vector3f store ) {
+        if( !hasNormals ) {
+            return null;
+        }
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        return store.set(normals[vertex * 3], normals[vertex * 3 + 1], normals[vertex * 3 + 2]);
+    }
+    
+    @Override
+    public Vector3f getTangent( int vertex, Vector3f store ) {
+        if( !hasTangents ) {
+            return null;
+        }
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        return store.set(tangents[vertex * 3], tangents[vertex * 3 + 1], tangents[vertex * 3 + 2]);
+    }
+    
+    public void setTangent( int vertex, float x, float y, float z ) {
+        tangents[vertex * 3] = x;
+        tangents[vertex * 3 + 1] = y;
+        tangents[vertex * 3 + 2] = z;
+        hasTangents = true;
+    }
+    
+    @Override
+    public Vector2f getUv( int vertex, Vector2f store ) {
+        if( store == null ) {
+            store = new Vector2f();
+        }
+        return store.set(uvs[vertex * 2], uvs[vertex * 2 + 1]);
+    }
+    
+    public void setUv( int vertex, float u, float v ) {
+        uvs[vertex * 2] = u;
+        uvs[vertex * 2 + 1] = v;
+        hasUvs = true;
+    }
+ 
+    /**
+     *  Links two vertexes together such that they will
+     *  share the same smooth normal in smoothing calculations.
+     */
+    public void linkNormals( int v1, int v2 ) {
+        int root1 = findLink(v1);
+        int root2 = findLink(v2);
+        if( root1 == root2 ) {
+            return;  // already linked
+        }
+        // Always keep the lowest handle as the root
+        if( root1 < root2 ) {
+            links[root2] = root1;
+        } else {
+            links[root1] = root2;
+        }
+    }
+    
+    private int findLink( int vertex ) {
+        while( links[vertex] != vertex ) {
+            // Path halving
+            links[vertex] = links[links[vertex]];
+            vertex = links[vertex];
+        }
+        return vertex;
+    }
+ 
+    /**
+     *  Smooths the vertex normals by creating a weighted average
+     *  of the triangle normals shared by a particular vertex or
+     *  linked vertex.  The weighting is calculated based on the
+     *  angle between adjacent edges.
+     */
+    @Override
+    public void smooth() {
+        float[] weights = new float[vertexCount];
+        Arrays.fill(normals, 0, vertexCount * 3, 0);
+        
+        Vector3f normal = new Vector3f();
+        for( int i = 0; i < indexCount; i += 3 ) {
+            int v1 = indexes[i];
+            int v2 = indexes[i + 1];
+            int v3 = indexes[i + 2];
+            
+            getPosition(v1, temp1);
+            getPosition(v2, temp2);
+            getPosition(v3, temp3);
+            temp2.subtract(temp1, normal);
+            normal.crossLocal(temp3.x - temp1.x, temp3.y - temp1.y, temp3.z - temp1.z);
+            normal.normalizeLocal();
+            
+            // Weighted by the angle of each corner, see MeshBuilder.smooth()
+            accumulate(v1, normal, angle(temp1, temp2, temp3), weights);
+            accumulate(v2, normal, angle(temp2, temp3, temp1), weights);
+            accumulate(v3, normal, angle(temp3, temp1, temp2), weights);
+        }
+        
+        // Combine any linkages into their roots and then copy them back
+        for( int i = 0; i < vertexCount; i++ ) {
+            int root = findLink(i);
+            if( root == i ) {
+                continue;
+            }
+            normals[root * 3] += normals[i * 3];
+            normals[root * 3 + 1] += normals[i * 3 + 1];
+            normals[root * 3 + 2] += normals[i * 3 + 2];
+            weights[root] += weights[i];
+        }
+        for( int i = 0; i < vertexCount; i++ ) {
+            int root = links[i];
+            if( root != i ) {
+                normals[i * 3] = normals[root * 3];
+                normals[i * 3 + 1] = normals[root * 3 + 1];
+                normals[i * 3 + 2] = normals[root * 3 + 2];
+                weights[i] = weights[root];
+            }
+        }
+        
+        // Now normalize them
+        for( int i = 0; i < vertexCount; i++ ) {
+            if( weights[i] <= 0 ) {
+                continue;
+            }
+            normal.set(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+            normal.normalizeLocal();
+            normals[i * 3] = normal.x;
+            normals[i * 3 + 1] = normal.y;
+            normals[i * 3 + 2] = normal.z;
+        }
+        hasNormals = true;
+    }
+    
+    private void accumulate( int vertex, Vector3f normal, float weight, float[] weights ) {
+        normals[vertex * 3] += normal.x * weight;
+        normals[vertex * 3 + 1] += normal.y * weight;
+        normals[vertex * 3 + 2] += normal.z * weight;
+        weights[vertex] += weight;
+    }
+ 
+    /**
+     *  Returns the angle at corner between the edges to a and b.  This is
+     *  calculated the same way as Triangle.angle() so that the normals match
+     *  the MeshBuilder ones.
+     */   
+    private float angle( Vector3f corner, Vector3f a, Vector3f b ) {
+        a.subtract(corner, edge1).normalizeLocal();
+        b.subtract(corner, edge2).normalizeLocal();
+        return edge1.angleBetween(edge2);
+    }
+ 
+    /**
+     *  Connects two vertex loops together by intermediate triangles.
+     *  This works the same as MeshBuilder.connect().
+     */
+    public void connect( int[] loop1, int[] loop2 ) {
+        if( loop1.length == 0 || loop2.length == 0 ) {
+            throw new IllegalArgumentException("Loops cannot be empty.");
+        }
+ 
+        boolean sameSize = loop1.length == loop2.length;
+        int i = 0; 
+        int j = 0;
+        while( i < loop1.length && j < loop2.length ) {
+            int last1 = loop1[i];
+            int last2 = loop2[j];
+            boolean hasNext1 = i < loop1.length - 1;   
+            boolean hasNext2 = j < loop2.length - 1;
+            
+            if( !hasNext1 && !hasNext2 ) {
+                break;
+            }
+ 
+            int next;
+            if( !hasNext1 ) {
+                next = loop2[j + 1];
+                j++;            
+            } else if( !hasNext2 ) {
+                next = loop1[i + 1];
+                i++;
+            } else { 
+                float dist1;
+                float dist2;
+                if( sameSize ) {
+                    dist1 = j;
+                    dist2 = i;
+                } else {
+                    dist1 = getPosition(last1, temp1).distanceSquared(getPosition(loop2[j + 1], temp2));
+                    dist2 = getPosition(last2, temp1).distanceSquared(getPosition(loop1[i + 1], temp2));
+                }
+                if( dist1 < dist2 ) {
+                    next = loop2[j + 1];
+                    j++;
+                } else {
+                    next = loop1[i + 1];
+                    i++;
+                }
+            } 
+            addTriangle(last2, last1, next);
+        }
+    }
+ 
+    /**
+     *  Sets the texture coordinates of a vertex loop using
+     *  base and range.  See MeshBuilder.textureLoop().
+     */
+    @Override
+    public void textureLoop( int[] loop, Vector2f base, Vector2f range ) {
+        int count = loop.length;
+        if( count <= 1 ) {
+            return;
+        }
+        float uDelta = range.x / (count-1);
+        float vDelta = range.y / (count-1);
+        float xBase = base.x;
+        if( uDelta < 0 ) {
+            xBase = (range.x * -1); 
+        }
+        for( int i = 0; i < count; i++ ) {
+            setUv(loop[i], xBase + i * uDelta, base.y + i * vDelta);
+        }
+    }
+ 
+    /**
+     *  Sets the tangent of each loop vertex to point at the next vertex in the 
+     *  loop, or away from it if invert is true.  The last vertex gets the
+     *  tangent of the first.
+     */
+    @Override
+    public void tangentLoop( int[] loop, boolean invert ) {
+        for( int i = 1; i < loop.length; i++ ) {
+            getPosition(loop[i-1], temp1);
+            getPosition(loop[i], temp2);
+            
+            temp2.subtractLocal(temp1).normalizeLocal();
+            if( invert ) {
+                temp2.multLocal(-1);
+            }
+            setTangent(loop[i-1], temp2.x, temp2.y, temp2.z);
+        }
+        
+        // and match up the ends
+        int first = loop[0] * 3;
+        setTangent(loop[loop.length-1], tangents[first], tangents[first + 1], tangents[first + 2]);
+    }
+ 
+    /**
+     *  Finds the geometric center of a vertex loop.
+     */
+    @Override
+    public Vector3f findCenter( int[] loop, Vector3f store ) {
+        if( store == null ) {
+            store = new Vector3f();
+        }
+        store.set(0, 0, 0);
+        // Need to skip the last one because it's redundant
+        int count = loop.length - 1;
+        for( int i = 0; i < count; i++ ) {
+            store.addLocal(getPosition(loop[i], temp1));
+        }
+        store.multLocal(1f/count);
+        return store;    
+    }
+ 
+    /**
+     *  Extrudes a vertex loop out to another vertex loop, connecting
+     *  both loops, and returning the new extruded loop.  See 
+     *  MeshBuilder.extrude().
+     */    
+    @Override
+    public int[] extrude( int[] loop, Vector3f dir, float distance, 
+                          int segments, float radius, float twist ) {
+        return extrude(loop, dir, distance, null, segments, radius, twist);                                 
+    }                                 
+
+    /**
+     *  Extrudes a vertex loop out to another vertex loop, connecting
+     *  both loops, and returning the new extruded loop.  The offset is 
+     *  applied after the loops are connected.  See MeshBuilder.extrude().
+     */    
+    @Override
+    public int[] extrude( int[] loop, Vector3f dir, float distance, Vector3f offset, 
+                          int segments, float radius, float twist ) {
+        Vector3f center = findCenter(loop, null);
+        Vector3f base = center.add(dir.mult(distance)); 
+
+        // Same 'loop space' axes as MeshBuilder.extrude()
+        Vector3f look = dir;
+        Vector3f right = getPosition(loop[0], null).subtractLocal(center).normalizeLocal();
+        Vector3f left = right.mult(-1); 
+        Vector3f up = look.cross(left).normalizeLocal();
+        Quaternion loopRotation = new Quaternion().fromAxes(left, up, look);
+        
+        int[] newLoop = createLoop(base, loopRotation, radius, segments, twist + FastMath.PI);
+        connect(loop, newLoop);
+ 
+        if( offset != null ) {
+            for( int v : newLoop ) {
+                positions[v * 3] += offset.x;
+                positions[v * 3 + 1] += offset.y;
+                positions[v * 3 + 2] += offset.z;
+            }
+        }
+        return newLoop;
+    }
+ 
+    /**
+     *  Closes off the loop by connecting it to a tiny loop at its center 
+     *  and returns the tiny loop.
+     */   
+    @Override
+    public int[] cap( int[] loop, Vector3f dir ) {
+        return extrude(loop, dir, 0, Vector3f.ZERO, 3, 0.001f, 0);
+    }
+ 
+    /**
+     *  Creates a new vertex loop with the specified center, axis, and radius.
+     *  The axis acts as a 'loop normal' and twist determines how much additional
+     *  'angle' to give the first vertex.
+     */
+    @Override
+    public int[] createLoop( Vector3f center, Vector3f axis, float radius,
+                             int segments, float twist ) {
+        Quaternion rot = new Quaternion();
+        if( Math.abs(axis.y) == 1.0 ) {
+            rot.lookAt(Vector3f.UNIT_Y, Vector3f.UNIT_Z);
+        } else {
+            rot.lookAt(axis, Vector3f.UNIT_Y);
+        }
+        return createLoop(center, rot, radius, segments, twist);                                    
+    }
+    
+    /**
+     *  Creates a new vertex loop with the specified center, orientation, and radius.
+     *  See MeshBuilder.createLoop().
+     */
+    @Override
+    public int[] createLoop( Vector3f center, Quaternion orientation, float radius,
+                             int segments, float twist ) {
+        int[] newLoop = new int[segments + 1];
+        float angleDelta = FastMath.TWO_PI / segments;
+        Quaternion local = new Quaternion();
+        Vector3f pos = new Vector3f();
+        for( int i = 0; i <= segments; i++ ) {
+            float a = i * angleDelta;
+            local.fromAngles(0, 0, a + twist);
+            local = orientation.mult(local, local);
+            pos.set(radius, 0, 0);
+            pos = local.multLocal(pos);
+            pos.addLocal(center);           
+            newLoop[i] = addVertex(pos.x, pos.y, pos.z);
+        }
+
+        // Link the normals of the first and last vertex so that
+        // there won't be a seam.
+        linkNormals(newLoop[0], newLoop[segments]);                                    
+        return newLoop;
+    }
+ 
+    public Mesh build() {
+        return build(null);
+    }
+ 
+    /**
+     *  Builds the mesh with buffers from the specified pool or new buffers
+     *  if the pool is null.
+     */   
+    @Override
+    public Mesh build( MeshBufferPool pool ) {
+        if( vertexCount == 0 || indexCount == 0 ) {
+            return null;
+        }
+
+        if( log.isInfoEnabled() ) {
+            log.info("Creating a mesh with:" + vertexCount + " vertexes and:" + getTriangleCount() + " triangles.");
+        }
+        
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(Type.Position, 3, createBuffer(pool, positions, vertexCount * 3));
+        if( hasNormals ) {
+            mesh.setBuffer(Type.Normal, 3, createBuffer(pool, normals, vertexCount * 3));
+        }
+        if( hasUvs ) {
+            mesh.setBuffer(Type.TexCoord, 2, createBuffer(pool, uvs, vertexCount * 2));
+        }
+        if( hasTangents ) {
+            FloatBuffer tanb = pool == null ? BufferUtils.createFloatBuffer(vertexCount * 4) 
+                                            : pool.getFloatBuffer(vertexCount * 4);
+            for( int i = 0; i < vertexCount; i++ ) {
+                tanb.put(tangents, i * 3, 3).put(1);
+            }
+            tanb.flip();
+            mesh.setBuffer(Type.Tangent, 4, tanb);
+        }
+ 
+        if( vertexCount <= 0xffff ) {
+            ShortBuffer ib = pool == null ? BufferUtils.createShortBuffer(indexCount) : pool.getShortBuffer(indexCount);
+            for( int i = 0; i < indexCount; i++ ) {
+                ib.put((short)indexes[i]);
+            }
+            ib.flip();
+            mesh.setBuffer(Type.Index, 3, ib);
+        } else {
+            IntBuffer ib = pool == null ? BufferUtils.createIntBuffer(indexCount) : pool.getIntBuffer(indexCount);
+            ib.put(indexes, 0, indexCount);
+            ib.flip();
+            mesh.setBuffer(Type.Index, 3, ib);
+        }
+        
+        mesh.updateBound();                                
+        return mesh;        
+    }
+    
+    private static FloatBuffer createBuffer( MeshBufferPool pool, float[] values, int size ) {
+        FloatBuffer result = pool == null ? BufferUtils.createFloatBuffer(size) : pool.getFloatBuffer(size);
+        result.put(values, 0, size);
+        result.flip();
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        return "PackedMeshBuilder[vertexes=" + vertexCount + ", triangles=" + getTriangleCount() + "]";
+    }
+}
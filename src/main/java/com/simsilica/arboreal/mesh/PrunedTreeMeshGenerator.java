@@ -0,0 +1,385 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeTemplate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ *  A skinned tree mesh generator that drops the triangles of branches that
+ *  are hidden inside of a sibling branch.  When the branch radius is large 
+ *  compared to the branch spacing, the joint curves and first segments of the 
+ *  branches that fork from a tip are often completely inside of the branch
+ *  that continues the parent.  Those triangles can never be seen.
+ *
+ *  <p>For every set of branches that fork from the same tip, the one closest 
+ *  to the parent's direction is the occluder.  The triangles of the other 
+ *  branches' curves and first segments are removed if all of their corners are 
+ *  inside of one of the occluder's loop to loop sections.  The sections are 
+ *  shrunk to what the tessellated surface surely covers so the test is
+ *  conservative.  Only branches that are rendered as loops are pruned and
+ *  the occluder itself is never pruned against its siblings.</p>
+ *
+ *  <p>Each generator keeps the removed triangle count of its last call and so 
+ *  must not be shared between threads.  Pruning applies to the Tree and 
+ *  SegmentTable based methods, packed or not.  Single branch meshes are not 
+ *  pruned and the one pass TreeGenerator based methods are not supported.</p>
+ */
+public class PrunedTreeMeshGenerator extends SkinnedTreeMeshGenerator {
+
+    /**
+     *  How much of the inscribed radius of a section is considered to be
+     *  solid.  This leaves room for twisted and bent sections.
+     */
+    private static final float SOLID_RATIO = 0.9f;
+
+    private List<BranchRecord> records;
+    private BranchRecord current;
+    private int removedCount;
+    
+    public PrunedTreeMeshGenerator() {
+    }
+ 
+    /**
+     *  Returns the number of triangles removed by the last generate call.
+     */   
+    public int getRemovedCount() {
+        return removedCount;
+    }
+ 
+    /**
+     *  Not supported because the branches are only pruned once all of their
+     *  siblings have been meshed.  Throws UnsupportedOperationException.
+     */   
+    @Override
+    public MeshBuilder generateGeometry( TreeGenerator generator, int seed, TreeTemplate template,
+                                         LevelOfDetailParameters lod, float yOffset, 
+                                         int uRepeat, float vScale, List<Vertex> tips ) {
+        throw new UnsupportedOperationException("One pass generation cannot be pruned.");
+    }
+ 
+    /**
+     *  Generates the branch mesh without pruning.
+     */   
+    @Override
+    public Mesh generateBranchMesh( SegmentTable branch, LevelOfDetailParameters lod, Vector3f origin, 
+                                    int uRepeat, float vScale, List<Vertex> tips ) {
+        removedCount = 0;
+        return super.generateBranchMesh(branch, lod, origin, uRepeat, vScale, tips);
+    }
+ 
+    @Override
+    protected void generateGeometry( SegmentTable tree, LevelOfDetailParameters lod, 
+                                     float yOffset, int uRepeat, float vScale, 
+                                     List<Vertex> tips, LoopBuilder mb ) {
+        removedCount = 0;
+        records = new ArrayList<BranchRecord>();
+        current = null;
+        super.generateGeometry(tree, lod, yOffset, uRepeat, vScale, tips, mb);
+        removedCount = prune(tree, mb);
+        records = null;
+    }
+ 
+    @Override
+    protected void addCurvedBranch( Tip base, Fork parent, SegmentTable tree, int seg, 
+                                    LevelOfDetailParameters lod, 
+                                    LoopBuilder mb, List<Vertex> tips ) {
+        if( records == null ) {
+            super.addCurvedBranch(base, parent, tree, seg, lod, mb, tips);
+            return;
+        }
+        
+        // The parent's own segments end where its first curved child starts
+        BranchRecord parentRecord = current;
+        if( parentRecord != null && parentRecord.triangleEnd < 0 ) {
+            parentRecord.triangleEnd = mb.getTriangleCount();
+        }
+        
+        BranchRecord r = new BranchRecord();
+        r.segment = seg;
+        r.render = parent.renderNextDepth;
+        r.dot = parent.dir.dot(tree.getDir(seg, null));
+        r.triangleStart = mb.getTriangleCount();
+        if( r.render ) {
+            r.loops.add(base.loop);
+        }
+        records.add(r);
+        
+        current = r;
+        super.addCurvedBranch(base, parent, tree, seg, lod, mb, tips);
+        if( r.triangleEnd < 0 ) {
+            r.triangleEnd = mb.getTriangleCount();
+        }
+        current = parentRecord;
+    }
+ 
+    @Override
+    protected Tip addCurve( Tip base, List<CurveStep> steps, 
+                            int effectiveRadials, boolean render, boolean inverted, 
+                            int uRepeat, LoopBuilder mb ) {
+        if( !render || current == null ) {
+            return super.addCurve(base, steps, effectiveRadials, render, inverted, uRepeat, mb);
+        }
+        
+        // One step at a time so that every loop of the curve is seen
+        Tip tip = base;
+        for( CurveStep step : steps ) {
+            tip = super.addCurve(tip, Collections.singletonList(step), effectiveRadials, 
+                                 render, inverted, uRepeat, mb);
+            current.loops.add(tip.loop);
+        }
+        return tip;
+    }
+ 
+    @Override
+    protected Tip extendTip( Tip base, Vector3f dir, float length, 
+                             float endRadius, float twist, int effectiveRadials,
+                             boolean render, boolean inverted, 
+                             float vBase, int uRepeat, float vScaleLocal,  
+                             LoopBuilder mb ) {
+        Tip tip = super.extendTip(base, dir, length, endRadius, twist, effectiveRadials,
+                                  render, inverted, vBase, uRepeat, vScaleLocal, mb);
+        if( render && current != null && current.triangleEnd < 0 ) {
+            current.loops.add(tip.loop);
+        }
+        return tip;
+    }
+ 
+    protected int prune( SegmentTable tree, LoopBuilder mb ) {
+    
+        // Group the branches by the tip they fork from
+        Map<Integer, List<BranchRecord>> forks = new HashMap<Integer, List<BranchRecord>>();
+        for( BranchRecord r : records ) {
+            if( !r.render ) {
+                continue;
+            }
+            Integer tip = tree.getParent(r.segment);
+            List<BranchRecord> list = forks.get(tip);
+            if( list == null ) {
+                list = new ArrayList<BranchRecord>();
+                forks.put(tip, list);
+            }
+            list.add(r);
+        }
+        
+        BitSet remove = new BitSet(mb.getTriangleCount());
+        Vector3f[] corners = { new Vector3f(), new Vector3f(), new Vector3f() };
+        for( List<BranchRecord> list : forks.values() ) {
+            if( list.size() < 2 ) {
+                continue;
+            }
+            BranchRecord occluder = list.get(0);
+            for( BranchRecord r : list ) {
+                if( r.dot > occluder.dot ) {
+                    occluder = r;
+                }
+            }
+            List<Section> sections = occluder.getSections(mb);
+            if( sections.isEmpty() ) {
+                continue;
+            }
+            for( BranchRecord r : list ) {
+                if( r == occluder ) {
+                    continue;
+                }
+                for( int i = r.triangleStart; i < r.triangleEnd; i++ ) {
+                    for( int j = 0; j < 3; j++ ) {
+                        mb.getPosition(mb.getTriangleVertex(i, j), corners[j]);
+                    }
+                    if( isHidden(corners, sections) ) {
+                        remove.set(i);
+                    }
+                }
+            }
+        }
+        return mb.removeTriangles(remove);
+    }
+    
+    private static boolean isHidden( Vector3f[] corners, List<Section> sections ) {
+        for( Section s : sections ) {
+            if( s.contains(corners[0]) && s.contains(corners[1]) && s.contains(corners[2]) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+ 
+    /**
+     *  A curved branch's loops and the range of triangles of its curve and 
+     *  segments, not counting its children.
+     */
+    private static class BranchRecord {
+        int segment;
+        boolean render;
+        float dot;
+        int triangleStart;
+        int triangleEnd = -1;
+        List<int[]> loops = new ArrayList<int[]>();
+        
+        public List<Section> getSections( LoopBuilder mb ) {
+            List<Section> result = new ArrayList<Section>();
+            Vector3f[] last = null;
+            for( int[] loop : loops ) {
+                Vector3f[] next = new Vector3f[loop.length];
+                for( int i = 0; i < loop.length; i++ ) {
+                    next[i] = mb.getPosition(loop[i], null);
+                }
+                if( last != null ) {
+                    Section s = Section.create(last, next);
+                    if( s != null ) {
+                        result.add(s);
+                    }
+                }
+                last = next;
+            }
+            return result;
+        }
+    }
+ 
+    /**
+     *  The solid part of a branch between two of its loops: a cylinder
+     *  along the line between the loop centers, capped by the loop planes.
+     */
+    private static class Section {
+        Vector3f start;
+        Vector3f startNormal;
+        Vector3f end;
+        Vector3f endNormal;
+        Vector3f axis;
+        float lengthSq;
+        float radiusSq;
+        
+        public static Section create( Vector3f[] loop1, Vector3f[] loop2 ) {
+            if( loop1.length < 4 || loop2.length < 4 ) {
+                return null;
+            }
+            Section result = new Section();
+            result.start = center(loop1);
+            result.end = center(loop2);
+            result.axis = result.end.subtract(result.start);
+            result.lengthSq = result.axis.lengthSquared();
+            if( result.lengthSq < FastMath.ZERO_TOLERANCE ) {
+                return null;
+            }
+            result.startNormal = normal(loop1, result.start, result.axis);
+            result.endNormal = normal(loop2, result.end, result.axis);
+            float radius = Math.min(inscribedRadius(loop1, result.start), 
+                                    inscribedRadius(loop2, result.end));
+            radius *= SOLID_RATIO;
+            result.radiusSq = radius * radius;
+            return result;
+        }
+        
+        public boolean contains( Vector3f p ) {
+            float dx = p.x - start.x;
+            float dy = p.y - start.y;
+            float dz = p.z - start.z;
+            if( dx * startNormal.x + dy * startNormal.y + dz * startNormal.z <= 0 ) {
+                return false;
+            }
+            float ex = p.x - end.x;
+            float ey = p.y - end.y;
+            float ez = p.z - end.z;
+            if( ex * endNormal.x + ey * endNormal.y + ez * endNormal.z >= 0 ) {
+                return false;
+            }
+            
+            // Distance from the axis
+            float t = (dx * axis.x + dy * axis.y + dz * axis.z) / lengthSq;
+            dx -= axis.x * t;
+            dy -= axis.y * t;
+            dz -= axis.z * t;
+            return dx * dx + dy * dy + dz * dz < radiusSq;
+        }
+        
+        /**
+         *  Returns the center of a loop, skipping the last vertex which
+         *  closes the loop.
+         */       
+        private static Vector3f center( Vector3f[] loop ) {
+            Vector3f result = new Vector3f();
+            int count = loop.length - 1;
+            for( int i = 0; i < count; i++ ) {
+                result.addLocal(loop[i]);
+            }
+            return result.divideLocal(count);
+        }
+ 
+        /**
+         *  Returns the normal of the loop's plane facing along the axis.
+         */       
+        private static Vector3f normal( Vector3f[] loop, Vector3f center, Vector3f axis ) {
+            Vector3f result = new Vector3f();
+            int count = loop.length - 1;
+            for( int i = 0; i < count; i++ ) {
+                Vector3f a = loop[i].subtract(center);
+                Vector3f b = loop[(i + 1) % count].subtract(center);
+                result.addLocal(a.crossLocal(b));
+            }
+            result.normalizeLocal();
+            if( result.dot(axis) < 0 ) {
+                result.negateLocal();
+            }
+            return result;
+        }
+        
+        /**
+         *  Returns the radius of the largest circle inside of the loop's
+         *  polygon.
+         */       
+        private static float inscribedRadius( Vector3f[] loop, Vector3f center ) {
+            int count = loop.length - 1;
+            float min = Float.MAX_VALUE;
+            for( int i = 0; i < count; i++ ) {
+                min = Math.min(min, loop[i].distance(center));
+            }
+            return min * FastMath.cos(FastMath.PI / count);
+        }
+    }
+}
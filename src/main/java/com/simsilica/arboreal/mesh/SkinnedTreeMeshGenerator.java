@@ -41,11 +41,16 @@ import com.jme3.math.Quaternion;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
+import com.jme3.util.clone.Cloner;
 import com.simsilica.arboreal.LevelOfDetailParameters;
 import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.Segment.ConnectionType;
+import com.simsilica.arboreal.SegmentSink;
+import com.simsilica.arboreal.SegmentTable;
 import com.simsilica.arboreal.Tree;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeTemplate;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 
@@ -57,45 +62,300 @@ import java.util.List;
 public class SkinnedTreeMeshGenerator {
 
     private CurveGenerator curveGen = CurveGenerator.DEFAULT;
+    private GroundHeight rootClip;
+    private MeshBufferPool bufferPool;
+    private TreeBudget budget;
+    private boolean packed;
+ 
+    /**
+     *  Sets the ground that the roots are clipped against or null to mesh
+     *  the roots in full.  A root is meshed until one of its loops is
+     *  completely below the ground.  That loop is capped off and nothing 
+     *  below it is meshed, including the curves to its child roots.
+     */   
+    public void setRootClip( GroundHeight rootClip ) {
+        this.rootClip = rootClip;
+    }
+    
+    public GroundHeight getRootClip() {
+        return rootClip;
+    }
+ 
+    /**
+     *  Sets the pool that the generated meshes get their buffers from or 
+     *  null to allocate new buffers for every mesh.
+     */   
+    public void setBufferPool( MeshBufferPool bufferPool ) {
+        this.bufferPool = bufferPool;
+    }
+    
+    public MeshBufferPool getBufferPool() {
+        return bufferPool;
+    }
+ 
+    /**
+     *  Sets the budget that the generated meshes must fit or null for none.
+     *  A mesh with too many triangles is generated again from a reduced copy 
+     *  of the level of detail until it fits.  If it cannot be reduced enough
+     *  then generateMesh() throws an IllegalArgumentException.
+     */   
+    public void setBudget( TreeBudget budget ) {
+        this.budget = budget;
+    }
+    
+    public TreeBudget getBudget() {
+        return budget;
+    }
+ 
+    /**
+     *  Sets whether the Tree and SegmentTable versions of generateMesh() 
+     *  build their geometry in a PackedMeshBuilder instead of a MeshBuilder.
+     *  The packed builder keeps the vertexes in primitive arrays and so 
+     *  creates far fewer objects for large trees.  The meshes and tips are 
+     *  the same except for float rounding in the normals.  Defaults to false.
+     */   
+    public void setPacked( boolean packed ) {
+        this.packed = packed;
+    }
+    
+    public boolean isPacked() {
+        return packed;
+    }
     
     public Mesh generateMesh( Tree tree, LevelOfDetailParameters lod, float yOffset, int uRepeat, float vScale, List<Vertex> tips ) {
+        return generateMesh(SegmentTable.fromTree(tree), lod, yOffset, uRepeat, vScale, tips);
+    }
  
+    public Mesh generateMesh( SegmentTable tree, LevelOfDetailParameters lod, float yOffset, int uRepeat, float vScale, List<Vertex> tips ) {
+        int tipCount = tips == null ? 0 : tips.size();
+        Mesh result = buildMesh(tree, lod, yOffset, uRepeat, vScale, tips);
+        
+        TreeBudget limit = budget;
+        if( limit == null || limit.fits(result) ) {
+            return result;
+        }
+        lod = Cloner.deepClone(lod);
+        do {
+            discard(result, tips, tipCount);
+            if( !limit.reduceLod(tree, lod) ) {
+                throw new IllegalArgumentException("Unable to fit tree mesh within:" + limit);
+            }
+            result = buildMesh(tree, lod, yOffset, uRepeat, vScale, tips);
+        } while( !limit.fits(result) );
+        return result;
+    }
+    
+    private Mesh buildMesh( SegmentTable tree, LevelOfDetailParameters lod, float yOffset, int uRepeat, float vScale, List<Vertex> tips ) {
+        LoopBuilder mb;
+        if( packed ) {
+            mb = new PackedMeshBuilder(tree.size() * 16, tree.size() * 32);
+        } else {
+            mb = new MeshBuilder();
+        }
+        generateGeometry(tree, lod, yOffset, uRepeat, vScale, tips, mb);
+        return mb.build(bufferPool);
+    }
+ 
+    /**
+     *  Releases the buffers of a mesh that was over budget and removes the 
+     *  tips that were added for it.
+     */   
+    protected void discard( Mesh mesh, List<Vertex> tips, int tipCount ) {
+        if( bufferPool != null ) {
+            bufferPool.release(mesh);
+        }
+        if( tips != null ) {
+            tips.subList(tipCount, tips.size()).clear();
+        }
+    }
+ 
+    /**
+     *  Generates the smoothed tree geometry into a new MeshBuilder without
+     *  building the mesh.
+     */   
+    public MeshBuilder generateGeometry( SegmentTable tree, LevelOfDetailParameters lod, 
+                                         float yOffset, int uRepeat, float vScale, 
+                                         List<Vertex> tips ) {
         MeshBuilder mb = new MeshBuilder();
+        generateGeometry(tree, lod, yOffset, uRepeat, vScale, tips, mb);
+        return mb;
+    }
+ 
+    /**
+     *  Generates the same geometry as generateGeometry(SegmentTable, ...) into 
+     *  a new PackedMeshBuilder without building the mesh.
+     */   
+    public PackedMeshBuilder generatePackedGeometry( SegmentTable tree, LevelOfDetailParameters lod, 
+                                                     float yOffset, int uRepeat, float vScale, 
+                                                     List<Vertex> tips ) {
+        PackedMeshBuilder mb = new PackedMeshBuilder(tree.size() * 16, tree.size() * 32);
+        generateGeometry(tree, lod, yOffset, uRepeat, vScale, tips, mb);
+        return mb;
+    }
+ 
+    /**
+     *  Generates the smoothed tree geometry into the specified builder.  
+     *  Both the MeshBuilder and the PackedMeshBuilder versions go through 
+     *  here.
+     */   
+    protected void generateGeometry( SegmentTable tree, LevelOfDetailParameters lod, 
+                                     float yOffset, int uRepeat, float vScale, 
+                                     List<Vertex> tips, LoopBuilder mb ) {
  
         // Create the base loop for the main trunk... all
         // other segments branch off of that one.        
-        Segment trunk = tree.getTrunk();
+        int trunk = tree.getTrunk();
         
         Vector3f center = new Vector3f(0, yOffset, 0);
 
-        int effectiveRadials = Math.min(trunk.radials, lod.maxRadialSegments);
+        int effectiveRadials = Math.min(tree.getRadials(trunk), lod.maxRadialSegments);
 
         Quaternion up = new Quaternion().fromAngles(-FastMath.HALF_PI, 0, 0);
-        List<Vertex> baseLoop = mb.createLoop(center, up, trunk.startRadius, effectiveRadials, 0, 0);
-        List<Vertex> invertedLoop = null;
+        int[] baseLoop = mb.createLoop(center, up, tree.getStartRadius(trunk), effectiveRadials, 0);
+        int[] invertedLoop = null;
 
         mb.textureLoop(baseLoop, new Vector2f(0,0), new Vector2f(uRepeat, 0));        
-        applyTangents(baseLoop, false);
+        mb.tangentLoop(baseLoop, false);
         
            
-        for( Segment seg : tree ) {
-            if( seg == null ) {
+        for( int i = 0; i < tree.getTopSegmentCount(); i++ ) {
+            int seg = tree.getTopSegment(i);
+            if( seg == SegmentTable.NONE ) {
                 continue;
             }
             
-            if( seg.isInverted() ) {
+            if( tree.isInverted(seg) ) {
                 if( invertedLoop == null ) {
                     invertedLoop = invertLoop(baseLoop);
                 }
-                addBranches(invertedLoop, seg, 0, -uRepeat, -vScale, lod, 0, mb, null);
+                addBranches(new Tip(invertedLoop), tree, seg, 0, -uRepeat, -vScale, lod, 0, mb, null);
             } else {
-                addBranches(baseLoop, seg, 0, uRepeat, vScale, lod, 0, mb, tips);
+                addBranches(new Tip(baseLoop), tree, seg, 0, uRepeat, vScale, lod, 0, mb, tips);
             }
         }
  
         mb.smooth();
+    }
+ 
+    /**
+     *  Generates the tree and its mesh in one pass without building a 
+     *  Tree or SegmentTable first.  See generateGeometry(TreeGenerator, int, TreeTemplate, ...)
+     */
+    public Mesh generateMesh( TreeGenerator generator, int seed, TreeTemplate template,
+                              LevelOfDetailParameters lod, float yOffset, int uRepeat, float vScale, 
+                              List<Vertex> tips ) {
+        int tipCount = tips == null ? 0 : tips.size();
+        Mesh result = generateGeometry(generator, seed, template, lod, yOffset, uRepeat, vScale, tips)
+                        .build(bufferPool);
+                        
+        TreeBudget limit = budget;
+        if( limit == null || limit.fits(result) ) {
+            return result;
+        }
+        lod = Cloner.deepClone(lod);
+        do {
+            discard(result, tips, tipCount);
+            if( !limit.reduceLod(template, lod) ) {
+                throw new IllegalArgumentException("Unable to fit tree mesh within:" + limit);
+            }
+            result = generateGeometry(generator, seed, template, lod, yOffset, uRepeat, vScale, tips)
+                        .build(bufferPool);
+        } while( !limit.fits(result) );
+        return result;
+    }
+ 
+    /**
+     *  Generates the tree with the specified generator and extrudes each
+     *  segment's loops as soon as the generator produces it.  Only the segments 
+     *  on the path from the trunk to the current one are kept, so no Tree or
+     *  SegmentTable is held while meshing and the tree is only walked once.  
+     *  The result is the same as generating a SegmentTable first and passing 
+     *  it to generateGeometry().
+     */
+    public MeshBuilder generateGeometry( TreeGenerator generator, int seed, TreeTemplate template,
+                                         LevelOfDetailParameters lod, float yOffset, 
+                                         int uRepeat, float vScale, List<Vertex> tips ) {
+        MeshBuilder mb = new MeshBuilder();
+        generator.generate(seed, template, new MeshSink(mb, lod, yOffset, uRepeat, vScale, tips));
+        mb.smooth();
+        return mb;
+    }
+ 
+    /**
+     *  Generates the mesh for a single branch created with 
+     *  TreeGenerator.generateBranch().  The branch starts from a loop at the 
+     *  origin facing along its first segment instead of curving out of its 
+     *  parent.  The levels of detail are applied at the branch's depth in the 
+     *  full tree so that the result matches the rest of the tree's mesh.
+     */
+    public Mesh generateBranchMesh( SegmentTable branch, LevelOfDetailParameters lod, Vector3f origin, 
+                                    int uRepeat, float vScale, List<Vertex> tips ) {
+        MeshBuilder mb = new MeshBuilder();
+        
+        int seg = branch.getTrunk();
+        if( seg == SegmentTable.NONE ) {
+            seg = branch.getRoots();
+        }
+        boolean inverted = branch.isInverted(seg);
+        if( inverted ) {
+            uRepeat = -uRepeat;
+            vScale = -vScale;
+            tips = null;
+        }
+        
+        int effectiveRadials = Math.min(branch.getRadials(seg), lod.maxRadialSegments);
+        int[] baseLoop = mb.createLoop(origin, branch.getDir(seg, null), branch.getStartRadius(seg),
+                                       effectiveRadials, 0);
+        mb.textureLoop(baseLoop, new Vector2f(0,0), new Vector2f(uRepeat, 0));        
+        mb.tangentLoop(baseLoop, inverted);
+ 
+        addBranches(new Tip(baseLoop), branch, seg, 0, uRepeat, vScale, lod, branch.getDepth(seg), mb, tips);
+        
+        mb.smooth();
+        return mb.build(bufferPool);
+    }
+ 
+    /**
+     *  The tip of a branch.  This is either the loop of vertex handles to 
+     *  extrude from or, once the branch has been capped off, the center 
+     *  vertex that is moved along with the segments that are not rendered.  
+     *  The center is not part of the mesh.
+     */
+    protected static class Tip {
+        final int[] loop;
+        final Vertex center;
         
-        return mb.build();
+        public Tip( int[] loop ) {
+            this.loop = loop;
+            this.center = null;
+        }
+        
+        public Tip( Vertex center ) {
+            this.loop = null;
+            this.center = center;
+        }
+        
+        public boolean isCapped() {
+            return center != null;
+        }
+    }
+ 
+    /**
+     *  Returns true if the root clipping is on and every vertex of the
+     *  loop is below the ground.
+     */   
+    protected boolean isBuried( int[] loop, LoopBuilder mb ) {
+        if( rootClip == null ) {
+            return false;
+        }
+        Vector3f pos = new Vector3f();
+        for( int v : loop ) {
+            mb.getPosition(v, pos);
+            if( pos.y >= rootClip.getHeight(pos.x, pos.z) ) {
+                return false;
+            }
+        }
+        return true;
     }
  
     protected boolean renderDepth( int depth, boolean inverted, LevelOfDetailParameters lod ) {    
@@ -108,181 +368,447 @@ public class SkinnedTreeMeshGenerator {
         }
     } 
 
-    protected Vertex addCap( List<Vertex> loop, Segment seg, float vBase, int uRepeat, float vScaleLocal,
-                             MeshBuilder mb ) {
+    protected Vertex addCap( int[] loop, Vector3f dir, boolean inverted, 
+                             float vBase, int uRepeat, float vScaleLocal,
+                             LoopBuilder mb ) {
         
-        List<Vertex> tip = mb.extrude(loop, seg.dir, 0, Vector3f.ZERO, 3, 0.001f, 0);
+        int[] tip = mb.cap(loop, dir);
         mb.textureLoop(tip, new Vector2f(0, vBase + vScaleLocal), new Vector2f(uRepeat, 0));            
-        applyTangents(tip, seg.isInverted());
-                
-        for( Vertex v : tip ) {
-            v.group = 1;
-        }            
+        mb.tangentLoop(tip, inverted);
             
         // Find the center to add to the branch tips
-        Vector3f centerPos = mb.findCenter(tip);
+        Vector3f centerPos = mb.findCenter(tip, null);
         Vertex tipCenter = new Vertex(centerPos);
-        tipCenter.normal = seg.dir;
+        tipCenter.normal = dir;
         
         return tipCenter;
     } 
  
-    protected void addBranches( List<Vertex> base, Segment seg, 
+    protected void addBranches( Tip base, SegmentTable tree, int seg, 
                                 float vBase, int uRepeat, float vScale,
                                 LevelOfDetailParameters lod, int depth,  
-                                MeshBuilder mb, List<Vertex> tips ) {
+                                LoopBuilder mb, List<Vertex> tips ) {
  
+        Fork fork = addSegment(base, tree.getDir(seg, null), tree.getLength(seg), 
+                               tree.getEndRadius(seg), tree.getTwist(seg), tree.getRadials(seg),
+                               tree.isInverted(seg), tree.hasChildren(seg),
+                               vBase, uRepeat, vScale, lod, depth, mb, tips);
+        addChildren(fork, tree, seg, lod, mb, tips);
+    }
+ 
+    /**
+     *  Adds the child segments of the specified segment, the curved ones
+     *  through addCurvedBranch().  Does nothing if the fork is null.
+     */   
+    protected void addChildren( Fork fork, SegmentTable tree, int seg, 
+                                LevelOfDetailParameters lod,  
+                                LoopBuilder mb, List<Vertex> tips ) {
+        if( fork == null ) {
+            return;
+        }
+        int first = tree.getFirstChild(seg);
+        int count = tree.getChildCount(seg);
+        for( int child = first; child < first + count; child++ ) {
+            ConnectionType connection = tree.getParentConnection(child);
+            Tip base = getChildBase(fork, connection, mb);
+            if( connection == ConnectionType.Curve ) {
+                addCurvedBranch(base, fork, tree, child, lod, mb, tips);
+            } else {
+                // We can just continue directly
+                addBranches(base, tree, child, fork.vBase, fork.uRepeat, fork.vScale, 
+                            lod, fork.depth, mb, tips);
+            }
+        }
+    }
+ 
+    /**
+     *  Extends the base by one segment.  A root segment that ends below the 
+     *  root clip and a segment without children are capped off, adding the
+     *  tip center of the latter to the tips, and null is returned.  Otherwise
+     *  the fork that the segment's children start from is returned.
+     */   
+    protected Fork addSegment( Tip base, Vector3f dir, float length, float endRadius, 
+                               float twist, int radials, boolean inverted, boolean hasChildren,
+                               float vBase, int uRepeat, float vScale,
+                               LevelOfDetailParameters lod, int depth,  
+                               LoopBuilder mb, List<Vertex> tips ) {
+        
         // Base the 'v' scale on what the 'u' will do as the tree expands
         // but the length doesn't.  ie: a ratio of length to radius.
-        float vScaleLocal = vScale * (1 / seg.endRadius); 
+        float vScaleLocal = vScale * (1 / endRadius); 
 
-        int effectiveRadials = Math.min(seg.radials, lod.maxRadialSegments);
+        int effectiveRadials = Math.min(radials, lod.maxRadialSegments);
 
-        boolean renderDepth = renderDepth(depth, seg.isInverted(), lod);
+        boolean renderDepth = renderDepth(depth, inverted, lod);
         
-        List<Vertex> tip = base;                
-        if( renderDepth ) {
-            tip = mb.extrude(tip, seg.dir, seg.length, effectiveRadials, 
-                             seg.endRadius, seg.twist);       
-
-            vBase += seg.length * vScaleLocal;
+        Tip tip = extendTip(base, dir, length, endRadius, twist, 
+                            effectiveRadials, renderDepth, inverted, 
+                            vBase, uRepeat, vScaleLocal, mb);
+        vBase += length * vScaleLocal;
         
-            mb.textureLoop(tip, new Vector2f(0, vBase), new Vector2f(uRepeat, 0));
-            applyTangents(tip, seg.isInverted());
-        } else {
-            // We still need to pass along the tip and/or cap off the end
-            Vertex tipCenter;            
-            if( tip.size() > 1 ) {
-                // Cap it off
-                tipCenter = addCap(tip, seg, vBase, uRepeat, vScaleLocal, mb);
-                tip = new ArrayList<Vertex>();
-                tip.add(tipCenter);            
-            } else if( tip.size() == 1 ) {
-                tipCenter = tip.get(0);
-            } else {
-                throw new IllegalStateException("Tip state not properly passed through");
-            }
- 
-            // Extend the tip even though we don't render it.  We will
-            // need the tips for the leaves.
-            tipCenter.pos.addLocal(seg.dir.mult(seg.length));
-            tipCenter.normal = seg.dir;            
-            vBase += seg.length * vScaleLocal;
-        }                   
+        if( renderDepth && inverted && isBuried(tip.loop, mb) ) {
+            // Nothing below this point can be seen
+            addCap(tip.loop, dir, inverted, vBase, uRepeat, vScaleLocal, mb);
+            return null;
+        }
 
-        if( !seg.hasChildren() ) {
+        if( !hasChildren ) {
             // Then cap it off by closing the loop.
             Vertex tipCenter;
             if( renderDepth ) {
-                tipCenter = addCap(tip, seg, vBase, uRepeat, vScaleLocal, mb);
+                tipCenter = addCap(tip.loop, dir, inverted, vBase, uRepeat, vScaleLocal, mb);
             } else {
-                if( tip.size() > 1 ) {
+                if( !tip.isCapped() ) {
                     throw new IllegalStateException("Tip state not properly passed through");
                 }
-                tipCenter = tip.get(0);
+                tipCenter = tip.center;
             }
 
             if( tips != null ) {
                 tips.add(tipCenter);
             }            
             
-            return;
+            return null;
         }
-
-        boolean renderNextDepth = renderDepth;
-        boolean capped = tip.size() == 1;
-        if( !renderDepth(depth + 1, seg.isInverted(), lod) ) {
-            renderNextDepth = false;             
-        }                    
-
-        // And the follow on segments
-        for( Segment child : seg ) {
-            switch( child.parentConnection ) {
-                case Extrude:
-                    // We can just continue directly
-                    addBranches(tip, child, vBase, uRepeat, vScale, lod, depth, mb, tips);
-                    break;
-                case Abut:
-                    throw new UnsupportedOperationException("Abutment not yet supported.");
-                case Curve:
- 
-                    List<Vertex> newTip = tip;
-                    float v = 0;
-                    
-                    if( !renderNextDepth ) {
-                        if( !capped ) {
-                            // Cap the previous level off... but only for the first child do we need to
-                            capped = true;
-                            Vertex tipCenter = addCap(tip, seg, vBase, uRepeat, vScaleLocal, mb);
-                            tip = new ArrayList<Vertex>();
-                            tip.add(tipCenter);
-                        } else if( newTip.size() != 1 ) {
-                            // check should be unnecessary
-                            throw new IllegalStateException("Tip state not properly passed through");
-                        }
-                         
-                        // Make sure this branch has its own tip to move
-                        Vertex tipCenter = newTip.get(0).clone();
-                        newTip = new ArrayList<Vertex>();
-                        newTip.add(tipCenter);
-                    }
-                
-                    List<CurveStep> steps = curveGen.generateCurve(seg.dir, seg.endRadius,
-                                                                   child.dir, child.startRadius,
-                                                                   vBase, vScale);
- 
-                    if( renderNextDepth ) {
-                        v = 0;                                                                  
-                        for( CurveStep step : steps ) {
-                            v = step.v;
-                            if( renderNextDepth ) {
-                                newTip = mb.extrude(newTip, step.dir, step.distance, step.offset,
-                                                    effectiveRadials, step.radius, 0);
-                                mb.textureLoop(newTip, new Vector2f(0, step.v), new Vector2f(uRepeat, 0));
-                                applyTangents(newTip, child.isInverted());
-                            } 
-                        }
-                    } else {
-                        // Just advance the tip to the end
-                        if( newTip.size() != 1 ) {
-                            throw new IllegalStateException("Tip state not properly passed through");
-                        }
-                        // Extend the tip
-                        CurveStep step = steps.get(steps.size() - 1);
-                        Vertex tipCenter = newTip.get(0);
-                        tipCenter.pos.addLocal(step.center);                            
-                        tipCenter.normal = step.dir;
-                        v = step.v;
-                    }
-                    
-                    addBranches(newTip, child, v, uRepeat, vScale, lod, depth + 1, mb, tips);
-                
-                    break;
+ 
+        Fork fork = new Fork();
+        fork.tip = tip;
+        fork.dir = dir;
+        fork.endRadius = endRadius;
+        fork.vBase = vBase;
+        fork.vScaleLocal = vScaleLocal;
+        fork.uRepeat = uRepeat;
+        fork.vScale = vScale;
+        fork.depth = depth;
+        fork.effectiveRadials = effectiveRadials;
+        fork.inverted = inverted;
+        fork.renderNextDepth = renderDepth && renderDepth(depth + 1, inverted, lod);
+        fork.capped = tip.isCapped();
+        return fork;
+    }
+ 
+    /**
+     *  Returns the tip that a child of the fork starts from.  An extruded child
+     *  continues from the fork's tip.  If a curved child is not rendered then 
+     *  the fork is capped off, if it wasn't already, and the child gets its 
+     *  own tip center to move.
+     */   
+    protected Tip getChildBase( Fork fork, ConnectionType connection, LoopBuilder mb ) {
+        switch( connection ) {
+            case Extrude:
+                return fork.tip;
+            case Curve:
+                break;
+            default:
+                throw new UnsupportedOperationException("Abutment not yet supported.");
+        }
+        
+        Tip tip = fork.tip;
+        if( fork.renderNextDepth ) {
+            return tip;
+        }
+        if( !fork.capped ) {
+            // Cap the previous level off... but only for the first child do we need to.
+            // That child still starts from the parent loop's first vertex.
+            fork.capped = true;
+            fork.tip = new Tip(addCap(tip.loop, fork.dir, fork.inverted, fork.vBase, 
+                                      fork.uRepeat, fork.vScaleLocal, mb));
+            return new Tip(copyVertex(tip.loop[0], mb));
+        } else if( !tip.isCapped() ) {
+            // check should be unnecessary
+            throw new IllegalStateException("Tip state not properly passed through");
+        }
+        
+        // Make sure this branch has its own tip to move
+        return new Tip(tip.center.clone());
+    }
+ 
+    /**
+     *  The end of a segment that has children.  The tip is replaced with
+     *  the cap center once the segment is capped off for its children that 
+     *  are not rendered.
+     */
+    protected static class Fork {
+        Tip tip;
+        Vector3f dir;
+        float endRadius;
+        float vBase;
+        float vScaleLocal;
+        int uRepeat;
+        float vScale;
+        int depth;
+        int effectiveRadials;
+        boolean inverted;
+        boolean renderNextDepth;
+        boolean capped;
+        
+        public Fork() {
+        }
+ 
+        /**
+         *  Copies everything except the tip.
+         */       
+        public Fork( Fork fork ) {
+            this.dir = fork.dir.clone();
+            this.endRadius = fork.endRadius;
+            this.vBase = fork.vBase;
+            this.vScaleLocal = fork.vScaleLocal;
+            this.uRepeat = fork.uRepeat;
+            this.vScale = fork.vScale;
+            this.depth = fork.depth;
+            this.effectiveRadials = fork.effectiveRadials;
+            this.inverted = fork.inverted;
+            this.renderNextDepth = fork.renderNextDepth;
+            this.capped = fork.capped;
+        }
+    }
+ 
+    /**
+     *  Returns a new Vertex with the position, tangent, and texture coordinate 
+     *  of the specified builder vertex.
+     */   
+    protected Vertex copyVertex( int vertex, LoopBuilder mb ) {
+        Vertex result = new Vertex(mb.getPosition(vertex, null));
+        result.tangent = mb.getTangent(vertex, null);
+        result.uv = mb.getUv(vertex, null);
+        return result;
+    }
+ 
+    /**
+     *  Extends the base loop by one segment and returns the new tip.  If
+     *  the segment is not rendered then the base is capped off if it hasn't
+     *  been already and the returned tip is the center vertex that is 
+     *  moved to the end of the segment.
+     */
+    protected Tip extendTip( Tip base, Vector3f dir, float length, 
+                             float endRadius, float twist, int effectiveRadials,
+                             boolean render, boolean inverted, 
+                             float vBase, int uRepeat, float vScaleLocal,  
+                             LoopBuilder mb ) {
+        if( render ) {
+            int[] tip = mb.extrude(base.loop, dir, length, effectiveRadials, endRadius, twist);       
+            mb.textureLoop(tip, new Vector2f(0, vBase + length * vScaleLocal), new Vector2f(uRepeat, 0));
+            mb.tangentLoop(tip, inverted);
+            return new Tip(tip);
+        } 
+        
+        // We still need to pass along the tip and/or cap off the end
+        Tip tip = base;
+        if( !tip.isCapped() ) {
+            // Cap it off
+            tip = new Tip(addCap(tip.loop, dir, inverted, vBase, uRepeat, vScaleLocal, mb));
+        }
+ 
+        // Extend the tip even though we don't render it.  We will
+        // need the tips for the leaves.
+        tip.center.pos.addLocal(dir.mult(length));
+        tip.center.normal = dir;
+        return tip;            
+    }
+ 
+    /**
+     *  Adds the curve that joins a branch to its parent's fork and then the 
+     *  branch itself.  The base is either the parent's tip loop or, if the 
+     *  branch is not rendered, a tip center that belongs only to this branch.
+     *  Everything this adds to the mesh builder and tips comes after anything 
+     *  that was added before the call and before anything added after it.  
+     */
+    protected void addCurvedBranch( Tip base, Fork parent, SegmentTable tree, int seg, 
+                                    LevelOfDetailParameters lod, 
+                                    LoopBuilder mb, List<Vertex> tips ) {
+        Fork fork = addCurvedSegment(base, parent, tree.getDir(seg, null), tree.getStartRadius(seg), 
+                                     tree.getLength(seg), tree.getEndRadius(seg), 
+                                     tree.getTwist(seg), tree.getRadials(seg),
+                                     tree.isInverted(seg), tree.hasChildren(seg), 
+                                     lod, mb, tips);
+        addChildren(fork, tree, seg, lod, mb, tips);
+    }
+ 
+    /**
+     *  Adds the curve out of the parent's fork and then the segment at the 
+     *  end of it.  Returns the segment's fork the same as addSegment().
+     */   
+    protected Fork addCurvedSegment( Tip base, Fork parent, Vector3f dir, float startRadius, 
+                                     float length, float endRadius, float twist, int radials, 
+                                     boolean inverted, boolean hasChildren,
+                                     LevelOfDetailParameters lod,
+                                     LoopBuilder mb, List<Vertex> tips ) {
+        List<CurveStep> steps = curveGen.generateCurve(parent.dir, parent.endRadius,
+                                                       dir, startRadius,
+                                                       parent.vBase, parent.vScale);
+        Tip newTip = addCurve(base, steps, parent.effectiveRadials, parent.renderNextDepth, 
+                              inverted, parent.uRepeat, mb);
+        
+        return addSegment(newTip, dir, length, endRadius, twist, radials, inverted, hasChildren,
+                          getCurveV(steps), parent.uRepeat, parent.vScale, lod, parent.depth + 1,
+                          mb, tips);
+    }
+ 
+    /**
+     *  Extrudes the base along the curve steps and returns the new tip.
+     *  If the curve is not rendered then the base must be a tip center
+     *  that is moved to the end of the curve.
+     */   
+    protected Tip addCurve( Tip base, List<CurveStep> steps, 
+                            int effectiveRadials, boolean render, boolean inverted, 
+                            int uRepeat, LoopBuilder mb ) {
+        if( render ) {
+            int[] loop = base.loop;
+            for( CurveStep step : steps ) {
+                loop = mb.extrude(loop, step.dir, step.distance, step.offset,
+                                  effectiveRadials, step.radius, 0);
+                mb.textureLoop(loop, new Vector2f(0, step.v), new Vector2f(uRepeat, 0));
+                mb.tangentLoop(loop, inverted);
             }
-        }                
+            return new Tip(loop);
+        }
+        
+        // Just advance the tip to the end
+        if( !base.isCapped() ) {
+            throw new IllegalStateException("Tip state not properly passed through");
+        }
+        // Extend the tip
+        CurveStep step = steps.get(steps.size() - 1);
+        base.center.pos.addLocal(step.center);                            
+        base.center.normal = step.dir;
+        return base;
     }
-
-    protected List<Vertex> invertLoop( List<Vertex> loop ) {
-        List<Vertex> results = new ArrayList<Vertex>(loop);
-        Collections.reverse(results);
-        return results;
+ 
+    /**
+     *  Returns the texture v at the end of the curve.
+     */   
+    protected float getCurveV( List<CurveStep> steps ) {
+        return steps.isEmpty() ? 0 : steps.get(steps.size() - 1).v;
     }
-
-    protected void applyTangents( List<Vertex> loop, boolean invert ) {
+ 
+    /**
+     *  A segment whose children have not all been delivered yet.
+     */
+    private static class Frame {
+        int handle;
+        Fork fork;
+        boolean buried;
+    }
+ 
+    /**
+     *  Meshes the segments as the TreeGenerator delivers them.  The segments
+     *  arrive depth-first in the same order that addBranches() visits
+     *  them so the builder sees the same calls.  The frames of segments
+     *  whose children are done are popped and reused.
+     */
+    private class MeshSink implements SegmentSink {
+        private final LoopBuilder mb;
+        private final LevelOfDetailParameters lod;
+        private final float yOffset;
+        private final int uRepeat;
+        private final float vScale;
+        private final List<Vertex> tips;
+        private final List<Frame> frames = new ArrayList<Frame>();
+        private int size;
+        private int next;
+        private int[] baseLoop;
+        private int[] invertedLoop;
         
-        for( int i = 1; i < loop.size(); i++ ) {
-            Vertex last = loop.get(i-1);
-            Vertex next = loop.get(i);
+        public MeshSink( LoopBuilder mb, LevelOfDetailParameters lod, float yOffset, 
+                         int uRepeat, float vScale, List<Vertex> tips ) {
+            this.mb = mb;
+            this.lod = lod;
+            this.yOffset = yOffset;
+            this.uRepeat = uRepeat;
+            this.vScale = vScale;
+            this.tips = tips;
+        }
+ 
+        @Override
+        public int addSegment( int parent, int childIndex, int childCount, int level, Segment segment ) {
+            int handle = next++;
             
-            Vector3f dir = next.pos.subtract(last.pos);
-            dir.normalizeLocal();
-            if( invert ) {
-                dir.multLocal(-1);
+            // The segment is a scratch object and the tips keep the direction
+            Vector3f dir = segment.dir.clone();
+            boolean inverted = segment.isInverted();
+            boolean hasChildren = childCount > 0;
+            Fork fork;
+            if( parent == SegmentSink.NO_PARENT ) {
+                size = 0;
+                if( baseLoop == null ) {
+                    // The first segment is the trunk and sizes the base loop for 
+                    // both it and the roots
+                    createBaseLoop(segment);
+                }
+                if( inverted ) {
+                    if( invertedLoop == null ) {
+                        invertedLoop = invertLoop(baseLoop);
+                    }
+                    fork = SkinnedTreeMeshGenerator.this.addSegment(new Tip(invertedLoop), dir, 
+                                segment.length, segment.endRadius, segment.twist, segment.radials, 
+                                inverted, hasChildren, 0, -uRepeat, -vScale, lod, 0, mb, null);
+                } else {
+                    fork = SkinnedTreeMeshGenerator.this.addSegment(new Tip(baseLoop), dir, 
+                                segment.length, segment.endRadius, segment.twist, segment.radials, 
+                                inverted, hasChildren, 0, uRepeat, vScale, lod, 0, mb, tips);
+                }
+            } else {
+                while( frames.get(size - 1).handle != parent ) {
+                    size--;
+                }
+                Frame p = frames.get(size - 1);
+                if( p.buried ) {
+                    // The whole subtree is below the ground
+                    if( hasChildren ) {
+                        push(handle).buried = true;
+                    }
+                    return handle;
+                }
+                Fork pf = p.fork;
+                Tip base = getChildBase(pf, segment.parentConnection, mb);
+                List<Vertex> childTips = pf.inverted ? null : tips; 
+                if( segment.parentConnection == ConnectionType.Curve ) {
+                    fork = addCurvedSegment(base, pf, dir, segment.startRadius, segment.length,
+                                            segment.endRadius, segment.twist, segment.radials,
+                                            inverted, hasChildren, lod, mb, childTips);
+                } else {
+                    fork = SkinnedTreeMeshGenerator.this.addSegment(base, dir, segment.length, 
+                                segment.endRadius, segment.twist, segment.radials, inverted, 
+                                hasChildren, pf.vBase, pf.uRepeat, pf.vScale, lod, pf.depth, 
+                                mb, childTips);
+                }
+            }
+            
+            if( hasChildren ) {
+                // A segment with children only has no fork when it was buried
+                Frame frame = push(handle);
+                frame.fork = fork;
+                frame.buried = fork == null;
             }
-            last.tangent = dir;
+            return handle;
         }
         
-        // and match up the ends
-        loop.get(loop.size()-1).tangent = loop.get(0).tangent;
+        private Frame push( int handle ) {
+            if( size == frames.size() ) {
+                frames.add(new Frame());
+            }
+            Frame frame = frames.get(size++);
+            frame.handle = handle;
+            frame.fork = null;
+            frame.buried = false;
+            return frame;
+        }
+        
+        private void createBaseLoop( Segment trunk ) {
+            Vector3f center = new Vector3f(0, yOffset, 0);
+            int effectiveRadials = Math.min(trunk.radials, lod.maxRadialSegments);
+            Quaternion up = new Quaternion().fromAngles(-FastMath.HALF_PI, 0, 0);
+            baseLoop = mb.createLoop(center, up, trunk.startRadius, effectiveRadials, 0);
+            mb.textureLoop(baseLoop, new Vector2f(0,0), new Vector2f(uRepeat, 0));        
+            mb.tangentLoop(baseLoop, false);
+        }
+    }
+ 
+    protected int[] invertLoop( int[] loop ) {
+        int[] results = new int[loop.length];
+        for( int i = 0; i < loop.length; i++ ) {
+            results[i] = loop[loop.length - 1 - i];
+        }
+        return results;
     }
 }
@@ -0,0 +1,358 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.scene.Mesh;
+import com.jme3.util.clone.Cloner;
+import com.simsilica.arboreal.BranchParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters.ReductionType;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeLimit;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.TreeTemplate.Levels;
+
+
+/**
+ *  A hard limit on the number of triangles and leaves per tree and level
+ *  of detail.  fit() reduces a copy of the tree parameters until the 
+ *  TreeEstimate of every level of detail is within the budget.  
+ *  Detail is removed in this order:
+ *  <ul>
+ *  <li>Leaves: the smallest branches are pruned by removing side joints
+ *      from their parent level and then by dropping the deepest level.</li>
+ *  <li>Triangles: the level of detail's maxRadialSegments is lowered, then
+ *      the lengthSegments of the level that saves the most triangles, and 
+ *      finally the level of detail's root and branch depths.</li>
+ *  </ul>
+ *  Leaf pruning and lengthSegments change the generated tree for all levels 
+ *  of detail.  The rest only changes how one level of detail is meshed.
+ *
+ *  <p>fit() uses the expected triangle counts of the estimates because the
+ *  skinned upper bounds are often far above the real meshes and would 
+ *  reduce too much.  The expected counts can be slightly below the real 
+ *  meshes so the mesh generators take a budget of their own and check the 
+ *  real meshes against it, meshing again with a reduced level of detail 
+ *  when they are over.  TreeGenerator takes a budget as its TreeLimit to fit the parameters 
+ *  it generates.  TreeMeshCache sets its budget on all of these.</p>
+ *
+ *  <p>A budget that cannot be met is never silently exceeded.  fit() and
+ *  the mesh generators throw an IllegalArgumentException instead.</p>
+ */
+public class TreeBudget implements TreeLimit {
+
+    // The fewest radials the mesh generators can work with
+    private static final int MIN_RADIALS = 3;
+    
+    private final int maxTriangles;
+    private final int maxLeaves;
+ 
+    /**
+     *  Creates a budget with the specified maximum triangles per tree 
+     *  mesh and leaves per leaf mesh.  Use Integer.MAX_VALUE for no limit.
+     */   
+    public TreeBudget( int maxTriangles, int maxLeaves ) {
+        this.maxTriangles = maxTriangles;
+        this.maxLeaves = maxLeaves;
+    }
+    
+    public int getMaxTriangles() {
+        return maxTriangles;
+    }
+    
+    public int getMaxLeaves() {
+        return maxLeaves;
+    }
+ 
+    /**
+     *  Returns true if the expected triangles and the leaves of the 
+     *  estimate are within this budget.
+     */
+    public boolean fits( TreeEstimate estimate ) {
+        if( estimate.getExpectedTriangleCount() > maxTriangles ) {
+            return false;
+        }
+        return estimate.getLeafBytes() == 0 || estimate.getTipCount() <= maxLeaves;
+    }
+    
+    /**
+     *  Returns true if the real tree mesh is within the triangle limit.
+     */
+    public boolean fits( Mesh treeMesh ) {
+        return treeMesh == null || treeMesh.getTriangleCount() <= maxTriangles;
+    }
+    
+    public boolean fits( TreeParameters treeParms ) {
+        TreeTemplate template = new TreeTemplate(treeParms);
+        for( LevelOfDetailParameters lod : treeParms.getLods() ) {
+            if( !fits(TreeEstimate.estimate(template, lod)) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+ 
+    /**
+     *  Returns tree parameters that are within this budget.  These are the 
+     *  original parameters if they already fit or a reduced copy otherwise.
+     *  The original parameters are never modified.
+     *
+     *  @throws IllegalArgumentException if the estimated leaves or triangles
+     *          of any level of detail cannot be reduced enough to fit.
+     */   
+    @Override
+    public TreeParameters fit( TreeParameters treeParms ) {
+        if( fits(treeParms) ) {
+            return treeParms;
+        }
+        TreeParameters result = Cloner.deepClone(treeParms);
+        
+        if( result.getGenerateLeaves() ) {
+            while( getTipCount(result) > maxLeaves ) {
+                if( !pruneLeaves(result) ) {
+                    throw new IllegalArgumentException("Unable to fit leaves within:" + maxLeaves 
+                                                       + " leaves, left:" + getTipCount(result));
+                }
+            }
+        }
+        
+        for( LevelOfDetailParameters lod : result.getLods() ) {
+            while( TreeEstimate.estimate(result, lod).getExpectedTriangleCount() > maxTriangles ) {
+                TreeTemplate template = new TreeTemplate(result);
+                if( reduceRadials(template, lod) ) {
+                    continue;
+                }
+                if( reduceLengthSegments(result, lod) ) {
+                    continue;
+                }
+                if( !reduceDepth(template, lod) ) {
+                    throw new IllegalArgumentException("Unable to fit level of detail:" + lod 
+                                                       + " within:" + maxTriangles + " triangles");
+                }
+            }
+        }
+        return result;
+    }
+ 
+    /**
+     *  Reduces the detail of the specified level of detail by one step 
+     *  without changing the tree.  Returns false if there is nothing left 
+     *  to reduce.
+     */   
+    public boolean reduceLod( TreeTemplate template, LevelOfDetailParameters lod ) {
+        return reduceRadials(template, lod) || reduceDepth(template, lod);
+    }
+ 
+    /**
+     *  Reduces the detail of the specified level of detail by one step
+     *  based on an already generated tree.  Returns false if there is nothing 
+     *  left to reduce.
+     */   
+    public boolean reduceLod( SegmentTable tree, LevelOfDetailParameters lod ) {
+        int branchLevels = 0;
+        int rootLevels = 0;
+        int radials = 0;
+        for( int i = 0; i < tree.size(); i++ ) {
+            int depth = tree.getDepth(i);
+            if( tree.isInverted(i) ) {
+                rootLevels = Math.max(rootLevels, depth + 1);
+                if( depth < lod.getRootDepth() ) {
+                    radials = Math.max(radials, tree.getRadials(i));
+                }
+            } else {
+                branchLevels = Math.max(branchLevels, depth + 1);
+                if( depth < lod.getBranchDepth() ) {
+                    radials = Math.max(radials, tree.getRadials(i));
+                }
+            }
+        }
+        return reduceRadials(radials, lod) || reduceDepth(branchLevels, rootLevels, lod);
+    }
+ 
+    private static long getTipCount( TreeParameters treeParms ) {
+        return TreeEstimate.estimate(treeParms, treeParms.getLod(0)).getTipCount();
+    }
+ 
+    /**
+     *  Removes one side joint from the parent level of the smallest branches
+     *  or removes that level altogether when it is down to one child.
+     */   
+    protected boolean pruneLeaves( TreeParameters treeParms ) {
+        int size = new TreeTemplate(treeParms).getBranches().size();
+        if( size < 2 ) {
+            return false;
+        }
+        BranchParameters parent = makeOwn(treeParms, false, size - 2);
+        int children = parent.getSideJointCount() + (parent.isHasEndJoint() ? 1 : 0);
+        if( children > 1 && parent.getSideJointCount() > 0 ) {
+            parent.setSideJointCount(parent.getSideJointCount() - 1);
+        } else {
+            treeParms.getBranch(size - 1).setEnabled(false);
+        }
+        return true;
+    }
+ 
+    /**
+     *  Lowers the level of detail's maximum radials below the most radials
+     *  that it currently renders.
+     */   
+    protected boolean reduceRadials( TreeTemplate template, LevelOfDetailParameters lod ) {
+        int radials = Math.max(getMaxRadials(template.getBranches(), lod.getBranchDepth()),
+                               getMaxRadials(template.getRoots(), lod.getRootDepth()));
+        return reduceRadials(radials, lod);
+    }
+    
+    private static boolean reduceRadials( int radials, LevelOfDetailParameters lod ) {
+        radials = Math.min(radials, lod.getMaxRadialSegments());
+        if( radials <= MIN_RADIALS || lod.getReduction() == ReductionType.FlatPoly ) {
+            // Flat poly meshes have no radials
+            return false;
+        }
+        lod.setMaxRadialSegments(radials - 1);
+        return true;
+    }
+    
+    private static int getMaxRadials( Levels levels, int depth ) {
+        int result = 0;
+        for( int i = 0; i < Math.min(depth, levels.size()); i++ ) {
+            result = Math.max(result, levels.get(i).getRadialSegments());
+        }
+        return result;
+    }
+ 
+    /**
+     *  Takes one length segment away from the rendered level where it 
+     *  saves the most triangles.
+     */   
+    protected boolean reduceLengthSegments( TreeParameters treeParms, LevelOfDetailParameters lod ) {
+        TreeTemplate template = new TreeTemplate(treeParms);
+        long current = TreeEstimate.estimate(template, lod).getExpectedTriangleCount();
+        long best = current;
+        boolean bestRoots = false;
+        int bestDepth = -1;
+        for( int side = 0; side < 2; side++ ) {
+            boolean roots = side == 1;
+            Levels levels = roots ? template.getRoots() : template.getBranches();
+            int depth = Math.min(roots ? lod.getRootDepth() : lod.getBranchDepth(), levels.size());
+            for( int i = 0; i < depth; i++ ) {
+                BranchParameters parms = levels.get(i);
+                int segments = parms.getLengthSegments();
+                if( segments <= 1 ) {
+                    continue;
+                }
+                // Try it on a copy so that inherited levels are left alone 
+                TreeParameters trial = Cloner.deepClone(treeParms);
+                makeOwn(trial, roots, i).setLengthSegments(segments - 1);
+                long triangles = TreeEstimate.estimate(trial, lod).getExpectedTriangleCount();
+                if( triangles < best ) {
+                    best = triangles;
+                    bestRoots = roots;
+                    bestDepth = i;
+                }
+            }
+        }
+        if( bestDepth < 0 ) {
+            return false;
+        }
+        BranchParameters parms = makeOwn(treeParms, bestRoots, bestDepth);
+        parms.setLengthSegments(parms.getLengthSegments() - 1);
+        return true;
+    }
+ 
+    /**
+     *  Stops rendering the deepest level of roots or, once those are down
+     *  to the main root, branches.
+     */   
+    protected boolean reduceDepth( TreeTemplate template, LevelOfDetailParameters lod ) {
+        return reduceDepth(template.getBranches().size(), template.getRoots().size(), lod);
+    }
+    
+    private static boolean reduceDepth( int branchLevels, int rootLevels, LevelOfDetailParameters lod ) {
+        int rootDepth = Math.min(lod.getRootDepth(), rootLevels);
+        int branchDepth = Math.min(lod.getBranchDepth(), branchLevels);
+        if( rootDepth > 1 ) {
+            lod.setRootDepth(rootDepth - 1);
+        } else if( branchDepth > 1 ) {
+            lod.setBranchDepth(branchDepth - 1);
+        } else if( rootDepth > 0 ) {
+            lod.setRootDepth(0);
+        } else {
+            return false;
+        }
+        return true;
+    }
+ 
+    /**
+     *  Returns the BranchParameters of the specified level, first copying 
+     *  the inherited values into it so that changing it does not change
+     *  the levels it inherits from.  Levels that inherit from this one
+     *  will see the changes.
+     */   
+    protected static BranchParameters makeOwn( TreeParameters treeParms, boolean roots, int depth ) {
+        BranchParameters result = roots ? treeParms.getRoot(depth) : treeParms.getBranch(depth);
+        if( result.isInherit() ) {
+            Levels levels = roots ? new TreeTemplate(treeParms).getRoots() 
+                                  : new TreeTemplate(treeParms).getBranches();
+            result.fromMap(levels.get(depth).toMap());
+            result.setInherit(false);
+        }
+        return result;
+    }
+    
+    @Override
+    public int hashCode() {
+        return maxTriangles * 31 + maxLeaves;
+    }
+    
+    @Override
+    public boolean equals( Object o ) {
+        if( o == this ) {
+            return true;
+        }
+        if( o == null || o.getClass() != getClass() ) {
+            return false;
+        }
+        TreeBudget other = (TreeBudget)o;
+        return maxTriangles == other.maxTriangles && maxLeaves == other.maxLeaves;
+    }
+    
+    @Override
+    public String toString() {
+        return "TreeBudget[maxTriangles=" + maxTriangles + ", maxLeaves=" + maxLeaves + "]";
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.math.FastMath;
+import com.simsilica.arboreal.BranchParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters.ReductionType;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.TreeTemplate.Levels;
+
+
+/**
+ *  Predicts the size of a tree and its meshes for one level of detail
+ *  directly from the parameters without generating anything.  The 
+ *  segment and leaf tip counts are exact.  The vertex and triangle counts 
+ *  are exact for the flat poly meshes.
+ *
+ *  <p>For the skinned meshes the vertex and triangle counts are upper
+ *  bounds.  They depend on the number of steps the LegacyCurveGenerator
+ *  takes to join each branch to its parent, which depends on the random 
+ *  bend of the parent's last segment and the branch's first segment.  
+ *  Every curve is counted with the steps it would take if gravity and
+ *  variation bent both segments as far apart as the generator allows.  
+ *  Depending on the parameters, real meshes can be considerably smaller,
+ *  especially for high variation.  A different CurveGenerator is not
+ *  covered by the bound.</p>
+ *
+ *  <p>The expected counts instead count every curve with the steps of its
+ *  average bend, treating the random variation of the two segments as a
+ *  spread around the branch's tilt.  These are usually within ten 
+ *  percent of the real meshes but can be above or below them.  Use 
+ *  the bounds to reserve space that must never be exceeded and the expected
+ *  counts to size or reduce trees when the real meshes are checked 
+ *  afterwards, as TreeBudget does.</p>
+ *
+ *  <p>Byte counts are the sizes of the buffers created by the tree mesh
+ *  and leaf mesh generators.</p>
+ */
+public class TreeEstimate {
+
+    // Position, normal, texture coordinate, and tangent
+    private static final int SKINNED_VERTEX_BYTES = (3 + 3 + 2 + 4) * 4;
+    
+    // Position, normal, texture coordinate, and size
+    private static final int FLAT_POLY_VERTEX_BYTES = (3 + 3 + 2 + 1) * 4;
+    
+    // Four corners of position, normal, 4 component texture coordinate,
+    // and size plus six short indexes 
+    private static final int LEAF_BYTES = 4 * (3 + 3 + 4 + 1) * 4 + 6 * 2;
+ 
+    // The limit that TreeGenerator clamps both variation angles to
+    private static final float MAX_VARIATION = FastMath.HALF_PI * 0.33f * 0.5f;
+    
+    // Covers the float error of the curve generator's angle so that a
+    // bend right at a step boundary is counted with the extra step
+    private static final float ANGLE_EPSILON = 1e-4f;
+    
+    // The cap extrusion added to the end of rendered branches
+    private static final int CAP_RADIALS = 3;
+
+    private final ReductionType reduction;
+    private long segmentCount;
+    private long vertexCount;
+    private long triangleCount;
+    private long tipCount;
+    private long meshBytes;
+    private long leafBytes;
+    
+    // The part of the bounds that comes from the curves and what
+    // the curves are expected to add instead
+    private long curveVertexCount;
+    private long curveTriangleCount;
+    private double expectedCurveVertexes;
+    private double expectedCurveTriangles;
+    
+    private long expectedVertexCount;
+    private long expectedTriangleCount;
+    private long expectedMeshBytes;
+    
+    protected TreeEstimate( ReductionType reduction ) {
+        this.reduction = reduction;
+    }
+ 
+    public static TreeEstimate estimate( TreeParameters treeParms, LevelOfDetailParameters lod ) {
+        return estimate(new TreeTemplate(treeParms), lod);
+    }
+    
+    public static TreeEstimate estimate( TreeTemplate template, LevelOfDetailParameters lod ) {
+        ReductionType reduction = lod.getReduction();
+        TreeEstimate result = new TreeEstimate(reduction);
+        
+        Levels branches = template.getBranches();
+        Levels roots = template.getRoots();
+        int maxRadials = lod.getMaxRadialSegments();
+ 
+        // The base loop is created from the trunk's radials and shared with
+        // the roots        
+        float trunkLength = template.getTrunkHeight() - template.getRootHeight();
+        int baseRadials = Math.min(getRadials(branches.get(0), trunkLength), maxRadials);
+        if( reduction == ReductionType.Normal ) {
+            result.vertexCount += baseRadials + 1;
+        } else if( reduction == ReductionType.FlatPoly ) {
+            result.vertexCount += 2;
+        }
+        
+        result.addLevels(branches, trunkLength, baseRadials, lod.getBranchDepth(), maxRadials, true);
+        result.addLevels(roots, template.getRootHeight(), baseRadials, lod.getRootDepth(), maxRadials, false);
+ 
+        if( result.triangleCount == 0 || reduction == ReductionType.Impostor ) {
+            // No mesh gets built
+            result.vertexCount = 0;
+            result.triangleCount = 0;
+            result.expectedVertexCount = 0;
+            result.expectedTriangleCount = 0;
+        } else {
+            result.expectedVertexCount = result.vertexCount - result.curveVertexCount 
+                                       + Math.round(result.expectedCurveVertexes);
+            result.expectedTriangleCount = result.triangleCount - result.curveTriangleCount 
+                                         + Math.round(result.expectedCurveTriangles);
+        }
+        
+        int vertexBytes = reduction == ReductionType.FlatPoly ? FLAT_POLY_VERTEX_BYTES : SKINNED_VERTEX_BYTES;
+        result.meshBytes = getMeshBytes(result.vertexCount, result.triangleCount, vertexBytes);
+        result.expectedMeshBytes = getMeshBytes(result.expectedVertexCount, result.expectedTriangleCount, 
+                                                vertexBytes);
+        
+        if( template.getTreeParameters().getGenerateLeaves() && reduction != ReductionType.Impostor ) {
+            result.leafBytes = result.tipCount * LEAF_BYTES;
+        }
+        return result;
+    }
+ 
+    private static long getMeshBytes( long vertexes, long triangles, int vertexBytes ) {
+        int indexBytes = vertexes <= 0xffff ? 2 : 4;
+        return vertexes * vertexBytes + triangles * 3 * indexBytes;
+    }
+ 
+    /**
+     *  Returns the number of segments that a level's branches are split
+     *  into.  A branch with no length or no length segments gets one segment 
+     *  with the default radials.
+     */
+    private static int getSegments( BranchParameters parms, float length ) {
+        return length <= 0 || parms.getLengthSegments() <= 0 ? 1 : parms.getLengthSegments();
+    }
+    
+    private static int getRadials( BranchParameters parms, float length ) {
+        return length <= 0 || parms.getLengthSegments() <= 0 ? 3 : parms.getRadialSegments();
+    }
+ 
+    /**
+     *  Returns the number of curve steps used to join a branch to its
+     *  parent when it bends away by at most the specified angle.
+     */   
+    private static int getCurveSteps( float angle ) {
+        angle = Math.min(Math.abs(angle) + ANGLE_EPSILON, FastMath.PI);
+        return Math.max(1, (int)Math.ceil(angle / LegacyCurveGenerator.CORNER_ANGLE));
+    }
+ 
+    /**
+     *  Returns the average number of curve steps used to join a branch to
+     *  its parent when it bends away by the specified angle plus a random
+     *  turn with the specified spread per axis.  The random turn adds up with
+     *  the fixed bend like a Rayleigh distributed offset and the fraction
+     *  of a step is rounded up by half a step on average.
+     */
+    private static double getExpectedCurveSteps( float angle, float spread ) {
+        double mean = Math.sqrt(angle * angle + FastMath.HALF_PI * spread * spread);
+        return Math.max(1, Math.min(mean, FastMath.PI) / LegacyCurveGenerator.CORNER_ANGLE + 0.5);
+    }
+ 
+    /**
+     *  Returns the variance per axis of the random turn of one segment
+     *  of the level.  Each axis is uniform within the clamped variation.
+     */
+    private static float getVariationVariance( Levels levels, int depth ) {
+        if( levels.get(depth).getLengthSegments() <= 0 ) {
+            return 0;
+        }
+        float max = Math.min(Math.abs(levels.getVariation(depth)), MAX_VARIATION);
+        return max * max / 3;
+    }
+ 
+    /**
+     *  Returns the most that variation can turn one segment of the level
+     *  away from its branch's direction.  Both variation angles are clamped
+     *  and turning by a and b around the two side axes moves the direction 
+     *  by acos(cos(a) * cos(b)).
+     */
+    private static float getVariationBend( Levels levels, int depth ) {
+        if( levels.get(depth).getLengthSegments() <= 0 ) {
+            return 0;
+        }
+        float max = Math.min(Math.abs(levels.getVariation(depth)), MAX_VARIATION);
+        float cos = FastMath.cos(max);
+        return FastMath.acos(cos * cos);
+    }
+ 
+    /**
+     *  Returns the most that gravity can turn the first segment of a branch
+     *  at the level away from the direction it started with.
+     */
+    private static float getGravityBend( Levels levels, int depth ) {
+        int segments = levels.get(depth).getLengthSegments();
+        if( segments <= 0 ) {
+            return 0;
+        }
+        return Math.abs(levels.getEffectiveGravity(depth)) / segments;
+    }
+ 
+    private void addLevels( Levels levels, float length, int baseRadials, int renderDepth, 
+                            int maxRadials, boolean collectTips ) {
+                            
+        int size = levels.size();
+        
+        // The number of branches at the current level and how many of
+        // those are side branches versus end branches
+        long count = 1;
+        long sideCount = 0;
+        long endCount = 0;
+        int sideSteps = 1;
+        int endSteps = 1;
+        double sideExpected = 1;
+        double endExpected = 1;
+        int parentRadials = baseRadials;
+        
+        for( int depth = 0; depth < size; depth++ ) {
+            BranchParameters parms = levels.get(depth);
+            
+            // Only the top level is shortened by an offset
+            float effectiveLength = depth == 0 ? length : 1;
+            int segments = getSegments(parms, effectiveLength);
+            int radials = Math.min(getRadials(parms, effectiveLength), maxRadials);
+            int children = 0;
+            if( depth + 1 < size ) {
+                children = parms.getSideJointCount() + (parms.isHasEndJoint() ? 1 : 0);
+            }
+            boolean render = depth < renderDepth;
+            boolean renderChildren = children > 0 && depth + 1 < renderDepth;
+ 
+            segmentCount += count * segments;
+           
+            if( reduction == ReductionType.Normal ) {
+                if( render ) {
+                    // The curve from the parent uses the parent's radials
+                    // for every step
+                    if( depth > 0 ) {
+                        long steps = sideCount * sideSteps + endCount * endSteps;
+                        curveVertexCount += steps * (parentRadials + 1);
+                        curveTriangleCount += steps * 2 * parentRadials;
+                        vertexCount += steps * (parentRadials + 1);
+                        triangleCount += steps * 2 * parentRadials;
+                        
+                        double expected = sideCount * sideExpected + endCount * endExpected;
+                        expectedCurveVertexes += expected * (parentRadials + 1);
+                        expectedCurveTriangles += expected * 2 * parentRadials;
+                    }
+                    
+                    // Then every segment is extruded from the last loop
+                    vertexCount += count * segments * (radials + 1);
+                    triangleCount += count * (parentRadials + radials + (segments - 1) * 2 * radials);
+                    
+                    // And the end is capped unless the children continue it
+                    if( !renderChildren ) {
+                        vertexCount += count * (CAP_RADIALS + 1);
+                        triangleCount += count * (radials + CAP_RADIALS);
+                    }
+                } else if( depth == 0 ) {
+                    // The base loop gets capped off
+                    vertexCount += CAP_RADIALS + 1;
+                    triangleCount += parentRadials + CAP_RADIALS;
+                }
+            } else if( reduction == ReductionType.FlatPoly && render ) {
+                // One quad per segment and a new base pair for curved branches
+                vertexCount += count * (2 * segments + (depth > 0 ? 2 : 0));
+                triangleCount += count * 2 * segments;
+            }
+            
+            if( children == 0 ) {
+                if( collectTips ) {
+                    tipCount += count;
+                }
+                break;
+            }
+            
+            sideCount = count * parms.getSideJointCount();
+            endCount = count * (parms.isHasEndJoint() ? 1 : 0);
+            // The side branches tilt away from the parent and the end
+            // branch continues it but both can be bent further apart by 
+            // the parent's last segment and their own first segment
+            float bend = getVariationBend(levels, depth) 
+                       + getGravityBend(levels, depth + 1) + getVariationBend(levels, depth + 1);
+            sideSteps = getCurveSteps(Math.abs(levels.getTiltAngle(depth)) + bend);
+            endSteps = getCurveSteps(bend);
+            
+            // Gravity turns the parent's last segment and the branch's first
+            // segment the same way so on average it does not add to the bend
+            float spread = FastMath.sqrt(getVariationVariance(levels, depth) 
+                                         + getVariationVariance(levels, depth + 1));
+            sideExpected = Math.min(sideSteps, getExpectedCurveSteps(Math.abs(levels.getTiltAngle(depth)), spread));
+            endExpected = Math.min(endSteps, getExpectedCurveSteps(0, spread));
+            parentRadials = radials;
+            count *= children;            
+        }
+    }
+ 
+    public ReductionType getReduction() {
+        return reduction;
+    }
+ 
+    public long getSegmentCount() {
+        return segmentCount;
+    }
+ 
+    /**
+     *  Returns the number of vertexes in the tree mesh, an upper bound
+     *  for skinned meshes.
+     */   
+    public long getVertexCount() {
+        return vertexCount;
+    }
+ 
+    /**
+     *  Returns the number of triangles in the tree mesh, an upper bound
+     *  for skinned meshes.
+     */   
+    public long getTriangleCount() {
+        return triangleCount;
+    }
+ 
+    /**
+     *  Returns the number of vertexes that the tree mesh is expected to
+     *  have on average.  This is exact wherever getVertexCount() is.
+     */   
+    public long getExpectedVertexCount() {
+        return expectedVertexCount;
+    }
+ 
+    /**
+     *  Returns the number of triangles that the tree mesh is expected to
+     *  have on average.  This is exact wherever getTriangleCount() is.
+     */   
+    public long getExpectedTriangleCount() {
+        return expectedTriangleCount;
+    }
+ 
+    /**
+     *  Returns the number of branch tips that leaves are placed at.
+     */   
+    public long getTipCount() {
+        return tipCount;
+    }
+    
+    public long getLeafTriangleCount() {
+        return leafBytes == 0 ? 0 : tipCount * 2;
+    }
+ 
+    /**
+     *  Returns the size of the tree mesh buffers.
+     */   
+    public long getMeshBytes() {
+        return meshBytes;
+    }
+ 
+    /**
+     *  Returns the size of the leaf mesh buffers or 0 if there will
+     *  be no leaf mesh.
+     */   
+    public long getLeafBytes() {
+        return leafBytes;
+    }
+    
+    /**
+     *  Returns the expected size of the tree mesh buffers.
+     */   
+    public long getExpectedMeshBytes() {
+        return expectedMeshBytes;
+    }
+    
+    public long getByteCount() {
+        return meshBytes + leafBytes;
+    }
+    
+    public long getExpectedByteCount() {
+        return expectedMeshBytes + leafBytes;
+    }
+    
+    @Override
+    public String toString() {
+        return "TreeEstimate[" + reduction + ", segments=" + segmentCount 
+                    + ", vertexes=" + vertexCount + ", triangles=" + triangleCount
+                    + ", expectedVertexes=" + expectedVertexCount 
+                    + ", expectedTriangles=" + expectedTriangleCount
+                    + ", tips=" + tipCount + ", bytes=" + getByteCount() + "]";
+    }
+}
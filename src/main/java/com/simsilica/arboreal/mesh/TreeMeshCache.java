@@ -0,0 +1,463 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.scene.Mesh;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A bounded in-memory cache of baked tree meshes keyed by the
+ *  fingerprint of the tree parameters and generator settings and the seed.  When the mesh
+ *  buffers of all cached trees exceed the byte limit then the least
+ *  recently used trees are evicted.  Meshes returned from the cache
+ *  are shared and should not be modified.  A tree whose meshes are larger
+ *  than the whole limit is returned without being cached.
+ *
+ *  <p>With a MeshBufferPool, each getMeshes() call holds a reference to 
+ *  the returned meshes that must be given back with release() once they
+ *  are no longer rendered.  The buffers of an evicted or uncached tree go
+ *  back to the pool only after all of its references are released, so 
+ *  meshes that callers still hold are never recycled.  Without a pool, 
+ *  release() is optional and evicted trees are simply left to the garbage 
+ *  collector.</p>
+ *
+ *  <p>An optional TreeMeshDiskCache can be set as a second level that is
+ *  checked before generating meshes and receives all newly generated 
+ *  meshes.</p>
+ *
+ *  <p>The cache is thread safe.  Generation happens outside of the lock
+ *  so two threads asking for the same missing tree at the same time may
+ *  both generate it.</p>
+ */
+public class TreeMeshCache {
+
+    static Logger log = LoggerFactory.getLogger(TreeMeshCache.class);
+
+    private final TreeGenerator generator;
+    private final SkinnedTreeMeshGenerator skinnedGenerator = new SkinnedTreeMeshGenerator();
+    private final FlatPolyTreeMeshGenerator flatPolyGenerator = new FlatPolyTreeMeshGenerator();
+    private final BillboardedLeavesMeshGenerator leafGenerator = new BillboardedLeavesMeshGenerator();
+    
+    private final Map<Key, Entry> cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    
+    // The cached entries and, with a pool, the evicted or uncached ones 
+    // that callers still hold
+    private final Map<TreeMeshes, Entry> entries = new IdentityHashMap<TreeMeshes, Entry>();
+    private volatile TreeMeshDiskCache diskCache;
+    private volatile TreeBudget budget;
+    private MeshBufferPool bufferPool;
+    private long maxBytes;
+    private long byteCount;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    public TreeMeshCache( long maxBytes ) {
+        this(new TreeGenerator(), maxBytes);
+    }
+    
+    public TreeMeshCache( TreeGenerator generator, long maxBytes ) {
+        this.generator = generator;
+        this.maxBytes = maxBytes;
+    }
+ 
+    public TreeGenerator getGenerator() {
+        return generator;
+    }
+ 
+    /**
+     *  Sets the disk cache that is consulted on misses before generating
+     *  new meshes or null for none.
+     */   
+    public void setDiskCache( TreeMeshDiskCache diskCache ) {
+        this.diskCache = diskCache;
+    }
+    
+    public TreeMeshDiskCache getDiskCache() {
+        return diskCache;
+    }
+ 
+    /**
+     *  Sets the budget that all generated trees are fit to or null for
+     *  none.  Trees are cached by the fingerprint of their fitted parameters.
+     *  The mesh generators check the real meshes against the same budget.
+     *  getMeshes() throws an IllegalArgumentException for trees that cannot
+     *  be fit.  This should be set before any meshes are requested.
+     */   
+    public synchronized void setBudget( TreeBudget budget ) {
+        this.budget = budget;
+        skinnedGenerator.setBudget(budget);
+        flatPolyGenerator.setBudget(budget);
+    }
+    
+    public TreeBudget getBudget() {
+        return budget;
+    }
+ 
+    /**
+     *  Sets the pool that generated meshes get their buffers from or null
+     *  for none.  With a pool, the buffers of evicted or cleared trees are
+     *  released back to the pool and reused for new trees once all of the
+     *  references from getMeshes() are released.  This should be set before 
+     *  any meshes are requested.
+     */   
+    public synchronized void setBufferPool( MeshBufferPool bufferPool ) {
+        this.bufferPool = bufferPool;
+        skinnedGenerator.setBufferPool(bufferPool);
+        flatPolyGenerator.setBufferPool(bufferPool);
+        leafGenerator.setBufferPool(bufferPool);
+    }
+    
+    public synchronized MeshBufferPool getBufferPool() {
+        return bufferPool;
+    }
+ 
+    /**
+     *  Returns the meshes for the specified tree parameters and seed,
+     *  generating them if they are not already cached.  The caller holds a
+     *  reference to the result that should be given back with release()
+     *  when the meshes are no longer used.
+     */   
+    public TreeMeshes getMeshes( TreeParameters treeParms, int seed ) {
+        TreeBudget limit = budget;
+        if( limit != null ) {
+            treeParms = limit.fit(treeParms);
+        }
+        Key key = new Key(getFingerprint(treeParms, limit), seed);
+        synchronized( this ) {
+            Entry entry = cache.get(key);
+            if( entry != null ) {
+                hits++;
+                entry.refs++;
+                return entry.meshes;
+            }
+            misses++;
+        }
+ 
+        TreeMeshes result = loadMeshes(treeParms, key.fingerprint, seed);
+        
+        synchronized( this ) {
+            Entry existing = cache.get(key);
+            if( existing != null ) {
+                // Someone else beat us to it
+                if( bufferPool != null ) {
+                    bufferPool.release(result);
+                }
+                existing.refs++;
+                return existing.meshes;
+            }
+            Entry entry = new Entry(result);
+            entry.refs++;
+            if( result.getByteCount() > maxBytes ) {
+                // Caching it would only evict everything else, including it
+                if( log.isDebugEnabled() ) {
+                    log.debug("Not caching:" + result + " larger than:" + maxBytes);
+                }
+                if( bufferPool != null ) {
+                    entries.put(result, entry);
+                }
+                return result;
+            }
+            entry.cached = true;
+            cache.put(key, entry);
+            entries.put(result, entry);
+            byteCount += result.getByteCount();
+            
+            // The new entry is the most recently used and fits by itself
+            // so only older entries are evicted
+            evict();
+        }
+        return result;
+    }
+ 
+    /**
+     *  Gives back a reference to meshes returned by getMeshes().  Once an 
+     *  evicted or uncached tree has no references left then its buffers are 
+     *  released to the buffer pool and the meshes must not be used anymore.
+     *  Returns false if the cache is not tracking the meshes.  Without a pool 
+     *  that includes trees that have left the cache.
+     */   
+    public synchronized boolean release( TreeMeshes meshes ) {
+        Entry entry = entries.get(meshes);
+        if( entry == null || entry.refs == 0 ) {
+            return false;
+        }
+        entry.refs--;
+        if( entry.refs == 0 && !entry.cached ) {
+            entries.remove(meshes);
+            if( bufferPool != null ) {
+                bufferPool.release(meshes);
+            }
+        }
+        return true;
+    }
+ 
+    /**
+     *  Returns the fingerprint that the meshes for the specified parameters
+     *  are cached under in memory and on disk.  It combines the parameters
+     *  after fitting them to the budget, the budget, and the generator's 
+     *  own fingerprint so that differently set up caches never share files.
+     */
+    public long getFingerprint( TreeParameters treeParms ) {
+        TreeBudget limit = budget;
+        if( limit != null ) {
+            treeParms = limit.fit(treeParms);
+        }
+        return getFingerprint(treeParms, limit);
+    }
+ 
+    private long getFingerprint( TreeParameters fitted, TreeBudget limit ) {
+        long result = fitted.getFingerprint() * 31 + generator.getFingerprint();
+        if( limit != null ) {
+            // The meshes can still be reduced after generation so the 
+            // budget is part of the key
+            result = result * 31 + limit.getMaxTriangles();
+        }
+        return result * 0x9E3779B97F4A7C15L;
+    }
+ 
+    /**
+     *  Loads the meshes from the disk cache or generates them if that
+     *  is not possible, storing the new meshes in the disk cache.
+     */
+    protected TreeMeshes loadMeshes( TreeParameters treeParms, long fingerprint, int seed ) {
+        TreeMeshDiskCache disk = diskCache;
+        if( disk != null ) {
+            TreeMeshes result = disk.load(fingerprint, seed);
+            if( result != null ) {
+                return result;
+            }
+        }
+        
+        TreeMeshes result = createMeshes(treeParms, fingerprint, seed);
+        if( disk != null ) {
+            try {
+                disk.store(result);
+            } catch( IOException e ) {
+                log.warn("Error storing meshes in disk cache:" + disk, e);
+            }
+        }
+        return result;
+    }
+ 
+    /**
+     *  Generates the meshes for a tree that was not found in the cache.
+     */
+    protected TreeMeshes createMeshes( TreeParameters treeParms, long fingerprint, int seed ) {
+    
+        SegmentTable tree = generator.generateTable(seed, treeParms);
+        
+        int lodCount = treeParms.getLodCount();
+        Mesh[] treeMeshes = new Mesh[lodCount];
+        Mesh[] leafMeshes = new Mesh[lodCount];
+        List<Vertex> tips = new ArrayList<Vertex>();
+        for( int i = 0; i < lodCount; i++ ) {
+            LevelOfDetailParameters lod = treeParms.getLod(i);
+            treeMeshes[i] = createMesh(tree, treeParms, lod, tips);
+            
+            if( treeParms.getGenerateLeaves() && !tips.isEmpty() ) {
+                leafMeshes[i] = leafGenerator.generateMesh(tips, treeParms.getLeafScale());
+            }
+        }
+        
+        return new TreeMeshes(fingerprint, seed, treeMeshes, leafMeshes);
+    }
+ 
+    /**
+     *  Generates the tree mesh for one level of detail, replacing the 
+     *  contents of tips with the branch tips.
+     */   
+    protected Mesh createMesh( SegmentTable tree, TreeParameters treeParms, 
+                               LevelOfDetailParameters lod, List<Vertex> tips ) {
+        tips.clear();
+        switch( lod.getReduction() ) {
+            case Normal:
+                return skinnedGenerator.generateMesh(tree, lod, 
+                                                     treeParms.getYOffset(), 
+                                                     treeParms.getTextureURepeat(), 
+                                                     treeParms.getTextureVScale(),
+                                                     tips);
+            case FlatPoly:
+                return flatPolyGenerator.generateMesh(tree, lod, 
+                                                      treeParms.getYOffset(), 
+                                                      treeParms.getTextureURepeat(), 
+                                                      treeParms.getTextureVScale(),
+                                                      tips);
+            default:
+                // Impostors are rendered by the application
+                return null;
+        }
+    }
+ 
+    private void evict() {
+        Iterator<Entry> it = cache.values().iterator();
+        while( byteCount > maxBytes && it.hasNext() ) {
+            Entry eldest = it.next();
+            it.remove();
+            byteCount -= eldest.meshes.getByteCount();
+            evictions++;
+            retire(eldest);
+        }
+    }
+ 
+    /**
+     *  Called for entries that leave the cache.  Their buffers are released 
+     *  now if nothing holds them or later in release().
+     */   
+    private void retire( Entry entry ) {
+        entry.cached = false;
+        if( entry.refs == 0 || bufferPool == null ) {
+            entries.remove(entry.meshes);
+            if( entry.refs == 0 && bufferPool != null ) {
+                bufferPool.release(entry.meshes);
+            }
+        }
+    }
+ 
+    /**
+     *  Sets the maximum number of mesh buffer bytes to keep cached, evicting
+     *  trees right away if necessary.
+     */   
+    public synchronized void setMaxBytes( long maxBytes ) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+    
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+ 
+    /**
+     *  Returns the current number of mesh buffer bytes held by the cache.
+     */   
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+ 
+    /**
+     *  Returns the number of trees currently in the cache.
+     */   
+    public synchronized int size() {
+        return cache.size();
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+ 
+    public synchronized void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+ 
+    /**
+     *  Removes all trees from the cache.  Trees that are still held are
+     *  released to the buffer pool when their last reference is released.
+     */   
+    public synchronized void clear() {
+        for( Entry entry : cache.values() ) {
+            retire(entry);
+        }
+        cache.clear();
+        byteCount = 0;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "TreeMeshCache[size=" + cache.size() + ", bytes=" + byteCount + "/" + maxBytes
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+ 
+    private static class Entry {
+        private final TreeMeshes meshes;
+        private int refs;
+        private boolean cached;
+        
+        public Entry( TreeMeshes meshes ) {
+            this.meshes = meshes;
+        }
+    }
+ 
+    private static class Key {
+        private final long fingerprint;
+        private final int seed;
+        
+        public Key( long fingerprint, int seed ) {
+            this.fingerprint = fingerprint;
+            this.seed = seed;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (int)(fingerprint ^ (fingerprint >>> 32)) * 31 + seed;
+        }
+        
+        @Override
+        public boolean equals( Object o ) {
+            if( o == this ) {
+                return true;
+            }
+            if( o == null || o.getClass() != getClass() ) {
+                return false;
+            }
+            Key other = (Key)o;
+            return fingerprint == other.fingerprint && seed == other.seed;
+        }
+    }    
+}
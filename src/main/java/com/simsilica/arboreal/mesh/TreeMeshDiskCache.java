@@ -0,0 +1,565 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.util.BufferUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ *  A persistent cache of baked tree meshes stored as one file per 
+ *  fingerprint and seed in a cache directory.  The files are memory 
+ *  mapped read-only and copied in one piece when loaded.  The mesh buffers
+ *  are direct views of that copy so no generation or per-buffer copying
+ *  is necessary.  Files are only ever opened for reading when loaded.
+ *
+ *  <p>Every file records the format, mesh, and library version it was written
+ *  with.  Files with a different version are treated as stale and deleted
+ *  when they are encountered.  Changed parameters produce a different 
+ *  fingerprint and so never see the old files.  Callers that share a
+ *  directory between differently set up generators must include the 
+ *  generator settings in the fingerprint as TreeMeshCache does.  
+ *  invalidate() can be used to remove the files of a specific fingerprint.</p>
+ *
+ *  <p>All data is written in little endian order.  On big endian platforms
+ *  the buffers are copied on load.</p>
+ */
+public class TreeMeshDiskCache {
+
+    static Logger log = LoggerFactory.getLogger(TreeMeshDiskCache.class);
+
+    /**
+     *  The library version that is used when the jar manifest doesn't
+     *  provide one, for example when running from the class directories.
+     *  Released jars get their Implementation-Version from the build.
+     */
+    public static final String DEFAULT_VERSION = "1.3.0";
+ 
+    /**
+     *  The version of the meshes that the generators produce.  This must be
+     *  bumped whenever a change to the mesh generators changes their output
+     *  for the same parameters, even between library releases, so that 
+     *  cached meshes from before the change are not loaded.
+     */
+    public static final int MESH_VERSION = 1;
+    
+    private static final int MAGIC = 0x31434D54; // "TMC1"
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".tmc";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int ALIGNMENT = 8;
+    
+    private static final byte NO_BOUND = 0;
+    private static final byte BOX_BOUND = 1;
+    private static final byte SPHERE_BOUND = 2;
+    
+    private static final byte BYTE_DATA = 1;
+    private static final byte SHORT_DATA = 2;
+    private static final byte INT_DATA = 3;
+    private static final byte FLOAT_DATA = 4;
+    private static final byte DOUBLE_DATA = 5;
+    
+    private final File directory;
+    private final String version;
+    private final boolean nativeOrder = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+ 
+    /**
+     *  Creates a disk cache in the specified directory that uses the
+     *  library version for invalidation.
+     */   
+    public TreeMeshDiskCache( File directory ) {
+        this(directory, getLibraryVersion());
+    }
+ 
+    /**
+     *  Creates a disk cache in the specified directory where the cached 
+     *  files are only valid for the specified version string.  Applications 
+     *  can include their own asset version to invalidate the cache when
+     *  those change.
+     */   
+    public TreeMeshDiskCache( File directory, String version ) {
+        this.directory = directory;
+        this.version = version;
+        if( !directory.exists() && !directory.mkdirs() ) {
+            throw new RuntimeException("Unable to create cache directory:" + directory);
+        }
+    }
+ 
+    public static String getLibraryVersion() {
+        String result = TreeMeshDiskCache.class.getPackage().getImplementationVersion();
+        return result != null ? result : DEFAULT_VERSION;
+    }
+ 
+    public File getDirectory() {
+        return directory;
+    }
+    
+    public String getVersion() {
+        return version;
+    }
+    
+    protected File getFile( long fingerprint, int seed ) {
+        return new File(directory, Long.toHexString(fingerprint) + "-" + seed + EXTENSION);
+    }
+ 
+    /**
+     *  Returns true if the cache has a file for the specified fingerprint
+     *  and seed.  The file may still turn out to be stale when loaded.
+     */   
+    public boolean contains( long fingerprint, int seed ) {
+        return getFile(fingerprint, seed).exists();
+    }
+ 
+    /**
+     *  Loads the meshes for the specified fingerprint and seed or returns
+     *  null if they are not cached or if the cached file is stale or unreadable.
+     */
+    public TreeMeshes load( long fingerprint, int seed ) {
+        File file = getFile(fingerprint, seed);
+        if( !file.exists() ) {
+            return null;
+        }
+        try {
+            ByteBuffer data;
+            try( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+                // JME does not accept read-only buffers and a writable mapping
+                // would need write access to the file, so the read-only mapping 
+                // is copied once into a direct buffer that the meshes share.
+                // This keeps read-only and shipped cache directories working.
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                data = BufferUtils.createByteBuffer(mapped.remaining());
+                data.put(mapped);
+                data.flip();
+            }
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            TreeMeshes result = read(data, fingerprint, seed);
+            if( result == null ) {
+                log.info("Deleting stale cache file:" + file);
+                delete(file);
+            }
+            return result;
+        } catch( IOException | RuntimeException e ) {
+            log.warn("Error reading cache file:" + file, e);
+            delete(file);
+            return null;
+        }
+    }
+ 
+    /**
+     *  Writes the specified meshes to the cache, replacing any existing
+     *  file for the same fingerprint and seed.
+     */   
+    public void store( TreeMeshes meshes ) throws IOException {
+        File file = getFile(meshes.getFingerprint(), meshes.getSeed());
+        ByteBuffer data = write(meshes);
+        
+        // Write to a temporary file first so that readers never see
+        // a partially written file
+        Path temp = Files.createTempFile(directory.toPath(), "tree", ".tmp");
+        try {
+            try( FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE) ) {
+                while( data.hasRemaining() ) {
+                    channel.write(data);
+                }
+            }
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+                                                StandardCopyOption.ATOMIC_MOVE);
+            } catch( AtomicMoveNotSupportedException e ) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+ 
+    /**
+     *  Deletes all cached files for the specified parameter fingerprint.
+     */   
+    public int invalidate( long fingerprint ) {
+        String prefix = Long.toHexString(fingerprint) + "-";
+        int count = 0;
+        for( File file : listFiles() ) {
+            if( file.getName().startsWith(prefix) && delete(file) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+ 
+    /**
+     *  Deletes all cached files that were written with a different format
+     *  or version and returns the number of deleted files.
+     */
+    public int purgeStale() {
+        int count = 0;
+        for( File file : listFiles() ) {
+            if( !isCurrent(file) && delete(file) ) {
+                count++;
+            }
+        }
+        return count;
+    }
+ 
+    /**
+     *  Deletes all cached files.
+     */   
+    public void clear() {
+        for( File file : listFiles() ) {
+            delete(file);
+        }
+    }
+    
+    protected List<File> listFiles() {
+        List<File> result = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if( files != null ) {
+            for( File file : files ) {
+                if( file.getName().endsWith(EXTENSION) ) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+ 
+    private boolean delete( File file ) {
+        try {
+            return Files.deleteIfExists(file.toPath());
+        } catch( IOException e ) {
+            // Memory mapped files cannot be deleted on some platforms
+            log.warn("Unable to delete cache file:" + file, e);
+            return false;
+        }
+    }
+    
+    private boolean isCurrent( File file ) {
+        try( FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ) ) {
+            ByteBuffer header = ByteBuffer.allocate(Math.min((int)channel.size(), 1024));
+            while( header.hasRemaining() && channel.read(header) >= 0 ) {
+            }
+            header.flip();
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            return readHeader(header);
+        } catch( IOException | RuntimeException e ) {
+            return false;
+        }
+    }
+    
+    private boolean readHeader( ByteBuffer data ) {
+        if( data.getInt() != MAGIC || data.getInt() != FORMAT_VERSION 
+            || data.getInt() != MESH_VERSION ) {
+            return false;
+        }
+        byte[] bytes = new byte[data.getShort() & 0xffff];
+        data.get(bytes);
+        return version.equals(new String(bytes, UTF8));
+    }
+    
+    protected TreeMeshes read( ByteBuffer data, long fingerprint, int seed ) {
+        if( !readHeader(data) ) {
+            return null;
+        }
+        if( data.getLong() != fingerprint || data.getInt() != seed ) {
+            return null;
+        }
+        int lodCount = data.getInt();
+        Mesh[] treeMeshes = new Mesh[lodCount];
+        Mesh[] leafMeshes = new Mesh[lodCount];
+        for( int i = 0; i < lodCount; i++ ) {
+            treeMeshes[i] = readMesh(data);
+            leafMeshes[i] = readMesh(data);
+        }
+        return new TreeMeshes(fingerprint, seed, treeMeshes, leafMeshes);
+    }
+    
+    protected Mesh readMesh( ByteBuffer data ) {
+        if( data.get() == 0 ) {
+            return null;
+        }
+        Mesh mesh = new Mesh();
+        mesh.setMode(Mesh.Mode.valueOf(readString(data)));
+        
+        BoundingVolume bound = null;
+        byte boundType = data.get();
+        if( boundType == BOX_BOUND ) {
+            Vector3f center = new Vector3f(data.getFloat(), data.getFloat(), data.getFloat());
+            bound = new BoundingBox(center, data.getFloat(), data.getFloat(), data.getFloat());
+        } else if( boundType == SPHERE_BOUND ) {
+            Vector3f center = new Vector3f(data.getFloat(), data.getFloat(), data.getFloat());
+            bound = new BoundingSphere(data.getFloat(), center);
+        }
+        
+        int bufferCount = data.getInt();
+        for( int i = 0; i < bufferCount; i++ ) {
+            Type type = Type.valueOf(readString(data));
+            Format format = Format.valueOf(readString(data));
+            int components = data.get();
+            byte dataType = data.get();
+            int size = data.getInt();
+            align(data);
+            
+            ByteBuffer bytes = data.duplicate();
+            bytes.limit(bytes.position() + size);
+            bytes = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+            data.position(data.position() + size);
+            align(data);
+            
+            mesh.setBuffer(type, components, format, toBuffer(bytes, dataType));
+        }
+        
+        if( bound != null ) {
+            mesh.setBound(bound);
+        } else {
+            mesh.updateBound();
+        }
+        return mesh;
+    } 
+ 
+    /**
+     *  Converts the little endian bytes into a buffer of the right type,
+     *  copying them only if the native order is different.
+     */   
+    private Buffer toBuffer( ByteBuffer bytes, byte dataType ) {
+        switch( dataType ) {
+            case BYTE_DATA:
+                return bytes;
+            case SHORT_DATA:
+                ShortBuffer sb = bytes.asShortBuffer();
+                return nativeOrder ? sb : BufferUtils.createShortBuffer(sb.remaining()).put(sb).rewind();
+            case INT_DATA:
+                IntBuffer ib = bytes.asIntBuffer();
+                return nativeOrder ? ib : BufferUtils.createIntBuffer(ib.remaining()).put(ib).rewind();
+            case FLOAT_DATA:
+                FloatBuffer fb = bytes.asFloatBuffer();
+                return nativeOrder ? fb : BufferUtils.createFloatBuffer(fb.remaining()).put(fb).rewind();
+            case DOUBLE_DATA:
+                DoubleBuffer db = bytes.asDoubleBuffer();
+                return nativeOrder ? db : BufferUtils.createDoubleBuffer(db.remaining()).put(db).rewind();
+            default:
+                throw new IllegalStateException("Unknown data type:" + dataType);
+        }
+    }
+    
+    protected ByteBuffer write( TreeMeshes meshes ) {
+        // Buffer data plus alignment padding and a generous amount for 
+        // the headers and names
+        long size = 1024;
+        for( int i = 0; i < meshes.getLodCount(); i++ ) {
+            size += getWriteSize(meshes.getTreeMesh(i));
+            size += getWriteSize(meshes.getLeafMesh(i));
+        }
+        ByteBuffer data = ByteBuffer.allocate((int)size);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC);
+        data.putInt(FORMAT_VERSION);
+        data.putInt(MESH_VERSION);
+        writeString(data, version);
+        data.putLong(meshes.getFingerprint());
+        data.putInt(meshes.getSeed());
+        data.putInt(meshes.getLodCount());
+        for( int i = 0; i < meshes.getLodCount(); i++ ) {
+            writeMesh(data, meshes.getTreeMesh(i));
+            writeMesh(data, meshes.getLeafMesh(i));
+        }
+        data.flip();
+        return data;
+    }
+    
+    private long getWriteSize( Mesh mesh ) {
+        if( mesh == null ) {
+            return 1;
+        }
+        long result = 256;
+        for( VertexBuffer vb : mesh.getBufferList() ) {
+            if( vb.getData() != null ) {
+                result += 256 + getDataSize(vb.getData());
+            }
+        }
+        return result;
+    }
+ 
+    private int getDataSize( Buffer source ) {
+        if( source instanceof FloatBuffer || source instanceof IntBuffer ) {
+            return source.limit() * 4;
+        } else if( source instanceof ShortBuffer ) {
+            return source.limit() * 2;
+        } else if( source instanceof DoubleBuffer ) {
+            return source.limit() * 8;
+        } else if( source instanceof ByteBuffer ) {
+            return source.limit();
+        }
+        throw new IllegalArgumentException("Unsupported buffer:" + source);
+    }
+    
+    protected void writeMesh( ByteBuffer data, Mesh mesh ) {
+        if( mesh == null ) {
+            data.put((byte)0);
+            return;
+        }
+        data.put((byte)1);
+        writeString(data, mesh.getMode().name());
+        
+        BoundingVolume bound = mesh.getBound();
+        if( bound instanceof BoundingBox ) {
+            BoundingBox bb = (BoundingBox)bound;
+            data.put(BOX_BOUND);
+            writeVector(data, bb.getCenter());
+            data.putFloat(bb.getXExtent());
+            data.putFloat(bb.getYExtent());
+            data.putFloat(bb.getZExtent());
+        } else if( bound instanceof BoundingSphere ) {
+            BoundingSphere bs = (BoundingSphere)bound;
+            data.put(SPHERE_BOUND);
+            writeVector(data, bs.getCenter());
+            data.putFloat(bs.getRadius());
+        } else {
+            data.put(NO_BOUND);
+        }
+        
+        List<VertexBuffer> buffers = new ArrayList<VertexBuffer>();
+        for( VertexBuffer vb : mesh.getBufferList() ) {
+            if( vb.getData() != null ) {
+                buffers.add(vb);
+            }
+        }
+        data.putInt(buffers.size());
+        for( VertexBuffer vb : buffers ) {
+            writeString(data, vb.getBufferType().name());
+            writeString(data, vb.getFormat().name());
+            data.put((byte)vb.getNumComponents());
+            
+            Buffer source = vb.getData();
+            source.rewind();
+            int size = getDataSize(source);
+            byte dataType;
+            if( source instanceof FloatBuffer ) {
+                dataType = FLOAT_DATA;
+            } else if( source instanceof IntBuffer ) {
+                dataType = INT_DATA;
+            } else if( source instanceof ShortBuffer ) {
+                dataType = SHORT_DATA;
+            } else if( source instanceof DoubleBuffer ) {
+                dataType = DOUBLE_DATA;
+            } else {
+                dataType = BYTE_DATA;
+            }
+            data.put(dataType);
+            data.putInt(size);
+            align(data);
+            
+            ByteBuffer target = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+            switch( dataType ) {
+                case FLOAT_DATA:
+                    target.asFloatBuffer().put((FloatBuffer)source);
+                    break;
+                case INT_DATA:
+                    target.asIntBuffer().put((IntBuffer)source);
+                    break;
+                case SHORT_DATA:
+                    target.asShortBuffer().put((ShortBuffer)source);
+                    break;
+                case DOUBLE_DATA:
+                    target.asDoubleBuffer().put((DoubleBuffer)source);
+                    break;
+                default:
+                    target.put((ByteBuffer)source);
+                    break;
+            }
+            source.rewind();
+            data.position(data.position() + size);
+            align(data);
+        }
+    }
+ 
+    private void align( ByteBuffer data ) {
+        int pad = data.position() % ALIGNMENT;
+        if( pad != 0 ) {
+            data.position(data.position() + ALIGNMENT - pad);
+        }
+    }
+    
+    private void writeVector( ByteBuffer data, Vector3f v ) {
+        data.putFloat(v.x);
+        data.putFloat(v.y);
+        data.putFloat(v.z);
+    }
+    
+    private void writeString( ByteBuffer data, String s ) {
+        byte[] bytes = s.getBytes(UTF8);
+        data.putShort((short)bytes.length);
+        data.put(bytes);
+    }
+    
+    private String readString( ByteBuffer data ) {
+        byte[] bytes = new byte[data.getShort() & 0xffff];
+        data.get(bytes);
+        return new String(bytes, UTF8);
+    }
+    
+    @Override
+    public String toString() {
+        return "TreeMeshDiskCache[" + directory + ", version=" + version + "]";
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2014, Simsilica, LLC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions 
+ * are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its 
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED 
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.simsilica.arboreal.mesh;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import java.nio.Buffer;
+
+
+/**
+ *  The baked meshes of one tree, one trunk mesh and optionally one
+ *  leaf mesh per level of detail.  The meshes may be shared by
+ *  caches and should be treated as read-only.
+ */
+public class TreeMeshes {
+
+    private final long fingerprint;
+    private final int seed;
+    private final Mesh[] treeMeshes;
+    private final Mesh[] leafMeshes;
+    private final long byteCount;
+    
+    public TreeMeshes( long fingerprint, int seed, Mesh[] treeMeshes, Mesh[] leafMeshes ) {
+        if( treeMeshes.length != leafMeshes.length ) {
+            throw new IllegalArgumentException("Tree and leaf mesh counts differ:" 
+                                               + treeMeshes.length + " != " + leafMeshes.length);
+        }
+        this.fingerprint = fingerprint;
+        this.seed = seed;
+        this.treeMeshes = treeMeshes;
+        this.leafMeshes = leafMeshes;
+        
+        long bytes = 0;
+        for( int i = 0; i < treeMeshes.length; i++ ) {
+            bytes += getByteCount(treeMeshes[i]);
+            bytes += getByteCount(leafMeshes[i]);
+        }
+        this.byteCount = bytes;
+    }
+ 
+    /**
+     *  Returns the number of bytes used by the buffers of the specified
+     *  mesh or 0 if the mesh is null.
+     */   
+    public static long getByteCount( Mesh mesh ) {
+        if( mesh == null ) {
+            return 0;
+        }
+        long result = 0;
+        for( VertexBuffer vb : mesh.getBufferList() ) {
+            Buffer data = vb.getData();
+            if( data != null ) {
+                result += (long)data.capacity() * vb.getFormat().getComponentSize();
+            }
+        }
+        return result;
+    }
+ 
+    /**
+     *  Returns the fingerprint of the parameters and generator settings
+     *  that were used to generate these meshes.  For cached meshes this is
+     *  the TreeMeshCache fingerprint.
+     */   
+    public long getFingerprint() {
+        return fingerprint;
+    }
+    
+    public int getSeed() {
+        return seed;
+    }
+    
+    public int getLodCount() {
+        return treeMeshes.length;
+    }
+ 
+    /**
+     *  Returns the trunk and branch mesh for the specified level of
+     *  detail or null if that level of detail has no generated mesh.
+     */   
+    public Mesh getTreeMesh( int lod ) {
+        return treeMeshes[lod];
+    }
+ 
+    /**
+     *  Returns the leaf mesh for the specified level of detail or null 
+     *  if the tree has no leaves.
+     */   
+    public Mesh getLeafMesh( int lod ) {
+        return leafMeshes[lod];
+    }
+ 
+    /**
+     *  Returns the total number of bytes used by the mesh buffers.
+     */   
+    public long getByteCount() {
+        return byteCount;
+    }
+    
+    @Override
+    public String toString() {
+        return "TreeMeshes[fingerprint=" + Long.toHexString(fingerprint) + ", seed=" + seed 
+                + ", lods=" + treeMeshes.length + ", bytes=" + byteCount + "]";
+    }
+}
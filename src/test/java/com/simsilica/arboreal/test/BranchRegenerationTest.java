@@ -0,0 +1,122 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.Tree;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that a single branch regenerated by its path matches the same branch in the full tree.
+ */
+public class BranchRegenerationTest {
+
+    @Test
+    public void branchTest() {
+
+        final TreeGenerator generator = new TreeGenerator();
+        generator.setSplitSeeds(true);
+
+        final TreeParameters defaults = new TreeParameters();
+        final TreeTemplate template = new TreeTemplate(defaults);
+        final Tree tree = generator.generateTree(42, template);
+        for (final int[] path : new int[][] {{0}, {0, 2}, {0, 1, 3}, {1, 0}}) {
+            assertBranch(generator, template, tree, path);
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> generator.generateBranch(42, template, new int[] {0, 100}, null));
+    }
+
+    @Test
+    public void presetBranchTest() {
+
+        final TreeGenerator generator = new TreeGenerator();
+        generator.setSplitSeeds(true);
+
+        final Random random = new Random(15);
+        for (final TreeParameters parameters : TreePresets.createWithRoots(6)) {
+            final TreeTemplate template = new TreeTemplate(parameters);
+            final Tree tree = generator.generateTree(42, template);
+            for (int i = 0; i < 4; i++) {
+                assertBranch(generator, template, tree, randomPath(tree, i % 2, random));
+            }
+        }
+    }
+
+    /**
+     * Returns the path to a random branch below the trunk or roots.
+     */
+    private static int[] randomPath(final Tree tree, final int top, final Random random) {
+
+        final List<Integer> path = new ArrayList<>();
+        path.add(top);
+        Segment segment = top == 0 ? tree.getTrunk() : tree.getRoots();
+        while (random.nextInt(4) != 0) {
+            segment = skipExtrusions(segment, null);
+            if (segment.children == null || segment.children.length == 0) {
+                break;
+            }
+            final int child = random.nextInt(segment.children.length);
+            path.add(child);
+            segment = segment.children[child];
+        }
+
+        final int[] result = new int[path.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = path.get(i);
+        }
+        return result;
+    }
+
+    private static Segment skipExtrusions(Segment segment, final Vector3f origin) {
+        while (segment.children != null && segment.children.length == 1
+                && segment.children[0].parentConnection == Segment.ConnectionType.Extrude) {
+            if (origin != null) {
+                origin.addLocal(segment.dir.mult(segment.length));
+            }
+            segment = segment.children[0];
+        }
+        return segment;
+    }
+
+    private static void assertBranch(final TreeGenerator generator, final TreeTemplate template, final Tree tree,
+                                     final int[] path) {
+
+        // Walk down the full tree to the branch
+        Segment segment = path[0] == 0 ? tree.getTrunk() : tree.getRoots();
+        final Vector3f expectedOrigin = new Vector3f();
+        for (int i = 1; i < path.length; i++) {
+            segment = skipExtrusions(segment, expectedOrigin);
+            expectedOrigin.addLocal(segment.dir.mult(segment.length));
+            segment = segment.children[path[i]];
+        }
+
+        final Vector3f origin = new Vector3f();
+        final SegmentTable branch = generator.generateBranch(42, template, path, origin);
+        final Tree branchTree = branch.toTree();
+        final Segment actual = path[0] == 0 ? branchTree.getTrunk() : branchTree.getRoots();
+
+        Assertions.assertEquals(TreeGeneratorTest.hash(segment, 17), TreeGeneratorTest.hash(actual, 17));
+        Assertions.assertEquals(path.length - 1, branch.getDepth(path[0] == 0 ? branch.getTrunk()
+                : branch.getRoots()));
+        Assertions.assertEquals(expectedOrigin.x, origin.x, 1e-5F);
+        Assertions.assertEquals(expectedOrigin.y, origin.y, 1e-5F);
+        Assertions.assertEquals(expectedOrigin.z, origin.z, 1e-5F);
+
+        final Mesh mesh = new SkinnedTreeMeshGenerator().generateBranchMesh(branch,
+                new LevelOfDetailParameters(), origin, 4, 0.5F, null);
+        Assertions.assertTrue(mesh.getTriangleCount() > 0);
+    }
+}
@@ -0,0 +1,60 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the fused generate-and-mesh path matches meshing a generated table.
+ */
+public class FusedMeshTest {
+
+    @Test
+    public void fusedMeshTest() {
+
+        final TreeGenerator generator = new TreeGenerator();
+        final SkinnedTreeMeshGenerator meshGenerator = new SkinnedTreeMeshGenerator();
+
+        for (final TreeParameters parameters : TreePresets.createWithRoots(6)) {
+            final TreeTemplate template = new TreeTemplate(parameters);
+            final SegmentTable table = generator.generateTable(42, template);
+
+            for (final int depth : new int[] {1, 2, 4}) {
+
+                final LevelOfDetailParameters lod = new LevelOfDetailParameters();
+                lod.branchDepth = depth;
+                lod.rootDepth = depth;
+
+                final List<Vertex> expectedTips = new ArrayList<>();
+                final Mesh expected = meshGenerator.generateMesh(table, lod, parameters.getYOffset(), 4, 0.5F,
+                        expectedTips);
+
+                final List<Vertex> actualTips = new ArrayList<>();
+                final Mesh actual = meshGenerator.generateMesh(generator, 42, template, lod,
+                        parameters.getYOffset(), 4, 0.5F, actualTips);
+
+                for (final VertexBuffer buffer : expected.getBufferList()) {
+                    Assertions.assertEquals(buffer.getData().rewind(),
+                            actual.getBuffer(buffer.getBufferType()).getData().rewind());
+                }
+
+                Assertions.assertEquals(expectedTips.size(), actualTips.size());
+                for (int i = 0; i < expectedTips.size(); i++) {
+                    Assertions.assertEquals(expectedTips.get(i).pos, actualTips.get(i).pos);
+                    Assertions.assertEquals(expectedTips.get(i).normal, actualTips.get(i).normal);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.BranchParameters;
+import com.simsilica.arboreal.IncrementalTree;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.IncrementalTreeMesh;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that incremental tree and mesh updates match a full regeneration.
+ */
+public class IncrementalTreeTest {
+
+    @Test
+    public void incrementalUpdateTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        for (final BranchParameters branch : parameters.getBranches()) {
+            branch.setInherit(false);
+        }
+
+        final TreeGenerator generator = new TreeGenerator();
+        generator.setSplitSeeds(true);
+
+        final IncrementalTree tree = new IncrementalTree(generator, parameters, 42);
+        final List<IncrementalTreeMesh> meshes = new ArrayList<>();
+        for (final LevelOfDetailParameters lod : parameters.getLods()) {
+            meshes.add(new IncrementalTreeMesh(tree, lod));
+        }
+
+        Assertions.assertFalse(tree.update());
+
+        final BranchParameters branch = parameters.getBranch(2);
+        branch.setTaper(branch.getTaper() * 0.9F);
+        assertUpdated(generator, parameters, tree, meshes, 2);
+
+        final BranchParameters twig = parameters.getBranch(3);
+        twig.setSideJointCount(twig.getSideJointCount() + 1);
+        assertUpdated(generator, parameters, tree, meshes, 3);
+
+        final BranchParameters root = parameters.getRoot(1);
+        root.setGravity(root.getGravity() + 0.1F);
+        assertUpdated(generator, parameters, tree, meshes, 1);
+
+        parameters.setTrunkHeight(parameters.getTrunkHeight() + 1);
+        Assertions.assertTrue(tree.update());
+        Assertions.assertTrue(tree.isFullyRegenerated());
+        assertSameMeshes(generator, parameters, tree, meshes);
+    }
+
+    private static void assertUpdated(final TreeGenerator generator, final TreeParameters parameters,
+                                      final IncrementalTree tree, final List<IncrementalTreeMesh> meshes,
+                                      final int depth) {
+
+        Assertions.assertTrue(tree.update());
+        Assertions.assertFalse(tree.isFullyRegenerated());
+        Assertions.assertEquals(depth, Math.min(tree.getChangedBranchDepth(), tree.getChangedRootDepth()));
+
+        final SegmentTable expected = generator.generateTable(42, parameters);
+        Assertions.assertEquals(TreeGeneratorTest.hash(expected.toTree()),
+                TreeGeneratorTest.hash(tree.getTable().toTree()));
+
+        assertSameMeshes(generator, parameters, tree, meshes);
+        for (final IncrementalTreeMesh mesh : meshes) {
+            Assertions.assertTrue(mesh.isPatched());
+        }
+    }
+
+    private static void assertSameMeshes(final TreeGenerator generator, final TreeParameters parameters,
+                                         final IncrementalTree tree, final List<IncrementalTreeMesh> meshes) {
+
+        final SegmentTable table = generator.generateTable(42, parameters);
+        final TreeTemplate template = new TreeTemplate(parameters);
+
+        for (final IncrementalTreeMesh mesh : meshes) {
+            Assertions.assertTrue(mesh.update());
+
+            final List<Vertex> tips = new ArrayList<>();
+            final Mesh expected = new SkinnedTreeMeshGenerator().generateMesh(table, mesh.getLod(),
+                    parameters.getYOffset(), template.getTextureURepeat(), template.getTextureVScale(), tips);
+
+            final Mesh actual = mesh.getMesh();
+            Assertions.assertEquals(expected.getBufferList().size(), actual.getBufferList().size());
+            for (final VertexBuffer buffer : expected.getBufferList()) {
+                final VertexBuffer other = actual.getBuffer(buffer.getBufferType());
+                Assertions.assertEquals(buffer.getData().rewind(), other.getData().rewind(),
+                        buffer.getBufferType().name());
+            }
+
+            Assertions.assertEquals(tips.size(), mesh.getTips().size());
+            for (int i = 0; i < tips.size(); i++) {
+                Assertions.assertEquals(tips.get(i).pos, mesh.getTips().get(i).pos);
+                Assertions.assertEquals(tips.get(i).normal, mesh.getTips().get(i).normal);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.LazyTree;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that lazily expanded trees mesh the same as eagerly generated ones.
+ */
+public class LazyTreeTest {
+
+    @Test
+    public void lazyExpansionTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        final TreeTemplate template = new TreeTemplate(parameters);
+        final TreeGenerator generator = new TreeGenerator();
+        generator.setSplitSeeds(true);
+
+        final SegmentTable eager = generator.generateTable(42, template);
+
+        final LevelOfDetailParameters lod = new LevelOfDetailParameters();
+        lod.branchDepth = 1;
+        lod.rootDepth = 1;
+
+        final LazyTree lazy = generator.generateLazy(42, template, lod);
+        Assertions.assertFalse(lazy.isFullyExpanded());
+        Assertions.assertTrue(lazy.getTable().size() < eager.size());
+
+        // The trunk level of detail doesn't need anything below the trunk
+        assertSameMesh(eager, lazy, lod);
+
+        lazy.expand(2, 1);
+        Assertions.assertEquals(2, lazy.getBranchDepth());
+        Assertions.assertFalse(lazy.isFullyExpanded());
+
+        lazy.expandAll();
+        Assertions.assertTrue(lazy.isFullyExpanded());
+        Assertions.assertEquals(eager.size(), lazy.getTable().size());
+        Assertions.assertEquals(TreeGeneratorTest.hash(eager.toTree()),
+                TreeGeneratorTest.hash(lazy.getTable().toTree()));
+    }
+
+    @Test
+    public void presetsTest() {
+
+        final TreeGenerator generator = new TreeGenerator();
+        generator.setSplitSeeds(true);
+
+        for (final TreeParameters parameters : TreePresets.createWithRoots(6)) {
+            final TreeTemplate template = new TreeTemplate(parameters);
+            final SegmentTable eager = generator.generateTable(42, template);
+
+            // Each level of detail only expands what it renders
+            for (final LevelOfDetailParameters lod : parameters.getLods()) {
+                if (lod.getReduction() != LevelOfDetailParameters.ReductionType.Normal) {
+                    continue;
+                }
+                final LazyTree lazy = generator.generateLazy(42, template, lod);
+                Assertions.assertTrue(lazy.getTable().size() <= eager.size());
+                assertSameMesh(eager, lazy, lod);
+
+                lazy.expandAll();
+                Assertions.assertTrue(lazy.isFullyExpanded());
+                Assertions.assertEquals(TreeGeneratorTest.hash(eager.toTree()),
+                        TreeGeneratorTest.hash(lazy.getTable().toTree()));
+            }
+        }
+    }
+
+    private static void assertSameMesh(final SegmentTable eager, final LazyTree lazy,
+                                       final LevelOfDetailParameters lod) {
+        final SkinnedTreeMeshGenerator meshGenerator = new SkinnedTreeMeshGenerator();
+        final Mesh expected = meshGenerator.generateMesh(eager, lod, 0, 4, 0.5F, null);
+        final Mesh actual = meshGenerator.generateMesh(lazy.getTable(), lod, 0, 4, 0.5F, null);
+        for (final VertexBuffer buffer : expected.getBufferList()) {
+            Assertions.assertEquals(buffer.getData().rewind(),
+                    actual.getBuffer(buffer.getBufferType()).getData().rewind());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.mesh.MeshBuilder;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that linked vertexes share their smoothed normals.
+ */
+public class NormalLinksTest {
+
+    @Test
+    public void normalLinksTest() {
+
+        final MeshBuilder builder = new MeshBuilder();
+        final List<Vertex> bottom = builder.createLoop(new Vector3f(), Vector3f.UNIT_Y, 1, 6, 0, 0);
+        final List<Vertex> middle = builder.extrude(bottom, Vector3f.UNIT_Y, 1, 6, 1, 0);
+        final List<Vertex> top = builder.extrude(middle, Vector3f.UNIT_Y, 1, 6, 0.5F, 0);
+
+        // Merge two separate link sets through a third vertex
+        builder.linkNormals(bottom.get(2), middle.get(2));
+        builder.linkNormals(top.get(4), middle.get(4));
+        builder.linkNormals(middle.get(2), top.get(4));
+        builder.linkNormals(top.get(4), bottom.get(2));
+        builder.smooth();
+
+        final Vector3f shared = bottom.get(2).normal;
+        Assertions.assertEquals(1, shared.length(), 1e-5F);
+        for (final Vertex vert : Arrays.asList(middle.get(2), middle.get(4), top.get(4))) {
+            Assertions.assertEquals(shared, vert.normal);
+        }
+        Assertions.assertEquals(bottom.get(0).normal, bottom.get(6).normal);
+        Assertions.assertNotEquals(shared, bottom.get(3).normal);
+
+        // Dropping the top band keeps the remaining vertexes linked
+        final BitSet remove = new BitSet();
+        remove.set(builder.getTriangleCount() / 2, builder.getTriangleCount());
+        builder.removeTriangles(remove);
+        Assertions.assertEquals(14, builder.getVertexCount());
+        builder.smooth();
+        Assertions.assertEquals(bottom.get(2).normal, middle.get(4).normal);
+        Assertions.assertEquals(middle.get(2).normal, middle.get(4).normal);
+        Assertions.assertEquals(middle.get(0).normal, middle.get(6).normal);
+    }
+
+    @Test
+    public void treeSeamsTest() {
+
+        // Every loop links its first and last vertex so a tree has no seams
+        for (final TreeParameters parameters : TreePresets.create(5)) {
+            final SegmentTable table = new TreeGenerator().generateTable(42, parameters);
+            for (final LevelOfDetailParameters lod : parameters.getLods()) {
+                if (lod.getReduction() != LevelOfDetailParameters.ReductionType.Normal) {
+                    continue;
+                }
+                final MeshBuilder builder = new SkinnedTreeMeshGenerator().generateGeometry(table, lod,
+                        parameters.getYOffset(), 4, 0.5F, null);
+
+                final Map<Vector3f, Vertex> seen = new HashMap<>();
+                int shared = 0;
+                for (final Vertex vert : builder.getVertexes()) {
+                    Assertions.assertEquals(1, vert.normal.length(), 1e-4F);
+                    final Vertex other = seen.putIfAbsent(vert.pos, vert);
+                    if (other != null) {
+                        Assertions.assertEquals(other.normal, vert.normal);
+                        shared++;
+                    }
+                }
+                Assertions.assertTrue(shared > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.BranchParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.mesh.GroundHeight;
+import com.simsilica.arboreal.mesh.MeshBufferPool;
+import com.simsilica.arboreal.mesh.MeshBuilder;
+import com.simsilica.arboreal.mesh.PackedMeshBuilder;
+import com.simsilica.arboreal.mesh.PrunedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the packed mesh builder produces the same meshes as the MeshBuilder.
+ */
+public class PackedMeshBuilderTest {
+
+    @Test
+    public void builderTest() {
+
+        final MeshBuilder builder = new MeshBuilder();
+        final PackedMeshBuilder packed = new PackedMeshBuilder(4, 4);
+
+        final Vector3f center = new Vector3f(0, 0.5F, 0);
+        List<Vertex> loop = builder.createLoop(center, Vector3f.UNIT_Y, 1, 6, 0, 0);
+        int[] packedLoop = packed.createLoop(center, Vector3f.UNIT_Y, 1, 6, 0);
+
+        final Vector3f dir = new Vector3f(0.2F, 1, 0.1F).normalizeLocal();
+        final Vector3f offset = new Vector3f(0.05F, 0, -0.02F);
+        for (int i = 0; i < 4; i++) {
+            final int radials = i == 2 ? 4 : 6;
+            final Vector2f base = new Vector2f(0, i * 0.25F);
+            final Vector2f range = new Vector2f(1, 0);
+            builder.textureLoop(loop, base, range);
+            packed.textureLoop(packedLoop, base, range);
+            loop = builder.extrude(loop, dir, 1.5F, offset, radials, 0.8F - i * 0.1F, i * 0.3F);
+            packedLoop = packed.extrude(packedLoop, dir, 1.5F, offset, radials, 0.8F - i * 0.1F, i * 0.3F);
+        }
+        builder.textureLoop(loop, new Vector2f(0, 1), new Vector2f(1, 0));
+        packed.textureLoop(packedLoop, new Vector2f(0, 1), new Vector2f(1, 0));
+
+        builder.smooth();
+        packed.smooth();
+
+        Assertions.assertEquals(builder.getVertexCount(), packed.getVertexCount());
+        Assertions.assertEquals(builder.getTriangleCount(), packed.getTriangleCount());
+
+        final Mesh expected = builder.build();
+        final Mesh actual = packed.build();
+        for (final VertexBuffer.Type type : new VertexBuffer.Type[] { VertexBuffer.Type.Position, VertexBuffer.Type.TexCoord }) {
+            final FloatBuffer expectedData = (FloatBuffer) expected.getBuffer(type).getData();
+            final FloatBuffer actualData = (FloatBuffer) actual.getBuffer(type).getData();
+            Assertions.assertEquals(expectedData.rewind(), actualData.rewind());
+        }
+        Assertions.assertEquals(expected.getBuffer(VertexBuffer.Type.Index).getData().rewind(),
+                                actual.getBuffer(VertexBuffer.Type.Index).getData().rewind());
+
+        final FloatBuffer expectedNormals = (FloatBuffer) expected.getBuffer(VertexBuffer.Type.Normal).getData();
+        final FloatBuffer actualNormals = (FloatBuffer) actual.getBuffer(VertexBuffer.Type.Normal).getData();
+        for (int i = 0; i < expectedNormals.limit(); i++) {
+            Assertions.assertEquals(expectedNormals.get(i), actualNormals.get(i), 1e-5F);
+        }
+
+        // The seam vertexes of each loop share a normal
+        Assertions.assertEquals(packed.getNormal(packedLoop[0], null), packed.getNormal(packedLoop[6], null));
+    }
+
+    @Test
+    public void skinnedGeneratorTest() {
+
+        final TreeGenerator generator = new TreeGenerator();
+        final SkinnedTreeMeshGenerator meshGenerator = new SkinnedTreeMeshGenerator();
+        final SkinnedTreeMeshGenerator packedGenerator = new SkinnedTreeMeshGenerator();
+        packedGenerator.setPacked(true);
+        packedGenerator.setBufferPool(new MeshBufferPool(64 * 1024 * 1024));
+
+        for (final TreeParameters parameters : TreePresets.createWithRoots(10)) {
+            final SegmentTable table = generator.generateTable(42, parameters);
+            final float yOffset = parameters.getYOffset();
+
+            // The reduced levels of detail skip segments and cap branches off
+            for (final LevelOfDetailParameters lod : parameters.getLods()) {
+                for (final GroundHeight ground : new GroundHeight[] {null, new GroundHeight.Flat(yOffset)}) {
+                    meshGenerator.setRootClip(ground);
+                    packedGenerator.setRootClip(ground);
+
+                    final List<Vertex> tips = new ArrayList<>();
+                    final List<Vertex> packedTips = new ArrayList<>();
+                    final Mesh expected = meshGenerator.generateMesh(table, lod, yOffset, 4, 0.5F, tips);
+                    final Mesh actual = packedGenerator.generateMesh(table, lod, yOffset, 4, 0.5F, packedTips);
+                    assertSameMesh(expected, actual);
+
+                    Assertions.assertEquals(tips.size(), packedTips.size());
+                    for (int i = 0; i < tips.size(); i++) {
+                        Assertions.assertEquals(tips.get(i).pos, packedTips.get(i).pos);
+                        Assertions.assertEquals(tips.get(i).normal, packedTips.get(i).normal);
+                    }
+                    packedGenerator.getBufferPool().release(actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prunedGeneratorTest() {
+
+        // Thick, steep branches that start inside their parents
+        final TreeParameters parameters = new TreeParameters();
+        for (final BranchParameters branch : parameters.getBranches()) {
+            branch.setRadiusScale(0.9F);
+            branch.setInclination(0.2F);
+            branch.setHasEndJoint(true);
+        }
+        final SegmentTable table = new TreeGenerator().generateTable(42, parameters);
+        final LevelOfDetailParameters lod = new LevelOfDetailParameters();
+
+        final PrunedTreeMeshGenerator meshGenerator = new PrunedTreeMeshGenerator();
+        final PrunedTreeMeshGenerator packedGenerator = new PrunedTreeMeshGenerator();
+        packedGenerator.setPacked(true);
+
+        final Mesh expected = meshGenerator.generateMesh(table, lod, 0, 4, 0.5F, null);
+        final Mesh actual = packedGenerator.generateMesh(table, lod, 0, 4, 0.5F, null);
+        Assertions.assertTrue(packedGenerator.getRemovedCount() > 0);
+        Assertions.assertEquals(meshGenerator.getRemovedCount(), packedGenerator.getRemovedCount());
+        assertSameMesh(expected, actual);
+    }
+
+    private static void assertSameMesh(final Mesh expected, final Mesh actual) {
+        Assertions.assertEquals(expected.getVertexCount(), actual.getVertexCount());
+        Assertions.assertEquals(expected.getTriangleCount(), actual.getTriangleCount());
+        for (final VertexBuffer.Type type : new VertexBuffer.Type[] {VertexBuffer.Type.Position,
+                VertexBuffer.Type.TexCoord, VertexBuffer.Type.Tangent, VertexBuffer.Type.Index}) {
+            Assertions.assertEquals(expected.getBuffer(type).getData().rewind(),
+                    actual.getBuffer(type).getData().rewind(), type.name());
+        }
+
+        final FloatBuffer expectedNormals = (FloatBuffer) expected.getBuffer(VertexBuffer.Type.Normal).getData();
+        final FloatBuffer actualNormals = (FloatBuffer) actual.getBuffer(VertexBuffer.Type.Normal).getData();
+        for (int i = 0; i < expectedNormals.limit(); i++) {
+            Assertions.assertEquals(expectedNormals.get(i), actualNormals.get(i), 1e-5F);
+        }
+    }
+}
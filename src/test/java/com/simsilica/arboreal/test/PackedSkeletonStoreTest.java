@@ -0,0 +1,125 @@
+package com.simsilica.arboreal.test;
+
+import com.simsilica.arboreal.PackedSkeletonStore;
+import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.SegmentSink;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that skeletons survive the half-float packed store.
+ */
+public class PackedSkeletonStoreTest {
+
+    @Test
+    public void packedStoreTest() {
+
+        final TreeParameters parameters = TreePresets.withRoots(new TreeParameters());
+        final TreeTemplate template = new TreeTemplate(parameters);
+        final TreeGenerator generator = new TreeGenerator();
+        final PackedSkeletonStore store = new PackedSkeletonStore(16);
+
+        final SegmentTable first = generator.generateTable(42, template);
+        final SegmentTable second = generator.generateTable(7, template);
+        Assertions.assertEquals(0, store.add(first));
+        Assertions.assertEquals(1, store.add(generator.generateTree(7, template)));
+        final int direct = store.beginTree();
+        generator.generate(42, template, store);
+
+        Assertions.assertEquals(3, store.getTreeCount());
+        Assertions.assertEquals(first.size() * 2 + second.size(), store.size());
+        Assertions.assertTrue(store.getByteCount() < store.size() * 32L);
+
+        assertPackedSkeleton(first, store.toTable(0));
+        assertPackedSkeleton(second, store.toTable(1));
+        assertPackedSkeleton(first, store.toTable(direct));
+
+        final int trunk = store.getTrunk(1);
+        Assertions.assertEquals(second.getChildCount(second.getTrunk()), store.getChildCount(trunk));
+        Assertions.assertEquals(trunk, store.getParent(store.getChild(trunk, 0)));
+        Assertions.assertTrue(store.isInverted(store.getRoots(1)));
+
+        store.clear();
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertThrows(IllegalStateException.class, () -> generator.generate(42, template, store));
+    }
+
+    @Test
+    public void presetsTest() {
+
+        final TreeGenerator generator = new TreeGenerator();
+        final PackedSkeletonStore store = new PackedSkeletonStore(16);
+        final List<SegmentTable> expected = new ArrayList<>();
+
+        // Trees of different shapes share the one store
+        for (final TreeParameters parameters : TreePresets.createWithRoots(8)) {
+            final TreeTemplate template = new TreeTemplate(parameters);
+            final SegmentTable table = generator.generateTable(42, template);
+            expected.add(table);
+            if (expected.size() % 2 == 0) {
+                Assertions.assertEquals(expected.size() - 1, store.add(table));
+            } else {
+                Assertions.assertEquals(expected.size() - 1, store.beginTree());
+                generator.generate(42, template, store);
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), store.getTreeCount());
+        for (int i = 0; i < expected.size(); i++) {
+            assertPackedSkeleton(expected.get(i), store.toTable(i));
+        }
+    }
+
+    @Test
+    public void deepSkeletonTest() {
+
+        // Deep enough that one stack frame per segment would overflow
+        final int depth = 200000;
+        final SegmentTable table = new SegmentTable();
+        final Segment seg = new Segment();
+        seg.startRadius = 0.1F;
+        seg.endRadius = 0.1F;
+        seg.length = 0.1F;
+        seg.radials = 4;
+        seg.dir.set(0, 1, 0);
+        int parent = table.addSegment(SegmentSink.NO_PARENT, 0, 1, 0, seg);
+        for (int i = 1; i < depth; i++) {
+            parent = table.addSegment(parent, 0, i < depth - 1 ? 1 : 0, 0, seg);
+        }
+
+        final PackedSkeletonStore store = new PackedSkeletonStore(16);
+        final int tree = store.add(table);
+        Assertions.assertEquals(depth, store.size());
+        assertPackedSkeleton(table, store.toTable(tree));
+    }
+
+    private static void assertPackedSkeleton(final SegmentTable expected, final SegmentTable actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.getParent(i), actual.getParent(i));
+            Assertions.assertEquals(expected.getChildCount(i), actual.getChildCount(i));
+            Assertions.assertEquals(expected.getDepth(i), actual.getDepth(i));
+            Assertions.assertEquals(expected.getRadials(i), actual.getRadials(i));
+            Assertions.assertEquals(expected.getParentConnection(i), actual.getParentConnection(i));
+            assertHalf(expected.getStartRadius(i), actual.getStartRadius(i));
+            assertHalf(expected.getEndRadius(i), actual.getEndRadius(i));
+            assertHalf(expected.getLength(i), actual.getLength(i));
+            assertHalf(expected.getUScale(i), actual.getUScale(i));
+            assertHalf(expected.getVStart(i), actual.getVStart(i));
+            assertHalf(expected.getVEnd(i), actual.getVEnd(i));
+            assertHalf(expected.getTwist(i), actual.getTwist(i));
+            Assertions.assertTrue(expected.getDir(i, null).distance(actual.getDir(i, null)) < 1e-3F);
+        }
+    }
+
+    private static void assertHalf(final float expected, final float actual) {
+        Assertions.assertEquals(expected, actual, Math.abs(expected) / 1024F + 1e-6F);
+    }
+}
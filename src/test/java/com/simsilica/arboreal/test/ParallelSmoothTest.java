@@ -0,0 +1,64 @@
+package com.simsilica.arboreal.test;
+
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.mesh.MeshBuilder;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that smoothing on several threads gives the same normals as smoothing on one.
+ */
+public class ParallelSmoothTest {
+
+    @Test
+    public void parallelSmoothTest() {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (final TreeParameters parameters : TreePresets.create(5)) {
+                for (final int chunks : new int[] {2, 7}) {
+                    assertSmoothed(parameters, parameters.getLod(0), executor, chunks);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertSmoothed(final TreeParameters parameters, final LevelOfDetailParameters lod,
+                                       final ExecutorService executor, final int chunks) {
+
+        final SegmentTable table = new TreeGenerator().generateTable(42, parameters);
+        final SkinnedTreeMeshGenerator generator = new SkinnedTreeMeshGenerator();
+        final MeshBuilder serial = generator.generateGeometry(table, lod, 0, 4, 0.5F, new ArrayList<>());
+        final MeshBuilder parallel = generator.generateGeometry(table, lod, 0, 4, 0.5F, new ArrayList<>());
+
+        // Start both from unset normals
+        for (final MeshBuilder builder : Arrays.asList(serial, parallel)) {
+            for (final Vertex vert : builder.getVertexes()) {
+                vert.normal = null;
+            }
+        }
+
+        serial.smooth();
+        parallel.smooth(executor, chunks);
+
+        Assertions.assertEquals(serial.getVertexCount(), parallel.getVertexCount());
+        for (int i = 0; i < serial.getVertexCount(); i++) {
+            final Vertex expected = serial.getVertexes().get(i);
+            final Vertex actual = parallel.getVertexes().get(i);
+            Assertions.assertTrue(expected.normal.distance(actual.normal) < 1e-5F, "Vertex:" + i);
+            Assertions.assertEquals(expected.weight, actual.weight, 1e-3F);
+        }
+    }
+}
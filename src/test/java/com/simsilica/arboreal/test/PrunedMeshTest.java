@@ -0,0 +1,164 @@
+package com.simsilica.arboreal.test;
+
+import com.simsilica.arboreal.BranchParameters;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.SegmentSink;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.MeshBuilder;
+import com.simsilica.arboreal.mesh.PrunedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Triangle;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the pruned mesh generator only removes hidden triangles and leaves a consistent mesh.
+ */
+public class PrunedMeshTest {
+
+    @Test
+    public void hiddenGeometryTest() {
+
+        // Thick, steep branches that start inside their parents
+        final TreeParameters parameters = new TreeParameters();
+        for (final BranchParameters branch : parameters.getBranches()) {
+            branch.setRadiusScale(0.9F);
+            branch.setInclination(0.2F);
+            branch.setHasEndJoint(true);
+        }
+
+        final PrunedTreeMeshGenerator generator = new PrunedTreeMeshGenerator();
+        final int removedVertexes = assertPruned(generator, parameters, new LevelOfDetailParameters());
+        Assertions.assertTrue(generator.getRemovedCount() > 0);
+        Assertions.assertTrue(removedVertexes > 0);
+    }
+
+    @Test
+    public void occluderTest() {
+
+        // A trunk that forks into a straight, thick occluder and a thin, slightly
+        // tilted branch that starts inside of it
+        final float radius = 0.5F;
+        final SegmentTable table = new SegmentTable();
+        final int trunk = table.addSegment(SegmentSink.NO_PARENT, 0, 2, 0,
+                createSegment(new Vector3f(0, 1, 0), radius, 1, Segment.ConnectionType.Extrude));
+        table.addSegment(trunk, 0, 0, 1,
+                createSegment(new Vector3f(0, 1, 0), radius, 2, Segment.ConnectionType.Curve));
+        final Vector3f tilted = new Vector3f(FastMath.sin(0.15F), FastMath.cos(0.15F), 0);
+        table.addSegment(trunk, 1, 0, 1, createSegment(tilted, 0.25F, 0.5F, Segment.ConnectionType.Curve));
+
+        final LevelOfDetailParameters lod = new LevelOfDetailParameters(0,
+                LevelOfDetailParameters.ReductionType.Normal, 10, 10, 12);
+        final MeshBuilder full = new SkinnedTreeMeshGenerator().generateGeometry(table, lod, 0, 4, 0.5F, null);
+        final PrunedTreeMeshGenerator generator = new PrunedTreeMeshGenerator();
+        final MeshBuilder pruned = generator.generateGeometry(table, lod, 0, 4, 0.5F, null);
+        Assertions.assertTrue(generator.getRemovedCount() > 0);
+
+        // The remaining vertexes are in their original order so the rest were removed
+        final List<Vertex> remaining = pruned.getVertexes();
+        int next = 0;
+        int removed = 0;
+        for (final Vertex vertex : full.getVertexes()) {
+            if (next < remaining.size() && vertex.pos.equals(remaining.get(next).pos)) {
+                next++;
+                continue;
+            }
+            removed++;
+            // The occluder runs up the y axis from the end of the trunk
+            Assertions.assertTrue(vertex.pos.y >= 1 - FastMath.ZERO_TOLERANCE, vertex.toString());
+            Assertions.assertTrue(vertex.pos.y <= 3, vertex.toString());
+            Assertions.assertTrue(FastMath.sqrt(vertex.pos.x * vertex.pos.x + vertex.pos.z * vertex.pos.z) <= radius,
+                    vertex.toString());
+        }
+        Assertions.assertEquals(remaining.size(), next);
+        Assertions.assertTrue(removed > 0);
+    }
+
+    @Test
+    public void removedCountTest() {
+
+        final PrunedTreeMeshGenerator generator = new PrunedTreeMeshGenerator();
+        final TreeParameters parameters = new TreeParameters();
+        for (final BranchParameters branch : parameters.getBranches()) {
+            branch.setRadiusScale(0.9F);
+            branch.setInclination(0.2F);
+            branch.setHasEndJoint(true);
+        }
+        assertPruned(generator, parameters, new LevelOfDetailParameters());
+        Assertions.assertTrue(generator.getRemovedCount() > 0);
+
+        // Branch meshes are not pruned and one pass generation is rejected
+        final SegmentTable table = new TreeGenerator().generateTable(42, parameters);
+        generator.generateBranchMesh(table, new LevelOfDetailParameters(), new Vector3f(), 4, 0.5F, null);
+        Assertions.assertEquals(0, generator.getRemovedCount());
+        final TreeTemplate template = new TreeTemplate(parameters);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> generator.generateMesh(new TreeGenerator(),
+                42, template, new LevelOfDetailParameters(), 0, 4, 0.5F, null));
+    }
+
+    @Test
+    public void presetsTest() {
+
+        final PrunedTreeMeshGenerator generator = new PrunedTreeMeshGenerator();
+        for (final TreeParameters parameters : TreePresets.create(6)) {
+            for (final LevelOfDetailParameters lod : parameters.getLods()) {
+                if (lod.getReduction() == LevelOfDetailParameters.ReductionType.Normal) {
+                    assertPruned(generator, parameters, lod);
+                }
+            }
+        }
+    }
+
+    private static Segment createSegment(final Vector3f dir, final float radius, final float length,
+                                         final Segment.ConnectionType connection) {
+        final Segment result = new Segment();
+        result.dir.set(dir);
+        result.startRadius = radius;
+        result.endRadius = radius;
+        result.length = length;
+        result.vEnd = length;
+        result.radials = 12;
+        result.parentConnection = connection;
+        return result;
+    }
+
+    /**
+     * Checks the pruned mesh against the full one and returns the number of vertexes that were removed.
+     */
+    private static int assertPruned(final PrunedTreeMeshGenerator generator, final TreeParameters parameters,
+                                    final LevelOfDetailParameters lod) {
+
+        final SegmentTable table = new TreeGenerator().generateTable(42, parameters);
+
+        final List<Vertex> expectedTips = new ArrayList<>();
+        final MeshBuilder full = new SkinnedTreeMeshGenerator().generateGeometry(table, lod, 0, 4, 0.5F,
+                expectedTips);
+
+        final List<Vertex> tips = new ArrayList<>();
+        final MeshBuilder pruned = generator.generateGeometry(table, lod, 0, 4, 0.5F, tips);
+
+        Assertions.assertTrue(generator.getRemovedCount() >= 0);
+        Assertions.assertEquals(full.getTriangleCount() - generator.getRemovedCount(), pruned.getTriangleCount());
+        Assertions.assertTrue(pruned.getVertexCount() <= full.getVertexCount());
+        Assertions.assertEquals(expectedTips.size(), tips.size());
+
+        // Every remaining triangle only uses remaining vertexes
+        final List<Vertex> vertexes = pruned.getVertexes();
+        for (final Triangle triangle : pruned.getTriangles()) {
+            for (final Vertex vertex : triangle.vertexes()) {
+                Assertions.assertSame(vertex, vertexes.get(vertex.index));
+            }
+        }
+        return full.getVertexCount() - pruned.getVertexCount();
+    }
+}
@@ -0,0 +1,76 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.GroundHeight;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Checks that roots are clipped against the ground the same way on every meshing path.
+ */
+public class RootClipTest {
+
+    @Test
+    public void rootClipTest() {
+
+        final TreeParameters parameters = TreePresets.withRoots(new TreeParameters());
+        final Mesh clipped = assertClipped(parameters, new LevelOfDetailParameters(), true);
+
+        // Nothing but the caps is below the ground
+        final FloatBuffer positions = (FloatBuffer) clipped.getBuffer(VertexBuffer.Type.Position).getData();
+        final float lowest = parameters.getYOffset() - parameters.getRootHeight();
+        for (int i = 1; i < positions.limit(); i += 3) {
+            Assertions.assertTrue(positions.get(i) > lowest);
+        }
+    }
+
+    @Test
+    public void presetsTest() {
+
+        for (final TreeParameters parameters : TreePresets.createWithRoots(6)) {
+            for (final LevelOfDetailParameters lod : parameters.getLods()) {
+                if (lod.getReduction() == LevelOfDetailParameters.ReductionType.Normal) {
+                    assertClipped(parameters, lod, false);
+                }
+            }
+        }
+    }
+
+    private static Mesh assertClipped(final TreeParameters parameters, final LevelOfDetailParameters lod,
+                                      final boolean smaller) {
+
+        final TreeGenerator generator = new TreeGenerator();
+        final SkinnedTreeMeshGenerator meshGenerator = new SkinnedTreeMeshGenerator();
+        final TreeTemplate template = new TreeTemplate(parameters);
+        final SegmentTable table = generator.generateTable(42, template);
+        final int full = meshGenerator.generateGeometry(table, lod, parameters.getYOffset(), 4, 0.5F, null)
+                .getTriangleCount();
+
+        meshGenerator.setRootClip(new GroundHeight.Flat(parameters.getYOffset()));
+        final Mesh clipped = meshGenerator.generateMesh(table, lod, parameters.getYOffset(), 4, 0.5F, null);
+
+        if (smaller) {
+            Assertions.assertTrue(clipped.getTriangleCount() < full);
+        } else {
+            Assertions.assertTrue(clipped.getTriangleCount() <= full);
+        }
+
+        // The fused path clips the same way
+        final Mesh fused = meshGenerator.generateMesh(generator, 42, template, lod, parameters.getYOffset(), 4,
+                0.5F, null);
+        for (final VertexBuffer buffer : clipped.getBufferList()) {
+            Assertions.assertEquals(buffer.getData().rewind(),
+                    fused.getBuffer(buffer.getBufferType()).getData().rewind());
+        }
+        return clipped;
+    }
+}
@@ -0,0 +1,63 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.mesh.LineMeshGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Checks that the streaming segment visitor sees the same segments as the generated table.
+ */
+public class SegmentVisitorTest {
+
+    @Test
+    public void visitorTest() {
+
+        final TreeGenerator generator = new TreeGenerator();
+        for (final TreeParameters parameters : TreePresets.createWithRoots(6)) {
+            assertVisited(generator, parameters, 42);
+            assertVisited(generator, parameters, 7);
+        }
+    }
+
+    private static void assertVisited(final TreeGenerator generator, final TreeParameters parameters, final int seed) {
+
+        // The line preview draws the same segments from the table
+        final SegmentTable table = generator.generateTable(seed, parameters);
+        final Mesh lines = new LineMeshGenerator().generateMesh(table);
+        final FloatBuffer expected = (FloatBuffer) lines.getBuffer(VertexBuffer.Type.Position).getData();
+        expected.rewind();
+
+        final int[] counts = new int[2];
+        generator.generate(seed, parameters, (start, end, startRadius, endRadius, depth, connection, inverted,
+                                              childCount) -> {
+            Assertions.assertEquals(expected.get(), start.x, 1e-5F);
+            Assertions.assertEquals(expected.get(), start.y, 1e-5F);
+            Assertions.assertEquals(expected.get(), start.z, 1e-5F);
+            Assertions.assertEquals(expected.get(), end.x, 1e-5F);
+            Assertions.assertEquals(expected.get(), end.y, 1e-5F);
+            Assertions.assertEquals(expected.get(), end.z, 1e-5F);
+            counts[0]++;
+            if (childCount == 0) {
+                counts[1]++;
+            }
+        });
+
+        Assertions.assertFalse(expected.hasRemaining());
+        Assertions.assertEquals(table.size(), counts[0]);
+
+        int tips = 0;
+        for (int i = 0; i < table.size(); i++) {
+            if (!table.hasChildren(i)) {
+                tips++;
+            }
+        }
+        Assertions.assertEquals(tips, counts[1]);
+    }
+}
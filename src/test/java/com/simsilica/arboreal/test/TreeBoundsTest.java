@@ -0,0 +1,117 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters.ReductionType;
+import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.Tree;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.mesh.BillboardedLeavesMeshGenerator;
+import com.simsilica.arboreal.mesh.FlatPolyTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that the tree and segment bounds contain the generated meshes.
+ */
+public class TreeBoundsTest {
+
+    @Test
+    public void meshInsideBoundsTest() {
+
+        for (final TreeParameters parameters : TreePresets.create(20)) {
+
+            final Tree tree = new TreeGenerator().generateTree(42, parameters);
+            final BoundingBox bounds = tree.updateBounds(parameters.getLeafScale());
+            checkBounds(tree.getTrunk());
+            checkBounds(tree.getRoots());
+
+            for (final LevelOfDetailParameters lod : parameters.getLods()) {
+                final List<Vertex> tips = new ArrayList<>();
+                final Mesh mesh = lod.getReduction() == ReductionType.FlatPoly
+                        ? new FlatPolyTreeMeshGenerator().generateMesh(tree, lod, 0, parameters.getTextureURepeat(),
+                                                                       parameters.getTextureVScale(), tips)
+                        : new SkinnedTreeMeshGenerator().generateMesh(tree, lod, 0, parameters.getTextureURepeat(),
+                                                                      parameters.getTextureVScale(), tips);
+                assertInside(bounds, mesh);
+
+                if (!tips.isEmpty()) {
+                    final Mesh leaves = new BillboardedLeavesMeshGenerator().generateMesh(tips, parameters.getLeafScale());
+                    final BoundingBox leafBounds = (BoundingBox) leaves.getBound();
+                    assertInside(bounds, leafBounds.getMin(null));
+                    assertInside(bounds, leafBounds.getMax(null));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lazyBoundsTest() {
+
+        final TreeParameters parameters = TreePresets.create(1).get(1);
+        final Tree tree = new TreeGenerator().generateTree(42, parameters);
+        Assertions.assertNull(tree.getTrunk().bounds);
+
+        final BoundingBox bounds = tree.getBounds();
+        Assertions.assertNotNull(bounds);
+        Assertions.assertNotNull(tree.getTrunk().bounds);
+        Assertions.assertSame(bounds, tree.getBounds());
+
+        // Leaves only make the bounds larger
+        final BoundingBox withLeaves = tree.updateBounds(1);
+        assertInside(withLeaves, bounds.getMin(null));
+        assertInside(withLeaves, bounds.getMax(null));
+        Assertions.assertNotEquals(bounds.getExtent(null), withLeaves.getExtent(null));
+
+        // The parallel generator ends up with the same bounds
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final TreeGenerator serial = new TreeGenerator();
+            serial.setSplitSeeds(true);
+            final BoundingBox expected = serial.generateTree(42, parameters).getBounds();
+            final BoundingBox actual = new TreeGenerator(pool).generateTree(42, parameters).getBounds();
+            Assertions.assertEquals(expected.getCenter(), actual.getCenter());
+            Assertions.assertEquals(expected.getExtent(null), actual.getExtent(null));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertInside(final BoundingBox box, final Mesh mesh) {
+        if (mesh == null) {
+            return;
+        }
+        final FloatBuffer points = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+        points.rewind();
+        while (points.hasRemaining()) {
+            assertInside(box, new Vector3f(points.get(), points.get(), points.get()));
+        }
+    }
+
+    private static void assertInside(final BoundingBox box, final Vector3f point) {
+        final Vector3f min = box.getMin(null);
+        final Vector3f max = box.getMax(null);
+        Assertions.assertTrue(point.x >= min.x - 1e-4F && point.x <= max.x + 1e-4F, point + " outside " + box);
+        Assertions.assertTrue(point.y >= min.y - 1e-4F && point.y <= max.y + 1e-4F, point + " outside " + box);
+        Assertions.assertTrue(point.z >= min.z - 1e-4F && point.z <= max.z + 1e-4F, point + " outside " + box);
+    }
+
+    private static void checkBounds(final Segment segment) {
+        for (final Segment child : segment) {
+            assertInside(segment.bounds, child.bounds.getMin(null));
+            assertInside(segment.bounds, child.bounds.getMax(null));
+            checkBounds(child);
+        }
+    }
+}
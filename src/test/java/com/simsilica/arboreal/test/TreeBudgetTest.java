@@ -0,0 +1,120 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters.ReductionType;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.FlatPolyTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.TreeBudget;
+import com.simsilica.arboreal.mesh.TreeMeshCache;
+import com.simsilica.arboreal.mesh.TreeMeshes;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that budgets fit the parameters and that the generators keep the real meshes within them.
+ */
+public class TreeBudgetTest {
+
+    @Test
+    public void budgetTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        parameters.setGenerateLeaves(true);
+        final long fingerprint = parameters.getFingerprint();
+
+        final TreeBudget budget = new TreeBudget(1500, 20);
+        Assertions.assertFalse(budget.fits(parameters));
+
+        final TreeParameters fitted = budget.fit(parameters);
+        Assertions.assertNotSame(parameters, fitted);
+        Assertions.assertEquals(fingerprint, parameters.getFingerprint());
+        Assertions.assertTrue(budget.fits(fitted));
+        Assertions.assertSame(fitted, budget.fit(fitted));
+
+        final TreeMeshCache cache = new TreeMeshCache(Long.MAX_VALUE);
+        cache.setBudget(budget);
+
+        final TreeMeshes meshes = cache.getMeshes(parameters, 42);
+        for (int i = 0; i < meshes.getLodCount(); i++) {
+            Assertions.assertTrue(meshes.getTreeMesh(i).getTriangleCount() <= budget.getMaxTriangles());
+            Assertions.assertTrue(meshes.getLeafMesh(i).getTriangleCount() <= budget.getMaxLeaves() * 2);
+        }
+
+        // Nothing to do for a generous budget
+        final TreeBudget generous = new TreeBudget(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        Assertions.assertSame(parameters, generous.fit(parameters));
+
+        // The default tree is about 10600 triangles but the upper bound of
+        // its estimate is about 13900 so fitting on the bound would reduce it
+        final TreeBudget close = new TreeBudget(12000, Integer.MAX_VALUE);
+        Assertions.assertSame(parameters, close.fit(parameters));
+    }
+
+    @Test
+    public void budgetPresetsTest() {
+
+        final TreeBudget budget = new TreeBudget(2000, 30);
+        for (final TreeParameters parameters : TreePresets.create(20)) {
+
+            // The generator prunes the tree itself
+            final TreeGenerator generator = new TreeGenerator();
+            generator.setLimit(budget);
+            final SegmentTable table = generator.generateTable(42, parameters);
+
+            final TreeParameters fitted = budget.fit(parameters);
+            final TreeTemplate template = new TreeTemplate(fitted);
+            Assertions.assertEquals(new TreeGenerator().generateTable(42, fitted).size(), table.size());
+
+            final SkinnedTreeMeshGenerator skinned = new SkinnedTreeMeshGenerator();
+            skinned.setBudget(budget);
+            final FlatPolyTreeMeshGenerator flat = new FlatPolyTreeMeshGenerator();
+            flat.setBudget(budget);
+
+            for (final LevelOfDetailParameters lod : fitted.getLods()) {
+                final List<Vertex> tips = new ArrayList<>();
+                final Mesh mesh = lod.getReduction() == ReductionType.FlatPoly
+                        ? flat.generateMesh(table, lod, 0, template.getTextureURepeat(), template.getTextureVScale(), tips)
+                        : skinned.generateMesh(table, lod, 0, template.getTextureURepeat(), template.getTextureVScale(), tips);
+                Assertions.assertTrue(getTriangleCount(mesh) <= budget.getMaxTriangles());
+                if (fitted.getGenerateLeaves()) {
+                    Assertions.assertTrue(tips.size() <= budget.getMaxLeaves());
+                }
+            }
+        }
+
+        // Even a bare trunk cannot fit
+        final TreeBudget impossible = new TreeBudget(4, Integer.MAX_VALUE);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> impossible.fit(new TreeParameters()));
+
+        final TreeMeshCache cache = new TreeMeshCache(Long.MAX_VALUE);
+        cache.setBudget(impossible);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cache.getMeshes(new TreeParameters(), 42));
+        Assertions.assertEquals(0, cache.size());
+
+        // The real mesh is checked even when the estimate was not used
+        final TreeParameters parameters = new TreeParameters();
+        final TreeTemplate template = new TreeTemplate(parameters);
+        final SkinnedTreeMeshGenerator skinned = new SkinnedTreeMeshGenerator();
+        skinned.setBudget(impossible);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> skinned.generateMesh(new TreeGenerator(), 42, template, parameters.getLod(0), 0,
+                                           template.getTextureURepeat(), template.getTextureVScale(), null));
+
+        final TreeGenerator limited = new TreeGenerator();
+        limited.setLimit(budget);
+        Assertions.assertNotEquals(new TreeGenerator().getFingerprint(), limited.getFingerprint());
+    }
+
+    private static int getTriangleCount(final Mesh mesh) {
+        return mesh == null ? 0 : mesh.getTriangleCount();
+    }
+}
@@ -0,0 +1,102 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.simsilica.arboreal.LevelOfDetailParameters;
+import com.simsilica.arboreal.LevelOfDetailParameters.ReductionType;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import com.simsilica.arboreal.mesh.FlatPolyTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.TreeEstimate;
+import com.simsilica.arboreal.mesh.TreeMeshes;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the tree estimates with generated trees.
+ */
+public class TreeEstimateTest {
+
+    @Test
+    public void estimateTest() {
+
+        double error = 0;
+        int count = 0;
+        for (final TreeParameters parameters : TreePresets.create(30)) {
+            final TreeTemplate template = new TreeTemplate(parameters);
+            for (int seed = 0; seed < 3; seed++) {
+                final SegmentTable table = new TreeGenerator().generateTable(seed, template);
+                for (final LevelOfDetailParameters lod : parameters.getLods()) {
+                    error += assertEstimate(template, table, lod);
+                    count++;
+                }
+            }
+        }
+
+        // The expected counts are close on average while the bounds can be far off
+        Assertions.assertTrue(error / count < 0.1, "Average error:" + error / count);
+
+        final TreeParameters parameters = new TreeParameters();
+        final TreeTemplate template = new TreeTemplate(parameters);
+        final SegmentTable table = new TreeGenerator().generateTable(42, template);
+
+        final LevelOfDetailParameters impostor = new LevelOfDetailParameters();
+        impostor.setReduction(ReductionType.Impostor);
+        final TreeEstimate estimate = TreeEstimate.estimate(template, impostor);
+        Assertions.assertEquals(0, estimate.getByteCount());
+        Assertions.assertEquals(table.size(), estimate.getSegmentCount());
+    }
+
+    /**
+     * Returns the relative error of the expected skinned triangle count.
+     */
+    private static double assertEstimate(final TreeTemplate template, final SegmentTable table,
+                                         final LevelOfDetailParameters lod) {
+
+        lod.setReduction(ReductionType.FlatPoly);
+        final List<Vertex> tips = new ArrayList<>();
+        final Mesh flat = new FlatPolyTreeMeshGenerator().generateMesh(table, lod, 0,
+                template.getTextureURepeat(), template.getTextureVScale(), tips);
+
+        // Everything but the skinned curves is exact
+        final TreeEstimate flatEstimate = TreeEstimate.estimate(template, lod);
+        Assertions.assertEquals(table.size(), flatEstimate.getSegmentCount());
+        Assertions.assertEquals(tips.size(), flatEstimate.getTipCount());
+        Assertions.assertEquals(getVertexCount(flat), flatEstimate.getVertexCount());
+        Assertions.assertEquals(getTriangleCount(flat), flatEstimate.getTriangleCount());
+        Assertions.assertEquals(TreeMeshes.getByteCount(flat), flatEstimate.getMeshBytes());
+        Assertions.assertEquals(flatEstimate.getVertexCount(), flatEstimate.getExpectedVertexCount());
+        Assertions.assertEquals(flatEstimate.getTriangleCount(), flatEstimate.getExpectedTriangleCount());
+        Assertions.assertEquals(flatEstimate.getMeshBytes(), flatEstimate.getExpectedMeshBytes());
+
+        // The skinned counts are upper bounds
+        lod.setReduction(ReductionType.Normal);
+        final Mesh skinned = new SkinnedTreeMeshGenerator().generateMesh(table, lod, 0,
+                template.getTextureURepeat(), template.getTextureVScale(), null);
+
+        final TreeEstimate estimate = TreeEstimate.estimate(template, lod);
+        Assertions.assertTrue(getVertexCount(skinned) <= estimate.getVertexCount(), estimate.toString());
+        Assertions.assertTrue(getTriangleCount(skinned) <= estimate.getTriangleCount(), estimate.toString());
+        Assertions.assertTrue(TreeMeshes.getByteCount(skinned) <= estimate.getMeshBytes(), estimate.toString());
+
+        // The expected counts are averages within the bounds
+        Assertions.assertTrue(estimate.getExpectedVertexCount() <= estimate.getVertexCount(), estimate.toString());
+        Assertions.assertTrue(estimate.getExpectedTriangleCount() <= estimate.getTriangleCount(), estimate.toString());
+        final int triangles = getTriangleCount(skinned);
+        return triangles == 0 ? 0 : Math.abs(estimate.getExpectedTriangleCount() - triangles) / (double) triangles;
+    }
+
+    private static int getVertexCount(final Mesh mesh) {
+        return mesh == null ? 0 : mesh.getVertexCount();
+    }
+
+    private static int getTriangleCount(final Mesh mesh) {
+        return mesh == null ? 0 : mesh.getTriangleCount();
+    }
+}
@@ -0,0 +1,149 @@
+package com.simsilica.arboreal.test;
+
+import com.simsilica.arboreal.BranchParameters;
+import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.Tree;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeTemplate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks the output of the tree generator.
+ */
+public class TreeGeneratorTest {
+
+    /**
+     * Hashes of the default tree parameters for the seeds 0 and 42 as generated
+     * by the original allocating implementation.
+     */
+    private static final long SEED_0_HASH = 670312282313557104L;
+    static final long SEED_42_HASH = -7868544518325553069L;
+
+    public static long hash(final Tree tree) {
+        long hash = 17;
+        for (final Segment segment : tree) {
+            hash = hash(segment, hash);
+        }
+        return hash;
+    }
+
+    static long hash(final Segment segment, long hash) {
+        hash = 31 * hash + Float.floatToIntBits(segment.startRadius);
+        hash = 31 * hash + Float.floatToIntBits(segment.endRadius);
+        hash = 31 * hash + Float.floatToIntBits(segment.length);
+        hash = 31 * hash + Float.floatToIntBits(segment.vStart);
+        hash = 31 * hash + Float.floatToIntBits(segment.vEnd);
+        hash = 31 * hash + Float.floatToIntBits(segment.twist);
+        hash = 31 * hash + Float.floatToIntBits(segment.dir.x);
+        hash = 31 * hash + Float.floatToIntBits(segment.dir.y);
+        hash = 31 * hash + Float.floatToIntBits(segment.dir.z);
+        hash = 31 * hash + segment.parentConnection.ordinal();
+        for (final Segment child : segment) {
+            hash = hash(child, hash);
+        }
+        return hash;
+    }
+
+    @Test
+    public void sameTreeForSameSeedTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        final TreeGenerator generator = new TreeGenerator();
+
+        Assertions.assertEquals(SEED_0_HASH, hash(generator.generateTree(0, parameters)));
+        Assertions.assertEquals(SEED_42_HASH, hash(generator.generateTree(42, parameters)));
+
+        // And again with the same generator to make sure nothing leaks between calls
+        Assertions.assertEquals(SEED_0_HASH, hash(generator.generateTree(0, parameters)));
+    }
+
+    @Test
+    public void parallelMatchesSerialTest() {
+
+        final TreeParameters parameters = new TreeParameters(5);
+        for (final BranchParameters branch : parameters.getBranches()) {
+            branch.setEnabled(true);
+            branch.setHasEndJoint(true);
+        }
+
+        final TreeGenerator serial = new TreeGenerator();
+        serial.setSplitSeeds(true);
+
+        final long expected = hash(serial.generateTree(42, parameters));
+
+        for (final int threads : new int[] {1, 2, 4}) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                final TreeGenerator parallel = new TreeGenerator(pool);
+                Assertions.assertEquals(expected, hash(parallel.generateTree(42, parameters)));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void forestTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        final TreeGenerator generator = new TreeGenerator();
+        final int[] seeds = {5, 3, 42, 0, 7};
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+
+            final List<Tree> trees = generator.generateForest(parameters, seeds, executor);
+            Assertions.assertEquals(seeds.length, trees.size());
+            for (int i = 0; i < seeds.length; i++) {
+                Assertions.assertEquals(hash(generator.generateTree(seeds[i], parameters)), hash(trees.get(i)));
+            }
+
+            final Map<Integer, Tree> streamed = new HashMap<>();
+            final List<Integer> seedList = new ArrayList<>();
+            Arrays.stream(seeds).forEach(seedList::add);
+            generator.generateForest(parameters, seedList, executor, streamed::put);
+
+            Assertions.assertEquals(seeds.length, streamed.size());
+            Assertions.assertEquals(SEED_42_HASH, hash(streamed.get(42)));
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void segmentTableTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        final TreeGenerator generator = new TreeGenerator();
+
+        final SegmentTable table = generator.generateTable(42, parameters);
+        Assertions.assertEquals(SEED_42_HASH, hash(table.toTree()));
+
+        final Tree tree = generator.generateTree(42, parameters);
+        final SegmentTable converted = SegmentTable.fromTree(tree);
+        Assertions.assertEquals(table.size(), converted.size());
+        Assertions.assertEquals(SEED_42_HASH, hash(converted.toTree()));
+
+        // Children are stored together right after their parent was added
+        final int trunk = table.getTrunk();
+        Assertions.assertEquals(Segment.ConnectionType.Extrude, table.getParentConnection(trunk));
+        Assertions.assertEquals(trunk, table.getParent(table.getChild(trunk, 0)));
+        Assertions.assertEquals(SegmentTable.NONE, table.getParent(trunk));
+
+        // The table is sized from the template up front
+        Assertions.assertEquals(new TreeTemplate(parameters).getSegmentCount(), table.size());
+    }
+}
@@ -0,0 +1,285 @@
+package com.simsilica.arboreal.test;
+
+import com.simsilica.arboreal.BranchParameters;
+import com.simsilica.arboreal.SplitMixTreeRandom;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.mesh.MeshBufferPool;
+import com.simsilica.arboreal.mesh.TreeMeshCache;
+import com.simsilica.arboreal.mesh.TreeMeshDiskCache;
+import com.simsilica.arboreal.mesh.TreeMeshes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.file.Files;
+
+/**
+ * Checks the fingerprints, the eviction, the buffer pooling and the disk storage of the tree mesh caches.
+ */
+public class TreeMeshCacheTest {
+
+    @Test
+    public void fingerprintTest() {
+
+        final TreeParameters first = new TreeParameters();
+        final TreeParameters second = new TreeParameters();
+        Assertions.assertEquals(first.getFingerprint(), second.getFingerprint());
+
+        final BranchParameters branch = second.getBranch(2);
+        branch.setTaper(branch.getTaper() + 0.01F);
+        Assertions.assertNotEquals(first.getFingerprint(), second.getFingerprint());
+
+        branch.setTaper(first.getBranch(2).getTaper());
+        Assertions.assertEquals(first.getFingerprint(), second.getFingerprint());
+
+        second.setSeed(first.getSeed() + 1);
+        Assertions.assertEquals(first.getFingerprint(), second.getFingerprint());
+
+        second.getLod(0).setMaxRadialSegments(3);
+        Assertions.assertNotEquals(first.getFingerprint(), second.getFingerprint());
+    }
+
+    @Test
+    public void hitsAndEvictionTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        final TreeMeshCache cache = new TreeMeshCache(Long.MAX_VALUE);
+
+        final TreeMeshes meshes = cache.getMeshes(parameters, 42);
+        Assertions.assertSame(meshes, cache.getMeshes(parameters, 42));
+        Assertions.assertSame(meshes, cache.getMeshes(new TreeParameters(), 42));
+        Assertions.assertEquals(2, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(meshes.getByteCount(), cache.getByteCount());
+
+        // Only room for one tree
+        cache.setMaxBytes(meshes.getByteCount());
+        final TreeMeshes other = cache.getMeshes(parameters, 7);
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertSame(other, cache.getMeshes(parameters, 7));
+        Assertions.assertNotSame(meshes, cache.getMeshes(parameters, 42));
+    }
+
+    @Test
+    public void diskCacheTest() throws IOException {
+
+        final File directory = Files.createTempDirectory("tree-cache").toFile();
+        try {
+
+            final TreeParameters parameters = new TreeParameters();
+            parameters.setGenerateLeaves(true);
+
+            final TreeMeshDiskCache diskCache = new TreeMeshDiskCache(directory, "test");
+            final TreeMeshCache cache = new TreeMeshCache(Long.MAX_VALUE);
+            cache.setDiskCache(diskCache);
+
+            final TreeMeshes generated = cache.getMeshes(parameters, 42);
+            Assertions.assertTrue(diskCache.contains(cache.getFingerprint(parameters), 42));
+
+            final TreeMeshes loaded = diskCache.load(cache.getFingerprint(parameters), 42);
+            Assertions.assertNotNull(loaded);
+            Assertions.assertEquals(generated.getLodCount(), loaded.getLodCount());
+
+            for (int i = 0; i < generated.getLodCount(); i++) {
+                assertSameMesh(generated.getTreeMesh(i), loaded.getTreeMesh(i));
+                assertSameMesh(generated.getLeafMesh(i), loaded.getLeafMesh(i));
+            }
+
+            // A new version invalidates the old files
+            final TreeMeshDiskCache newVersion = new TreeMeshDiskCache(directory, "test2");
+            Assertions.assertNull(newVersion.load(cache.getFingerprint(parameters), 42));
+            Assertions.assertFalse(newVersion.contains(cache.getFingerprint(parameters), 42));
+
+        } finally {
+            for (final File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void generatorSetupTest() throws IOException {
+
+        final File directory = Files.createTempDirectory("tree-cache").toFile();
+        try {
+
+            final TreeParameters parameters = new TreeParameters();
+            final TreeMeshDiskCache diskCache = new TreeMeshDiskCache(directory, "test");
+
+            final TreeMeshCache legacy = new TreeMeshCache(Long.MAX_VALUE);
+            legacy.setDiskCache(diskCache);
+
+            final TreeGenerator splitMix = new TreeGenerator();
+            splitMix.setRandomFactory(SplitMixTreeRandom.FACTORY);
+            final TreeMeshCache other = new TreeMeshCache(splitMix, Long.MAX_VALUE);
+            other.setDiskCache(diskCache);
+
+            final TreeGenerator split = new TreeGenerator();
+            split.setSplitSeeds(true);
+            final TreeMeshCache splitCache = new TreeMeshCache(split, Long.MAX_VALUE);
+
+            Assertions.assertNotEquals(legacy.getFingerprint(parameters), other.getFingerprint(parameters));
+            Assertions.assertNotEquals(legacy.getFingerprint(parameters), splitCache.getFingerprint(parameters));
+
+            // The other generator must not be served the legacy tree from disk
+            final TreeMeshes legacyMeshes = legacy.getMeshes(parameters, 42);
+            final TreeMeshes otherMeshes = other.getMeshes(parameters, 42);
+            Assertions.assertEquals(2, directory.listFiles().length);
+            Assertions.assertNotEquals(legacyMeshes.getTreeMesh(0).getBuffer(VertexBuffer.Type.Position).getData().rewind(),
+                                       otherMeshes.getTreeMesh(0).getBuffer(VertexBuffer.Type.Position).getData().rewind());
+
+        } finally {
+            for (final File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void readOnlyDiskCacheTest() throws IOException {
+
+        final File directory = Files.createTempDirectory("tree-cache").toFile();
+        try {
+
+            final TreeParameters parameters = new TreeParameters();
+            final TreeMeshDiskCache diskCache = new TreeMeshDiskCache(directory, "test");
+            final TreeMeshCache cache = new TreeMeshCache(Long.MAX_VALUE);
+            cache.setDiskCache(diskCache);
+            final TreeMeshes generated = cache.getMeshes(parameters, 42);
+
+            for (final File file : directory.listFiles()) {
+                Assertions.assertTrue(file.setWritable(false, false));
+            }
+
+            final TreeMeshes loaded = diskCache.load(cache.getFingerprint(parameters), 42);
+            Assertions.assertNotNull(loaded);
+            for (int i = 0; i < generated.getLodCount(); i++) {
+                assertSameMesh(generated.getTreeMesh(i), loaded.getTreeMesh(i));
+            }
+
+        } finally {
+            for (final File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void bufferPoolTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        parameters.setGenerateLeaves(true);
+        final TreeMeshes expected = new TreeMeshCache(Long.MAX_VALUE).getMeshes(parameters, 42);
+
+        final MeshBufferPool pool = new MeshBufferPool(Long.MAX_VALUE);
+        final TreeMeshCache cache = new TreeMeshCache(Long.MAX_VALUE);
+        cache.setBufferPool(pool);
+
+        final TreeMeshes pooled = cache.getMeshes(parameters, 42);
+        for (int i = 0; i < expected.getLodCount(); i++) {
+            assertSameMesh(expected.getTreeMesh(i), pooled.getTreeMesh(i));
+            assertSameMesh(expected.getLeafMesh(i), pooled.getLeafMesh(i));
+        }
+        Assertions.assertEquals(expected.getByteCount(), pooled.getByteCount());
+        Assertions.assertTrue(pool.getOutstandingBytes() >= pooled.getByteCount());
+        final long allocations = pool.getAllocations();
+
+        // Evicting the tree keeps its buffers until it is released and then
+        // recycles them for the next one
+        cache.setMaxBytes(0);
+        Assertions.assertEquals(0, cache.size());
+        assertSameMesh(expected.getTreeMesh(0), pooled.getTreeMesh(0));
+        Assertions.assertTrue(cache.release(pooled));
+        Assertions.assertFalse(cache.release(pooled));
+        Assertions.assertEquals(0, pool.getOutstandingBytes());
+        Assertions.assertTrue(pool.getPooledBytes() > 0);
+        Assertions.assertNull(pooled.getTreeMesh(0).getBuffer(VertexBuffer.Type.Position));
+        Assertions.assertNull(pooled.getLeafMesh(0).getBuffer(VertexBuffer.Type.Position));
+
+        cache.setMaxBytes(Long.MAX_VALUE);
+        final TreeMeshes again = cache.getMeshes(parameters, 42);
+        Assertions.assertEquals(allocations, pool.getAllocations());
+        Assertions.assertEquals(allocations, pool.getReuses());
+        for (int i = 0; i < expected.getLodCount(); i++) {
+            assertSameMesh(expected.getTreeMesh(i), again.getTreeMesh(i));
+        }
+
+        cache.clear();
+        Assertions.assertTrue(pool.getOutstandingBytes() > 0);
+        Assertions.assertTrue(cache.release(again));
+        Assertions.assertEquals(0, pool.getOutstandingBytes());
+        Assertions.assertFalse(pool.release(expected.getTreeMesh(0).getBuffer(VertexBuffer.Type.Position).getData()));
+    }
+
+    @Test
+    public void oversizedEntryTest() {
+
+        final TreeParameters parameters = new TreeParameters();
+        parameters.setGenerateLeaves(true);
+        final TreeMeshes expected = new TreeMeshCache(Long.MAX_VALUE).getMeshes(parameters, 42);
+
+        final MeshBufferPool pool = new MeshBufferPool(Long.MAX_VALUE);
+        final TreeMeshCache cache = new TreeMeshCache(1000);
+        cache.setBufferPool(pool);
+
+        // Too big to cache but still returned intact
+        final TreeMeshes first = cache.getMeshes(parameters, 42);
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(0, cache.getByteCount());
+        Assertions.assertEquals(0, cache.getEvictions());
+        for (int i = 0; i < expected.getLodCount(); i++) {
+            assertSameMesh(expected.getTreeMesh(i), first.getTreeMesh(i));
+        }
+
+        // A second request generates a new copy that does not share the first one's buffers
+        final TreeMeshes second = cache.getMeshes(parameters, 42);
+        Assertions.assertNotSame(first, second);
+        Assertions.assertTrue(pool.getOutstandingBytes() >= first.getByteCount() + second.getByteCount());
+        for (int i = 0; i < expected.getLodCount(); i++) {
+            assertSameMesh(expected.getTreeMesh(i), first.getTreeMesh(i));
+            assertSameMesh(expected.getTreeMesh(i), second.getTreeMesh(i));
+        }
+
+        Assertions.assertTrue(cache.release(first));
+        assertSameMesh(expected.getTreeMesh(0), second.getTreeMesh(0));
+        Assertions.assertTrue(cache.release(second));
+        Assertions.assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    private static void assertSameMesh(final Mesh expected, final Mesh actual) {
+
+        if (expected == null) {
+            Assertions.assertNull(actual);
+            return;
+        }
+
+        Assertions.assertEquals(expected.getMode(), actual.getMode());
+
+        final BoundingBox bound = (BoundingBox) expected.getBound();
+        final BoundingBox otherBound = (BoundingBox) actual.getBound();
+        Assertions.assertEquals(bound.getCenter(), otherBound.getCenter());
+        Assertions.assertEquals(bound.getExtent(null), otherBound.getExtent(null));
+
+        Assertions.assertEquals(expected.getBufferList().size(), actual.getBufferList().size());
+
+        for (final VertexBuffer buffer : expected.getBufferList()) {
+            final VertexBuffer other = actual.getBuffer(buffer.getBufferType());
+            Assertions.assertEquals(buffer.getFormat(), other.getFormat());
+            Assertions.assertEquals(buffer.getNumComponents(), other.getNumComponents());
+            final Buffer data = buffer.getData().rewind();
+            final Buffer otherData = other.getData().rewind();
+            Assertions.assertTrue(otherData.isDirect());
+            Assertions.assertEquals(data, otherData);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.math.FastMath;
+import com.simsilica.arboreal.BranchParameters;
+import com.simsilica.arboreal.TreeParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates randomized but repeatable tree parameters so that the tests do not only cover the default tree.
+ */
+final class TreePresets {
+
+    /**
+     * The one seed of the presets so that every test sees the same trees.
+     */
+    private static final long SEED = 0x7EE5L;
+
+    private TreePresets() {
+    }
+
+    /**
+     * Returns the default parameters followed by the specified number of random presets.
+     */
+    static List<TreeParameters> create(final int count) {
+        return create(count, SEED);
+    }
+
+    /**
+     * Returns the presets of create(int) with all three root levels enabled.
+     */
+    static List<TreeParameters> createWithRoots(final int count) {
+
+        final List<TreeParameters> result = create(count);
+        for (final TreeParameters parameters : result) {
+            withRoots(parameters);
+        }
+
+        return result;
+    }
+
+    /**
+     * Enables all three root levels of the parameters and returns them.
+     */
+    static TreeParameters withRoots(final TreeParameters parameters) {
+
+        for (int i = 0; i < 3; i++) {
+            parameters.getRoot(i).setEnabled(true);
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Returns the default parameters followed by the specified number of random presets.
+     */
+    private static List<TreeParameters> create(final int count, final long seed) {
+
+        final List<TreeParameters> result = new ArrayList<>();
+        result.add(new TreeParameters());
+
+        final Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            result.add(random(random));
+        }
+
+        return result;
+    }
+
+    static TreeParameters random(final Random random) {
+
+        final TreeParameters parameters = new TreeParameters();
+        parameters.setTrunkRadius(0.05F + random.nextFloat() * 0.3F);
+        parameters.setTrunkHeight(0.5F + random.nextFloat() * 4);
+        parameters.setRootHeight(random.nextFloat() * 0.6F);
+        parameters.setGenerateLeaves(random.nextBoolean());
+
+        for (final BranchParameters branch : parameters.getBranches()) {
+            randomize(branch, random);
+        }
+        for (final BranchParameters root : parameters.getRoots()) {
+            randomize(root, random);
+        }
+
+        return parameters;
+    }
+
+    private static void randomize(final BranchParameters branch, final Random random) {
+
+        branch.setInherit(false);
+        branch.setRadiusScale(0.5F + random.nextFloat());
+        branch.setLengthScale(0.3F + random.nextFloat() * 0.7F);
+        branch.setRadialSegments(3 + random.nextInt(6));
+        branch.setLengthSegments(1 + random.nextInt(5));
+        branch.setTaper(0.4F + random.nextFloat() * 0.6F);
+        branch.setInclination(random.nextFloat() * FastMath.PI * 0.9F - FastMath.PI * 0.2F);
+        branch.setTwist(random.nextFloat() * FastMath.HALF_PI - FastMath.QUARTER_PI);
+        branch.setTipRotation(random.nextFloat() * FastMath.TWO_PI);
+        branch.setSegmentVariation(random.nextFloat() * 0.8F);
+        branch.setGravity(random.nextFloat() * 1.2F - 0.4F);
+        branch.setHasEndJoint(random.nextBoolean());
+        branch.setSideJointCount(1 + random.nextInt(4));
+        branch.setSideJointStartAngle(random.nextFloat() * FastMath.TWO_PI);
+    }
+}
@@ -0,0 +1,69 @@
+package com.simsilica.arboreal.test;
+
+import com.simsilica.arboreal.LegacyTreeRandom;
+import com.simsilica.arboreal.SplitMixTreeRandom;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeRandom;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks the tree random sources and that trees built from them are repeatable.
+ */
+public class TreeRandomTest {
+
+    @Test
+    public void randomTest() {
+
+        for (final long seed : new long[] {0, 42, -7, Long.MAX_VALUE}) {
+            final Random expected = new Random(seed);
+            final TreeRandom legacy = LegacyTreeRandom.FACTORY.create(seed);
+            for (int i = 0; i < 1000; i++) {
+                Assertions.assertEquals(expected.nextFloat(), legacy.nextFloat());
+            }
+        }
+
+        final TreeRandom random = SplitMixTreeRandom.FACTORY.create(42);
+        for (int i = 0; i < 1000; i++) {
+            final float value = random.nextFloat();
+            Assertions.assertTrue(value >= 0 && value < 1);
+        }
+
+        Assertions.assertNotEquals(TreeGeneratorTest.SEED_42_HASH, assertSplitMix(new TreeParameters()));
+    }
+
+    @Test
+    public void presetsTest() {
+        for (final TreeParameters parameters : TreePresets.create(5)) {
+            assertSplitMix(parameters);
+        }
+    }
+
+    /**
+     * Checks that the SplitMix trees are the same from the graph, table, and parallel generators and returns
+     * their hash.
+     */
+    private static long assertSplitMix(final TreeParameters parameters) {
+
+        final TreeGenerator serial = new TreeGenerator();
+        serial.setSplitSeeds(true);
+        serial.setRandomFactory(SplitMixTreeRandom.FACTORY);
+
+        final long expected = TreeGeneratorTest.hash(serial.generateTree(42, parameters));
+        Assertions.assertEquals(expected, TreeGeneratorTest.hash(serial.generateTable(42, parameters).toTree()));
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final TreeGenerator parallel = new TreeGenerator(pool);
+            parallel.setRandomFactory(SplitMixTreeRandom.FACTORY);
+            Assertions.assertEquals(expected, TreeGeneratorTest.hash(parallel.generateTree(42, parameters)));
+        } finally {
+            pool.shutdown();
+        }
+        return expected;
+    }
+}
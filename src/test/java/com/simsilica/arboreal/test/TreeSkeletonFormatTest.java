@@ -0,0 +1,168 @@
+package com.simsilica.arboreal.test;
+
+import com.simsilica.arboreal.Segment;
+import com.simsilica.arboreal.SegmentSink;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.Tree;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.TreeSkeletonFormat;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Checks that skeletons survive the binary format and that malformed data is rejected.
+ */
+public class TreeSkeletonFormatTest {
+
+    /**
+     * The size of the header in front of the trunk segment.
+     */
+    private static final int HEADER_SIZE = 29;
+
+    @Test
+    public void roundTripTest() throws IOException {
+
+        for (final TreeParameters parameters : TreePresets.createWithRoots(8)) {
+            final SegmentTable table = new TreeGenerator().generateTable(42, parameters);
+
+            final ByteBuffer data = TreeSkeletonFormat.write(table);
+            Assertions.assertEquals(TreeSkeletonFormat.getSize(table), data.remaining());
+            Assertions.assertTrue(data.remaining() < table.size() * 24);
+
+            final SegmentTable copy = TreeSkeletonFormat.read(data);
+            Assertions.assertFalse(data.hasRemaining());
+            assertSameSkeleton(table, copy);
+
+            data.rewind();
+            final Tree tree = TreeSkeletonFormat.readTree(data);
+            Assertions.assertNotNull(tree.getBounds());
+        }
+
+        final SegmentTable table = new TreeGenerator().generateTable(42, new TreeParameters());
+        final File file = File.createTempFile("tree", ".tsk");
+        try {
+            TreeSkeletonFormat.store(table, file);
+            assertSameSkeleton(table, TreeSkeletonFormat.load(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void malformedDataTest() {
+
+        final SegmentTable table = new TreeGenerator().generateTable(42, new TreeParameters());
+        final ByteBuffer data = TreeSkeletonFormat.write(table);
+
+        final ByteBuffer badMagic = copy(data);
+        badMagic.putInt(0, 0);
+        assertInvalid(badMagic);
+
+        // The trunk's child and radial counts fit in a byte so its connection
+        // follows them and the depth
+        final ByteBuffer badConnection = copy(data);
+        badConnection.put(HEADER_SIZE + 3, (byte)9);
+        assertInvalid(badConnection);
+
+        final ByteBuffer negativeConnection = copy(data);
+        negativeConnection.put(HEADER_SIZE + 3, (byte)-1);
+        assertInvalid(negativeConnection);
+
+        // A million children cannot fit in what is left of the buffer
+        final ByteBuffer hugeCount = copy(data);
+        hugeCount.put(HEADER_SIZE, (byte)0xC0).put(HEADER_SIZE + 1, (byte)0x84).put(HEADER_SIZE + 2, (byte)0x3D);
+        assertInvalid(hugeCount);
+
+        final ByteBuffer negativeCount = copy(data);
+        for (int i = 0; i < 4; i++) {
+            negativeCount.put(HEADER_SIZE + i, (byte)0xFF);
+        }
+        negativeCount.put(HEADER_SIZE + 4, (byte)0x0F);
+        assertInvalid(negativeCount);
+
+        for (final int size : new int[] {0, 10, HEADER_SIZE, HEADER_SIZE + 5, data.remaining() - 1}) {
+            final ByteBuffer truncated = copy(data);
+            truncated.limit(size);
+            assertInvalid(truncated);
+        }
+    }
+
+    @Test
+    public void deepSkeletonTest() {
+
+        // Deep enough that one stack frame per segment would overflow
+        final int depth = 200000;
+        final SegmentTable table = new SegmentTable();
+        final Segment seg = new Segment();
+        seg.startRadius = 0.1F;
+        seg.endRadius = 0.1F;
+        seg.length = 0.1F;
+        seg.radials = 4;
+        seg.dir.set(0, 1, 0);
+        int parent = table.addSegment(SegmentSink.NO_PARENT, 0, 1, 0, seg);
+        for (int i = 1; i < depth; i++) {
+            parent = table.addSegment(parent, 0, i < depth - 1 ? 1 : 0, 0, seg);
+        }
+
+        final ByteBuffer data = TreeSkeletonFormat.write(table);
+        final SegmentTable copy = TreeSkeletonFormat.read(data);
+        Assertions.assertEquals(depth, copy.size());
+
+        final Tree tree = copy.toTree();
+        Assertions.assertNotNull(tree.getBounds());
+        Assertions.assertEquals(depth, SegmentTable.fromTree(tree).size());
+    }
+
+    private static ByteBuffer copy(final ByteBuffer data) {
+        final ByteBuffer result = ByteBuffer.allocate(data.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        result.put(data.duplicate()).flip();
+        return result;
+    }
+
+    private static void assertInvalid(final ByteBuffer data) {
+        final IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> TreeSkeletonFormat.read(data));
+        Assertions.assertNotNull(e.getMessage());
+    }
+
+    static void assertSameSkeleton(final SegmentTable expected, final SegmentTable actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertEquals(expected.getTrunk(), actual.getTrunk());
+        Assertions.assertEquals(expected.getRoots(), actual.getRoots());
+
+        // Values are quantized to 16 bits over their largest magnitude
+        float radius = 1;
+        float length = 1;
+        float v = 1;
+        float twist = 1;
+        for (int i = 0; i < expected.size(); i++) {
+            radius = Math.max(radius, Math.max(expected.getStartRadius(i), expected.getEndRadius(i)));
+            length = Math.max(length, expected.getLength(i));
+            v = Math.max(v, Math.max(Math.abs(expected.getVStart(i)), Math.abs(expected.getVEnd(i))));
+            twist = Math.max(twist, Math.abs(expected.getTwist(i)));
+        }
+        final float step = 1F / Short.MAX_VALUE;
+
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.getParent(i), actual.getParent(i));
+            Assertions.assertEquals(expected.getChildCount(i), actual.getChildCount(i));
+            Assertions.assertEquals(expected.getDepth(i), actual.getDepth(i));
+            Assertions.assertEquals(expected.getRadials(i), actual.getRadials(i));
+            Assertions.assertEquals(expected.getParentConnection(i), actual.getParentConnection(i));
+            Assertions.assertEquals(expected.isInverted(i), actual.isInverted(i));
+            Assertions.assertEquals(expected.getStartRadius(i), actual.getStartRadius(i), radius * step);
+            Assertions.assertEquals(expected.getEndRadius(i), actual.getEndRadius(i), radius * step);
+            Assertions.assertEquals(expected.getLength(i), actual.getLength(i), length * step);
+            Assertions.assertEquals(expected.getVStart(i), actual.getVStart(i), v * step);
+            Assertions.assertEquals(expected.getVEnd(i), actual.getVEnd(i), v * step);
+            Assertions.assertEquals(expected.getTwist(i), actual.getTwist(i), twist * step);
+            Assertions.assertTrue(expected.getDir(i, null).distance(actual.getDir(i, null)) < 1e-3F);
+        }
+    }
+}
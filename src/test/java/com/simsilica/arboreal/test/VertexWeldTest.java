@@ -0,0 +1,98 @@
+package com.simsilica.arboreal.test;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.simsilica.arboreal.SegmentTable;
+import com.simsilica.arboreal.TreeGenerator;
+import com.simsilica.arboreal.TreeParameters;
+import com.simsilica.arboreal.mesh.MeshBuilder;
+import com.simsilica.arboreal.mesh.SkinnedTreeMeshGenerator;
+import com.simsilica.arboreal.mesh.Vertex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the spatial hash in MeshBuilder.createVertex() welds the same vertexes as a linear search.
+ */
+public class VertexWeldTest {
+
+    @Test
+    public void vertexWeldTest() {
+
+        final MeshBuilder builder = new MeshBuilder();
+        final List<Vertex> reference = new ArrayList<>();
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 5000; i++) {
+
+            // Coarse positions so that plenty of them land within epsilon
+            final float x = random.nextInt(40) * 0.0007F;
+            final float y = random.nextInt(40) * 0.0007F - 0.01F;
+            final float z = random.nextInt(4) * 100F;
+            final int group = random.nextInt(3) - 1;
+            final float epsilon = random.nextBoolean() ? MeshBuilder.DEFAULT_EPSILON : 0.002F;
+            final boolean hasUv = random.nextBoolean();
+
+            final Vertex expected = find(reference, x, y, z, group, hasUv, epsilon);
+            final Vertex actual = hasUv ? builder.createVertex(x, y, z, 0.5F, 0, group, epsilon)
+                                        : builder.createVertex(x, y, z, group, epsilon);
+            if (expected == null) {
+                Assertions.assertEquals(reference.size(), actual.index);
+                reference.add(actual);
+            } else {
+                Assertions.assertSame(expected, actual);
+            }
+        }
+
+        Assertions.assertEquals(reference, builder.getVertexes());
+        Assertions.assertTrue(builder.getVertexCount() < 5000);
+    }
+
+    @Test
+    public void treePositionsTest() {
+
+        // Real tree meshes repeat the seam and cap positions
+        for (final TreeParameters parameters : TreePresets.create(3)) {
+            final SegmentTable table = new TreeGenerator().generateTable(42, parameters);
+            final Mesh mesh = new SkinnedTreeMeshGenerator().generateMesh(table, parameters.getLod(0),
+                    parameters.getYOffset(), 4, 0.5F, null);
+            final FloatBuffer positions = (FloatBuffer) mesh.getBuffer(VertexBuffer.Type.Position).getData();
+
+            final MeshBuilder builder = new MeshBuilder();
+            final List<Vertex> reference = new ArrayList<>();
+            for (int i = 0; i + 2 < positions.limit(); i += 3) {
+                final float x = positions.get(i);
+                final float y = positions.get(i + 1);
+                final float z = positions.get(i + 2);
+
+                final Vertex expected = find(reference, x, y, z, 0, false, MeshBuilder.DEFAULT_EPSILON);
+                final Vertex actual = builder.createVertex(x, y, z, 0);
+                if (expected == null) {
+                    reference.add(actual);
+                } else {
+                    Assertions.assertSame(expected, actual);
+                }
+            }
+            Assertions.assertEquals(reference, builder.getVertexes());
+            Assertions.assertTrue(builder.getVertexCount() < mesh.getVertexCount());
+        }
+    }
+
+    private static Vertex find(final List<Vertex> reference, final float x, final float y, final float z,
+                               final int group, final boolean hasUv, final float epsilon) {
+        for (final Vertex vert : reference) {
+            if (group >= 0 && vert.group != group) {
+                continue;
+            }
+            if (hasUv ? vert.isSame(x, y, z, 0.5F, 0, epsilon) : vert.isSame(x, y, z, epsilon)) {
+                return vert;
+            }
+        }
+        return null;
+    }
+}